@@ -20,13 +20,142 @@ public class Main {
      */
     public static final String HTTP_INSTANCES = "http.instances";
 
+    /**
+     * Environment variable: accounts.instances
+     * <p>
+     * Number of verticles serving the accounts over the event bus, as many as {@link #HTTP_INSTANCES} by default.
+     */
+    public static final String ACCOUNTS_INSTANCES = "accounts.instances";
+
     /**
      * Environment variable: propagate-transactions.period-ms
      *
-     * @param args
+     * @deprecated propagation is no longer periodic, only read as {@link #PROPAGATE_MAX_DELAY_MS} when the latter is not set
      */
+    @Deprecated
     public static final String PROPAGATE_PERIOD_MS = "propagate-transactions.period-ms";
 
+    /**
+     * Environment variable: propagate-transactions.max-delay-ms
+     * <p>
+     * Longest wait of a queued transaction before its propagation round starts, 10ms by default.
+     */
+    public static final String PROPAGATE_MAX_DELAY_MS = "propagate-transactions.max-delay-ms";
+
+    /**
+     * Environment variable: propagate-transactions.batch-accounts
+     * <p>
+     * Number of queued accounts worth a propagation round without waiting, 256 by default.
+     */
+    public static final String PROPAGATE_BATCH_ACCOUNTS = "propagate-transactions.batch-accounts";
+
+    /**
+     * Environment variable: propagate-transactions.shards
+     */
+    public static final String PROPAGATE_SHARDS = "propagate-transactions.shards";
+
+    /**
+     * Environment variable: retention.keep-last
+     * <p>
+     * Number of most recent transactions kept in each account history, all by default.
+     */
+    public static final String RETENTION_KEEP_LAST = "retention.keep-last";
+
+    /**
+     * Environment variable: retention.keep-for-ms
+     * <p>
+     * Transactions older than this are compacted, also when beyond {@link #RETENTION_KEEP_LAST}
+     * if both are set.
+     */
+    public static final String RETENTION_KEEP_FOR_MS = "retention.keep-for-ms";
+
+    /**
+     * Environment variable: retention.idempotency-window
+     * <p>
+     * Number of compacted transaction ids each account remembers to reject replays, all by default.
+     */
+    public static final String RETENTION_IDEMPOTENCY_WINDOW = "retention.idempotency-window";
+
+    /**
+     * Environment variable: journal.dir
+     * <p>
+     * Directory of the journal, accounts are only kept in memory when not defined.
+     */
+    public static final String JOURNAL_DIR = "journal.dir";
+
+    /**
+     * Environment variable: journal.batch-size
+     * <p>
+     * Number of records flushed at once by the journal group commit.
+     */
+    public static final String JOURNAL_BATCH_SIZE = "journal.batch-size";
+
+    /**
+     * Environment variable: journal.fsync-interval-ms
+     * <p>
+     * Maximum time a record waits for its batch to be flushed, {@code 0} flushes as soon as possible.
+     */
+    public static final String JOURNAL_FSYNC_INTERVAL_MS = "journal.fsync-interval-ms";
+
+    /**
+     * Environment variable: snapshot.period-ms
+     * <p>
+     * Period between two snapshots of the accounts, none when not defined (requires {@link #JOURNAL_DIR}).
+     */
+    public static final String SNAPSHOT_PERIOD_MS = "snapshot.period-ms";
+
+    /**
+     * Environment variable: http.stream.max-pending-transactions
+     * <p>
+     * Number of transactions waiting for their propagation above which streamed transfers stop being read.
+     */
+    public static final String STREAM_MAX_PENDING_TRANSACTIONS = "http.stream.max-pending-transactions";
+
+    /**
+     * Environment variable: cluster.nodes
+     * <p>
+     * Comma separated {@code host:http-port:steps-port} of every node sharing the accounts, in the same
+     * order on every node. Accounts are all local when not defined.
+     */
+    public static final String CLUSTER_NODES = "cluster.nodes";
+
+    /**
+     * Environment variable: cluster.node
+     * <p>
+     * Index of this node in {@link #CLUSTER_NODES}, {@code 0} by default.
+     */
+    public static final String CLUSTER_NODE = "cluster.node";
+
+    /**
+     * Environment variable: accounts.striped
+     * <p>
+     * Comma separated ids of the hot accounts, e.g. merchants, taking their credits in per core cells
+     * as they are delivered rather than one at a time on their propagation.
+     */
+    public static final String ACCOUNTS_STRIPED = "accounts.striped";
+
+    /**
+     * Environment variable: idempotency.recent-ids
+     * <p>
+     * Transfer ids remembered exactly whatever their account, 262144 by default, {@code 0} to only rely on
+     * the accounts idempotency records. Also the size of an aged generation.
+     */
+    public static final String IDEMPOTENCY_RECENT_IDS = "idempotency.recent-ids";
+
+    /**
+     * Environment variable: idempotency.aged-generations
+     * <p>
+     * Generations of older transfer ids kept behind a Bloom filter, 4 by default.
+     */
+    public static final String IDEMPOTENCY_AGED_GENERATIONS = "idempotency.aged-generations";
+
+    /**
+     * Environment variable: idempotency.bloom-bits-per-id
+     * <p>
+     * Size of the Bloom filters of the aged generations, 10 by default.
+     */
+    public static final String IDEMPOTENCY_BLOOM_BITS_PER_ID = "idempotency.bloom-bits-per-id";
+
     public static void main(String[] args) {
         System.setProperty("org.vertx.logger-delegate-factory-class-name",
                 "org.vertx.java.core.logging.impl.SLF4JLogDelegateFactory");
@@ -39,17 +168,49 @@ public class Main {
     private static DeploymentOptions deploymentOptions() {
         int httpPort = parseInt(System.getenv(HTTP_PORT), 8083);
         int httpInstances = parseInt(System.getenv(HTTP_INSTANCES), 2);
-        int propagatePeriodMs = parseInt(System.getenv(PROPAGATE_PERIOD_MS), 1000);
+        String propagateMaxDelayMs = System.getenv(PROPAGATE_MAX_DELAY_MS);
+        if (propagateMaxDelayMs == null || propagateMaxDelayMs.isEmpty())
+            propagateMaxDelayMs = System.getenv(PROPAGATE_PERIOD_MS);
+        int propagateShards = parseInt(System.getenv(PROPAGATE_SHARDS), 1);
+        JsonObject config = new JsonObject()
+                .put(WebVerticle.HTTP_PORT, httpPort)
+                .put(MainVerticle.HTTP_INSTANCES, httpInstances)
+                .put(TransactionPropagationVerticle.PROPAGATE_SHARDS, propagateShards);
+        putLongIfPresent(config, TransactionPropagationVerticle.PROPAGATE_MAX_DELAY_MS, propagateMaxDelayMs);
+        putLongIfPresent(config, TransactionPropagationVerticle.PROPAGATE_BATCH_ACCOUNTS, System.getenv(PROPAGATE_BATCH_ACCOUNTS));
+        putLongIfPresent(config, MainVerticle.RETENTION_KEEP_LAST, System.getenv(RETENTION_KEEP_LAST));
+        putLongIfPresent(config, MainVerticle.RETENTION_KEEP_FOR_MS, System.getenv(RETENTION_KEEP_FOR_MS));
+        putLongIfPresent(config, MainVerticle.RETENTION_IDEMPOTENCY_WINDOW, System.getenv(RETENTION_IDEMPOTENCY_WINDOW));
+        putStringIfPresent(config, MainVerticle.JOURNAL_DIR, System.getenv(JOURNAL_DIR));
+        putLongIfPresent(config, MainVerticle.JOURNAL_BATCH_SIZE, System.getenv(JOURNAL_BATCH_SIZE));
+        putLongIfPresent(config, MainVerticle.JOURNAL_FSYNC_INTERVAL_MS, System.getenv(JOURNAL_FSYNC_INTERVAL_MS));
+        putLongIfPresent(config, MainVerticle.SNAPSHOT_PERIOD_MS, System.getenv(SNAPSHOT_PERIOD_MS));
+        putLongIfPresent(config, WebVerticle.STREAM_MAX_PENDING_TRANSACTIONS, System.getenv(STREAM_MAX_PENDING_TRANSACTIONS));
+        putLongIfPresent(config, MainVerticle.ACCOUNTS_INSTANCES, System.getenv(ACCOUNTS_INSTANCES));
+        putStringIfPresent(config, MainVerticle.CLUSTER_NODES, System.getenv(CLUSTER_NODES));
+        putLongIfPresent(config, MainVerticle.CLUSTER_NODE, System.getenv(CLUSTER_NODE));
+        putStringIfPresent(config, MainVerticle.ACCOUNTS_STRIPED, System.getenv(ACCOUNTS_STRIPED));
+        putLongIfPresent(config, MainVerticle.IDEMPOTENCY_RECENT_IDS, System.getenv(IDEMPOTENCY_RECENT_IDS));
+        putLongIfPresent(config, MainVerticle.IDEMPOTENCY_AGED_GENERATIONS, System.getenv(IDEMPOTENCY_AGED_GENERATIONS));
+        putLongIfPresent(config, MainVerticle.IDEMPOTENCY_BLOOM_BITS_PER_ID, System.getenv(IDEMPOTENCY_BLOOM_BITS_PER_ID));
         return new DeploymentOptions()
                 .setInstances(1)
-                .setConfig(new JsonObject()
-                        .put(WebVerticle.HTTP_PORT, httpPort)
-                        .put(MainVerticle.HTTP_INSTANCES, httpInstances)
-                        .put(TransactionPropagationVerticle.PROPAGATE_PERIOD_MS, propagatePeriodMs)
-                )
+                .setConfig(config)
                 ;
     }
 
+    private static void putLongIfPresent(JsonObject config, String key, String value) {
+        if (value == null || value.isEmpty())
+            return;
+        config.put(key, Long.parseLong(value));
+    }
+
+    private static void putStringIfPresent(JsonObject config, String key, String value) {
+        if (value == null || value.isEmpty())
+            return;
+        config.put(key, value);
+    }
+
     private static int parseInt(String value, int defaultValue) {
         if (value == null || value.isEmpty())
             return defaultValue;
@@ -1,12 +1,18 @@
 package banktransfer.core;
 
+import java.util.regex.Pattern;
+
+import static banktransfer.core.Failures.INVALID_EMAIL;
+import static banktransfer.core.Failures.NO_EMAIL_PROVIDED;
+
 public class Email {
+    private static final Pattern FORMAT = Pattern.compile(".+@.+\\.[a-zA-Z0-9]+");
 
     public static Status<Failure, Email> email(String raw) {
         if (raw == null || raw.trim().isEmpty())
-            return Status.failure("no-email-provided");
-        if (!raw.matches(".+@.+\\.[a-zA-Z0-9]+"))
-            return Status.failure("invalid-email");
+            return NO_EMAIL_PROVIDED.status();
+        if (!FORMAT.matcher(raw).matches())
+            return INVALID_EMAIL.status();
         return Status.ok(new Email(raw.toLowerCase()));
     }
 
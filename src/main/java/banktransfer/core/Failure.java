@@ -1,16 +1,46 @@
 package banktransfer.core;
 
 public class Failure {
+
+    /**
+     * A failure meant to be kept in a constant, see {@link Failures}: its status is allocated once
+     * and shared by every use of the constant.
+     */
+    public static Failure shared(String error) {
+        return new Failure(error, true);
+    }
+
     private final String error;
+    // only set for the shared failures, the others allocate their status when asked
+    private final Status<Failure, ?> status;
 
     public Failure(String error) {
+        this(error, false);
+    }
+
+    private Failure(String error, boolean shared) {
         this.error = error;
+        this.status = shared ? new Status.Error<>(this) : null;
     }
 
     public String error() {
         return error;
     }
 
+    /**
+     * Whether this failure is a constant, see {@link #shared(String)}.
+     */
+    public boolean shared() {
+        return status != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> Status<Failure, T> status() {
+        if (status == null)
+            return new Status.Error<>(this);
+        return (Status<Failure, T>) status;
+    }
+
     @Override
     public String toString() {
         return "Failure{" + error + '}';
@@ -0,0 +1,34 @@
+package banktransfer.core;
+
+/**
+ * Failure codes of the core, allocated once along with their status.
+ */
+public final class Failures {
+    // values
+    public static final Failure NO_EMAIL_PROVIDED = Failure.shared("no-email-provided");
+    public static final Failure INVALID_EMAIL = Failure.shared("invalid-email");
+    public static final Failure INVALID_AMOUNT_FORMAT = Failure.shared("invalid-amount-format");
+    public static final Failure INVALID_AMOUNT_PRECISION = Failure.shared("invalid-amount-precision");
+    public static final Failure AMOUNT_OUT_OF_RANGE = Failure.shared("amount-out-of-range");
+    public static final Failure NO_ACCOUNT_ID_PROVIDED = Failure.shared("no-account-id-provided");
+    public static final Failure INVALID_ACCOUNT_ID_LENGTH = Failure.shared("invalid-account-id-length");
+    public static final Failure NO_TRANSACTION_ID_PROVIDED = Failure.shared("no-transaction-id-provided");
+    public static final Failure INVALID_TRANSACTION_ID_LENGTH = Failure.shared("invalid-transaction-id-length");
+    // accounts
+    public static final Failure EMAIL_ALREADY_IN_USE = Failure.shared("email-already-inuse");
+    public static final Failure ACCOUNT_ID_ALREADY_IN_USE = Failure.shared("account-id-already-inuse");
+    // transfers
+    public static final Failure IDENTICAL_SRC_DST = Failure.shared("identical-src-dst");
+    public static final Failure UNKNOWN_SRC_ACCOUNT = Failure.shared("unknown-src-account");
+    public static final Failure UNKNOWN_DST_ACCOUNT = Failure.shared("unknown-dst-account");
+    public static final Failure NOT_SOURCE_ACCOUNT = Failure.shared("not-source-account");
+    public static final Failure TRANSACTION_ALREADY_APPLIED = Failure.shared("transaction-already-applied");
+    public static final Failure TRANSACTION_UNKNOWN = Failure.shared("transaction-unknown");
+    public static final Failure ACK_FAILED = Failure.shared("ack-failed");
+    // journal
+    public static final Failure JOURNAL_UNAVAILABLE = Failure.shared("journal-unavailable");
+    public static final Failure JOURNAL_CLOSED = Failure.shared("journal-closed");
+
+    private Failures() {
+    }
+}
@@ -0,0 +1,202 @@
+package banktransfer.core;
+
+import java.math.BigDecimal;
+
+import static banktransfer.core.Failures.AMOUNT_OUT_OF_RANGE;
+import static banktransfer.core.Failures.INVALID_AMOUNT_FORMAT;
+import static banktransfer.core.Failures.INVALID_AMOUNT_PRECISION;
+
+/**
+ * Amount of money held as a {@code long} count of minor units at a fixed {@link #SCALE}:
+ * {@code 500.56} is stored as {@code 50056}.
+ * <p>
+ * {@link BigDecimal} is only meant to be used at the edges, the textual representation
+ * is parsed and formatted directly.
+ */
+public final class Money implements Comparable<Money> {
+
+    /**
+     * Number of decimal digits of the minor unit.
+     */
+    public static final int SCALE = 2;
+    private static final long UNIT = 100;
+
+    public static final Money ZERO = new Money(0);
+
+    public static Money ofMinor(long minorUnits) {
+        return minorUnits == 0 ? ZERO : new Money(minorUnits);
+    }
+
+    /**
+     * @throws ArithmeticException if the amount cannot be represented
+     */
+    public static Money of(long majorUnits) {
+        return ofMinor(Math.multiplyExact(majorUnits, UNIT));
+    }
+
+    public static Status<Failure, Money> money(BigDecimal amount) {
+        // checked on the stripped amount first: scaling an extreme exponent would be costly
+        BigDecimal stripped = amount.stripTrailingZeros();
+        if (stripped.scale() > SCALE)
+            return INVALID_AMOUNT_PRECISION.status();
+        if (stripped.precision() - stripped.scale() > 19)
+            return AMOUNT_OUT_OF_RANGE.status();
+        BigDecimal minorUnits;
+        try {
+            minorUnits = amount.setScale(SCALE).movePointRight(SCALE);
+        } catch (ArithmeticException e) {
+            return INVALID_AMOUNT_PRECISION.status();
+        }
+        if (minorUnits.unscaledValue().bitLength() > 63)
+            return AMOUNT_OUT_OF_RANGE.status();
+        return Status.ok(ofMinor(minorUnits.longValue()));
+    }
+
+    /**
+     * Parse a plain decimal representation such as {@code "-500.56"}, without going through {@link BigDecimal}.
+     * A representation with an exponent such as {@code "1.5E+3"} is still accepted, through {@link BigDecimal}.
+     */
+    public static Status<Failure, Money> parse(String raw) {
+        int length = raw.length();
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (raw.charAt(0) == '-' || raw.charAt(0) == '+')) {
+            negative = raw.charAt(0) == '-';
+            i++;
+        }
+
+        long units = 0;
+        boolean anyDigit = false;
+        int fractionDigits = -1;
+        for (; i < length; i++) {
+            char c = raw.charAt(i);
+            if (c == '.') {
+                if (fractionDigits >= 0)
+                    return INVALID_AMOUNT_FORMAT.status();
+                fractionDigits = 0;
+                continue;
+            }
+            if (c == 'e' || c == 'E')
+                return parseWithExponent(raw);
+            if (c < '0' || c > '9')
+                return INVALID_AMOUNT_FORMAT.status();
+            anyDigit = true;
+            int digit = c - '0';
+            if (fractionDigits == SCALE) {
+                // trailing zeros beyond the scale are harmless
+                if (digit != 0)
+                    return INVALID_AMOUNT_PRECISION.status();
+                continue;
+            }
+            if (fractionDigits >= 0)
+                fractionDigits++;
+            if (units > (Long.MAX_VALUE - digit) / 10)
+                return AMOUNT_OUT_OF_RANGE.status();
+            units = units * 10 + digit;
+        }
+        if (!anyDigit)
+            return INVALID_AMOUNT_FORMAT.status();
+
+        for (int scale = Math.max(fractionDigits, 0); scale < SCALE; scale++) {
+            if (units > Long.MAX_VALUE / 10)
+                return AMOUNT_OUT_OF_RANGE.status();
+            units *= 10;
+        }
+        return Status.ok(ofMinor(negative ? -units : units));
+    }
+
+    private static Status<Failure, Money> parseWithExponent(String raw) {
+        BigDecimal amount;
+        try {
+            amount = new BigDecimal(raw);
+        } catch (NumberFormatException e) {
+            return INVALID_AMOUNT_FORMAT.status();
+        }
+        return money(amount);
+    }
+
+    private final long minorUnits;
+
+    private Money(long minorUnits) {
+        this.minorUnits = minorUnits;
+    }
+
+    public long minorUnits() {
+        return minorUnits;
+    }
+
+    public boolean isNegative() {
+        return minorUnits < 0;
+    }
+
+    /**
+     * @throws ArithmeticException on overflow
+     */
+    public Money add(Money other) {
+        return ofMinor(Math.addExact(minorUnits, other.minorUnits));
+    }
+
+    /**
+     * @throws ArithmeticException on overflow
+     */
+    public Money subtract(Money other) {
+        return ofMinor(Math.subtractExact(minorUnits, other.minorUnits));
+    }
+
+    /**
+     * @throws ArithmeticException on overflow
+     */
+    public Money negate() {
+        return ofMinor(Math.negateExact(minorUnits));
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+
+    /**
+     * Plain decimal representation, without trailing zeros: {@code 50050} gives {@code "500.5"}.
+     */
+    public String toPlainString() {
+        long major = minorUnits / UNIT;
+        long fraction = Math.abs(minorUnits % UNIT);
+        StringBuilder builder = new StringBuilder(24);
+        if (minorUnits < 0 && major == 0)
+            builder.append('-');
+        builder.append(major);
+        if (fraction != 0) {
+            builder.append('.');
+            long divisor = UNIT / 10;
+            while (fraction != 0) {
+                builder.append((char) ('0' + fraction / divisor));
+                fraction %= divisor;
+                divisor /= 10;
+            }
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        Money money = (Money) o;
+        return minorUnits == money.minorUnits;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(minorUnits);
+    }
+
+    @Override
+    public String toString() {
+        return "Money{" + toPlainString() + '}';
+    }
+}
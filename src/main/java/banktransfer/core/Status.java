@@ -5,7 +5,13 @@ public interface Status<E, T> {
         return new Ok<>(value);
     }
 
+    /**
+     * No wrapper is allocated for a shared {@link Failure}, see {@link Failures}.
+     */
+    @SuppressWarnings("unchecked")
     static <E, T> Status<E, T> error(E error) {
+        if (error instanceof Failure)
+            return (Status<E, T>) ((Failure) error).status();
         return new Error<>(error);
     }
 
@@ -48,7 +54,7 @@ public interface Status<E, T> {
 
         private final E value;
 
-        private Error(E value) {
+        Error(E value) {
             this.value = value;
         }
 
@@ -1,23 +1,68 @@
 package banktransfer.core.account;
 
 import banktransfer.core.Failure;
+import banktransfer.core.Money;
 import banktransfer.core.Status;
 
-import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
 import java.util.stream.Stream;
 
 public interface Account {
     AccountId accountId();
 
-    BigDecimal balance();
+    Money balance();
+
+    /**
+     * Balance along with the ongoing amounts, kept up to date as transactions go: does not
+     * depend on the history length.
+     */
+    AccountSummary summary();
 
     void applyTransactions(MoneyTransferSteps moneyTransferService);
 
     Stream<Transaction> transactions();
 
+    /**
+     * Transactions ordered by sequence, lazily walked from a cursor.
+     *
+     * @param afterSequence excluded sequence the walk starts from, {@code 0} to start from the
+     *                      first transaction - or from the most recent one when {@code newestFirst}
+     * @param newestFirst   walk towards the oldest transactions instead of the most recent ones
+     */
+    Stream<Transaction> transactions(long afterSequence, boolean newestFirst);
+
+    /**
+     * Transaction of the account, either side of the transfer. Not found once compacted out of the history.
+     */
+    Optional<Transaction> findTransaction(TransactionId transactionId);
+
+    /**
+     * Whether the transaction reached a terminal status then left the history.
+     */
+    boolean compacted(TransactionId transactionId);
+
     Status<Failure, TransactionId> withdraws(MoneyTransfer moneyTransfer);
 
     Status<Failure, TransactionId> acknowledges(MoneyTransfer moneyTransfer);
 
     Status<Failure, TransactionId> credits(MoneyTransfer moneyTransfer);
+
+    /**
+     * Same as {@link #credits(MoneyTransfer)} for several transfers to this account, in their order.
+     * Rejected ones are ignored, as the propagation does.
+     *
+     * @param moneyTransferService acknowledges the credits an account applies right away rather than
+     *                             on its next propagation, if it does
+     */
+    default void creditsAll(List<MoneyTransfer> moneyTransfers, MoneyTransferSteps moneyTransferService) {
+        moneyTransfers.forEach(this::credits);
+    }
+
+    /**
+     * Same as {@link #acknowledges(MoneyTransfer)} for several transfers from this account, in their order.
+     */
+    default void acknowledgesAll(List<MoneyTransfer> moneyTransfers) {
+        moneyTransfers.forEach(this::acknowledges);
+    }
 }
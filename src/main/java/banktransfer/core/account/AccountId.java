@@ -3,13 +3,16 @@ package banktransfer.core.account;
 import banktransfer.core.Failure;
 import banktransfer.core.Status;
 
+import static banktransfer.core.Failures.INVALID_ACCOUNT_ID_LENGTH;
+import static banktransfer.core.Failures.NO_ACCOUNT_ID_PROVIDED;
+
 public class AccountId {
 
     public static Status<Failure, AccountId> accountId(String asString) {
         if (asString == null || asString.trim().isEmpty())
-            return Status.failure("no-account-id-provided");
+            return NO_ACCOUNT_ID_PROVIDED.status();
         if (asString.length() > 36)
-            return Status.failure("invalid-account-id-length");
+            return INVALID_ACCOUNT_ID_LENGTH.status();
         return Status.ok(new AccountId(asString));
     }
 
@@ -0,0 +1,86 @@
+package banktransfer.core.account;
+
+import banktransfer.core.Money;
+
+/**
+ * Balance and ongoing amounts of an account, without its history.
+ */
+public class AccountSummary {
+
+    private final AccountId accountId;
+    private final Money balance;
+    private final long lastSequence;
+    private final long pendingCount;
+    private final Money pendingDebits;
+    private final Money pendingCredits;
+    private final long inFlightCount;
+    private final Money inFlightDebits;
+
+    public AccountSummary(AccountId accountId,
+                          Money balance,
+                          long lastSequence,
+                          long pendingCount,
+                          Money pendingDebits,
+                          Money pendingCredits,
+                          long inFlightCount,
+                          Money inFlightDebits) {
+        this.accountId = accountId;
+        this.balance = balance;
+        this.lastSequence = lastSequence;
+        this.pendingCount = pendingCount;
+        this.pendingDebits = pendingDebits;
+        this.pendingCredits = pendingCredits;
+        this.inFlightCount = inFlightCount;
+        this.inFlightDebits = inFlightDebits;
+    }
+
+    public AccountId accountId() {
+        return accountId;
+    }
+
+    public Money balance() {
+        return balance;
+    }
+
+    /**
+     * Most recent sequence allocated by the account.
+     */
+    public long lastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Number of transactions not applied to the balance yet.
+     */
+    public long pendingCount() {
+        return pendingCount;
+    }
+
+    /**
+     * Total of the withdrawals not debited yet.
+     */
+    public Money pendingDebits() {
+        return pendingDebits;
+    }
+
+    /**
+     * Total of the credits not applied yet.
+     */
+    public Money pendingCredits() {
+        return pendingCredits;
+    }
+
+    /**
+     * Number of debited transactions waiting for their acknowledgement.
+     */
+    public long inFlightCount() {
+        return inFlightCount;
+    }
+
+    /**
+     * Total debited, waiting for the destinations to acknowledge it.
+     */
+    public Money inFlightDebits() {
+        return inFlightDebits;
+    }
+}
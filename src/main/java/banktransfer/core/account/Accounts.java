@@ -5,11 +5,54 @@ import banktransfer.core.Status;
 
 import java.util.Optional;
 import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
 public interface Accounts {
     Optional<Account> findById(AccountId accountId);
 
     Status<Failure, AccountId> add(NewAccount newAccount);
 
+    /**
+     * Transaction of the source account of a transfer, its status follows the whole transfer.
+     * Not found once compacted out of the account history.
+     */
+    Optional<Transaction> findTransfer(TransactionId transactionId);
+
     void forEach(Consumer<Account> consumer);
+
+    /**
+     * Visit only the accounts that got pending transactions since they were last visited.
+     */
+    void forEachPending(Consumer<Account> consumer);
+
+    /**
+     * Number of partitions accounts are spread over, see {@link #partitionOf(AccountId)}.
+     */
+    int partitions();
+
+    int partitionOf(AccountId accountId);
+
+    /**
+     * Same as {@link #forEachPending(Consumer)} restricted to the accounts of the given partition.
+     * A partition must not be drained by more than one thread at a time.
+     */
+    void forEachPending(int partition, Consumer<Account> consumer);
+
+    /**
+     * Number of accounts queued in the partition, waiting for {@link #forEachPending(int, Consumer)}.
+     */
+    int pendingAccounts(int partition);
+
+    /**
+     * Be told the partition of each account queued for a visit, from the thread queuing it:
+     * meant to wake up whoever drains the partition, thus must neither block nor be slow.
+     */
+    void addPendingListener(IntConsumer listener);
+
+    void removePendingListener(IntConsumer listener);
+
+    /**
+     * Number of transactions submitted but not applied yet: the propagation backlog.
+     */
+    long pendingTransactions();
 }
@@ -3,8 +3,18 @@ package banktransfer.core.account;
 import banktransfer.core.Failure;
 import banktransfer.core.Status;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
+import static banktransfer.core.Failures.IDENTICAL_SRC_DST;
+import static banktransfer.core.Failures.UNKNOWN_DST_ACCOUNT;
+import static banktransfer.core.Failures.UNKNOWN_SRC_ACCOUNT;
+
 public class DefaultMoneyTransferService implements MoneyTransferService, MoneyTransferSteps {
     private final Accounts accounts;
 
@@ -17,20 +27,53 @@ public class DefaultMoneyTransferService implements MoneyTransferService, MoneyT
         AccountId srcId = moneyTransfer.source();
         AccountId dstId = moneyTransfer.destination();
         if (srcId.equals(dstId))
-            return Status.failure("identical-src-dst");
+            return IDENTICAL_SRC_DST.status();
 
         Optional<Account> srcOpt = accounts.findById(srcId);
         Optional<Account> dstOpt = accounts.findById(dstId);
 
         if (!srcOpt.isPresent())
-            return Status.failure("unknown-src-account");
+            return UNKNOWN_SRC_ACCOUNT.status();
         if (!dstOpt.isPresent())
-            return Status.failure("unknown-dst-account");
+            return UNKNOWN_DST_ACCOUNT.status();
 
         Account account = srcOpt.get();
         return account.withdraws(moneyTransfer);
     }
 
+    /**
+     * Transfers are submitted grouped by source account, in their relative order, and each
+     * distinct account is only looked up once for the whole batch.
+     */
+    @Override
+    public List<Status<Failure, TransactionId>> transferAll(List<MoneyTransfer> moneyTransfers) {
+        Map<AccountId, List<MoneyTransferAt>> bySource = new LinkedHashMap<>();
+        for (int i = 0; i < moneyTransfers.size(); i++) {
+            MoneyTransfer moneyTransfer = moneyTransfers.get(i);
+            bySource.computeIfAbsent(moneyTransfer.source(), id -> new ArrayList<>()).add(new MoneyTransferAt(i, moneyTransfer));
+        }
+
+        Map<AccountId, Optional<Account>> found = new HashMap<>();
+        @SuppressWarnings("unchecked")
+        Status<Failure, TransactionId>[] results = new Status[moneyTransfers.size()];
+        bySource.forEach((srcId, transfers) -> {
+            Optional<Account> srcOpt = found.computeIfAbsent(srcId, accounts::findById);
+            for (MoneyTransferAt transfer : transfers) {
+                MoneyTransfer moneyTransfer = transfer.moneyTransfer;
+                AccountId dstId = moneyTransfer.destination();
+                if (srcId.equals(dstId))
+                    results[transfer.index] = IDENTICAL_SRC_DST.status();
+                else if (!srcOpt.isPresent())
+                    results[transfer.index] = UNKNOWN_SRC_ACCOUNT.status();
+                else if (!found.computeIfAbsent(dstId, accounts::findById).isPresent())
+                    results[transfer.index] = UNKNOWN_DST_ACCOUNT.status();
+                else
+                    results[transfer.index] = srcOpt.get().withdraws(moneyTransfer);
+            }
+        });
+        return Arrays.asList(results);
+    }
+
     @Override
     public void credit(MoneyTransfer moneyTransfer) {
         Optional<Account> destinationOpt = accounts.findById(moneyTransfer.destination());
@@ -47,15 +90,53 @@ public class DefaultMoneyTransferService implements MoneyTransferService, MoneyT
         account.acknowledges(moneyTransfer);
     }
 
+    @Override
+    public void creditAll(AccountId destination, List<MoneyTransfer> moneyTransfers) {
+        accounts.findById(destination).get().creditsAll(moneyTransfers, this);
+    }
+
+    @Override
+    public void acknowledgeAll(AccountId source, List<MoneyTransfer> moneyTransfers) {
+        accounts.findById(source).get().acknowledgesAll(moneyTransfers);
+    }
+
     /**
-     * This method is single threaded, and is the only entry point
+     * This method and {@link #propagateTransactions(int, int)} are the only entry points
      * to perform credit/debit operation through transaction.
+     * Only accounts with pending transactions are visited: idle accounts cost nothing.
      */
-    public synchronized void propagateTransactions() {
-        accounts.forEach(this::propagateTransactions);
+    public void propagateTransactions() {
+        StepInboxes inboxes = new StepInboxes();
+        accounts.forEachPending(account -> account.applyTransactions(inboxes));
+        inboxes.deliver(this);
     }
 
-    private void propagateTransactions(Account account) {
-        account.applyTransactions(this);
+    /**
+     * An account belongs to a single partition, and a partition to a single shard:
+     * transactions of a given account are thus always applied by the same thread.
+     * Credits and acknowledgements targeting an account of another shard are
+     * queued in the partition of that account and applied by its owner.
+     * <p>
+     * Credits and acknowledgements are gathered per counterparty during the round
+     * and delivered once it is over, see {@link StepInboxes}.
+     */
+    @Override
+    public void propagateTransactions(int shard, int shards) {
+        StepInboxes inboxes = new StepInboxes();
+        int partitions = accounts.partitions();
+        for (int partition = shard; partition < partitions; partition += shards) {
+            accounts.forEachPending(partition, account -> account.applyTransactions(inboxes));
+        }
+        inboxes.deliver(this);
+    }
+
+    private static class MoneyTransferAt {
+        private final int index;
+        private final MoneyTransfer moneyTransfer;
+
+        private MoneyTransferAt(int index, MoneyTransfer moneyTransfer) {
+            this.index = index;
+            this.moneyTransfer = moneyTransfer;
+        }
     }
 }
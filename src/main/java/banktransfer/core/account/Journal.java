@@ -0,0 +1,64 @@
+package banktransfer.core.account;
+
+import banktransfer.core.Email;
+import banktransfer.core.Failure;
+import banktransfer.core.Money;
+
+import java.util.function.Consumer;
+
+/**
+ * Append-only record of every account state change: replaying the records in order
+ * rebuilds the accounts.
+ * <p>
+ * Appending a record does not make it survive a crash,
+ * {@link #whenDurable(Runnable, Consumer)} tells when it does.
+ */
+public interface Journal {
+
+    Journal NONE = new Journal() {
+        @Override
+        public void accountCreated(AccountId accountId, Email email, Money initialBalance) {
+        }
+
+        @Override
+        public void transactionSubmitted(AccountId accountId, long sequence, long createdAt, MoneyTransfer moneyTransfer) {
+        }
+
+        @Override
+        public void transactionUpdated(AccountId accountId, long sequence, TransactionStatus status, Transaction.CancelReason cancelReason) {
+        }
+
+        @Override
+        public void whenDurable(Runnable onDurable, Consumer<Failure> onFailure) {
+            onDurable.run();
+        }
+    };
+
+    void accountCreated(AccountId accountId, Email email, Money initialBalance);
+
+    /**
+     * A transaction entered the history of {@code accountId}, either as source or as destination.
+     */
+    void transactionSubmitted(AccountId accountId, long sequence, long createdAt, MoneyTransfer moneyTransfer);
+
+    /**
+     * The transaction of {@code accountId} identified by its {@code sequence} reached {@code status}.
+     */
+    void transactionUpdated(AccountId accountId, long sequence, TransactionStatus status, Transaction.CancelReason cancelReason);
+
+    /**
+     * Checked before a state change is made: a change whose records would be dropped is refused
+     * rather than made and lost.
+     *
+     * @return the failure the records would be dropped with, {@code null} while they are accepted
+     */
+    default Failure unavailable() {
+        return null;
+    }
+
+    /**
+     * Invoke {@code onDurable} once every record appended so far by the calling thread is durable,
+     * or {@code onFailure} if it will never be. Callbacks may run on any thread and must not block.
+     */
+    void whenDurable(Runnable onDurable, Consumer<Failure> onFailure);
+}
@@ -1,16 +1,15 @@
 package banktransfer.core.account;
 
 import banktransfer.core.Failure;
+import banktransfer.core.Money;
 import banktransfer.core.Status;
 
-import java.math.BigDecimal;
-
 public class MoneyTransfer {
 
     public static Status<Failure, MoneyTransfer> moneyTransfert(Status<Failure, TransactionId> transactionIdOr,
                                                                 Status<Failure, AccountId> accountSrcIdOr,
                                                                 Status<Failure, AccountId> accountDstIdOr,
-                                                                Status<Failure, BigDecimal> amountOr) {
+                                                                Status<Failure, Money> amountOr) {
         if (!transactionIdOr.succeeded())
             return Status.error(transactionIdOr.error());
         if (!accountSrcIdOr.succeeded())
@@ -31,9 +30,9 @@ public class MoneyTransfer {
     private final TransactionId transactionId;
     private final AccountId source;
     private final AccountId destination;
-    private final BigDecimal amount;
+    private final Money amount;
 
-    public MoneyTransfer(TransactionId transactionId, AccountId source, AccountId destination, BigDecimal amount) {
+    public MoneyTransfer(TransactionId transactionId, AccountId source, AccountId destination, Money amount) {
         this.transactionId = transactionId;
         this.source = source;
         this.destination = destination;
@@ -52,7 +51,7 @@ public class MoneyTransfer {
         return destination;
     }
 
-    public BigDecimal amount() {
+    public Money amount() {
         return amount;
     }
 
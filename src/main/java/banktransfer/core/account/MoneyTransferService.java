@@ -3,10 +3,31 @@ package banktransfer.core.account;
 import banktransfer.core.Failure;
 import banktransfer.core.Status;
 
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
 public interface MoneyTransferService {
 
     Status<Failure, TransactionId> transfer(MoneyTransfer moneyTransfer);
 
+    /**
+     * Submit several transfers at once, each one being accepted or rejected on its own
+     * as if submitted alone.
+     *
+     * @return the outcome of each transfer, in the order of the transfers
+     */
+    default List<Status<Failure, TransactionId>> transferAll(List<MoneyTransfer> moneyTransfers) {
+        return moneyTransfers.stream().map(this::transfer).collect(toList());
+    }
+
     void propagateTransactions();
 
+    /**
+     * Propagate the transactions of the partitions owned by the given shard:
+     * partitions {@code p} such that {@code p % shards == shard}.
+     * Each shard must be driven by a single thread, distinct shards can run concurrently.
+     */
+    void propagateTransactions(int shard, int shards);
+
 }
@@ -1,7 +1,23 @@
 package banktransfer.core.account;
 
+import java.util.List;
+
 public interface MoneyTransferSteps {
     void credit(MoneyTransfer moneyTransfer);
 
     void acknowledge(MoneyTransfer moneyTransfer);
+
+    /**
+     * Credits of a single destination account, in their order, see {@link StepInboxes}.
+     */
+    default void creditAll(AccountId destination, List<MoneyTransfer> moneyTransfers) {
+        moneyTransfers.forEach(this::credit);
+    }
+
+    /**
+     * Acknowledgements of a single source account, in their order, see {@link StepInboxes}.
+     */
+    default void acknowledgeAll(AccountId source, List<MoneyTransfer> moneyTransfers) {
+        moneyTransfers.forEach(this::acknowledge);
+    }
 }
@@ -2,18 +2,17 @@ package banktransfer.core.account;
 
 import banktransfer.core.Email;
 import banktransfer.core.Failure;
+import banktransfer.core.Money;
 import banktransfer.core.Status;
 
-import java.math.BigDecimal;
-
 public class NewAccount {
 
     public static Status<Failure, NewAccount> newAccount(Status<Failure, Email> email) {
-        return newAccount(email, Status.ok(BigDecimal.ZERO));
+        return newAccount(email, Status.ok(Money.ZERO));
     }
 
     public static Status<Failure, NewAccount> newAccount(Status<Failure, Email> email,
-                                                         Status<Failure, BigDecimal> initialAmount) {
+                                                         Status<Failure, Money> initialAmount) {
         if (!email.succeeded())
             return Status.error(email.error());
         if (!initialAmount.succeeded())
@@ -22,9 +21,9 @@ public class NewAccount {
     }
 
     private final Email email;
-    private final BigDecimal initialAmount;
+    private final Money initialAmount;
 
-    private NewAccount(Email email, BigDecimal initialAmount) {
+    private NewAccount(Email email, Money initialAmount) {
         this.email = email;
         this.initialAmount = initialAmount;
     }
@@ -33,7 +32,7 @@ public class NewAccount {
         return email;
     }
 
-    public BigDecimal initialAmount() {
+    public Money initialAmount() {
         return initialAmount;
     }
 }
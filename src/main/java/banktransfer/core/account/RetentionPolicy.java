@@ -0,0 +1,102 @@
+package banktransfer.core.account;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Tells which terminal transactions ({@link TransactionStatus#isTerminal()}) can leave an
+ * account history: once compacted, a transaction only survives as its effect on the balance
+ * and as an entry of the account idempotency record.
+ * <p>
+ * Expiry is expected to be monotonic with the transaction sequence: once a transaction
+ * is not expired, the following ones are not either.
+ */
+public class RetentionPolicy {
+
+    private static final RetentionPolicy KEEP_ALL = new RetentionPolicy(Long.MAX_VALUE, Long.MAX_VALUE, System::currentTimeMillis, 0);
+
+    public static RetentionPolicy keepAll() {
+        return KEEP_ALL;
+    }
+
+    /**
+     * Keep the {@code count} most recent transactions of each account.
+     */
+    public static RetentionPolicy keepLast(long count) {
+        if (count < 0)
+            throw new IllegalArgumentException("Count must be positive, got: " + count);
+        return new RetentionPolicy(count, Long.MAX_VALUE, System::currentTimeMillis, 0);
+    }
+
+    /**
+     * Keep the transactions created during the last {@code durationMs}.
+     */
+    public static RetentionPolicy keepFor(long durationMs) {
+        return keepFor(durationMs, System::currentTimeMillis);
+    }
+
+    public static RetentionPolicy keepFor(long durationMs, LongSupplier clock) {
+        if (durationMs < 0)
+            throw new IllegalArgumentException("Duration must be positive, got: " + durationMs);
+        return new RetentionPolicy(Long.MAX_VALUE, durationMs, clock, 0);
+    }
+
+    private final long keepLast;
+    private final long keepForMs;
+    private final LongSupplier clock;
+    private final int idempotencyWindow;
+
+    private RetentionPolicy(long keepLast, long keepForMs, LongSupplier clock, int idempotencyWindow) {
+        this.keepLast = keepLast;
+        this.keepForMs = keepForMs;
+        this.clock = clock;
+        this.idempotencyWindow = idempotencyWindow;
+    }
+
+    /**
+     * Also compact the transactions created more than {@code durationMs} ago: combined with
+     * {@link #keepLast(long)}, a transaction expires once either criterion is met.
+     */
+    public RetentionPolicy atMostFor(long durationMs) {
+        if (durationMs < 0)
+            throw new IllegalArgumentException("Duration must be positive, got: " + durationMs);
+        return new RetentionPolicy(keepLast, durationMs, clock, idempotencyWindow);
+    }
+
+    /**
+     * Bound the number of compacted transaction ids an account remembers to reject replays,
+     * {@code 0} (the default) remembers all of them.
+     * Ids are forgotten by generation of {@code ids} entries, so between {@code ids}
+     * and {@code 2 * ids} of the most recently compacted ids are remembered.
+     */
+    public RetentionPolicy rememberLast(int ids) {
+        if (ids < 0)
+            throw new IllegalArgumentException("Number of ids must be positive, got: " + ids);
+        return new RetentionPolicy(keepLast, keepForMs, clock, ids);
+    }
+
+    public boolean compacts() {
+        return keepLast != Long.MAX_VALUE || keepForMs != Long.MAX_VALUE;
+    }
+
+    public int idempotencyWindow() {
+        return idempotencyWindow;
+    }
+
+    /**
+     * @param lastSequence the most recent sequence of the transaction's account
+     */
+    public boolean isExpired(Transaction transaction, long lastSequence) {
+        if (keepLast != Long.MAX_VALUE && lastSequence - transaction.sequence() >= keepLast)
+            return true;
+        return keepForMs != Long.MAX_VALUE && clock.getAsLong() - transaction.createdAt() >= keepForMs;
+    }
+
+    @Override
+    public String toString() {
+        return "RetentionPolicy{" +
+                "keepLast=" + keepLast +
+                ", keepForMs=" + keepForMs +
+                ", idempotencyWindow=" + idempotencyWindow +
+                '}';
+    }
+}
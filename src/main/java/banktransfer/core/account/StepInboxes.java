@@ -0,0 +1,44 @@
+package banktransfer.core.account;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Credits and acknowledgements raised during a propagation round, held per counterparty then
+ * delivered as one batch each: an account receiving many of them is looked up, and its pending
+ * transactions updated, once per round instead of once per transfer.
+ * <p>
+ * Steps are delivered at the end of the round, the counterparty applying them on its next visit.
+ * Not thread safe: one instance per round, a round being run by a single thread.
+ */
+public class StepInboxes implements MoneyTransferSteps {
+
+    private final Map<AccountId, List<MoneyTransfer>> credits = new HashMap<>();
+    private final Map<AccountId, List<MoneyTransfer>> acknowledgements = new HashMap<>();
+
+    @Override
+    public void credit(MoneyTransfer moneyTransfer) {
+        credits.computeIfAbsent(moneyTransfer.destination(), id -> new ArrayList<>()).add(moneyTransfer);
+    }
+
+    @Override
+    public void acknowledge(MoneyTransfer moneyTransfer) {
+        acknowledgements.computeIfAbsent(moneyTransfer.source(), id -> new ArrayList<>()).add(moneyTransfer);
+    }
+
+    public boolean isEmpty() {
+        return credits.isEmpty() && acknowledgements.isEmpty();
+    }
+
+    /**
+     * Hands each inbox over to the steps, then empties them.
+     */
+    public void deliver(MoneyTransferSteps steps) {
+        credits.forEach(steps::creditAll);
+        acknowledgements.forEach(steps::acknowledgeAll);
+        credits.clear();
+        acknowledgements.clear();
+    }
+}
@@ -1,20 +1,31 @@
 package banktransfer.core.account;
 
-import java.math.BigDecimal;
+import banktransfer.core.Money;
 
 public interface Transaction {
 
-    BigDecimal amountFor(AccountId accountId);
+    Money amountFor(AccountId accountId);
 
     enum CancelReason {
         InsufficientFund,
+        Overflow,
         None
     }
 
     long sequence();
 
+    /**
+     * Creation time, in milliseconds since epoch.
+     */
+    long createdAt();
+
     TransactionStatus status();
 
+    /**
+     * {@link CancelReason#None} unless {@link TransactionStatus#Cancelled}.
+     */
+    CancelReason cancelReason();
+
     TransactionId transactionId();
 
     MoneyTransfer moneyTransfer();
@@ -3,12 +3,15 @@ package banktransfer.core.account;
 import banktransfer.core.Failure;
 import banktransfer.core.Status;
 
+import static banktransfer.core.Failures.INVALID_TRANSACTION_ID_LENGTH;
+import static banktransfer.core.Failures.NO_TRANSACTION_ID_PROVIDED;
+
 public class TransactionId {
     public static Status<Failure, TransactionId> transactionId(String asString) {
         if (asString == null || asString.trim().isEmpty())
-            return Status.failure("no-transaction-id-provided");
+            return NO_TRANSACTION_ID_PROVIDED.status();
         if (asString.length() > 36)
-            return Status.failure("invalid-transaction-id-length");
+            return INVALID_TRANSACTION_ID_LENGTH.status();
         return Status.ok(new TransactionId(asString));
     }
 
@@ -5,5 +5,14 @@ public enum TransactionStatus {
     Credited,
     Debited,
     Acknowledged,
-    Cancelled
+    Cancelled;
+
+    /**
+     * Whether no further step can happen on the transaction of the account holding it:
+     * a source transaction ends either {@code Acknowledged} or {@code Cancelled},
+     * a destination one ends {@code Credited}.
+     */
+    public boolean isTerminal() {
+        return this == Credited || this == Acknowledged || this == Cancelled;
+    }
 }
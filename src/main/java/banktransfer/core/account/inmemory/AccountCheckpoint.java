@@ -0,0 +1,119 @@
+package banktransfer.core.account.inmemory;
+
+import banktransfer.core.account.Transaction;
+import banktransfer.core.account.TransactionId;
+
+import java.util.function.LongConsumer;
+
+/**
+ * What remains of the transactions compacted out of an account history:
+ * their effect already lies in the account balance, the checkpoint keeps
+ * the last compacted sequence and a compact idempotency record made of
+ * 64 bits fingerprints of the compacted transaction ids.
+ * <p>
+ * When bounded, the idempotency record forgets the oldest ids by generation:
+ * a generation is dropped once the newer one is full.
+ * <p>
+ * Written by the thread applying the account transactions, read concurrently on submission: lookups
+ * take the checkpoint monitor, as the generations are not safe to read while recorded to. Only an
+ * account that never compacted anything is answered without it, from the volatile generations field
+ * written before the first fingerprint.
+ */
+class AccountCheckpoint {
+
+    private static final Generations NONE = new Generations(null, null);
+
+    private final int generationCapacity;
+    // allocated on first record: most accounts never compact anything
+    private volatile Generations generations = NONE;
+    private volatile long lastSequence;
+    private volatile long count;
+
+    AccountCheckpoint(int generationCapacity) {
+        this.generationCapacity = generationCapacity;
+    }
+
+    long lastSequence() {
+        return lastSequence;
+    }
+
+    long count() {
+        return count;
+    }
+
+    void record(Transaction transaction) {
+        record(fingerprint(transaction.transactionId()), transaction.sequence());
+    }
+
+    synchronized void record(long fingerprint, long sequence) {
+        Generations generations = this.generations;
+        if (generations.current == null) {
+            generations = new Generations(new LongHashSet(generationCapacity > 0 ? generationCapacity : 16), null);
+            this.generations = generations;
+        } else if (generationCapacity > 0 && generations.current.size() >= generationCapacity) {
+            LongHashSet recycled = generations.previous;
+            if (recycled != null)
+                recycled.clear();
+            else
+                recycled = new LongHashSet(generationCapacity);
+            generations = new Generations(recycled, generations.current);
+            this.generations = generations;
+        }
+        generations.current.add(fingerprint);
+        lastSequence = Math.max(lastSequence, sequence);
+        count++;
+    }
+
+    /**
+     * Visit the remembered fingerprints, oldest generation first.
+     */
+    synchronized void forEach(LongConsumer consumer) {
+        Generations generations = this.generations;
+        if (generations.previous != null)
+            generations.previous.forEach(consumer);
+        if (generations.current != null)
+            generations.current.forEach(consumer);
+    }
+
+    /**
+     * Restore the counters once the remembered fingerprints have been recorded again.
+     */
+    synchronized void restore(long lastSequence, long count) {
+        this.lastSequence = lastSequence;
+        this.count = count;
+    }
+
+    boolean contains(TransactionId transactionId) {
+        if (generations.current == null)
+            return false;
+        return contains(fingerprint(transactionId));
+    }
+
+    private synchronized boolean contains(long fingerprint) {
+        Generations generations = this.generations;
+        return generations.current.contains(fingerprint)
+                || (generations.previous != null && generations.previous.contains(fingerprint));
+    }
+
+    static long fingerprint(TransactionId transactionId) {
+        String raw = transactionId.asString();
+        // FNV-1a on the high bits, String#hashCode on the low bits
+        int fnv = 0x811c9dc5;
+        for (int i = 0; i < raw.length(); i++) {
+            fnv ^= raw.charAt(i);
+            fnv *= 0x01000193;
+        }
+        long fingerprint = ((long) fnv << 32) | (raw.hashCode() & 0xffffffffL);
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    private static final class Generations {
+        private final LongHashSet current;
+        private final LongHashSet previous;
+
+        Generations(LongHashSet current, LongHashSet previous) {
+            this.current = current;
+            this.previous = previous;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package banktransfer.core.account.inmemory;
+
+import banktransfer.core.account.TransactionId;
+import banktransfer.core.account.TransactionStatus;
+
+/**
+ * Callbacks raised by an {@link InMemoryAccount} toward its owning repository.
+ */
+public interface AccountListener {
+
+    AccountListener NONE = account -> {
+    };
+
+    /**
+     * Invoked once the account holds pending transactions it has not been scheduled for yet.
+     * The account will not notify again until {@link InMemoryAccount#applyTransactions} is called.
+     */
+    void pendingTransactionsAvailable(InMemoryAccount account);
+
+    /**
+     * Invoked once a transaction enters the account: submitted, or rebuilt from a snapshot or a journal.
+     */
+    default void transactionAdded(TransactionStatus status) {
+    }
+
+    /**
+     * Invoked once per effective status change of a transaction of the account.
+     */
+    default void transactionUpdated(TransactionStatus previous, TransactionStatus status) {
+    }
+
+    /**
+     * Invoked before a transfer is submitted to the account, which rejects it when {@code false}:
+     * the id has already been given to a transfer, of this account or another one.
+     */
+    default boolean transferClaimed(TransactionId transactionId) {
+        return true;
+    }
+
+    /**
+     * Invoked once a transaction the account is the source of enters it: submitted, or rebuilt
+     * from a snapshot or a journal.
+     */
+    default void transferAdded(InMemoryTransaction transaction) {
+    }
+
+    /**
+     * Invoked once a transaction the account is the source of is compacted out of its history.
+     */
+    default void transferCompacted(InMemoryTransaction transaction) {
+    }
+}
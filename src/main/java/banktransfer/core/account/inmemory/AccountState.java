@@ -0,0 +1,84 @@
+package banktransfer.core.account.inmemory;
+
+import banktransfer.core.Email;
+import banktransfer.core.Money;
+import banktransfer.core.account.AccountId;
+
+import java.util.List;
+
+/**
+ * Point in time copy of an {@link InMemoryAccount}, as stored in a snapshot.
+ * <p>
+ * Only the transactions still expecting a step are kept as is, terminal ones
+ * are folded into the fingerprints of the account idempotency record.
+ */
+public class AccountState {
+
+    private final AccountId accountId;
+    private final Email email;
+    private final Money balance;
+    private final long lastSequence;
+    private final long compactedSequence;
+    private final long compactedCount;
+    private final long[] fingerprints;
+    private final List<InMemoryTransaction> transactions;
+
+    public AccountState(AccountId accountId,
+                        Email email,
+                        Money balance,
+                        long lastSequence,
+                        long compactedSequence,
+                        long compactedCount,
+                        long[] fingerprints,
+                        List<InMemoryTransaction> transactions) {
+        this.accountId = accountId;
+        this.email = email;
+        this.balance = balance;
+        this.lastSequence = lastSequence;
+        this.compactedSequence = compactedSequence;
+        this.compactedCount = compactedCount;
+        this.fingerprints = fingerprints;
+        this.transactions = transactions;
+    }
+
+    public AccountId accountId() {
+        return accountId;
+    }
+
+    public Email email() {
+        return email;
+    }
+
+    public Money balance() {
+        return balance;
+    }
+
+    /**
+     * Most recent sequence allocated by the account.
+     */
+    public long lastSequence() {
+        return lastSequence;
+    }
+
+    public long compactedSequence() {
+        return compactedSequence;
+    }
+
+    public long compactedCount() {
+        return compactedCount;
+    }
+
+    /**
+     * Fingerprints of the terminal transactions, oldest first.
+     */
+    public long[] fingerprints() {
+        return fingerprints;
+    }
+
+    /**
+     * Transactions still expecting a step, ordered by sequence.
+     */
+    public List<InMemoryTransaction> transactions() {
+        return transactions;
+    }
+}
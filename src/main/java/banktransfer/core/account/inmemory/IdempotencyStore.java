@@ -0,0 +1,305 @@
+package banktransfer.core.account.inmemory;
+
+import banktransfer.core.account.TransactionId;
+
+import java.util.Arrays;
+
+/**
+ * Transfer ids submitted to any account, so that a replay is rejected whatever its source, with a
+ * bounded memory. Ids are kept as the 64 bits fingerprints of {@link AccountCheckpoint#fingerprint}, as
+ * the account checkpoints do: a new id is rejected if its fingerprint is the one of a remembered id.
+ * The odds are about {@code remembered / 2^64} for a random id; the fingerprint is not keyed though,
+ * ids crafted to collide are rejected.
+ * <p>
+ * The most recent ids are remembered in a {@link LongHashSet}. Once full, it becomes an aged generation:
+ * its fingerprints sorted in an array, behind a Bloom filter. A filter hit is confirmed by a binary search
+ * of the generation, the filter false positives do not reject anything: it only spares most of those
+ * searches, most ids being new, at the cost of its bits on top of the sorted fingerprints (a quarter more
+ * memory with the default 10 bits per id). Only {@code agedGenerations} generations are kept, older ids
+ * being forgotten: the accounts idempotency records (see {@link AccountCheckpoint}) then remain.
+ * <p>
+ * Ids are spread over independent stripes, each one with its own lock and generations.
+ */
+public class IdempotencyStore {
+
+    public static final int DEFAULT_RECENT_IDS = 1 << 18;
+    public static final int DEFAULT_AGED_GENERATIONS = 4;
+    public static final int DEFAULT_BLOOM_BITS_PER_ID = 10;
+
+    /**
+     * Remembers nothing, only the accounts idempotency records are left.
+     */
+    public static final IdempotencyStore NONE = new IdempotencyStore(0, 0, 0);
+
+    private static final int STRIPES = 64;
+
+    private final Stripe[] stripes;
+
+    public IdempotencyStore() {
+        this(DEFAULT_RECENT_IDS, DEFAULT_AGED_GENERATIONS, DEFAULT_BLOOM_BITS_PER_ID);
+    }
+
+    /**
+     * @param recentIds       ids remembered exactly, {@code 0} remembering nothing: also the size of an aged generation
+     * @param agedGenerations aged generations kept behind their Bloom filter
+     * @param bloomBitsPerId  size of the Bloom filters, the more bits the fewer searches of the aged generations
+     */
+    public IdempotencyStore(int recentIds, int agedGenerations, int bloomBitsPerId) {
+        if (recentIds < 0 || agedGenerations < 0 || bloomBitsPerId < 0)
+            throw new IllegalArgumentException("Sizes must be positive, got: " + recentIds + ", " + agedGenerations + ", " + bloomBitsPerId);
+        if (recentIds == 0) {
+            stripes = null;
+            return;
+        }
+        int idsPerStripe = Math.max(1, recentIds / STRIPES);
+        stripes = new Stripe[STRIPES];
+        for (int i = 0; i < STRIPES; i++)
+            stripes[i] = new Stripe(idsPerStripe, agedGenerations, Math.max(1, bloomBitsPerId));
+    }
+
+    /**
+     * Remember the id of a transfer being submitted.
+     *
+     * @return {@code false} if it was already remembered: the transfer is a replay
+     */
+    public boolean claim(TransactionId transactionId) {
+        if (stripes == null)
+            return true;
+        long fingerprint = AccountCheckpoint.fingerprint(transactionId);
+        return stripe(fingerprint).claim(fingerprint);
+    }
+
+    public boolean contains(TransactionId transactionId) {
+        if (stripes == null)
+            return false;
+        long fingerprint = AccountCheckpoint.fingerprint(transactionId);
+        return stripe(fingerprint).contains(fingerprint);
+    }
+
+    /**
+     * Remember an id read from a snapshot or a journal, whether already known or not.
+     */
+    void remember(long fingerprint) {
+        if (stripes != null)
+            stripe(fingerprint).claim(fingerprint);
+    }
+
+    public long remembered() {
+        long remembered = 0;
+        if (stripes != null) {
+            for (Stripe stripe : stripes)
+                remembered += stripe.remembered();
+        }
+        return remembered;
+    }
+
+    /**
+     * Aged generations looked up because of their Bloom filter, the id being there or not.
+     */
+    public long agedHits() {
+        long hits = 0;
+        if (stripes != null) {
+            for (Stripe stripe : stripes)
+                hits += stripe.agedHits;
+        }
+        return hits;
+    }
+
+    /**
+     * Aged generations looked up because of their Bloom filter while the id was not there.
+     */
+    public long falsePositives() {
+        long falsePositives = 0;
+        if (stripes != null) {
+            for (Stripe stripe : stripes)
+                falsePositives += stripe.falsePositives;
+        }
+        return falsePositives;
+    }
+
+    /**
+     * Aged generations asked about an id, whatever their Bloom filter answered.
+     */
+    public long agedProbes() {
+        long probes = 0;
+        if (stripes != null) {
+            for (Stripe stripe : stripes)
+                probes += stripe.agedProbes;
+        }
+        return probes;
+    }
+
+    /**
+     * Share of the aged generations probes about an id they do not hold that passed the Bloom filter.
+     */
+    public double falsePositiveRate() {
+        long negatives = agedProbes() - (agedHits() - falsePositives());
+        return negatives == 0 ? 0 : (double) falsePositives() / negatives;
+    }
+
+    /**
+     * Upper bound of the memory used once every generation is full.
+     */
+    public static long maxBytes(int recentIds, int agedGenerations, int bloomBitsPerId) {
+        if (recentIds == 0)
+            return 0;
+        int idsPerStripe = Math.max(1, recentIds / STRIPES);
+        // a hash set at most half full, growing by doubling
+        long recent = (Long.highestOneBit(2L * idsPerStripe - 1) << 1) * 8;
+        long aged = 8L * idsPerStripe + Bloom.words(idsPerStripe, Math.max(1, bloomBitsPerId)) * 8L;
+        return STRIPES * (recent + agedGenerations * aged);
+    }
+
+    private Stripe stripe(long fingerprint) {
+        return stripes[(int) ((fingerprint * 0xC2B2AE3D27D4EB4FL) >>> 58)];
+    }
+
+    private static final class Stripe {
+        private final int capacity;
+        private final int bloomBitsPerId;
+        private final AgedGeneration[] aged;
+        // index of the most recent aged generation
+        private int newest = -1;
+        private final LongHashSet recent = new LongHashSet(16);
+        // statistics, written under the stripe lock
+        private volatile long agedProbes;
+        private volatile long agedHits;
+        private volatile long falsePositives;
+
+        Stripe(int capacity, int agedGenerations, int bloomBitsPerId) {
+            this.capacity = capacity;
+            this.bloomBitsPerId = bloomBitsPerId;
+            this.aged = new AgedGeneration[agedGenerations];
+        }
+
+        synchronized boolean claim(long fingerprint) {
+            if (agedContains(fingerprint) || !recent.add(fingerprint))
+                return false;
+            if (recent.size() >= capacity)
+                age();
+            return true;
+        }
+
+        synchronized boolean contains(long fingerprint) {
+            return recent.contains(fingerprint) || agedContains(fingerprint);
+        }
+
+        synchronized long remembered() {
+            long remembered = recent.size();
+            for (AgedGeneration generation : aged) {
+                if (generation != null)
+                    remembered += generation.size();
+            }
+            return remembered;
+        }
+
+        private boolean agedContains(long fingerprint) {
+            // newest first: replays are more likely to be recent
+            for (int i = 0; i < aged.length; i++) {
+                AgedGeneration generation = aged[Math.floorMod(newest - i, aged.length)];
+                if (generation == null)
+                    return false;
+                agedProbes++;
+                if (!generation.mightContain(fingerprint))
+                    continue;
+                agedHits++;
+                if (generation.contains(fingerprint))
+                    return true;
+                falsePositives++;
+            }
+            return false;
+        }
+
+        private void age() {
+            if (aged.length > 0) {
+                long[] fingerprints = new long[recent.size()];
+                int[] size = {0};
+                recent.forEach(fingerprint -> fingerprints[size[0]++] = fingerprint);
+                newest = (newest + 1) % aged.length;
+                aged[newest] = new AgedGeneration(fingerprints, bloomBitsPerId);
+            }
+            recent.clear();
+        }
+    }
+
+    private static final class AgedGeneration {
+        private final long[] fingerprints;
+        private final Bloom bloom;
+
+        AgedGeneration(long[] fingerprints, int bloomBitsPerId) {
+            Arrays.sort(fingerprints);
+            this.fingerprints = fingerprints;
+            this.bloom = new Bloom(fingerprints.length, bloomBitsPerId);
+            for (long fingerprint : fingerprints)
+                bloom.add(fingerprint);
+        }
+
+        int size() {
+            return fingerprints.length;
+        }
+
+        boolean mightContain(long fingerprint) {
+            return bloom.mightContain(fingerprint);
+        }
+
+        boolean contains(long fingerprint) {
+            return Arrays.binarySearch(fingerprints, fingerprint) >= 0;
+        }
+    }
+
+    /**
+     * Bloom filter over fingerprints, the probes being derived from two halves of a remix (double hashing).
+     */
+    static final class Bloom {
+        private final long[] words;
+        private final int mask;
+        private final int probes;
+
+        Bloom(int ids, int bitsPerId) {
+            words = new long[words(ids, bitsPerId)];
+            mask = words.length * 64 - 1;
+            probes = Math.max(1, (int) Math.round(bitsPerId * Math.log(2)));
+        }
+
+        /**
+         * Number of 64 bits words for the given ids, a power of two.
+         */
+        static int words(int ids, int bitsPerId) {
+            long bits = Math.max(64L, (long) ids * bitsPerId);
+            return (int) (Long.highestOneBit(bits - 1) << 1) / 64;
+        }
+
+        void add(long fingerprint) {
+            long h = remix(fingerprint);
+            int h1 = (int) h;
+            int h2 = (int) (h >>> 32) | 1;
+            for (int i = 0; i < probes; i++) {
+                int bit = (h1 + i * h2) & mask;
+                words[bit >>> 6] |= 1L << bit;
+            }
+        }
+
+        boolean mightContain(long fingerprint) {
+            long h = remix(fingerprint);
+            int h1 = (int) h;
+            int h2 = (int) (h >>> 32) | 1;
+            for (int i = 0; i < probes; i++) {
+                int bit = (h1 + i * h2) & mask;
+                if ((words[bit >>> 6] & (1L << bit)) == 0)
+                    return false;
+            }
+            return true;
+        }
+
+        private static long remix(long fingerprint) {
+            // murmur3 finalizer: the low half of a fingerprint is a String#hashCode
+            long h = fingerprint;
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb93fe5bd0aadL;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+}
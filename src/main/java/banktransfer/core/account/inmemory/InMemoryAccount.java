@@ -1,37 +1,113 @@
 package banktransfer.core.account.inmemory;
 
+import banktransfer.core.Email;
 import banktransfer.core.Failure;
+import banktransfer.core.Money;
 import banktransfer.core.Status;
 import banktransfer.core.account.*;
 
-import java.math.BigDecimal;
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
+import static banktransfer.core.Failures.ACK_FAILED;
+import static banktransfer.core.Failures.NOT_SOURCE_ACCOUNT;
+import static banktransfer.core.Failures.TRANSACTION_ALREADY_APPLIED;
+import static banktransfer.core.Failures.TRANSACTION_UNKNOWN;
+
 public class InMemoryAccount implements Account {
     private final AtomicLong transactionSequence;
     private final AccountId accountId;
-    private final AtomicReference<BigDecimal> balance;
+    // in minor units, only updated by the thread applying the transactions
+    private final AtomicLong balance;
+    private final AccountListener listener;
+    private final RetentionPolicy retentionPolicy;
+    private final Journal journal;
+    private final AccountCheckpoint checkpoint;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    // ongoing amounts in minor units, updated along with the transaction statuses
+    private final AtomicLong pendingCount = new AtomicLong();
+    private final AtomicLong pendingDebits = new AtomicLong();
+    private final AtomicLong pendingCredits = new AtomicLong();
+    private final AtomicLong inFlightCount = new AtomicLong();
+    private final AtomicLong inFlightDebits = new AtomicLong();
+    // null unless the account takes its credits as they are delivered, see stripeCredits
+    private volatile StripedCredits stripedCredits;
     private ConcurrentMap<TransactionId, InMemoryTransaction> transactions = new ConcurrentHashMap<>();
+    // same transactions ordered by sequence, and the subset still to be applied
+    private final ConcurrentNavigableMap<Long, InMemoryTransaction> history = new ConcurrentSkipListMap<>();
+    private final ConcurrentNavigableMap<Long, InMemoryTransaction> pending = new ConcurrentSkipListMap<>();
+
+    public InMemoryAccount(AccountId accountId, Money balance, List<InMemoryTransaction> transactions) {
+        this(accountId, balance, transactions, AccountListener.NONE);
+    }
 
-    public InMemoryAccount(AccountId accountId, BigDecimal balance, List<InMemoryTransaction> transactions) {
+    public InMemoryAccount(AccountId accountId,
+                           Money balance,
+                           List<InMemoryTransaction> transactions,
+                           AccountListener listener) {
+        this(accountId, balance, transactions, listener, RetentionPolicy.keepAll());
+    }
+
+    public InMemoryAccount(AccountId accountId,
+                           Money balance,
+                           List<InMemoryTransaction> transactions,
+                           AccountListener listener,
+                           RetentionPolicy retentionPolicy) {
+        this(accountId, balance, transactions, listener, retentionPolicy, Journal.NONE);
+    }
+
+    public InMemoryAccount(AccountId accountId,
+                           Money balance,
+                           List<InMemoryTransaction> transactions,
+                           AccountListener listener,
+                           RetentionPolicy retentionPolicy,
+                           Journal journal) {
         this.accountId = accountId;
-        this.balance = new AtomicReference<>(balance);
-        transactions.forEach(t -> this.transactions.put(t.transactionId(), t));
+        this.balance = new AtomicLong(balance.minorUnits());
+        this.listener = listener;
+        this.retentionPolicy = retentionPolicy;
+        this.journal = journal;
+        this.checkpoint = new AccountCheckpoint(retentionPolicy.idempotencyWindow());
+        transactions.forEach(this::register);
         this.transactionSequence = new AtomicLong(transactions.stream()
                 .mapToLong(Transaction::sequence)
                 .max().orElse(1));
+        if (!pending.isEmpty())
+            schedule();
+    }
+
+    private void register(InMemoryTransaction transaction) {
+        transactions.put(transaction.transactionId(), transaction);
+        index(transaction);
+        tally(transaction, transaction.status(), 1);
+        listener.transactionAdded(transaction.status());
+        if (transaction.isSource(accountId)) {
+            // restored: claimed before, whatever the answer now
+            listener.transferClaimed(transaction.transactionId());
+            listener.transferAdded(transaction);
+        }
+    }
+
+    private void index(InMemoryTransaction transaction) {
+        history.put(transaction.sequence(), transaction);
+        if (transaction.status() == TransactionStatus.Pending)
+            pending.put(transaction.sequence(), transaction);
     }
 
     private Stream<InMemoryTransaction> transactionStream() {
-        return transactions.values()
-                .stream()
-                .sorted(Comparator.comparingLong(Transaction::sequence));
+        return history.values().stream();
     }
 
     @Override
@@ -39,80 +115,429 @@ public class InMemoryAccount implements Account {
         return transactionStream().map(Transaction.class::cast);
     }
 
+    @Override
+    public Stream<Transaction> transactions(long afterSequence, boolean newestFirst) {
+        // views of the history: no copy, a page only costs its own size
+        ConcurrentNavigableMap<Long, InMemoryTransaction> page;
+        if (!newestFirst)
+            page = history.tailMap(afterSequence, false);
+        else if (afterSequence <= 0)
+            page = history.descendingMap();
+        else
+            page = history.headMap(afterSequence, false).descendingMap();
+        return page.values().stream().map(Transaction.class::cast);
+    }
+
+    @Override
+    public Optional<Transaction> findTransaction(TransactionId transactionId) {
+        return Optional.ofNullable(transactions.get(transactionId));
+    }
+
     public AccountId accountId() {
         return accountId;
     }
 
-    public BigDecimal balance() {
-        return balance.get();
+    public Money balance() {
+        // read before the cells: a concurrent fold empties them before updating the balance
+        long balance = this.balance.get();
+        StripedCredits stripedCredits = this.stripedCredits;
+        return Money.ofMinor(stripedCredits == null ? balance : balance + stripedCredits.sum());
+    }
+
+    /**
+     * Credits delivered in batches (see {@link #creditsAll(List, MoneyTransferSteps)}) are from now on
+     * applied, and acknowledged, by the delivering thread into a cell of its own, instead of waiting
+     * for this account's propagation: meant for the accounts receiving from many others at once.
+     * Other credits go on being applied by the propagation.
+     */
+    synchronized void stripeCredits(int stripes) {
+        if (stripedCredits == null)
+            stripedCredits = new StripedCredits(stripes);
+    }
+
+    boolean stripesCredits() {
+        return stripedCredits != null;
+    }
+
+    @Override
+    public AccountSummary summary() {
+        return new AccountSummary(accountId,
+                balance(),
+                transactionSequence.get(),
+                pendingCount.get(),
+                Money.ofMinor(pendingDebits.get()),
+                Money.ofMinor(pendingCredits.get()),
+                inFlightCount.get(),
+                Money.ofMinor(inFlightDebits.get()));
+    }
+
+    /**
+     * Most recent sequence of the transactions compacted out of the history, {@code 0} if none.
+     */
+    public long compactedSequence() {
+        return checkpoint.lastSequence();
+    }
+
+    public long compactedCount() {
+        return checkpoint.count();
     }
 
     @Override
     public Status<Failure, TransactionId> withdraws(MoneyTransfer moneyTransfer) {
         if (!accountId.equals(moneyTransfer.source())) {
-            return Status.failure("not-source-account");
+            return NOT_SOURCE_ACCOUNT.status();
         }
+        Failure unavailable = journal.unavailable();
+        if (unavailable != null)
+            return unavailable.status();
 
         TransactionId transactionId = moneyTransfer.transactionId();
+        if (!listener.transferClaimed(transactionId))
+            return TRANSACTION_ALREADY_APPLIED.status();
         InMemoryTransaction transaction = new InMemoryTransaction(
                 transactionSequence.incrementAndGet(),
                 moneyTransfer,
                 TransactionStatus.Pending);
         InMemoryTransaction transactionConcurrent = transactions.putIfAbsent(transactionId, transaction);
-        if (transactionConcurrent != null) {
-            return Status.failure("transaction-already-applied");
+        if (transactionConcurrent != null || alreadyCompacted(transaction)) {
+            return TRANSACTION_ALREADY_APPLIED.status();
         }
+        submitted(transaction);
         return Status.ok(transactionId);
     }
 
     @Override
     public Status<Failure, TransactionId> credits(MoneyTransfer moneyTransfer) {
+        Failure unavailable = journal.unavailable();
+        if (unavailable != null)
+            return unavailable.status();
         TransactionId transactionId = moneyTransfer.transactionId();
         InMemoryTransaction transaction = new InMemoryTransaction(
                 transactionSequence.incrementAndGet(),
                 moneyTransfer,
                 TransactionStatus.Pending);
         InMemoryTransaction previous = transactions.putIfAbsent(transactionId, transaction);
-        if (previous != null)
-            return Status.failure("transaction-already-applied");
+        if (previous != null || alreadyCompacted(transaction))
+            return TRANSACTION_ALREADY_APPLIED.status();
+        submitted(transaction);
         return Status.ok(transactionId);
     }
 
+    /**
+     * Sequences are reserved and the clock read once for the whole batch, the summary is updated
+     * and the account scheduled once all of them are inserted.
+     * <p>
+     * Credits of an account striping them are applied and acknowledged right away, unless
+     * their cell is full: status and cell are updated together, under the cell lock only.
+     */
+    @Override
+    public void creditsAll(List<MoneyTransfer> moneyTransfers, MoneyTransferSteps moneyTransferService) {
+        // their sources stay debited: the credits are sent again when recovering from the journal
+        if (journal.unavailable() != null)
+            return;
+        StripedCredits stripedCredits = this.stripedCredits;
+        long sequence = transactionSequence.getAndAdd(moneyTransfers.size());
+        long createdAt = System.currentTimeMillis();
+        int added = 0;
+        long amount = 0;
+        for (MoneyTransfer moneyTransfer : moneyTransfers) {
+            InMemoryTransaction transaction = new InMemoryTransaction(++sequence, createdAt, moneyTransfer, TransactionStatus.Pending);
+            if (transactions.putIfAbsent(moneyTransfer.transactionId(), transaction) != null || alreadyCompacted(transaction))
+                continue;
+            history.put(transaction.sequence(), transaction);
+            journal.transactionSubmitted(accountId, transaction.sequence(), createdAt, moneyTransfer);
+            if (stripedCredits != null && stripedCredits.credit(transaction)) {
+                journal.transactionUpdated(accountId, transaction.sequence(), TransactionStatus.Credited, transaction.cancelReason());
+                listener.transactionAdded(TransactionStatus.Pending);
+                listener.transactionUpdated(TransactionStatus.Pending, TransactionStatus.Credited);
+                moneyTransferService.acknowledge(moneyTransfer);
+                continue;
+            }
+            pending.put(transaction.sequence(), transaction);
+            listener.transactionAdded(TransactionStatus.Pending);
+            added++;
+            amount += moneyTransfer.amount().minorUnits();
+        }
+        if (added == 0)
+            return;
+        pendingCount.addAndGet(added);
+        pendingCredits.addAndGet(amount);
+        schedule();
+    }
+
     @Override
     public Status<Failure, TransactionId> acknowledges(MoneyTransfer moneyTransfer) {
+        Failure unavailable = journal.unavailable();
+        if (unavailable != null)
+            return unavailable.status();
         TransactionId transactionId = moneyTransfer.transactionId();
         InMemoryTransaction transaction = transactions.get(transactionId);
-        if (transaction == null)
-            return Status.failure("transaction-unknown");
-        return transaction.acknowledged() ? Status.ok(transactionId) : Status.failure("ack-failed");
+        if (transaction == null) {
+            // only terminal transactions get compacted, thus already acknowledged
+            return checkpoint.contains(transactionId) ? Status.ok(transactionId) : TRANSACTION_UNKNOWN.status();
+        }
+        TransactionStatus previous = transaction.acknowledge();
+        if (previous == TransactionStatus.Acknowledged)
+            return Status.ok(transactionId);
+        if (previous != TransactionStatus.Credited && previous != TransactionStatus.Debited)
+            return ACK_FAILED.status();
+        updated(transaction, previous);
+        return Status.ok(transactionId);
+    }
+
+    /**
+     * Journaled before being visible to the propagation, so that its record always precedes
+     * the ones of its status updates, but after being visible to snapshots (see {@link #state(Email)}).
+     */
+    private void submitted(InMemoryTransaction transaction) {
+        history.put(transaction.sequence(), transaction);
+        journal.transactionSubmitted(accountId, transaction.sequence(), transaction.createdAt(), transaction.moneyTransfer());
+        pending.put(transaction.sequence(), transaction);
+        tally(transaction, TransactionStatus.Pending, 1);
+        listener.transactionAdded(TransactionStatus.Pending);
+        if (transaction.isSource(accountId))
+            listener.transferAdded(transaction);
+        schedule();
+    }
+
+    private void updated(InMemoryTransaction transaction, TransactionStatus previous) {
+        journal.transactionUpdated(accountId, transaction.sequence(), transaction.status(), transaction.cancelReason());
+        tally(transaction, previous, -1);
+        tally(transaction, transaction.status(), 1);
+        listener.transactionUpdated(previous, transaction.status());
+    }
+
+    /**
+     * Only the non terminal statuses contribute to the summary: compaction leaves it unchanged.
+     */
+    private void tally(InMemoryTransaction transaction, TransactionStatus status, int sign) {
+        long amount = sign * transaction.moneyTransfer().amount().minorUnits();
+        if (status == TransactionStatus.Pending) {
+            pendingCount.addAndGet(sign);
+            if (transaction.isSource(accountId))
+                pendingDebits.addAndGet(amount);
+            else
+                pendingCredits.addAndGet(amount);
+        } else if (status == TransactionStatus.Debited) {
+            inFlightCount.addAndGet(sign);
+            inFlightDebits.addAndGet(amount);
+        }
+    }
+
+    /**
+     * Compaction records the transaction in the checkpoint before removing it: once the transaction
+     * has been inserted, it is either the first with its id or the checkpoint already knows the id.
+     */
+    private boolean alreadyCompacted(InMemoryTransaction transaction) {
+        if (!checkpoint.contains(transaction.transactionId()))
+            return false;
+        transactions.remove(transaction.transactionId(), transaction);
+        return true;
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true))
+            listener.pendingTransactionsAvailable(this);
     }
 
     @Override
     public synchronized void applyTransactions(MoneyTransferSteps moneyTransferService) {
-        transactionStream()
-                .filter(t -> t.status() == TransactionStatus.Pending)
-                .forEach(t -> applyTransaction(t, moneyTransferService));
+        // reset first: a transaction added while applying will schedule the account again
+        scheduled.set(false);
+        // the steps would not be journaled: nothing moves until the accounts are recovered
+        if (journal.unavailable() != null)
+            return;
+        StripedCredits stripedCredits = this.stripedCredits;
+        if (stripedCredits != null)
+            balance.set(stripedCredits.fold(balance.get()));
+        // only consider transactions known so far, later ones will be applied on next schedule
+        long upTo = transactionSequence.get();
+        List<InMemoryTransaction> deferred = null;
+        Map.Entry<Long, InMemoryTransaction> entry;
+        while ((entry = pending.firstEntry()) != null && entry.getKey() <= upTo) {
+            pending.remove(entry.getKey());
+            if (!applyTransaction(entry.getValue(), moneyTransferService)) {
+                if (deferred == null)
+                    deferred = new ArrayList<>();
+                deferred.add(entry.getValue());
+            }
+        }
+        if (deferred != null) {
+            deferred.forEach(t -> pending.put(t.sequence(), t));
+            // the debits just applied, or the next fold, may make room for them: retry next round
+            schedule();
+        }
+        if (retentionPolicy.compacts())
+            compact();
     }
 
-    private void applyTransaction(InMemoryTransaction transaction, MoneyTransferSteps moneyTransferService) {
-        BigDecimal balance = balance();
-        BigDecimal amount = transaction.amountFor(accountId());
-        BigDecimal newBalance = balance.add(amount);
+    /**
+     * Fold the expired terminal transactions into the checkpoint. Transactions still waiting
+     * for a step (e.g. an acknowledgement) are kept whatever their age.
+     */
+    private void compact() {
+        long lastSequence = transactionSequence.get();
+        Iterator<InMemoryTransaction> iterator = history.values().iterator();
+        while (iterator.hasNext()) {
+            InMemoryTransaction transaction = iterator.next();
+            if (!retentionPolicy.isExpired(transaction, lastSequence))
+                break;
+            if (!transaction.status().isTerminal())
+                continue;
+            checkpoint.record(transaction);
+            iterator.remove();
+            transactions.remove(transaction.transactionId(), transaction);
+            if (transaction.isSource(accountId))
+                listener.transferCompacted(transaction);
+        }
+    }
+
+    /**
+     * @return {@code false} if the transaction could not be applied yet and should remain pending
+     */
+    private boolean applyTransaction(InMemoryTransaction transaction, MoneyTransferSteps moneyTransferService) {
+        long balance = this.balance.get();
+        long amount = transaction.moneyTransfer().amount().minorUnits();
         if (transaction.isSource(accountId)) {
-            if (newBalance.compareTo(BigDecimal.ZERO) < 0) {
-                transaction.cancel(Transaction.CancelReason.InsufficientFund);
-                return;
+            long newBalance = balance - amount;
+            if (((balance ^ amount) & (balance ^ newBalance)) < 0) {
+                cancel(transaction, Transaction.CancelReason.Overflow);
+                return true;
+            }
+            if (newBalance < 0) {
+                cancel(transaction, Transaction.CancelReason.InsufficientFund);
+                return true;
             }
 
             if (transaction.debited()) {
                 this.balance.set(newBalance);
+                updated(transaction, TransactionStatus.Pending);
                 moneyTransferService.credit(transaction.moneyTransfer());
             }
         } else {
+            long newBalance = balance + amount;
+            if (((balance ^ newBalance) & (amount ^ newBalance)) < 0
+                    || stripedCredits != null && newBalance > stripedCredits.ceiling()) {
+                // the source has already been debited: wait for the balance to allow it
+                return false;
+            }
             if (transaction.credited()) {
                 this.balance.set(newBalance);
+                updated(transaction, TransactionStatus.Pending);
                 moneyTransferService.acknowledge(transaction.moneyTransfer());
             }
         }
+        return true;
+    }
+
+    private void cancel(InMemoryTransaction transaction, Transaction.CancelReason cancelReason) {
+        // only invoked on transactions picked from the pending ones
+        transaction.cancel(cancelReason);
+        updated(transaction, TransactionStatus.Pending);
+    }
+
+    /**
+     * Replay a transaction submission read from the journal.
+     */
+    void restore(long sequence, long createdAt, MoneyTransfer moneyTransfer) {
+        if (history.containsKey(sequence) || checkpoint.contains(moneyTransfer.transactionId()))
+            return;
+        register(new InMemoryTransaction(sequence, createdAt, moneyTransfer, TransactionStatus.Pending));
+        transactionSequence.accumulateAndGet(sequence, Math::max);
+    }
+
+    /**
+     * Replay a status update read from the journal, the balance follows the debit or credit.
+     * Replaying an update already applied is a no-op.
+     */
+    void restore(long sequence, TransactionStatus status, Transaction.CancelReason cancelReason) {
+        InMemoryTransaction transaction = history.get(sequence);
+        if (transaction == null)
+            return;
+        TransactionStatus previous = transaction.restore(status, cancelReason);
+        if (previous != status) {
+            tally(transaction, previous, -1);
+            tally(transaction, status, 1);
+            listener.transactionUpdated(previous, status);
+        }
+        if (previous != TransactionStatus.Pending || status == TransactionStatus.Pending)
+            return;
+        pending.remove(sequence);
+        long amount = transaction.moneyTransfer().amount().minorUnits();
+        if (status == TransactionStatus.Debited)
+            balance.addAndGet(-amount);
+        else if (status == TransactionStatus.Credited)
+            balance.addAndGet(amount);
+    }
+
+    /**
+     * Taken under the account lock, no transaction can be applied meanwhile: the balance is
+     * consistent with the transaction statuses. Transactions submitted or acknowledged
+     * concurrently may be missed, their journal records are however appended after the
+     * copy started: replaying the journal from a position read before the copy restores them.
+     */
+    synchronized AccountState state(Email email) {
+        StripedCredits stripedCredits = this.stripedCredits;
+        return stripedCredits == null ? copyState(email) : stripedCredits.whileLocked(() -> copyState(email));
+    }
+
+    private AccountState copyState(Email email) {
+        LongStream.Builder fingerprints = LongStream.builder();
+        checkpoint.forEach(fingerprints);
+        long compactedSequence = checkpoint.lastSequence();
+        long compactedCount = checkpoint.count();
+        List<InMemoryTransaction> ongoing = new ArrayList<>();
+        for (InMemoryTransaction transaction : history.values()) {
+            TransactionStatus status = transaction.status();
+            if (status.isTerminal()) {
+                fingerprints.add(AccountCheckpoint.fingerprint(transaction.transactionId()));
+                compactedSequence = Math.max(compactedSequence, transaction.sequence());
+                compactedCount++;
+            } else {
+                ongoing.add(new InMemoryTransaction(
+                        transaction.sequence(),
+                        transaction.createdAt(),
+                        transaction.moneyTransfer(),
+                        status,
+                        transaction.cancelReason()));
+            }
+        }
+        return new AccountState(accountId, email, balance(), transactionSequence.get(),
+                compactedSequence, compactedCount, fingerprints.build().toArray(), ongoing);
+    }
+
+    /**
+     * Restore the idempotency record and the sequence counter of a snapshot.
+     */
+    void restore(AccountState state) {
+        for (long fingerprint : state.fingerprints())
+            checkpoint.record(fingerprint, state.compactedSequence());
+        checkpoint.restore(state.compactedSequence(), state.compactedCount());
+        transactionSequence.accumulateAndGet(state.lastSequence(), Math::max);
+    }
+
+    /**
+     * Creation time of the oldest transaction still to be applied, if any.
+     */
+    OptionalLong oldestPendingCreatedAt() {
+        Map.Entry<Long, InMemoryTransaction> entry = pending.firstEntry();
+        return entry == null ? OptionalLong.empty() : OptionalLong.of(entry.getValue().createdAt());
+    }
+
+    @Override
+    public boolean compacted(TransactionId transactionId) {
+        return checkpoint.contains(transactionId);
+    }
+
+    InMemoryTransaction transaction(TransactionId transactionId) {
+        return transactions.get(transactionId);
+    }
+
+    /**
+     * Resume the propagation of the pending transactions once the account is fully restored.
+     */
+    void restored() {
+        if (!pending.isEmpty())
+            schedule();
     }
 }
@@ -2,51 +2,316 @@ package banktransfer.core.account.inmemory;
 
 import banktransfer.core.Email;
 import banktransfer.core.Failure;
+import banktransfer.core.Money;
 import banktransfer.core.Status;
 import banktransfer.core.account.Account;
 import banktransfer.core.account.AccountId;
 import banktransfer.core.account.AccountIdGenerator;
 import banktransfer.core.account.Accounts;
+import banktransfer.core.account.Journal;
 import banktransfer.core.account.NewAccount;
+import banktransfer.core.account.RetentionPolicy;
+import banktransfer.core.account.Transaction;
+import banktransfer.core.account.TransactionId;
+import banktransfer.core.account.TransactionStatus;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+import static banktransfer.core.Failures.ACCOUNT_ID_ALREADY_IN_USE;
+import static banktransfer.core.Failures.EMAIL_ALREADY_IN_USE;
 
 public class InMemoryAccounts implements Accounts {
 
+    public static final int DEFAULT_PARTITIONS = 64;
+
+    // 'accountByEmail' guards email uniqueness, 'accountById' is the primary index;
+    // an account is only published in 'accountById' once it owns its email.
     private final ConcurrentMap<Email, InMemoryAccount> accountByEmail = new ConcurrentHashMap<>();
+    private final ConcurrentMap<AccountId, InMemoryAccount> accountById = new ConcurrentHashMap<>();
+    // source side transaction of each transfer still in an account history, the first submitted
+    // wins when distinct accounts are given the same transaction id
+    private final ConcurrentMap<TransactionId, InMemoryTransaction> transferById = new ConcurrentHashMap<>();
+    // per partition queue of accounts holding pending transactions, each account is queued at most once
+    private final PendingQueue[] pendingQueues;
+    // copied on write: notifying them neither locks nor allocates
+    private volatile IntConsumer[] pendingListeners = new IntConsumer[0];
+    private final TransactionStatistics statistics = new TransactionStatistics();
+    private final AccountListener listener = new AccountListener() {
+        @Override
+        public void pendingTransactionsAvailable(InMemoryAccount account) {
+            schedule(account);
+        }
+
+        @Override
+        public void transactionAdded(TransactionStatus status) {
+            statistics.added(status);
+        }
+
+        @Override
+        public void transactionUpdated(TransactionStatus previous, TransactionStatus status) {
+            statistics.updated(previous, status);
+        }
+
+        @Override
+        public boolean transferClaimed(TransactionId transactionId) {
+            return idempotencyStore.claim(transactionId);
+        }
+
+        @Override
+        public void transferAdded(InMemoryTransaction transaction) {
+            transferById.putIfAbsent(transaction.transactionId(), transaction);
+        }
+
+        @Override
+        public void transferCompacted(InMemoryTransaction transaction) {
+            transferById.remove(transaction.transactionId(), transaction);
+        }
+    };
     private final AccountIdGenerator idGenerator;
+    private final RetentionPolicy retentionPolicy;
+    private final Journal journal;
+    private final IdempotencyStore idempotencyStore;
 
     public InMemoryAccounts(AccountIdGenerator idGenerator) {
+        this(idGenerator, DEFAULT_PARTITIONS);
+    }
+
+    public InMemoryAccounts(AccountIdGenerator idGenerator, int partitions) {
+        this(idGenerator, partitions, RetentionPolicy.keepAll());
+    }
+
+    public InMemoryAccounts(AccountIdGenerator idGenerator, int partitions, RetentionPolicy retentionPolicy) {
+        this(idGenerator, partitions, retentionPolicy, Journal.NONE);
+    }
+
+    public InMemoryAccounts(AccountIdGenerator idGenerator, int partitions, RetentionPolicy retentionPolicy, Journal journal) {
+        this(idGenerator, partitions, retentionPolicy, journal, new IdempotencyStore());
+    }
+
+    public InMemoryAccounts(AccountIdGenerator idGenerator,
+                            int partitions,
+                            RetentionPolicy retentionPolicy,
+                            Journal journal,
+                            IdempotencyStore idempotencyStore) {
+        if (partitions < 1)
+            throw new IllegalArgumentException("At least one partition is required, got: " + partitions);
         this.idGenerator = idGenerator;
+        this.retentionPolicy = retentionPolicy;
+        this.journal = journal;
+        this.idempotencyStore = idempotencyStore;
+        this.pendingQueues = new PendingQueue[partitions];
+        for (int i = 0; i < partitions; i++)
+            pendingQueues[i] = new PendingQueue();
     }
 
     @Override
     public Optional<Account> findById(AccountId accountId) {
-        return accountByEmail.values()
-                .stream()
-                .filter(a -> a.accountId().equals(accountId))
-                .map(Account.class::cast)
-                .findFirst();
+        return Optional.ofNullable(accountById.get(accountId));
+    }
+
+    @Override
+    public Optional<Transaction> findTransfer(TransactionId transactionId) {
+        return Optional.ofNullable(transferById.get(transactionId));
     }
 
     @Override
     public Status<Failure, AccountId> add(NewAccount newAccount) {
+        Failure unavailable = journal.unavailable();
+        if (unavailable != null)
+            return unavailable.status();
         Email email = newAccount.email();
         AccountId accountId = idGenerator.newAccountId();
-        InMemoryAccount account = new InMemoryAccount(accountId, newAccount.initialAmount(), Collections.emptyList());
+        InMemoryAccount account = newAccount(accountId, newAccount.initialAmount());
         InMemoryAccount accountConcurrent = accountByEmail.putIfAbsent(email, account);
         if (accountConcurrent != null) {
-            return Status.failure("email-already-inuse");
+            return EMAIL_ALREADY_IN_USE.status();
         }
+        InMemoryAccount idConcurrent = accountById.putIfAbsent(accountId, account);
+        if (idConcurrent != null) {
+            // generator is not supposed to provide twice the same id, release the email anyway
+            accountByEmail.remove(email, account);
+            return ACCOUNT_ID_ALREADY_IN_USE.status();
+        }
+        journal.accountCreated(accountId, email, newAccount.initialAmount());
         return Status.ok(accountId);
     }
 
+    private InMemoryAccount newAccount(AccountId accountId, Money balance) {
+        return new InMemoryAccount(accountId, balance, Collections.emptyList(), listener, retentionPolicy, journal);
+    }
+
+    /**
+     * Replay an account creation read from the journal.
+     */
+    InMemoryAccount restore(AccountId accountId, Email email, Money balance) {
+        InMemoryAccount account = newAccount(accountId, balance);
+        InMemoryAccount existing = accountById.putIfAbsent(accountId, account);
+        if (existing != null)
+            return existing;
+        accountByEmail.put(email, account);
+        return account;
+    }
+
+    /**
+     * Restore an account from a snapshot. The ids it remembers are remembered globally as well:
+     * the snapshot does not tell the ones of its transfers from the ones of its credits.
+     */
+    public void restore(AccountState state) {
+        InMemoryAccount account = new InMemoryAccount(state.accountId(), state.balance(), state.transactions(), listener, retentionPolicy, journal);
+        account.restore(state);
+        for (long fingerprint : state.fingerprints())
+            idempotencyStore.remember(fingerprint);
+        accountByEmail.put(state.email(), account);
+        accountById.put(state.accountId(), account);
+    }
+
+    /**
+     * Let a hot account, e.g. a merchant, take the credits delivered to it in per core cells,
+     * see {@link InMemoryAccount#stripeCredits(int)}. Not recorded: to be done again once restored.
+     *
+     * @return {@code false} if the account is unknown
+     */
+    public boolean stripeCredits(AccountId accountId) {
+        InMemoryAccount account = accountById.get(accountId);
+        if (account == null)
+            return false;
+        account.stripeCredits(Runtime.getRuntime().availableProcessors());
+        return true;
+    }
+
+    /**
+     * Copy of every account, one at a time: accounts keep being updated meanwhile.
+     */
+    public void forEachState(Consumer<AccountState> consumer) {
+        accountByEmail.forEach((email, account) -> consumer.accept(account.state(email)));
+    }
+
+    InMemoryAccount find(AccountId accountId) {
+        return accountById.get(accountId);
+    }
+
+    Iterable<InMemoryAccount> all() {
+        return accountById.values();
+    }
+
     @Override
     public void forEach(Consumer<Account> consumer) {
-        accountByEmail.values().forEach(consumer);
+        accountById.values().forEach(consumer);
+    }
+
+    public TransactionStatistics statistics() {
+        return statistics;
+    }
+
+    public IdempotencyStore idempotencyStore() {
+        return idempotencyStore;
+    }
+
+    @Override
+    public long pendingTransactions() {
+        return statistics.current(TransactionStatus.Pending);
+    }
+
+    /**
+     * Creation time of the oldest pending transaction among the accounts first in line
+     * of each partition: accounts are queued when they get their first pending transaction,
+     * thus the earliest queued hold the oldest ones.
+     */
+    public OptionalLong oldestPendingCreatedAt() {
+        OptionalLong oldest = OptionalLong.empty();
+        for (PendingQueue pendingQueue : pendingQueues) {
+            InMemoryAccount account = pendingQueue.peek();
+            if (account == null)
+                continue;
+            OptionalLong createdAt = account.oldestPendingCreatedAt();
+            if (createdAt.isPresent() && (!oldest.isPresent() || createdAt.getAsLong() < oldest.getAsLong()))
+                oldest = createdAt;
+        }
+        return oldest;
+    }
+
+    @Override
+    public int partitions() {
+        return pendingQueues.length;
+    }
+
+    @Override
+    public int partitionOf(AccountId accountId) {
+        int h = accountId.hashCode();
+        return ((h ^ (h >>> 16)) & 0x7fffffff) % pendingQueues.length;
+    }
+
+    @Override
+    public void forEachPending(Consumer<Account> consumer) {
+        for (PendingQueue pendingQueue : pendingQueues)
+            pendingQueue.drain(consumer);
+    }
+
+    @Override
+    public void forEachPending(int partition, Consumer<Account> consumer) {
+        pendingQueues[partition].drain(consumer);
+    }
+
+    @Override
+    public int pendingAccounts(int partition) {
+        return pendingQueues[partition].size();
+    }
+
+    @Override
+    public synchronized void addPendingListener(IntConsumer listener) {
+        IntConsumer[] listeners = Arrays.copyOf(pendingListeners, pendingListeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+        pendingListeners = listeners;
+    }
+
+    @Override
+    public synchronized void removePendingListener(IntConsumer listener) {
+        pendingListeners = Arrays.stream(pendingListeners)
+                .filter(l -> l != listener)
+                .toArray(IntConsumer[]::new);
+    }
+
+    private void schedule(InMemoryAccount account) {
+        int partition = partitionOf(account.accountId());
+        pendingQueues[partition].offer(account);
+        for (IntConsumer listener : pendingListeners)
+            listener.accept(partition);
+    }
+
+    private static class PendingQueue {
+        private final ConcurrentLinkedQueue<InMemoryAccount> accounts = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger count = new AtomicInteger();
+
+        void offer(InMemoryAccount account) {
+            count.incrementAndGet();
+            accounts.offer(account);
+        }
+
+        int size() {
+            return count.get();
+        }
+
+        InMemoryAccount peek() {
+            return accounts.peek();
+        }
+
+        void drain(Consumer<Account> consumer) {
+            // only drain what was queued so far, accounts scheduled meanwhile wait for the next round
+            int remaining = count.get();
+            InMemoryAccount account;
+            while (remaining-- > 0 && (account = accounts.poll()) != null) {
+                count.decrementAndGet();
+                consumer.accept(account);
+            }
+        }
     }
 }
@@ -1,17 +1,18 @@
 package banktransfer.core.account.inmemory;
 
+import banktransfer.core.Money;
 import banktransfer.core.account.AccountId;
 import banktransfer.core.account.MoneyTransfer;
 import banktransfer.core.account.Transaction;
 import banktransfer.core.account.TransactionId;
 import banktransfer.core.account.TransactionStatus;
 
-import java.math.BigDecimal;
 import java.util.concurrent.atomic.AtomicReference;
 
 public class InMemoryTransaction implements Transaction {
 
     private final long sequence;
+    private final long createdAt;
     private final MoneyTransfer moneyTransfer;
     private final AtomicReference<TransactionStatus> status;
     private CancelReason cancelReason = CancelReason.None;
@@ -19,13 +20,30 @@ public class InMemoryTransaction implements Transaction {
     public InMemoryTransaction(long sequence,
                                MoneyTransfer moneyTransfer,
                                TransactionStatus transactionStatus) {
+        this(sequence, System.currentTimeMillis(), moneyTransfer, transactionStatus);
+    }
+
+    public InMemoryTransaction(long sequence,
+                               long createdAt,
+                               MoneyTransfer moneyTransfer,
+                               TransactionStatus transactionStatus) {
+        this(sequence, createdAt, moneyTransfer, transactionStatus, CancelReason.None);
+    }
+
+    public InMemoryTransaction(long sequence,
+                               long createdAt,
+                               MoneyTransfer moneyTransfer,
+                               TransactionStatus transactionStatus,
+                               CancelReason cancelReason) {
         this.sequence = sequence;
+        this.createdAt = createdAt;
         this.moneyTransfer = moneyTransfer;
         this.status = new AtomicReference<>(transactionStatus);
+        this.cancelReason = cancelReason;
     }
 
     @Override
-    public BigDecimal amountFor(AccountId accountId) {
+    public Money amountFor(AccountId accountId) {
         return isSource(accountId) ? moneyTransfer.amount().negate() : moneyTransfer.amount();
     }
 
@@ -42,6 +60,11 @@ public class InMemoryTransaction implements Transaction {
         return sequence;
     }
 
+    @Override
+    public long createdAt() {
+        return createdAt;
+    }
+
     public TransactionStatus status() {
         return status.get();
     }
@@ -50,6 +73,10 @@ public class InMemoryTransaction implements Transaction {
         return moneyTransfer.transactionId();
     }
 
+    public CancelReason cancelReason() {
+        return cancelReason;
+    }
+
     void cancel(CancelReason cancelReason) {
         if (status.compareAndSet(TransactionStatus.Pending, TransactionStatus.Cancelled)) {
             this.cancelReason = cancelReason;
@@ -64,12 +91,25 @@ public class InMemoryTransaction implements Transaction {
         return status.compareAndSet(TransactionStatus.Pending, TransactionStatus.Debited);
     }
 
-    boolean acknowledged() {
-        return status.updateAndGet(s -> {
+    /**
+     * @return the status before the acknowledgement, which only happens from {@code Credited} or {@code Debited}
+     */
+    TransactionStatus acknowledge() {
+        return status.getAndUpdate(s -> {
             if (s == TransactionStatus.Credited || s == TransactionStatus.Debited)
                 return TransactionStatus.Acknowledged;
             return s;
-        }) == TransactionStatus.Acknowledged;
+        });
+    }
+
+    /**
+     * Force the status while rebuilding the transaction from a journal.
+     *
+     * @return the status before the update
+     */
+    TransactionStatus restore(TransactionStatus status, CancelReason cancelReason) {
+        this.cancelReason = cancelReason;
+        return this.status.getAndSet(status);
     }
 
     @Override
@@ -0,0 +1,81 @@
+package banktransfer.core.account.inmemory;
+
+import banktransfer.core.Email;
+import banktransfer.core.Failure;
+import banktransfer.core.Money;
+import banktransfer.core.account.AccountId;
+import banktransfer.core.account.Journal;
+import banktransfer.core.account.MoneyTransfer;
+import banktransfer.core.account.MoneyTransferSteps;
+import banktransfer.core.account.Transaction;
+import banktransfer.core.account.TransactionStatus;
+
+import java.util.function.Consumer;
+
+/**
+ * Rebuild {@link InMemoryAccounts} from the records of a {@link Journal}: replayed records
+ * are applied directly on the accounts, without being journaled again.
+ * <p>
+ * Records of accounts that are not known (yet) are ignored, records already applied are no-op.
+ * Once everything is replayed, {@link #complete(MoneyTransferSteps)} resumes the transfers
+ * interrupted between two accounts.
+ */
+public class JournalRecovery implements Journal {
+
+    private final InMemoryAccounts accounts;
+
+    public JournalRecovery(InMemoryAccounts accounts) {
+        this.accounts = accounts;
+    }
+
+    @Override
+    public void accountCreated(AccountId accountId, Email email, Money initialBalance) {
+        accounts.restore(accountId, email, initialBalance);
+    }
+
+    @Override
+    public void transactionSubmitted(AccountId accountId, long sequence, long createdAt, MoneyTransfer moneyTransfer) {
+        InMemoryAccount account = accounts.find(accountId);
+        if (account != null)
+            account.restore(sequence, createdAt, moneyTransfer);
+    }
+
+    @Override
+    public void transactionUpdated(AccountId accountId, long sequence, TransactionStatus status, Transaction.CancelReason cancelReason) {
+        InMemoryAccount account = accounts.find(accountId);
+        if (account != null)
+            account.restore(sequence, status, cancelReason);
+    }
+
+    @Override
+    public void whenDurable(Runnable onDurable, Consumer<Failure> onFailure) {
+        onDurable.run();
+    }
+
+    /**
+     * A source may have been debited without its destination credit, or a destination credited
+     * without the source acknowledgement, having been journaled: replay the missing step.
+     * Pending transactions are scheduled for propagation.
+     */
+    public void complete(MoneyTransferSteps moneyTransferSteps) {
+        for (InMemoryAccount account : accounts.all()) {
+            account.transactions()
+                    .filter(t -> t.status() == TransactionStatus.Debited)
+                    .forEach(t -> resume(t.moneyTransfer(), moneyTransferSteps));
+            account.restored();
+        }
+    }
+
+    private void resume(MoneyTransfer moneyTransfer, MoneyTransferSteps moneyTransferSteps) {
+        InMemoryAccount destination = accounts.find(moneyTransfer.destination());
+        // a destination held elsewhere rejects a credit already applied
+        InMemoryTransaction credit = destination == null ? null : destination.transaction(moneyTransfer.transactionId());
+        if (credit == null && destination != null && destination.compacted(moneyTransfer.transactionId()))
+            // credited then compacted: the destination would reject the credit sent again
+            moneyTransferSteps.acknowledge(moneyTransfer);
+        else if (credit == null)
+            moneyTransferSteps.credit(moneyTransfer);
+        else if (credit.status() == TransactionStatus.Credited)
+            moneyTransferSteps.acknowledge(moneyTransfer);
+    }
+}
@@ -0,0 +1,93 @@
+package banktransfer.core.account.inmemory;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Open addressing set of primitive {@code long}, {@code 0} being reserved as the empty slot marker.
+ * Not thread safe, lookups included: while the table grows it is empty then refilled, and slot writes
+ * are not published to other threads, callers synchronize reads with writes.
+ */
+class LongHashSet {
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] slots;
+    private int size;
+
+    LongHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        this.slots = new long[capacity];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean contains(long value) {
+        checkNotZero(value);
+        long[] slots = this.slots;
+        int mask = slots.length - 1;
+        for (int i = mix(value) & mask; ; i = (i + 1) & mask) {
+            long slot = slots[i];
+            if (slot == value)
+                return true;
+            if (slot == 0)
+                return false;
+        }
+    }
+
+    /**
+     * @return {@code false} when the value was already present
+     */
+    boolean add(long value) {
+        checkNotZero(value);
+        int mask = slots.length - 1;
+        for (int i = mix(value) & mask; ; i = (i + 1) & mask) {
+            long slot = slots[i];
+            if (slot == value)
+                return false;
+            if (slot == 0) {
+                slots[i] = value;
+                if (++size > slots.length * LOAD_FACTOR)
+                    grow();
+                return true;
+            }
+        }
+    }
+
+    void forEach(LongConsumer consumer) {
+        for (long slot : slots) {
+            if (slot != 0)
+                consumer.accept(slot);
+        }
+    }
+
+    void clear() {
+        Arrays.fill(slots, 0L);
+        size = 0;
+    }
+
+    private void grow() {
+        long[] previous = slots;
+        slots = new long[previous.length << 1];
+        int mask = slots.length - 1;
+        for (long value : previous) {
+            if (value == 0)
+                continue;
+            int i = mix(value) & mask;
+            while (slots[i] != 0)
+                i = (i + 1) & mask;
+            slots[i] = value;
+        }
+    }
+
+    private static int mix(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static void checkNotZero(long value) {
+        if (value == 0)
+            throw new IllegalArgumentException("0 is reserved");
+    }
+}
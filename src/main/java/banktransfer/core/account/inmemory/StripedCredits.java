@@ -0,0 +1,116 @@
+package banktransfer.core.account.inmemory;
+
+import java.util.function.Supplier;
+
+/**
+ * Credits of a hot account (e.g. a merchant) applied by the threads delivering them rather than by
+ * the one applying the account transactions: each thread adds to its own cell, the visible balance
+ * being the account balance plus the sum of the cells.
+ * <p>
+ * Cells are folded back into the balance by the thread applying the account transactions, under
+ * the account lock, so that debits are checked against a consistent total. A cell only takes credits
+ * up to a limit set when folding: half the headroom left by the balance is split among the cells, the
+ * other half remaining to the credits applied by the propagation. Credits beyond are left pending.
+ */
+final class StripedCredits {
+
+    private final Cell[] cells;
+    private final int mask;
+    // sum of the cell limits, only accessed under the account lock
+    private long reserved;
+
+    StripedCredits(int stripes) {
+        int size = 1;
+        while (size < stripes)
+            size <<= 1;
+        cells = new Cell[size];
+        for (int i = 0; i < size; i++)
+            cells[i] = new Cell();
+        mask = size - 1;
+    }
+
+    int stripes() {
+        return cells.length;
+    }
+
+    /**
+     * Mark the transaction credited and add its amount to the cell of the current thread.
+     *
+     * @return {@code false} if the cell cannot take it, the transaction being left pending
+     */
+    boolean credit(InMemoryTransaction transaction) {
+        long amount = transaction.moneyTransfer().amount().minorUnits();
+        long h = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        Cell cell = cells[(int) (h >>> 32) & mask];
+        synchronized (cell) {
+            if (amount > cell.limit - cell.value)
+                return false;
+            transaction.credited();
+            cell.value += amount;
+        }
+        return true;
+    }
+
+    /**
+     * Not a snapshot: a credit landing meanwhile may be missed, or a cell folded meanwhile not seen
+     * yet in the balance. Never more than the actual total.
+     */
+    long sum() {
+        long sum = 0;
+        for (Cell cell : cells)
+            sum += cell.value;
+        return sum;
+    }
+
+    /**
+     * Empties the cells into the balance and hands them new limits, under the account lock.
+     * Cells are emptied before the caller updates the balance: a concurrent read may miss
+     * the folded amounts for a while, never count them twice.
+     *
+     * @return the balance plus the folded cells
+     */
+    long fold(long balance) {
+        return whileLocked(() -> {
+            long total = balance;
+            for (Cell cell : cells) {
+                total += cell.value;
+                cell.value = 0;
+            }
+            long limit = (Long.MAX_VALUE - total) / (2L * cells.length);
+            for (Cell cell : cells)
+                cell.limit = limit;
+            reserved = limit * cells.length;
+            return total;
+        });
+    }
+
+    /**
+     * Highest balance the credits applied by the propagation can reach, the cells taking the rest.
+     */
+    long ceiling() {
+        return Long.MAX_VALUE - reserved;
+    }
+
+    /**
+     * Runs the action while no credit can land in any cell: the transaction statuses then agree with the sum.
+     */
+    <T> T whileLocked(Supplier<T> action) {
+        return whileLocked(0, action);
+    }
+
+    private <T> T whileLocked(int index, Supplier<T> action) {
+        if (index == cells.length)
+            return action.get();
+        synchronized (cells[index]) {
+            return whileLocked(index + 1, action);
+        }
+    }
+
+    private static final class Cell {
+        // keeps the cells written by distinct threads off each other's cache line
+        long p1, p2, p3, p4, p5, p6, p7;
+        volatile long value;
+        // zero until the first fold: credits are left to the propagation meanwhile
+        long limit;
+    }
+}
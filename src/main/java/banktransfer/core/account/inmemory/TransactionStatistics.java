@@ -0,0 +1,51 @@
+package banktransfer.core.account.inmemory;
+
+import banktransfer.core.account.TransactionStatus;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Transaction counts per status, maintained on each status change: reading them
+ * never visits the accounts. Counts start over on restart, with the transactions
+ * rebuilt from the snapshot and the journal.
+ */
+public class TransactionStatistics {
+
+    private static final TransactionStatus[] STATUSES = TransactionStatus.values();
+
+    private final LongAdder[] entered = adders();
+    private final LongAdder[] left = adders();
+
+    private static LongAdder[] adders() {
+        LongAdder[] adders = new LongAdder[STATUSES.length];
+        for (int i = 0; i < adders.length; i++)
+            adders[i] = new LongAdder();
+        return adders;
+    }
+
+    void added(TransactionStatus status) {
+        entered[status.ordinal()].increment();
+    }
+
+    void updated(TransactionStatus previous, TransactionStatus status) {
+        left[previous.ordinal()].increment();
+        entered[status.ordinal()].increment();
+    }
+
+    /**
+     * Number of transactions that reached the status.
+     */
+    public long total(TransactionStatus status) {
+        return entered[status.ordinal()].sum();
+    }
+
+    /**
+     * Number of transactions currently in the status. Transactions compacted out of
+     * the history are still counted in their terminal status.
+     */
+    public long current(TransactionStatus status) {
+        // read 'left' first: a concurrent transition may only make the count look higher
+        long out = left[status.ordinal()].sum();
+        return entered[status.ordinal()].sum() - out;
+    }
+}
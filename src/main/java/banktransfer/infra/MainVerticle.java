@@ -1,32 +1,200 @@
 package banktransfer.infra;
 
+import banktransfer.core.Failure;
+import banktransfer.core.Status;
+import banktransfer.core.account.AccountId;
+import banktransfer.core.account.DefaultMoneyTransferService;
+import banktransfer.core.account.RetentionPolicy;
+import banktransfer.core.account.inmemory.IdempotencyStore;
+import banktransfer.core.account.inmemory.InMemoryAccounts;
+import banktransfer.core.account.inmemory.JournalRecovery;
+import banktransfer.infra.accounts.AccountsVerticle;
+import banktransfer.infra.cluster.ClusterLink;
+import banktransfer.infra.cluster.ClusterMoneyTransferService;
+import banktransfer.infra.cluster.ClusterTopology;
+import banktransfer.infra.journal.FileJournal;
+import banktransfer.infra.snapshot.FileSnapshots;
 import banktransfer.infra.web.WebVerticle;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.CompositeFuture;
 import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
 import io.vertx.core.Promise;
 import io.vertx.core.json.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.Arrays;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 import static banktransfer.infra.web.WebVerticle.HTTP_PORT;
 
 public class MainVerticle extends AbstractVerticle {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MainVerticle.class);
 
     public static final String HTTP_INSTANCES = "http.instances";
+    public static final String ACCOUNTS_INSTANCES = "accounts.instances";
+    public static final String RETENTION_KEEP_LAST = "retention.keep-last";
+    public static final String RETENTION_KEEP_FOR_MS = "retention.keep-for-ms";
+    public static final String RETENTION_IDEMPOTENCY_WINDOW = "retention.idempotency-window";
+    public static final String JOURNAL_DIR = "journal.dir";
+    public static final String JOURNAL_BATCH_SIZE = "journal.batch-size";
+    public static final String JOURNAL_FSYNC_INTERVAL_MS = "journal.fsync-interval-ms";
+    public static final String JOURNAL_SEGMENT_SIZE = "journal.segment-size";
+    public static final String SNAPSHOT_PERIOD_MS = SnapshotVerticle.SNAPSHOT_PERIOD_MS;
+    public static final String SNAPSHOT_LOAD_PARALLELISM = "snapshot.load-parallelism";
+    public static final String CLUSTER_NODES = ClusterTopology.CLUSTER_NODES;
+    public static final String CLUSTER_NODE = ClusterTopology.CLUSTER_NODE;
+    public static final String ACCOUNTS_STRIPED = "accounts.striped";
+    public static final String IDEMPOTENCY_RECENT_IDS = "idempotency.recent-ids";
+    public static final String IDEMPOTENCY_AGED_GENERATIONS = "idempotency.aged-generations";
+    public static final String IDEMPOTENCY_BLOOM_BITS_PER_ID = "idempotency.bloom-bits-per-id";
+
+    private FileJournal journal;
+    private FileSnapshots snapshots;
 
     @Override
     public void start(Promise<Void> startPromise) {
         JsonObject config = context.config();
+        Shared.configure(retentionPolicy(config));
+        Shared.configure(idempotencyStore(config));
+        ClusterTopology topology = ClusterTopology.fromConfig(config);
+        if (topology != null)
+            Shared.configure(topology);
 
-        Promise<String> webPromise = Promise.promise();
-        Promise<String> txPromise = Promise.promise();
+        Promise<Void> recovered = Promise.promise();
+        if (config.getString(JOURNAL_DIR) == null)
+            recovered.complete();
+        else
+            vertx.executeBlocking(promise -> recover(config, promise), recovered);
+
+        recovered.future().setHandler(ar -> {
+            if (ar.succeeded()) {
+                stripeCredits(config);
+                deploy(config, startPromise);
+            } else {
+                startPromise.fail(ar.cause());
+            }
+        });
+    }
+
+    /**
+     * Hot accounts are designated by id once restored, the designation itself is not persisted.
+     */
+    private static void stripeCredits(JsonObject config) {
+        String striped = config.getString(ACCOUNTS_STRIPED);
+        if (striped == null)
+            return;
+        InMemoryAccounts accounts = Shared.sharedInMemoryAccounts();
+        for (String id : striped.split(",")) {
+            if (id.trim().isEmpty())
+                continue;
+            Status<Failure, AccountId> accountId = AccountId.accountId(id.trim());
+            if (!accountId.succeeded() || !accounts.stripeCredits(accountId.value()))
+                LOGGER.warn("Credits of account '{}' not striped: unknown account", id.trim());
+        }
+    }
+
+    /**
+     * Rebuild the shared accounts from the latest snapshot and the journal records appended since,
+     * before any verticle can access them.
+     */
+    private void recover(JsonObject config, Promise<Void> promise) {
+        try {
+            Path journalDir = Paths.get(config.getString(JOURNAL_DIR));
+            journal = new FileJournal(
+                    journalDir,
+                    config.getLong(JOURNAL_SEGMENT_SIZE, FileJournal.DEFAULT_SEGMENT_SIZE),
+                    config.getInteger(JOURNAL_BATCH_SIZE, FileJournal.DEFAULT_BATCH_SIZE),
+                    config.getLong(JOURNAL_FSYNC_INTERVAL_MS, FileJournal.DEFAULT_FSYNC_INTERVAL_MS));
+            snapshots = new FileSnapshots(journalDir.resolve("snapshots"));
+            Shared.configure(journal);
+            InMemoryAccounts accounts = Shared.sharedInMemoryAccounts();
+            JournalRecovery recovery = new JournalRecovery(accounts);
+            long start = System.currentTimeMillis();
+            int parallelism = config.getInteger(SNAPSHOT_LOAD_PARALLELISM, Runtime.getRuntime().availableProcessors());
+            long position = snapshots.load(accounts, parallelism);
+            long loaded = System.currentTimeMillis();
+            long records = journal.replay(recovery, position);
+            journal.start();
+            // steps towards other nodes are queued until the cluster link is started
+            ClusterLink link = Shared.sharedClusterLink();
+            recovery.complete(link == null
+                    ? new DefaultMoneyTransferService(accounts)
+                    : new ClusterMoneyTransferService(accounts, link));
+            LOGGER.info("Snapshot loaded in {}ms, {} journal records replayed from position {} in {}ms",
+                    loaded - start, records, position, System.currentTimeMillis() - loaded);
+            promise.complete();
+        } catch (Exception e) {
+            promise.fail(e);
+        }
+    }
+
+    @Override
+    public void stop() throws Exception {
+        if (journal != null)
+            journal.close();
+    }
+
+    private void deploy(JsonObject config, Promise<Void> startPromise) {
+        ClusterLink link = Shared.sharedClusterLink();
+        if (link == null) {
+            deployAccounts(config, startPromise);
+            return;
+        }
+        // other nodes can be reached once the link is started, they may not be up yet though
+        Promise<String> linkPromise = Promise.promise();
+        vertx.deployVerticle(link, linkPromise);
+        linkPromise.future().setHandler(ar -> {
+            if (ar.succeeded())
+                deployAccounts(config, startPromise);
+            else
+                startPromise.fail(ar.cause());
+        });
+    }
 
+    private void deployAccounts(JsonObject config, Promise<Void> startPromise) {
+        // accounts are served before the first request can reach them
+        Promise<String> accountsPromise = Promise.promise();
+        vertx.deployVerticle(AccountsVerticle.class, accountsDeploymentOptions(config), accountsPromise);
+        accountsPromise.future().setHandler(ar -> {
+            if (ar.succeeded())
+                deployServing(config, startPromise);
+            else
+                startPromise.fail(ar.cause());
+        });
+    }
+
+    private void deployServing(JsonObject config, Promise<Void> startPromise) {
+        List<Future> deployments = new ArrayList<>();
 
+        Promise<String> webPromise = Promise.promise();
         vertx.deployVerticle(WebVerticle.class, webDeploymentOptions(config), webPromise);
-        vertx.deployVerticle(TransactionPropagationVerticle.class, transactionPropagationDeploymentOptions(config), txPromise);
+        deployments.add(webPromise.future());
+
+        // one single threaded worker per shard, each one owning its own partitions
+        int shards = config.getInteger(TransactionPropagationVerticle.PROPAGATE_SHARDS, 1);
+        for (int shard = 0; shard < shards; shard++) {
+            Promise<String> txPromise = Promise.promise();
+            vertx.deployVerticle(TransactionPropagationVerticle.class, transactionPropagationDeploymentOptions(config, shard, shards), txPromise);
+            deployments.add(txPromise.future());
+        }
 
-        CompositeFuture.all(Arrays.asList(webPromise.future(), txPromise.future())).setHandler(ar -> {
+        if (journal != null && config.getLong(SNAPSHOT_PERIOD_MS) != null) {
+            Promise<String> snapshotPromise = Promise.promise();
+            vertx.deployVerticle(
+                    new SnapshotVerticle(Shared.sharedInMemoryAccounts(), journal, snapshots),
+                    new DeploymentOptions()
+                            .setWorker(true)
+                            .setConfig(new JsonObject().put(SNAPSHOT_PERIOD_MS, config.getLong(SNAPSHOT_PERIOD_MS))),
+                    snapshotPromise);
+            deployments.add(snapshotPromise.future());
+        }
+
+        // only ready once recovered and every verticle is started
+        CompositeFuture.all(deployments).setHandler(ar -> {
             if (ar.succeeded())
                 startPromise.complete();
             else
@@ -34,18 +202,61 @@ public class MainVerticle extends AbstractVerticle {
         });
     }
 
-    private static DeploymentOptions transactionPropagationDeploymentOptions(JsonObject config) {
-        int propagationPeriodMs = config.getInteger(TransactionPropagationVerticle.PROPAGATE_PERIOD_MS);
+    private static RetentionPolicy retentionPolicy(JsonObject config) {
+        Long keepLast = config.getLong(RETENTION_KEEP_LAST);
+        Long keepForMs = config.getLong(RETENTION_KEEP_FOR_MS);
+        RetentionPolicy retentionPolicy = RetentionPolicy.keepAll();
+        if (keepLast != null)
+            retentionPolicy = RetentionPolicy.keepLast(keepLast);
+        if (keepForMs != null)
+            retentionPolicy = retentionPolicy.atMostFor(keepForMs);
+        return retentionPolicy.rememberLast(config.getInteger(RETENTION_IDEMPOTENCY_WINDOW, 0));
+    }
+
+    private static IdempotencyStore idempotencyStore(JsonObject config) {
+        int recentIds = config.getInteger(IDEMPOTENCY_RECENT_IDS, IdempotencyStore.DEFAULT_RECENT_IDS);
+        int agedGenerations = config.getInteger(IDEMPOTENCY_AGED_GENERATIONS, IdempotencyStore.DEFAULT_AGED_GENERATIONS);
+        int bloomBitsPerId = config.getInteger(IDEMPOTENCY_BLOOM_BITS_PER_ID, IdempotencyStore.DEFAULT_BLOOM_BITS_PER_ID);
+        LOGGER.info("Transfer ids remembered globally: {} recent, {} aged generations, up to {}KB",
+                recentIds, agedGenerations, IdempotencyStore.maxBytes(recentIds, agedGenerations, bloomBitsPerId) / 1024);
+        return new IdempotencyStore(recentIds, agedGenerations, bloomBitsPerId);
+    }
+
+    private static DeploymentOptions transactionPropagationDeploymentOptions(JsonObject config, int shard, int shards) {
         return new DeploymentOptions()
                 .setInstances(1)
-                .setConfig(new JsonObject().put(TransactionPropagationVerticle.PROPAGATE_PERIOD_MS, propagationPeriodMs));
+                .setWorker(true)
+                .setConfig(new JsonObject()
+                        .put(TransactionPropagationVerticle.PROPAGATE_MAX_DELAY_MS, propagateMaxDelayMs(config))
+                        .put(TransactionPropagationVerticle.PROPAGATE_BATCH_ACCOUNTS, config.getInteger(
+                                TransactionPropagationVerticle.PROPAGATE_BATCH_ACCOUNTS, TransactionPropagationVerticle.DEFAULT_BATCH_ACCOUNTS))
+                        .put(TransactionPropagationVerticle.PROPAGATE_SHARD, shard)
+                        .put(TransactionPropagationVerticle.PROPAGATE_SHARDS, shards));
+    }
+
+    @SuppressWarnings("deprecation")
+    private static int propagateMaxDelayMs(JsonObject config) {
+        return config.getInteger(TransactionPropagationVerticle.PROPAGATE_MAX_DELAY_MS, config.getInteger(
+                TransactionPropagationVerticle.PROPAGATE_PERIOD_MS, TransactionPropagationVerticle.DEFAULT_MAX_DELAY_MS));
+    }
+
+    private static DeploymentOptions accountsDeploymentOptions(JsonObject config) {
+        int instances = config.getInteger(ACCOUNTS_INSTANCES, config.getInteger(HTTP_INSTANCES));
+        return new DeploymentOptions().setInstances(instances);
     }
 
     private static DeploymentOptions webDeploymentOptions(JsonObject config) {
         int httpPort = config.getInteger(HTTP_PORT);
         int httpInstances = config.getInteger(HTTP_INSTANCES);
+        JsonObject webConfig = new JsonObject().put(HTTP_PORT, httpPort);
+        Long maxPendingTransactions = config.getLong(WebVerticle.STREAM_MAX_PENDING_TRANSACTIONS);
+        if (maxPendingTransactions != null)
+            webConfig.put(WebVerticle.STREAM_MAX_PENDING_TRANSACTIONS, maxPendingTransactions);
+        ClusterTopology topology = ClusterTopology.fromConfig(config);
+        if (topology != null)
+            topology.putInto(webConfig);
         return new DeploymentOptions()
                 .setInstances(httpInstances)
-                .setConfig(new JsonObject().put(HTTP_PORT, httpPort));
+                .setConfig(webConfig);
     }
 }
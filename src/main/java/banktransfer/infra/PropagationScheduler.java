@@ -0,0 +1,58 @@
+package banktransfer.infra;
+
+/**
+ * When to run the next propagation round of a shard, given its backlog.
+ * <p>
+ * A round costs a visit of every partition of the shard whatever the number of queued accounts:
+ * small backlogs are left to grow into a batch, but never beyond the max delay since the first
+ * of them was queued. The wait shrinks as the backlog grows, down to none once a full batch is
+ * queued, and there is no round at all without backlog.
+ */
+public class PropagationScheduler {
+
+    /**
+     * No round to schedule: nothing is queued.
+     */
+    public static final long IDLE = -1;
+
+    private final long maxDelayNanos;
+    private final int batchAccounts;
+
+    /**
+     * @param maxDelayNanos longest wait for queued work before its round starts
+     * @param batchAccounts number of queued accounts worth a round at once
+     */
+    public PropagationScheduler(long maxDelayNanos, int batchAccounts) {
+        if (maxDelayNanos < 0)
+            throw new IllegalArgumentException("Max delay must not be negative, got: " + maxDelayNanos);
+        if (batchAccounts < 1)
+            throw new IllegalArgumentException("Batch must hold at least one account, got: " + batchAccounts);
+        this.maxDelayNanos = maxDelayNanos;
+        this.batchAccounts = batchAccounts;
+    }
+
+    /**
+     * @param backlogAccounts number of accounts queued
+     * @param waitedNanos     time elapsed since the oldest of them was queued
+     * @return the delay before the next round, {@code 0} for at once, or {@link #IDLE}
+     */
+    public long delayNanos(long backlogAccounts, long waitedNanos) {
+        if (backlogAccounts <= 0)
+            return IDLE;
+        if (backlogAccounts >= batchAccounts)
+            return 0;
+        long remaining = maxDelayNanos - waitedNanos;
+        if (remaining <= 0)
+            return 0;
+        // linear: one account waits for the whole remaining delay, half a batch for half of it
+        return remaining * (batchAccounts - backlogAccounts) / batchAccounts;
+    }
+
+    public long maxDelayNanos() {
+        return maxDelayNanos;
+    }
+
+    public int batchAccounts() {
+        return batchAccounts;
+    }
+}
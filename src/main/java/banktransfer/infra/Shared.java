@@ -1,22 +1,97 @@
 package banktransfer.infra;
 
-import banktransfer.core.account.Accounts;
+import banktransfer.core.account.AccountIdGenerator;
 import banktransfer.core.account.DefaultMoneyTransferService;
+import banktransfer.core.account.Journal;
 import banktransfer.core.account.MoneyTransferService;
+import banktransfer.core.account.RetentionPolicy;
 import banktransfer.core.account.UUIDAccountIdGenerator;
+import banktransfer.core.account.inmemory.IdempotencyStore;
 import banktransfer.core.account.inmemory.InMemoryAccounts;
+import banktransfer.infra.cluster.ClusterLink;
+import banktransfer.infra.cluster.ClusterMoneyTransferService;
+import banktransfer.infra.cluster.ClusterTopology;
+import banktransfer.infra.cluster.OwnedAccountIdGenerator;
+import banktransfer.infra.cluster.RemoteAccounts;
+import banktransfer.infra.metrics.Metrics;
 
 public class Shared {
     //
-    private static Accounts SINGLETON;
+    private static InMemoryAccounts SINGLETON;
+    private static RetentionPolicy RETENTION_POLICY = RetentionPolicy.keepAll();
+    private static Journal JOURNAL = Journal.NONE;
+    private static IdempotencyStore IDEMPOTENCY_STORE;
+    private static Metrics METRICS;
+    private static ClusterTopology TOPOLOGY;
+    private static ClusterLink CLUSTER_LINK;
 
-    public static synchronized Accounts sharedInMemoryAccounts() {
-        if (SINGLETON == null)
-            SINGLETON = new InMemoryAccounts(new UUIDAccountIdGenerator());
+    /**
+     * Only effective when invoked before the shared repository is first accessed.
+     */
+    public static synchronized void configure(RetentionPolicy retentionPolicy) {
+        RETENTION_POLICY = retentionPolicy;
+    }
+
+    /**
+     * Only effective when invoked before the shared repository is first accessed.
+     */
+    public static synchronized void configure(Journal journal) {
+        JOURNAL = journal;
+    }
+
+    /**
+     * Only effective when invoked before the shared repository is first accessed.
+     */
+    public static synchronized void configure(IdempotencyStore idempotencyStore) {
+        IDEMPOTENCY_STORE = idempotencyStore;
+    }
+
+    /**
+     * Only effective when invoked before the shared repository is first accessed.
+     */
+    public static synchronized void configure(ClusterTopology topology) {
+        TOPOLOGY = topology;
+    }
+
+    public static synchronized Journal sharedJournal() {
+        return JOURNAL;
+    }
+
+    public static synchronized InMemoryAccounts sharedInMemoryAccounts() {
+        if (SINGLETON == null) {
+            AccountIdGenerator idGenerator = new UUIDAccountIdGenerator();
+            if (TOPOLOGY != null)
+                idGenerator = new OwnedAccountIdGenerator(idGenerator, TOPOLOGY);
+            SINGLETON = new InMemoryAccounts(idGenerator, InMemoryAccounts.DEFAULT_PARTITIONS, RETENTION_POLICY, JOURNAL,
+                    IDEMPOTENCY_STORE == null ? new IdempotencyStore() : IDEMPOTENCY_STORE);
+        }
         return SINGLETON;
     }
 
+    /**
+     * {@code null} unless a cluster is configured.
+     */
+    public static synchronized ClusterLink sharedClusterLink() {
+        if (CLUSTER_LINK == null && TOPOLOGY != null)
+            CLUSTER_LINK = new ClusterLink(TOPOLOGY, sharedInMemoryAccounts());
+        return CLUSTER_LINK;
+    }
+
+    public static RemoteAccounts sharedRemoteAccounts() {
+        ClusterLink link = sharedClusterLink();
+        return link == null ? RemoteAccounts.NONE : link;
+    }
+
+    public static synchronized Metrics sharedMetrics() {
+        if (METRICS == null)
+            METRICS = new Metrics(sharedInMemoryAccounts());
+        return METRICS;
+    }
+
     public static MoneyTransferService sharedMoneyTransferService() {
+        ClusterLink link = sharedClusterLink();
+        if (link != null)
+            return new ClusterMoneyTransferService(sharedInMemoryAccounts(), link);
         return new DefaultMoneyTransferService(sharedInMemoryAccounts());
     }
 }
@@ -0,0 +1,81 @@
+package banktransfer.infra;
+
+import banktransfer.core.account.inmemory.InMemoryAccounts;
+import banktransfer.infra.journal.FileJournal;
+import banktransfer.infra.snapshot.FileSnapshots;
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Promise;
+import io.vertx.core.json.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Periodically snapshots the accounts, then drops the journal segments the snapshot makes useless.
+ * Meant to be deployed as a worker: accounts are copied one at a time, while being served.
+ */
+public class SnapshotVerticle extends AbstractVerticle {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SnapshotVerticle.class);
+
+    public static final String SNAPSHOT_PERIOD_MS = "snapshot.period-ms";
+
+    private final InMemoryAccounts accounts;
+    private final FileJournal journal;
+    private final FileSnapshots snapshots;
+    private long periodMs;
+
+    public SnapshotVerticle(InMemoryAccounts accounts, FileJournal journal, FileSnapshots snapshots) {
+        this.accounts = accounts;
+        this.journal = journal;
+        this.snapshots = snapshots;
+    }
+
+    @Override
+    public void start(Promise<Void> startPromise) {
+        JsonObject config = context.config();
+        periodMs = config.getLong(SNAPSHOT_PERIOD_MS);
+        scheduleNext();
+        startPromise.complete();
+    }
+
+    private void scheduleNext() {
+        // next snapshot is scheduled once the previous one completed, whatever its duration
+        vertx.setTimer(periodMs, id -> {
+            try {
+                takeSnapshot();
+            } catch (Exception e) {
+                LOGGER.error("Failed to take snapshot", e);
+            }
+            scheduleNext();
+        });
+    }
+
+    public void takeSnapshot() throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        long position = journal.appendedPosition();
+        Path snapshot = snapshots.write(accounts, position);
+        // the copy may hold records not durable yet: only publish it once they are
+        awaitDurable();
+        long size = Files.size(snapshot);
+        snapshots.publish(snapshot);
+        int deleted = journal.deleteSegmentsBefore(position);
+        LOGGER.info("Snapshot at journal position {} taken in {}ms ({} bytes), {} journal segment(s) deleted",
+                position, System.currentTimeMillis() - start, size, deleted);
+    }
+
+    private void awaitDurable() throws IOException, InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        IOException[] failure = new IOException[1];
+        journal.whenDurable(latch::countDown, f -> {
+            failure[0] = new IOException("Journal failure: " + f.error());
+            latch.countDown();
+        });
+        latch.await();
+        if (failure[0] != null)
+            throw failure[0];
+    }
+}
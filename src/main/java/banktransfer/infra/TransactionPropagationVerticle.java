@@ -1,38 +1,164 @@
 package banktransfer.infra;
 
+import banktransfer.core.account.Accounts;
 import banktransfer.core.account.MoneyTransferService;
+import banktransfer.infra.metrics.Metrics;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.Promise;
 import io.vertx.core.json.JsonObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+import static banktransfer.infra.Shared.sharedInMemoryAccounts;
+import static banktransfer.infra.Shared.sharedMetrics;
 import static banktransfer.infra.Shared.sharedMoneyTransferService;
 
+/**
+ * Propagates the transactions of a shard in rounds, see {@link PropagationScheduler}: rounds are
+ * triggered by accounts getting queued, no timer is left running while there is nothing to propagate.
+ */
 public class TransactionPropagationVerticle extends AbstractVerticle {
     private static final Logger LOGGER = LoggerFactory.getLogger(TransactionPropagationVerticle.class);
 
+    public static final String PROPAGATE_MAX_DELAY_MS = "propagate-transactions.max-delay-ms";
+    /**
+     * @deprecated propagation is no longer periodic, only read as {@link #PROPAGATE_MAX_DELAY_MS} when the latter is not set
+     */
+    @Deprecated
     public static final String PROPAGATE_PERIOD_MS = "propagate-transactions.period-ms";
+    public static final String PROPAGATE_BATCH_ACCOUNTS = "propagate-transactions.batch-accounts";
+    public static final String PROPAGATE_SHARDS = "propagate-transactions.shards";
+    public static final String PROPAGATE_SHARD = "propagate-transactions.shard";
 
-    private final MoneyTransferService moneyTransferService;
+    public static final int DEFAULT_MAX_DELAY_MS = 10;
+    public static final int DEFAULT_BATCH_ACCOUNTS = 256;
+
+    private static final long NONE = Long.MIN_VALUE;
 
+    private final Accounts accounts;
+    private final MoneyTransferService moneyTransferService;
+    private final Metrics metrics;
+    // set by whoever takes the shard out of idle, the only one to schedule the next round
+    private final AtomicBoolean idle = new AtomicBoolean(true);
+    // when the first account was queued since the last round started
+    private final AtomicLong pendingSince = new AtomicLong(NONE);
+    // accounts queued since the last round started: a full batch cuts the wait short
+    private final AtomicLong queued = new AtomicLong();
+    private final IntConsumer pendingListener = this::pendingAvailable;
+    private PropagationScheduler scheduler;
+    private int shard;
+    private int shards;
+    private long timerId = -1;
 
     // default ctor is used by vertx
     public TransactionPropagationVerticle() {
-        this(sharedMoneyTransferService());
+        this(sharedInMemoryAccounts(), sharedMoneyTransferService(), sharedMetrics());
+    }
+
+    public TransactionPropagationVerticle(Accounts accounts, MoneyTransferService moneyTransferService) {
+        this(accounts, moneyTransferService, new Metrics());
     }
 
-    public TransactionPropagationVerticle(MoneyTransferService moneyTransferService) {
+    public TransactionPropagationVerticle(Accounts accounts, MoneyTransferService moneyTransferService, Metrics metrics) {
+        this.accounts = accounts;
         this.moneyTransferService = moneyTransferService;
+        this.metrics = metrics;
     }
 
     @Override
     public void start(Promise<Void> startPromise) throws Exception {
         JsonObject config = context.config();
-        vertx.setPeriodic(config.getInteger(PROPAGATE_PERIOD_MS, 1000), (time) -> {
-            LOGGER.info("Propagating transactions...");
-            moneyTransferService.propagateTransactions();
-        });
+        shard = config.getInteger(PROPAGATE_SHARD, 0);
+        shards = config.getInteger(PROPAGATE_SHARDS, 1);
+        scheduler = new PropagationScheduler(
+                TimeUnit.MILLISECONDS.toNanos(config.getInteger(PROPAGATE_MAX_DELAY_MS, DEFAULT_MAX_DELAY_MS)),
+                config.getInteger(PROPAGATE_BATCH_ACCOUNTS, DEFAULT_BATCH_ACCOUNTS));
+        accounts.addPendingListener(pendingListener);
+        // accounts queued before listening, e.g. by a recovery
+        wakeUpIfPending();
         startPromise.complete();
     }
+
+    @Override
+    public void stop() {
+        accounts.removePendingListener(pendingListener);
+    }
+
+    /**
+     * Called by the thread queuing an account: only the first call after idling reaches the context.
+     */
+    private void pendingAvailable(int partition) {
+        if (partition % shards != shard)
+            return;
+        if (pendingSince.get() == NONE)
+            pendingSince.compareAndSet(NONE, System.nanoTime());
+        if (queued.incrementAndGet() == scheduler.batchAccounts())
+            context.runOnContext(v -> propagateEarly());
+        if (idle.get() && idle.compareAndSet(true, false))
+            context.runOnContext(v -> schedule());
+    }
+
+    private void schedule() {
+        long backlog = backlogAccounts();
+        long since = pendingSince.get();
+        long waited = since == NONE ? 0 : System.nanoTime() - since;
+        long delay = scheduler.delayNanos(backlog, waited);
+        if (delay == PropagationScheduler.IDLE) {
+            metrics.propagationIdle();
+            idle.set(true);
+            // an account queued between the backlog count and going idle found the shard busy
+            wakeUpIfPending();
+            return;
+        }
+        metrics.propagationScheduled(delay, backlog);
+        if (delay == 0)
+            context.runOnContext(v -> propagate());
+        else
+            timerId = vertx.setTimer(Math.max(1, TimeUnit.NANOSECONDS.toMillis(delay)), id -> {
+                timerId = -1;
+                propagate();
+            });
+    }
+
+    private void propagateEarly() {
+        if (timerId == -1)
+            return;
+        vertx.cancelTimer(timerId);
+        timerId = -1;
+        propagate();
+    }
+
+    private void propagate() {
+        LOGGER.debug("Propagating transactions of shard {}/{}...", shard, shards);
+        metrics.propagationRound(backlogAccounts());
+        pendingSince.set(NONE);
+        queued.set(0);
+        long start = System.nanoTime();
+        try {
+            moneyTransferService.propagateTransactions(shard, shards);
+            metrics.propagationTick(System.nanoTime() - start);
+        } catch (RuntimeException e) {
+            LOGGER.error("Propagation round of shard {}/{} failed", shard, shards, e);
+        } finally {
+            // the shard is not idle: nobody else would schedule its next round
+            schedule();
+        }
+    }
+
+    private void wakeUpIfPending() {
+        if (backlogAccounts() > 0 && idle.compareAndSet(true, false))
+            context.runOnContext(v -> schedule());
+    }
+
+    private long backlogAccounts() {
+        long backlog = 0;
+        for (int partition = shard; partition < accounts.partitions(); partition += shards)
+            backlog += accounts.pendingAccounts(partition);
+        return backlog;
+    }
 }
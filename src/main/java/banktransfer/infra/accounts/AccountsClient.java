@@ -0,0 +1,63 @@
+package banktransfer.infra.accounts;
+
+import banktransfer.core.Failure;
+import banktransfer.core.Status;
+import banktransfer.core.account.Account;
+import banktransfer.core.account.AccountId;
+import banktransfer.core.account.MoneyTransfer;
+import banktransfer.core.account.NewAccount;
+import banktransfer.core.account.Transaction;
+import banktransfer.core.account.TransactionId;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.eventbus.Message;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Asynchronous access to the accounts owned by the {@link AccountsVerticle}, through the event bus.
+ * Handlers are called back on the caller context; a failed result means the accounts could not be
+ * reached, the outcome of the operation itself being its {@link Status}.
+ */
+public class AccountsClient {
+
+    private final EventBus eventBus;
+
+    public AccountsClient(EventBus eventBus) {
+        this.eventBus = eventBus;
+        LocalCodec.register(eventBus);
+    }
+
+    public void findById(AccountId accountId, Handler<AsyncResult<Optional<Account>>> handler) {
+        request(AccountsVerticle.FIND_BY_ID, accountId, handler);
+    }
+
+    public void add(NewAccount newAccount, Handler<AsyncResult<Status<Failure, AccountId>>> handler) {
+        request(AccountsVerticle.ADD, newAccount, handler);
+    }
+
+    public void findTransfer(TransactionId transactionId, Handler<AsyncResult<Optional<Transaction>>> handler) {
+        request(AccountsVerticle.FIND_TRANSFER, transactionId, handler);
+    }
+
+    public void transfer(MoneyTransfer moneyTransfer, Handler<AsyncResult<Status<Failure, TransactionId>>> handler) {
+        request(AccountsVerticle.TRANSFER, moneyTransfer, handler);
+    }
+
+    /**
+     * @param moneyTransfers must not be modified until the handler is called, it is not copied
+     */
+    public void transferAll(List<MoneyTransfer> moneyTransfers, Handler<AsyncResult<List<Status<Failure, TransactionId>>>> handler) {
+        request(AccountsVerticle.TRANSFER_ALL, moneyTransfers, handler);
+    }
+
+    public void pendingTransactions(Handler<AsyncResult<Long>> handler) {
+        request(AccountsVerticle.PENDING_TRANSACTIONS, null, handler);
+    }
+
+    private <T> void request(String address, Object body, Handler<AsyncResult<T>> handler) {
+        eventBus.<T>request(address, body, LocalCodec.LOCAL, ar -> handler.handle(ar.map(Message::body)));
+    }
+}
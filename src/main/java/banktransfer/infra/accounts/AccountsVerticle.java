@@ -0,0 +1,118 @@
+package banktransfer.infra.accounts;
+
+import banktransfer.core.Failure;
+import banktransfer.core.Status;
+import banktransfer.core.account.AccountId;
+import banktransfer.core.account.Accounts;
+import banktransfer.core.account.MoneyTransfer;
+import banktransfer.core.account.MoneyTransferService;
+import banktransfer.core.account.NewAccount;
+import banktransfer.core.account.TransactionId;
+import banktransfer.infra.cluster.RemoteAccounts;
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Promise;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.eventbus.Message;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static banktransfer.core.Failures.UNKNOWN_DST_ACCOUNT;
+
+import static banktransfer.infra.Shared.sharedInMemoryAccounts;
+import static banktransfer.infra.Shared.sharedMoneyTransferService;
+import static banktransfer.infra.Shared.sharedRemoteAccounts;
+
+/**
+ * Serves the accounts over the local event bus, see {@link AccountsClient}. Bodies and replies are
+ * handed over by reference ({@link LocalCodec}): looking an account up costs no copy of its history.
+ * <p>
+ * Several instances can be deployed, the event bus spreading the requests over them: the accounts
+ * are safe for concurrent use, and the request path takes no lock.
+ */
+public class AccountsVerticle extends AbstractVerticle {
+
+    public static final String FIND_BY_ID = "accounts.find-by-id";
+    public static final String ADD = "accounts.add";
+    public static final String FIND_TRANSFER = "accounts.find-transfer";
+    public static final String TRANSFER = "accounts.transfer";
+    public static final String TRANSFER_ALL = "accounts.transfer-all";
+    public static final String PENDING_TRANSACTIONS = "accounts.pending-transactions";
+
+    private final Accounts accounts;
+    private final MoneyTransferService moneyTransferService;
+    private final RemoteAccounts remoteAccounts;
+
+    // default ctor is used by vertx
+    public AccountsVerticle() {
+        this(sharedInMemoryAccounts(), sharedMoneyTransferService(), sharedRemoteAccounts());
+    }
+
+    public AccountsVerticle(Accounts accounts, MoneyTransferService moneyTransferService) {
+        this(accounts, moneyTransferService, RemoteAccounts.NONE);
+    }
+
+    public AccountsVerticle(Accounts accounts, MoneyTransferService moneyTransferService, RemoteAccounts remoteAccounts) {
+        this.accounts = accounts;
+        this.moneyTransferService = moneyTransferService;
+        this.remoteAccounts = remoteAccounts;
+    }
+
+    @Override
+    public void start(Promise<Void> startPromise) {
+        EventBus eventBus = vertx.eventBus();
+        LocalCodec.register(eventBus);
+        eventBus.<AccountId>localConsumer(FIND_BY_ID, message ->
+                message.reply(accounts.findById(message.body()), LocalCodec.LOCAL));
+        eventBus.<NewAccount>localConsumer(ADD, message ->
+                message.reply(accounts.add(message.body()), LocalCodec.LOCAL));
+        eventBus.<TransactionId>localConsumer(FIND_TRANSFER, message ->
+                message.reply(accounts.findTransfer(message.body()), LocalCodec.LOCAL));
+        eventBus.<MoneyTransfer>localConsumer(TRANSFER, message ->
+                withRemoteDestinations(message, Collections.singletonList(message.body()), unknown ->
+                        message.reply(transfer(message.body(), unknown), LocalCodec.LOCAL)));
+        eventBus.<List<MoneyTransfer>>localConsumer(TRANSFER_ALL, message ->
+                withRemoteDestinations(message, message.body(), unknown ->
+                        message.reply(transferAll(message.body(), unknown), LocalCodec.LOCAL)));
+        eventBus.localConsumer(PENDING_TRANSACTIONS, message ->
+                message.reply(accounts.pendingTransactions(), LocalCodec.LOCAL));
+        startPromise.complete();
+    }
+
+    /**
+     * Hands the remote destinations which do not exist over, or fails the request if they could not be looked up.
+     */
+    private void withRemoteDestinations(Message<?> message, List<MoneyTransfer> moneyTransfers, Consumer<Set<AccountId>> action) {
+        if (remoteAccounts == RemoteAccounts.NONE) {
+            action.accept(Collections.emptySet());
+            return;
+        }
+        List<AccountId> destinations = new ArrayList<>(moneyTransfers.size());
+        for (MoneyTransfer moneyTransfer : moneyTransfers)
+            destinations.add(moneyTransfer.destination());
+        remoteAccounts.unknown(destinations, ar -> {
+            if (ar.succeeded())
+                action.accept(ar.result());
+            else
+                message.fail(-1, ar.cause().getMessage());
+        });
+    }
+
+    private Status<Failure, TransactionId> transfer(MoneyTransfer moneyTransfer, Set<AccountId> unknown) {
+        if (unknown.contains(moneyTransfer.destination()))
+            return UNKNOWN_DST_ACCOUNT.status();
+        return moneyTransferService.transfer(moneyTransfer);
+    }
+
+    private List<Status<Failure, TransactionId>> transferAll(List<MoneyTransfer> moneyTransfers, Set<AccountId> unknown) {
+        if (unknown.isEmpty())
+            return moneyTransferService.transferAll(moneyTransfers);
+        List<Status<Failure, TransactionId>> results = new ArrayList<>(moneyTransfers.size());
+        for (MoneyTransfer moneyTransfer : moneyTransfers)
+            results.add(transfer(moneyTransfer, unknown));
+        return results;
+    }
+}
@@ -0,0 +1,56 @@
+package banktransfer.infra.accounts;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.eventbus.MessageCodec;
+
+/**
+ * Hands the message body over as is: nothing is copied nor serialized, the receiver gets the
+ * sender instance. Only meant for the local event bus, bodies must thus be immutable or thread-safe.
+ */
+public class LocalCodec implements MessageCodec<Object, Object> {
+
+    public static final String NAME = "local";
+
+    /**
+     * Options of every message and reply using this codec, never modified.
+     */
+    public static final DeliveryOptions LOCAL = new DeliveryOptions().setCodecName(NAME);
+
+    /**
+     * Register the codec on the event bus unless it already is.
+     */
+    public static void register(EventBus eventBus) {
+        try {
+            eventBus.registerCodec(new LocalCodec());
+        } catch (IllegalStateException alreadyRegistered) {
+            // shared by every verticle of the vertx instance
+        }
+    }
+
+    @Override
+    public void encodeToWire(Buffer buffer, Object body) {
+        throw new UnsupportedOperationException("Local codec, messages can not leave the JVM");
+    }
+
+    @Override
+    public Object decodeFromWire(int pos, Buffer buffer) {
+        throw new UnsupportedOperationException("Local codec, messages can not leave the JVM");
+    }
+
+    @Override
+    public Object transform(Object body) {
+        return body;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public byte systemCodecID() {
+        return -1;
+    }
+}
@@ -0,0 +1,403 @@
+package banktransfer.infra.cluster;
+
+import banktransfer.core.Failure;
+import banktransfer.core.Status;
+import banktransfer.core.account.Account;
+import banktransfer.core.account.AccountId;
+import banktransfer.core.account.Accounts;
+import banktransfer.core.account.MoneyTransfer;
+import banktransfer.core.account.Transaction;
+import banktransfer.core.account.TransactionId;
+import banktransfer.core.account.TransactionStatus;
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.VertxException;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.NetClient;
+import io.vertx.core.net.NetSocket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static banktransfer.core.Failures.TRANSACTION_ALREADY_APPLIED;
+
+/**
+ * TCP link between the nodes of a cluster, carrying the credit and acknowledge steps of the transfers
+ * crossing nodes along with account lookups, see {@link StepFrames}.
+ * <p>
+ * Each node connects to every other one and sends over its own connection, the connection of a peer
+ * only carrying the lookup replies back. Steps can be sent from any thread: they are queued then
+ * written in batches from the link context.
+ * <p>
+ * A credit is kept until acknowledged and sent again whenever the connection is re-established;
+ * the destination account rejecting duplicates, a credit it already applied is acknowledged again.
+ * A lost acknowledgement is thus recovered by the credit being sent again.
+ * <p>
+ * The steps port is trusted: frames are neither authenticated nor encrypted, and a credit frame
+ * moves money. It is only bound to the host of the local node and only accepts connections from
+ * the addresses of the other nodes, as resolved on start; it is still meant for a private network.
+ */
+public class ClusterLink extends AbstractVerticle implements RemoteAccounts {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClusterLink.class);
+
+    public static final long RECONNECT_DELAY_MS = 200;
+    public static final long LOOKUP_TIMEOUT_MS = 5_000;
+    // remote accounts known to exist, accounts are never removed: the oldest half is forgotten when full
+    private static final int MAX_KNOWN_ACCOUNTS = 1 << 20;
+
+    private final ClusterTopology topology;
+    private final Accounts accounts;
+    private final Peer[] peers;
+    // two generations, the older one dropped once the newer one holds half of the known accounts
+    private volatile Set<AccountId> known = ConcurrentHashMap.newKeySet();
+    private volatile Set<AccountId> formerlyKnown = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<Long, Consumer<Boolean>> lookups = new ConcurrentHashMap<>();
+    private final AtomicLong lookupIds = new AtomicLong();
+    private volatile Context linkContext;
+    private volatile boolean stopped;
+    private NetClient client;
+    // addresses of the other nodes, the only ones allowed to connect
+    private Set<String> peerAddresses;
+
+    public ClusterLink(ClusterTopology topology, Accounts accounts) {
+        this.topology = topology;
+        this.accounts = accounts;
+        this.peers = new Peer[topology.size()];
+        for (ClusterTopology.Node node : topology.nodes()) {
+            if (node != topology.self())
+                peers[node.index()] = new Peer(node);
+        }
+    }
+
+    public ClusterTopology topology() {
+        return topology;
+    }
+
+    @Override
+    public void start(Promise<Void> startPromise) {
+        linkContext = context;
+        stopped = false;
+        client = vertx.createNetClient();
+        vertx.<Set<String>>executeBlocking(resolved -> {
+            try {
+                resolved.complete(resolvePeerAddresses());
+            } catch (UnknownHostException e) {
+                resolved.fail(e);
+            }
+        }, ar -> {
+            if (ar.failed()) {
+                startPromise.fail(ar.cause());
+                return;
+            }
+            peerAddresses = ar.result();
+            listen(startPromise);
+        });
+    }
+
+    private Set<String> resolvePeerAddresses() throws UnknownHostException {
+        Set<String> addresses = new HashSet<>();
+        for (Peer peer : peers) {
+            if (peer == null)
+                continue;
+            for (InetAddress address : InetAddress.getAllByName(peer.node.host()))
+                addresses.add(address.getHostAddress());
+        }
+        return addresses;
+    }
+
+    private void listen(Promise<Void> startPromise) {
+        ClusterTopology.Node self = topology.self();
+        vertx.createNetServer()
+                .connectHandler(this::accept)
+                .listen(self.stepsPort(), self.host(), ar -> {
+                    if (ar.failed()) {
+                        startPromise.fail(ar.cause());
+                        return;
+                    }
+                    LOGGER.info("Cluster node {} listening for steps on {}:{}", self.index(), self.host(), self.stepsPort());
+                    for (Peer peer : peers) {
+                        if (peer != null)
+                            connect(peer);
+                    }
+                    startPromise.complete();
+                });
+    }
+
+    private void accept(NetSocket socket) {
+        String remoteHost = socket.remoteAddress().host();
+        if (!peerAddresses.contains(remoteHost)) {
+            LOGGER.warn("Connection from {}, not a cluster node, refused", remoteHost);
+            socket.close();
+            return;
+        }
+        socket.handler(StepFrames.parser(frame -> received(frame, socket)));
+    }
+
+    @Override
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Whether the connection to every other node is established.
+     */
+    public boolean connected() {
+        for (Peer peer : peers) {
+            if (peer != null && peer.socket == null)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Credit the destination of the transfer, owned by another node.
+     */
+    public void credit(MoneyTransfer moneyTransfer) {
+        Peer peer = peerOf(moneyTransfer.destination());
+        peer.unacknowledged.put(moneyTransfer.transactionId(), moneyTransfer);
+        Buffer frame = Buffer.buffer(64);
+        StepFrames.appendStep(frame, StepFrames.CREDIT, moneyTransfer);
+        peer.send(frame);
+    }
+
+    /**
+     * Acknowledge the credit to the source of the transfer, owned by another node.
+     */
+    public void acknowledge(MoneyTransfer moneyTransfer) {
+        Buffer frame = Buffer.buffer(64);
+        StepFrames.appendStep(frame, StepFrames.ACKNOWLEDGE, moneyTransfer);
+        peerOf(moneyTransfer.source()).send(frame);
+    }
+
+    /**
+     * Remote accounts already seen are not looked up again: accounts are never removed.
+     */
+    @Override
+    public void unknown(Collection<AccountId> accountIds, Handler<AsyncResult<Set<AccountId>>> handler) {
+        Set<AccountId> toLookup = new HashSet<>();
+        for (AccountId accountId : accountIds) {
+            if (!topology.isLocal(accountId) && !known(accountId))
+                toLookup.add(accountId);
+        }
+        if (toLookup.isEmpty()) {
+            handler.handle(Future.succeededFuture(new HashSet<>()));
+            return;
+        }
+        for (AccountId accountId : toLookup) {
+            Peer peer = peerOf(accountId);
+            if (peer.socket == null) {
+                handler.handle(Future.failedFuture(new VertxException("Node unavailable: " + peer.node)));
+                return;
+            }
+        }
+        new Lookup(handler, toLookup.size()).send(toLookup);
+    }
+
+    /**
+     * An account still used is carried over to the newer generation, only those unused for a
+     * whole generation are forgotten.
+     */
+    private boolean known(AccountId accountId) {
+        if (known.contains(accountId))
+            return true;
+        if (!formerlyKnown.contains(accountId))
+            return false;
+        remember(accountId);
+        return true;
+    }
+
+    private synchronized void remember(AccountId accountId) {
+        if (known.size() >= MAX_KNOWN_ACCOUNTS / 2) {
+            formerlyKnown = known;
+            known = ConcurrentHashMap.newKeySet();
+        }
+        known.add(accountId);
+    }
+
+    private Peer peerOf(AccountId accountId) {
+        return peers[topology.ownerOf(accountId).index()];
+    }
+
+    private void connect(Peer peer) {
+        if (stopped)
+            return;
+        client.connect(peer.node.stepsPort(), peer.node.host(), ar -> {
+            if (ar.failed()) {
+                vertx.setTimer(RECONNECT_DELAY_MS, id -> connect(peer));
+                return;
+            }
+            NetSocket socket = ar.result();
+            socket.handler(StepFrames.parser(frame -> received(frame, socket)));
+            socket.closeHandler(v -> {
+                peer.socket = null;
+                LOGGER.warn("Connection to cluster node {} lost", peer.node.index());
+                vertx.setTimer(RECONNECT_DELAY_MS, id -> connect(peer));
+            });
+            peer.connected(socket);
+            LOGGER.info("Connected to cluster node {}", peer.node);
+        });
+    }
+
+    private void received(StepFrames.Frame frame, NetSocket socket) {
+        switch (frame.type()) {
+            case StepFrames.CREDIT:
+                credited(frame.moneyTransfer());
+                break;
+            case StepFrames.ACKNOWLEDGE:
+                acknowledged(frame.moneyTransfer());
+                break;
+            case StepFrames.EXISTS:
+                long requestId = frame.requestId();
+                Buffer reply = Buffer.buffer(16);
+                StepFrames.appendExistsReply(reply, requestId, accounts.findById(frame.accountId()).isPresent());
+                socket.write(reply);
+                break;
+            case StepFrames.EXISTS_REPLY:
+                Consumer<Boolean> lookup = lookups.remove(frame.requestId());
+                if (lookup != null)
+                    lookup.accept(frame.found());
+                break;
+            default:
+                LOGGER.error("Unknown frame type {}, closing the connection", frame.type());
+                socket.close();
+        }
+    }
+
+    private void credited(MoneyTransfer moneyTransfer) {
+        Optional<Account> accountOpt = accounts.findById(moneyTransfer.destination());
+        if (!accountOpt.isPresent()) {
+            LOGGER.error("Credit of an unknown account dropped: {}", moneyTransfer);
+            return;
+        }
+        Account account = accountOpt.get();
+        Status<Failure, TransactionId> creditOr = account.credits(moneyTransfer);
+        if (creditOr.succeeded() || creditOr.error() != TRANSACTION_ALREADY_APPLIED)
+            return;
+        // sent again: its acknowledgement may have been lost
+        Optional<Transaction> creditOpt = account.findTransaction(moneyTransfer.transactionId());
+        boolean credited = creditOpt.isPresent()
+                ? creditOpt.get().status() == TransactionStatus.Credited
+                : account.compacted(moneyTransfer.transactionId());
+        if (credited)
+            acknowledge(moneyTransfer);
+    }
+
+    private void acknowledged(MoneyTransfer moneyTransfer) {
+        peerOf(moneyTransfer.destination()).unacknowledged.remove(moneyTransfer.transactionId());
+        accounts.findById(moneyTransfer.source()).ifPresent(account -> account.acknowledges(moneyTransfer));
+    }
+
+    private class Peer {
+        private final ClusterTopology.Node node;
+        private final Queue<Buffer> outgoing = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean flushScheduled = new AtomicBoolean();
+        private final ConcurrentHashMap<TransactionId, MoneyTransfer> unacknowledged = new ConcurrentHashMap<>();
+        // only written from the link context
+        private volatile NetSocket socket;
+
+        private Peer(ClusterTopology.Node node) {
+            this.node = node;
+        }
+
+        private void send(Buffer frame) {
+            outgoing.add(frame);
+            Context context = linkContext;
+            if (context != null && flushScheduled.compareAndSet(false, true))
+                context.runOnContext(v -> flush());
+        }
+
+        /**
+         * Frames queued while disconnected are dropped: credits are sent again once connected.
+         */
+        private void flush() {
+            flushScheduled.set(false);
+            Buffer batch = Buffer.buffer();
+            Buffer frame;
+            while ((frame = outgoing.poll()) != null)
+                batch.appendBuffer(frame);
+            if (socket != null && batch.length() > 0)
+                socket.write(batch);
+        }
+
+        private void connected(NetSocket socket) {
+            this.socket = socket;
+            Buffer batch = Buffer.buffer();
+            unacknowledged.values().forEach(moneyTransfer -> StepFrames.appendStep(batch, StepFrames.CREDIT, moneyTransfer));
+            if (batch.length() > 0)
+                socket.write(batch);
+            flush();
+        }
+    }
+
+    /**
+     * Looks several accounts up at once, the result being handed over once every owner replied.
+     */
+    private class Lookup {
+        private final Context context;
+        private final Handler<AsyncResult<Set<AccountId>>> handler;
+        private final Set<AccountId> unknown = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger remaining;
+        private final AtomicBoolean done = new AtomicBoolean();
+        private final List<Long> requestIds = new ArrayList<>();
+        private long timerId;
+
+        private Lookup(Handler<AsyncResult<Set<AccountId>>> handler, int count) {
+            this.context = vertx.getOrCreateContext();
+            this.handler = handler;
+            this.remaining = new AtomicInteger(count);
+        }
+
+        private void send(Set<AccountId> accountIds) {
+            timerId = vertx.setTimer(LOOKUP_TIMEOUT_MS, id -> {
+                requestIds.forEach(lookups::remove);
+                complete(Future.failedFuture(new VertxException("Account lookup timed out")));
+            });
+            for (AccountId accountId : accountIds) {
+                long requestId = lookupIds.incrementAndGet();
+                requestIds.add(requestId);
+                lookups.put(requestId, found -> replied(accountId, found));
+                Buffer frame = Buffer.buffer(48);
+                StepFrames.appendExists(frame, requestId, accountId);
+                peerOf(accountId).send(frame);
+            }
+        }
+
+        private void replied(AccountId accountId, boolean found) {
+            if (found) {
+                remember(accountId);
+            } else {
+                unknown.add(accountId);
+            }
+            if (remaining.decrementAndGet() == 0)
+                complete(Future.succeededFuture(unknown));
+        }
+
+        private void complete(AsyncResult<Set<AccountId>> result) {
+            if (!done.compareAndSet(false, true))
+                return;
+            context.runOnContext(v -> {
+                vertx.cancelTimer(timerId);
+                handler.handle(result);
+            });
+        }
+    }
+}
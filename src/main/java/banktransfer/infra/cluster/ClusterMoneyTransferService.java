@@ -0,0 +1,120 @@
+package banktransfer.infra.cluster;
+
+import banktransfer.core.Failure;
+import banktransfer.core.Status;
+import banktransfer.core.account.Account;
+import banktransfer.core.account.AccountId;
+import banktransfer.core.account.Accounts;
+import banktransfer.core.account.DefaultMoneyTransferService;
+import banktransfer.core.account.MoneyTransfer;
+import banktransfer.core.account.MoneyTransferService;
+import banktransfer.core.account.MoneyTransferSteps;
+import banktransfer.core.account.StepInboxes;
+import banktransfer.core.account.TransactionId;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static banktransfer.core.Failures.IDENTICAL_SRC_DST;
+import static banktransfer.core.Failures.UNKNOWN_SRC_ACCOUNT;
+
+/**
+ * Transfers of the local accounts, whose destination may be owned by another node: the credit
+ * and acknowledge steps crossing nodes go through the {@link ClusterLink}, the other ones stay local.
+ * <p>
+ * Only local destinations are checked on submission: remote ones must have been checked beforehand,
+ * see {@link RemoteAccounts#unknown}.
+ */
+public class ClusterMoneyTransferService implements MoneyTransferService, MoneyTransferSteps {
+
+    private final Accounts accounts;
+    private final ClusterTopology topology;
+    private final ClusterLink link;
+    private final DefaultMoneyTransferService local;
+
+    public ClusterMoneyTransferService(Accounts accounts, ClusterLink link) {
+        this.accounts = accounts;
+        this.topology = link.topology();
+        this.link = link;
+        this.local = new DefaultMoneyTransferService(accounts);
+    }
+
+    @Override
+    public Status<Failure, TransactionId> transfer(MoneyTransfer moneyTransfer) {
+        if (topology.isLocal(moneyTransfer.destination()))
+            return local.transfer(moneyTransfer);
+        if (moneyTransfer.source().equals(moneyTransfer.destination()))
+            return IDENTICAL_SRC_DST.status();
+        Optional<Account> srcOpt = accounts.findById(moneyTransfer.source());
+        if (!srcOpt.isPresent())
+            return UNKNOWN_SRC_ACCOUNT.status();
+        return srcOpt.get().withdraws(moneyTransfer);
+    }
+
+    /**
+     * A batch only made of local destinations keeps the grouped lookups of {@link DefaultMoneyTransferService#transferAll(List)}.
+     */
+    @Override
+    public List<Status<Failure, TransactionId>> transferAll(List<MoneyTransfer> moneyTransfers) {
+        for (MoneyTransfer moneyTransfer : moneyTransfers) {
+            if (!topology.isLocal(moneyTransfer.destination())) {
+                List<Status<Failure, TransactionId>> results = new ArrayList<>(moneyTransfers.size());
+                for (MoneyTransfer each : moneyTransfers)
+                    results.add(transfer(each));
+                return results;
+            }
+        }
+        return local.transferAll(moneyTransfers);
+    }
+
+    @Override
+    public void credit(MoneyTransfer moneyTransfer) {
+        if (topology.isLocal(moneyTransfer.destination()))
+            local.credit(moneyTransfer);
+        else
+            link.credit(moneyTransfer);
+    }
+
+    @Override
+    public void acknowledge(MoneyTransfer moneyTransfer) {
+        if (topology.isLocal(moneyTransfer.source()))
+            local.acknowledge(moneyTransfer);
+        else
+            link.acknowledge(moneyTransfer);
+    }
+
+    @Override
+    public void creditAll(AccountId destination, List<MoneyTransfer> moneyTransfers) {
+        // credits applied right away are acknowledged through this service: their source may be remote
+        if (topology.isLocal(destination))
+            accounts.findById(destination).get().creditsAll(moneyTransfers, this);
+        else
+            moneyTransfers.forEach(link::credit);
+    }
+
+    @Override
+    public void acknowledgeAll(AccountId source, List<MoneyTransfer> moneyTransfers) {
+        if (topology.isLocal(source))
+            local.acknowledgeAll(source, moneyTransfers);
+        else
+            moneyTransfers.forEach(link::acknowledge);
+    }
+
+    @Override
+    public void propagateTransactions() {
+        StepInboxes inboxes = new StepInboxes();
+        accounts.forEachPending(account -> account.applyTransactions(inboxes));
+        inboxes.deliver(this);
+    }
+
+    @Override
+    public void propagateTransactions(int shard, int shards) {
+        StepInboxes inboxes = new StepInboxes();
+        int partitions = accounts.partitions();
+        for (int partition = shard; partition < partitions; partition += shards) {
+            accounts.forEachPending(partition, account -> account.applyTransactions(inboxes));
+        }
+        inboxes.deliver(this);
+    }
+}
@@ -0,0 +1,158 @@
+package banktransfer.infra.cluster;
+
+import banktransfer.core.Email;
+import banktransfer.core.account.AccountId;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Nodes sharing the accounts, each one owning the accounts whose id hashes to its index.
+ * <p>
+ * Every node must be given the same list, in the same order: ownership is computed locally,
+ * from {@link String#hashCode()} which is the same on every JVM.
+ */
+public class ClusterTopology {
+
+    /**
+     * Comma separated {@code host:http-port:steps-port} of every node.
+     */
+    public static final String CLUSTER_NODES = "cluster.nodes";
+    /**
+     * Index of the local node in {@link #CLUSTER_NODES}.
+     */
+    public static final String CLUSTER_NODE = "cluster.node";
+
+    public static ClusterTopology parse(String nodes, int self) {
+        List<Node> parsed = new ArrayList<>();
+        for (String node : nodes.split(",")) {
+            String[] parts = node.trim().split(":");
+            if (parts.length != 3)
+                throw new IllegalArgumentException("Expected host:http-port:steps-port, got: " + node);
+            parsed.add(new Node(parsed.size(), parts[0], Integer.parseInt(parts[1]), Integer.parseInt(parts[2])));
+        }
+        if (self < 0 || self >= parsed.size())
+            throw new IllegalArgumentException("Node " + self + " is not one of the " + parsed.size() + " nodes");
+        return new ClusterTopology(parsed, self);
+    }
+
+    /**
+     * @return {@code null} when the configuration defines no cluster
+     */
+    public static ClusterTopology fromConfig(JsonObject config) {
+        String nodes = config.getString(CLUSTER_NODES);
+        if (nodes == null || nodes.isEmpty())
+            return null;
+        return parse(nodes, config.getInteger(CLUSTER_NODE, 0));
+    }
+
+    private final List<Node> nodes;
+    private final Node self;
+
+    private ClusterTopology(List<Node> nodes, int self) {
+        this.nodes = Collections.unmodifiableList(nodes);
+        this.self = nodes.get(self);
+    }
+
+    public List<Node> nodes() {
+        return nodes;
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    public Node self() {
+        return self;
+    }
+
+    public Node node(int index) {
+        return nodes.get(index);
+    }
+
+    public Node ownerOf(AccountId accountId) {
+        return nodes.get(indexOf(accountId.asString()));
+    }
+
+    /**
+     * Accounts are created by the owner of their email, which alone can tell whether it is in use.
+     */
+    public Node ownerOf(Email email) {
+        return nodes.get(indexOf(email.asString()));
+    }
+
+    public boolean isLocal(AccountId accountId) {
+        return indexOf(accountId.asString()) == self.index;
+    }
+
+    public boolean isLocal(Email email) {
+        return indexOf(email.asString()) == self.index;
+    }
+
+    /**
+     * The hash is mixed first: accounts partitions being picked from the low bits of the raw hash,
+     * the accounts of a node still spread over all of them.
+     */
+    private int indexOf(String raw) {
+        int h = raw.hashCode() * 0x9E3779B9;
+        return ((h ^ (h >>> 15)) & 0x7fffffff) % nodes.size();
+    }
+
+    /**
+     * Adds the cluster definition to a verticle configuration.
+     */
+    public JsonObject putInto(JsonObject config) {
+        StringBuilder definition = new StringBuilder();
+        for (Node node : nodes) {
+            if (definition.length() > 0)
+                definition.append(',');
+            definition.append(node.host).append(':').append(node.httpPort).append(':').append(node.stepsPort);
+        }
+        return config.put(CLUSTER_NODES, definition.toString()).put(CLUSTER_NODE, self.index);
+    }
+
+    public static class Node {
+        private final int index;
+        private final String host;
+        private final int httpPort;
+        private final int stepsPort;
+
+        public Node(int index, String host, int httpPort, int stepsPort) {
+            this.index = index;
+            this.host = host;
+            this.httpPort = httpPort;
+            this.stepsPort = stepsPort;
+        }
+
+        public int index() {
+            return index;
+        }
+
+        public String host() {
+            return host;
+        }
+
+        public int httpPort() {
+            return httpPort;
+        }
+
+        /**
+         * Port of the TCP link carrying the transfer steps between nodes, see {@link ClusterLink}.
+         */
+        public int stepsPort() {
+            return stepsPort;
+        }
+
+        @Override
+        public String toString() {
+            return "Node{" +
+                    "index=" + index +
+                    ", host='" + host + '\'' +
+                    ", httpPort=" + httpPort +
+                    ", stepsPort=" + stepsPort +
+                    '}';
+        }
+    }
+}
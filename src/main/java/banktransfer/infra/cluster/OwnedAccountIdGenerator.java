@@ -0,0 +1,28 @@
+package banktransfer.infra.cluster;
+
+import banktransfer.core.account.AccountId;
+import banktransfer.core.account.AccountIdGenerator;
+
+/**
+ * Only hands out ids owned by the local node: an account is created by the owner of its email,
+ * then must stay there. Takes as many attempts as there are nodes on average.
+ */
+public class OwnedAccountIdGenerator implements AccountIdGenerator {
+
+    private final AccountIdGenerator generator;
+    private final ClusterTopology topology;
+
+    public OwnedAccountIdGenerator(AccountIdGenerator generator, ClusterTopology topology) {
+        this.generator = generator;
+        this.topology = topology;
+    }
+
+    @Override
+    public AccountId newAccountId() {
+        AccountId accountId;
+        do {
+            accountId = generator.newAccountId();
+        } while (!topology.isLocal(accountId));
+        return accountId;
+    }
+}
@@ -0,0 +1,28 @@
+package banktransfer.infra.cluster;
+
+import banktransfer.core.account.AccountId;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Accounts owned by other nodes, which can only be looked up asynchronously.
+ */
+public interface RemoteAccounts {
+
+    /**
+     * No other node: every account is local.
+     */
+    RemoteAccounts NONE = (accountIds, handler) -> handler.handle(Future.succeededFuture(Collections.emptySet()));
+
+    /**
+     * Among the given accounts, the ones owned by another node which does not know them;
+     * local accounts are never part of the result. Called back on the caller context,
+     * failed if an owner could not be reached.
+     */
+    void unknown(Collection<AccountId> accountIds, Handler<AsyncResult<Set<AccountId>>> handler);
+}
@@ -0,0 +1,138 @@
+package banktransfer.infra.cluster;
+
+import banktransfer.core.Money;
+import banktransfer.core.account.AccountId;
+import banktransfer.core.account.MoneyTransfer;
+import banktransfer.core.account.TransactionId;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.parsetools.RecordParser;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary frames of the {@link ClusterLink}: a length prefix followed by the frame type and its fields.
+ * <pre>
+ * credit, acknowledge : int length | byte type | transaction id | source | destination | long amount (minor units)
+ * exists              : int length | byte type | long request id | account id
+ * exists reply        : int length | byte type | long request id | byte found
+ * </pre>
+ * Identifiers are written as an unsigned short length followed by their UTF-8 bytes.
+ */
+final class StepFrames {
+
+    static final byte CREDIT = 1;
+    static final byte ACKNOWLEDGE = 2;
+    static final byte EXISTS = 3;
+    static final byte EXISTS_REPLY = 4;
+
+    private StepFrames() {
+    }
+
+    static void appendStep(Buffer buffer, byte type, MoneyTransfer moneyTransfer) {
+        int start = begin(buffer, type);
+        appendString(buffer, moneyTransfer.transactionId().asString());
+        appendString(buffer, moneyTransfer.source().asString());
+        appendString(buffer, moneyTransfer.destination().asString());
+        buffer.appendLong(moneyTransfer.amount().minorUnits());
+        end(buffer, start);
+    }
+
+    static void appendExists(Buffer buffer, long requestId, AccountId accountId) {
+        int start = begin(buffer, EXISTS);
+        buffer.appendLong(requestId);
+        appendString(buffer, accountId.asString());
+        end(buffer, start);
+    }
+
+    static void appendExistsReply(Buffer buffer, long requestId, boolean found) {
+        int start = begin(buffer, EXISTS_REPLY);
+        buffer.appendLong(requestId);
+        buffer.appendByte(found ? (byte) 1 : 0);
+        end(buffer, start);
+    }
+
+    private static int begin(Buffer buffer, byte type) {
+        int start = buffer.length();
+        buffer.appendInt(0);
+        buffer.appendByte(type);
+        return start;
+    }
+
+    private static void end(Buffer buffer, int start) {
+        buffer.setInt(start, buffer.length() - start - 4);
+    }
+
+    private static void appendString(Buffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.appendUnsignedShort(bytes.length);
+        buffer.appendBytes(bytes);
+    }
+
+    /**
+     * Splits a stream of bytes into frames, each one handed over without its length prefix.
+     */
+    static RecordParser parser(Handler<Frame> handler) {
+        RecordParser parser = RecordParser.newFixed(4);
+        parser.handler(new Handler<Buffer>() {
+            private boolean header = true;
+
+            @Override
+            public void handle(Buffer buffer) {
+                if (header) {
+                    parser.fixedSizeMode(buffer.getInt(0));
+                } else {
+                    handler.handle(new Frame(buffer));
+                    parser.fixedSizeMode(4);
+                }
+                header = !header;
+            }
+        });
+        return parser;
+    }
+
+    static class Frame {
+        private final Buffer buffer;
+        private int position = 1;
+
+        private Frame(Buffer buffer) {
+            this.buffer = buffer;
+        }
+
+        byte type() {
+            return buffer.getByte(0);
+        }
+
+        MoneyTransfer moneyTransfer() {
+            TransactionId transactionId = TransactionId.transactionId(readString()).value();
+            AccountId source = AccountId.accountId(readString()).value();
+            AccountId destination = AccountId.accountId(readString()).value();
+            return new MoneyTransfer(transactionId, source, destination, Money.ofMinor(readLong()));
+        }
+
+        long requestId() {
+            return readLong();
+        }
+
+        AccountId accountId() {
+            return AccountId.accountId(readString()).value();
+        }
+
+        boolean found() {
+            return buffer.getByte(position++) != 0;
+        }
+
+        private long readLong() {
+            long value = buffer.getLong(position);
+            position += 8;
+            return value;
+        }
+
+        private String readString() {
+            int length = buffer.getUnsignedShort(position);
+            String value = buffer.getString(position + 2, position + 2 + length, StandardCharsets.UTF_8.name());
+            position += 2 + length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,573 @@
+package banktransfer.infra.journal;
+
+import banktransfer.core.Email;
+import banktransfer.core.Failure;
+import banktransfer.core.Money;
+import banktransfer.core.account.AccountId;
+import banktransfer.core.account.Journal;
+import banktransfer.core.account.MoneyTransfer;
+import banktransfer.core.account.Transaction;
+import banktransfer.core.account.TransactionId;
+import banktransfer.core.account.TransactionStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static banktransfer.core.Failures.JOURNAL_CLOSED;
+import static banktransfer.core.Failures.JOURNAL_UNAVAILABLE;
+
+/**
+ * {@link Journal} appended to segment files of a directory.
+ * <p>
+ * Records are serialized by the appending threads into an in-memory batch, a single flusher
+ * thread writes and fsyncs the whole batch at once (group commit): a batch is flushed as soon
+ * as it holds {@code batchSize} records, or once its oldest record waited {@code fsyncIntervalMs}.
+ * <p>
+ * Each record is framed as {@code [payload length][CRC32 of payload][payload]}; a torn record
+ * at the end of the last segment (crash during a write) is truncated when the journal is replayed.
+ * Segments are named after the journal position of their first record.
+ */
+public class FileJournal implements Journal, AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileJournal.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+    public static final long DEFAULT_FSYNC_INTERVAL_MS = 0;
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    static final byte ACCOUNT_CREATED = 1;
+    static final byte TRANSACTION_SUBMITTED = 2;
+    static final byte TRANSACTION_UPDATED = 3;
+
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 64 * 1024;
+    private static final int INITIAL_BATCH_CAPACITY = 1024 * 1024;
+    private static final TransactionStatus[] STATUSES = TransactionStatus.values();
+    private static final Transaction.CancelReason[] CANCEL_REASONS = Transaction.CancelReason.values();
+
+    private static final ThreadLocal<Encoder> ENCODERS = ThreadLocal.withInitial(Encoder::new);
+
+    private final Path directory;
+    private final long segmentSize;
+    private final int batchSize;
+    private final long fsyncIntervalNanos;
+
+    private final Object lock = new Object();
+    // guarded by lock
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+    private ByteBuffer batch = ByteBuffer.allocateDirect(INITIAL_BATCH_CAPACITY);
+    private ByteBuffer spare = ByteBuffer.allocateDirect(INITIAL_BATCH_CAPACITY);
+    private long appended;
+    private int batchRecords;
+    private long batchStartedAt;
+    private boolean closing;
+    private Failure failure;
+    private boolean replayed;
+    private boolean started;
+    // why records are dropped, null once started and until closed or failed
+    private volatile Failure unavailable = JOURNAL_UNAVAILABLE;
+    // journal position up to which everything has been fsync'ed
+    private volatile long durable;
+
+    // owned by the flusher thread once started
+    private FileChannel segment;
+    private long segmentBase;
+    private Thread flusher;
+
+    public FileJournal(Path directory) {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_BATCH_SIZE, DEFAULT_FSYNC_INTERVAL_MS);
+    }
+
+    public FileJournal(Path directory, long segmentSize, int batchSize, long fsyncIntervalMs) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Batch size must be at least 1, got: " + batchSize);
+        if (segmentSize < MAX_RECORD_SIZE || segmentSize > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Segment size must be between " + MAX_RECORD_SIZE + " and " + Integer.MAX_VALUE + ", got: " + segmentSize);
+        if (fsyncIntervalMs < 0)
+            throw new IllegalArgumentException("Fsync interval must be positive, got: " + fsyncIntervalMs);
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.batchSize = batchSize;
+        this.fsyncIntervalNanos = fsyncIntervalMs * 1_000_000;
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+    // Lifecycle
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * Replay every record of the journal, in order, into {@code target}. Must be invoked
+     * before {@link #start()}.
+     *
+     * @return the number of records replayed
+     */
+    public long replay(Journal target) throws IOException {
+        return replay(target, 0);
+    }
+
+    /**
+     * Replay the records appended from {@code position} (as given by {@link #appendedPosition()}).
+     */
+    public long replay(Journal target, long position) throws IOException {
+        synchronized (lock) {
+            if (started)
+                throw new IllegalStateException("Journal already started");
+            replayed = true;
+        }
+        return load(target, position);
+    }
+
+    private long load(Journal target, long from) throws IOException {
+        Files.createDirectories(directory);
+        List<Path> segments = segments();
+        long records = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            Path path = segments.get(i);
+            boolean last = i == segments.size() - 1;
+            if (!last && segmentBase(segments.get(i + 1)) <= from)
+                continue;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long size = channel.size();
+                ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                data.position((int) Math.min(size, Math.max(0, from - segmentBase(path))));
+                records += replay(data, target);
+                int valid = data.position();
+                if (valid < size) {
+                    if (!last)
+                        throw new IOException("Corrupted journal segment " + path + " at offset " + valid);
+                    LOGGER.warn("Truncating torn journal tail of {} at offset {} (was {} bytes)", path, valid, size);
+                    channel.truncate(valid);
+                    channel.force(true);
+                }
+                segmentBase = segmentBase(path);
+                appended = segmentBase + valid;
+            }
+        }
+        durable = appended;
+        return records;
+    }
+
+    /**
+     * Leaves {@code data} positioned right after the last valid record.
+     */
+    private static long replay(ByteBuffer data, Journal target) {
+        CRC32 crc = new CRC32();
+        long records = 0;
+        while (data.remaining() >= HEADER_SIZE) {
+            int start = data.position();
+            int length = data.getInt();
+            int checksum = data.getInt();
+            ByteBuffer payload = data.slice();
+            if (length <= 0 || length > payload.remaining()) {
+                data.position(start);
+                break;
+            }
+            payload.limit(length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                data.position(start);
+                break;
+            }
+            decode(payload, target);
+            data.position(start + HEADER_SIZE + length);
+            records++;
+        }
+        return records;
+    }
+
+    /**
+     * Appending is only possible once started, after an optional {@link #replay(Journal)}.
+     */
+    public void start() throws IOException {
+        synchronized (lock) {
+            if (started)
+                throw new IllegalStateException("Journal already started");
+            started = true;
+        }
+        if (!replayed)
+            load(Journal.NONE, 0);
+        openSegment(segmentBase, appended - segmentBase);
+        flusher = new Thread(this::flushLoop, "journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        synchronized (lock) {
+            if (!closing && failure == null)
+                unavailable = null;
+        }
+    }
+
+    /**
+     * Flush what remains, then reject any further record.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closing)
+                return;
+            closing = true;
+            if (failure == null)
+                unavailable = JOURNAL_CLOSED;
+            lock.notifyAll();
+        }
+        if (flusher != null) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (segment != null)
+            segment.close();
+    }
+
+    public long durablePosition() {
+        return durable;
+    }
+
+    /**
+     * Position right after the last record appended so far.
+     */
+    public long appendedPosition() {
+        synchronized (lock) {
+            return appended;
+        }
+    }
+
+    /**
+     * Delete the segments only holding records appended before {@code position},
+     * the segment being appended is always kept.
+     *
+     * @return the number of segments deleted
+     */
+    public int deleteSegmentsBefore(long position) throws IOException {
+        List<Path> segments = segments();
+        int deleted = 0;
+        for (int i = 0; i < segments.size() - 1; i++) {
+            if (segmentBase(segments.get(i + 1)) > position)
+                break;
+            Files.delete(segments.get(i));
+            deleted++;
+        }
+        return deleted;
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+    // Append
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    @Override
+    public void accountCreated(AccountId accountId, Email email, Money initialBalance) {
+        Encoder encoder = ENCODERS.get().begin(ACCOUNT_CREATED);
+        encoder.putString(accountId.asString());
+        encoder.putString(email.asString());
+        encoder.buffer.putLong(initialBalance.minorUnits());
+        append(encoder.end());
+    }
+
+    @Override
+    public void transactionSubmitted(AccountId accountId, long sequence, long createdAt, MoneyTransfer moneyTransfer) {
+        Encoder encoder = ENCODERS.get().begin(TRANSACTION_SUBMITTED);
+        encoder.putString(accountId.asString());
+        encoder.buffer.putLong(sequence);
+        encoder.buffer.putLong(createdAt);
+        encoder.putString(moneyTransfer.transactionId().asString());
+        encoder.putString(moneyTransfer.source().asString());
+        encoder.putString(moneyTransfer.destination().asString());
+        encoder.buffer.putLong(moneyTransfer.amount().minorUnits());
+        append(encoder.end());
+    }
+
+    @Override
+    public void transactionUpdated(AccountId accountId, long sequence, TransactionStatus status, Transaction.CancelReason cancelReason) {
+        Encoder encoder = ENCODERS.get().begin(TRANSACTION_UPDATED);
+        encoder.putString(accountId.asString());
+        encoder.buffer.putLong(sequence);
+        encoder.buffer.put((byte) status.ordinal());
+        encoder.buffer.put((byte) cancelReason.ordinal());
+        append(encoder.end());
+    }
+
+    @Override
+    public Failure unavailable() {
+        return unavailable;
+    }
+
+    /**
+     * Callers check {@link #unavailable()} before changing any state: a record is only dropped
+     * when the journal fails or closes meanwhile, its change then never survives a restart.
+     */
+    private void append(ByteBuffer record) {
+        synchronized (lock) {
+            if (!started || failure != null || closing) {
+                LOGGER.error("Record dropped, journal is not accepting records (started: {}, failure: {}, closing: {})", started, failure, closing);
+                return;
+            }
+            if (batch.remaining() < record.remaining())
+                batch = grow(batch, record.remaining());
+            appended += record.remaining();
+            batch.put(record);
+            if (batchRecords++ == 0) {
+                batchStartedAt = System.nanoTime();
+                lock.notifyAll();
+            } else if (batchRecords == batchSize) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int required) {
+        ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(buffer.capacity() * 2, buffer.position() + required));
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+
+    @Override
+    public void whenDurable(Runnable onDurable, Consumer<Failure> onFailure) {
+        Failure failed;
+        synchronized (lock) {
+            failed = failure;
+            if (failed == null && appended > durable) {
+                waiters.add(new Waiter(appended, onDurable, onFailure));
+                return;
+            }
+        }
+        if (failed != null)
+            onFailure.accept(failed);
+        else
+            onDurable.run();
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+    // Group commit
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    private void flushLoop() {
+        while (true) {
+            ByteBuffer toFlush;
+            long upTo;
+            synchronized (lock) {
+                if (!awaitBatch())
+                    break;
+                toFlush = batch;
+                batch = spare;
+                spare = toFlush;
+                upTo = appended;
+                batchRecords = 0;
+            }
+            try {
+                toFlush.flip();
+                write(toFlush);
+                toFlush.clear();
+            } catch (IOException e) {
+                LOGGER.error("Failed to write journal, no record will be durable anymore", e);
+                fail(JOURNAL_UNAVAILABLE);
+                return;
+            }
+            durable = upTo;
+            completeWaiters(upTo);
+        }
+        fail(JOURNAL_CLOSED);
+    }
+
+    /**
+     * @return {@code false} once closed and everything flushed
+     */
+    private boolean awaitBatch() {
+        while (true) {
+            if (batchRecords > 0) {
+                long waited = System.nanoTime() - batchStartedAt;
+                if (closing || batchRecords >= batchSize || waited >= fsyncIntervalNanos)
+                    return true;
+                waitNanos(fsyncIntervalNanos - waited);
+            } else {
+                if (closing)
+                    return false;
+                waitNanos(0);
+            }
+        }
+    }
+
+    private void waitNanos(long nanos) {
+        try {
+            lock.wait(nanos / 1_000_000, (int) (nanos % 1_000_000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            closing = true;
+        }
+    }
+
+    private void write(ByteBuffer data) throws IOException {
+        long offset = segment.position();
+        if (offset > 0 && offset + data.remaining() > segmentSize) {
+            segment.close();
+            openSegment(segmentBase + offset, 0);
+        }
+        while (data.hasRemaining())
+            segment.write(data);
+        segment.force(false);
+    }
+
+    private void openSegment(long base, long offset) throws IOException {
+        Path path = directory.resolve(segmentName(base));
+        boolean created = !Files.exists(path);
+        segment = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        segment.position(offset);
+        segmentBase = base;
+        if (created)
+            syncDirectory();
+    }
+
+    private void syncDirectory() {
+        // make the new segment entry durable, not supported on every platform
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            LOGGER.debug("Unable to sync journal directory {}", directory, e);
+        }
+    }
+
+    private void completeWaiters(long upTo) {
+        List<Waiter> ready = new ArrayList<>();
+        synchronized (lock) {
+            while (!waiters.isEmpty() && waiters.peek().position <= upTo)
+                ready.add(waiters.poll());
+        }
+        for (Waiter waiter : ready)
+            waiter.onDurable.run();
+    }
+
+    private void fail(Failure cause) {
+        List<Waiter> failed;
+        synchronized (lock) {
+            failure = cause;
+            unavailable = cause;
+            failed = new ArrayList<>(waiters);
+            waiters.clear();
+        }
+        for (Waiter waiter : failed)
+            waiter.onFailure.accept(cause);
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+    // Format
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static String segmentName(long base) {
+        return String.format("%020d%s", base, SEGMENT_SUFFIX);
+    }
+
+    private static long segmentBase(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static void decode(ByteBuffer payload, Journal target) {
+        byte type = payload.get();
+        switch (type) {
+            case ACCOUNT_CREATED:
+                target.accountCreated(
+                        accountId(payload),
+                        new Email(getString(payload)),
+                        Money.ofMinor(payload.getLong()));
+                break;
+            case TRANSACTION_SUBMITTED:
+                AccountId accountId = accountId(payload);
+                long sequence = payload.getLong();
+                long createdAt = payload.getLong();
+                TransactionId transactionId = TransactionId.transactionId(getString(payload)).value();
+                AccountId source = accountId(payload);
+                AccountId destination = accountId(payload);
+                Money amount = Money.ofMinor(payload.getLong());
+                target.transactionSubmitted(accountId, sequence, createdAt,
+                        new MoneyTransfer(transactionId, source, destination, amount));
+                break;
+            case TRANSACTION_UPDATED:
+                target.transactionUpdated(
+                        accountId(payload),
+                        payload.getLong(),
+                        STATUSES[payload.get()],
+                        CANCEL_REASONS[payload.get()]);
+                break;
+            default:
+                throw new IllegalStateException("Unknown journal record type: " + type);
+        }
+    }
+
+    private static AccountId accountId(ByteBuffer payload) {
+        return AccountId.accountId(getString(payload)).value();
+    }
+
+    private static String getString(ByteBuffer payload) {
+        int length = payload.getShort() & 0xffff;
+        byte[] bytes = new byte[length];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Per thread scratch buffer, records are framed and checksummed outside of the journal lock.
+     */
+    private static class Encoder {
+        private final ByteBuffer buffer = ByteBuffer.allocate(MAX_RECORD_SIZE);
+        private final CRC32 crc = new CRC32();
+
+        Encoder begin(byte type) {
+            buffer.clear();
+            buffer.position(HEADER_SIZE);
+            buffer.put(type);
+            return this;
+        }
+
+        void putString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            buffer.putShort((short) bytes.length);
+            buffer.put(bytes);
+        }
+
+        ByteBuffer end() {
+            int length = buffer.position() - HEADER_SIZE;
+            crc.reset();
+            crc.update(buffer.array(), HEADER_SIZE, length);
+            buffer.putInt(0, length);
+            buffer.putInt(4, (int) crc.getValue());
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    private static class Waiter {
+        private final long position;
+        private final Runnable onDurable;
+        private final Consumer<Failure> onFailure;
+
+        private Waiter(long position, Runnable onDurable, Consumer<Failure> onFailure) {
+            this.position = position;
+            this.onDurable = onDurable;
+            this.onFailure = onFailure;
+        }
+    }
+}
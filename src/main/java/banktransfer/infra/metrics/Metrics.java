@@ -0,0 +1,192 @@
+package banktransfer.infra.metrics;
+
+import banktransfer.core.Failure;
+import banktransfer.core.account.TransactionStatus;
+import banktransfer.core.account.inmemory.IdempotencyStore;
+import banktransfer.core.account.inmemory.InMemoryAccounts;
+import banktransfer.core.account.inmemory.TransactionStatistics;
+
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Operational metrics, exposed in Prometheus text format by {@link #scrape()}.
+ * <p>
+ * Recording is lock-free and does not allocate once a failure code has been seen,
+ * it can thus stay on in the request and propagation paths. Transaction gauges are
+ * read from the accounts statistics at scrape time only.
+ */
+public class Metrics {
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final LatencyHistogram transfers = new LatencyHistogram();
+    private final LatencyHistogram batchTransfers = new LatencyHistogram();
+    private final LatencyHistogram accountCreations = new LatencyHistogram();
+    private final LatencyHistogram accountLookups = new LatencyHistogram();
+    private final LatencyHistogram accountSummaries = new LatencyHistogram();
+    private final LatencyHistogram transferLookups = new LatencyHistogram();
+    private final LatencyHistogram propagationTicks = new LatencyHistogram();
+    private final AtomicLong lastPropagationTickNanos = new AtomicLong();
+    private final LatencyHistogram propagationDelays = new LatencyHistogram();
+    private final LongAdder propagationImmediate = new LongAdder();
+    private final LongAdder propagationDelayed = new LongAdder();
+    private final LongAdder propagationIdle = new LongAdder();
+    private final LongAdder propagationRoundAccounts = new LongAdder();
+    private final AtomicLong propagationBacklog = new AtomicLong();
+    private final ConcurrentMap<String, LongAdder> failures = new ConcurrentHashMap<>();
+    private final InMemoryAccounts accounts;
+
+    /**
+     * Without transaction gauges.
+     */
+    public Metrics() {
+        this(null);
+    }
+
+    public Metrics(InMemoryAccounts accounts) {
+        this.accounts = accounts;
+    }
+
+    public LatencyHistogram transfers() {
+        return transfers;
+    }
+
+    public LatencyHistogram batchTransfers() {
+        return batchTransfers;
+    }
+
+    public LatencyHistogram accountCreations() {
+        return accountCreations;
+    }
+
+    public LatencyHistogram accountLookups() {
+        return accountLookups;
+    }
+
+    public LatencyHistogram accountSummaries() {
+        return accountSummaries;
+    }
+
+    public LatencyHistogram transferLookups() {
+        return transferLookups;
+    }
+
+    public void propagationTick(long nanos) {
+        propagationTicks.record(nanos);
+        lastPropagationTickNanos.set(nanos);
+    }
+
+    /**
+     * A propagation round was scheduled to start after the given delay, {@code 0} meaning at once.
+     */
+    public void propagationScheduled(long delayNanos, long backlogAccounts) {
+        if (delayNanos == 0)
+            propagationImmediate.increment();
+        else
+            propagationDelayed.increment();
+        propagationDelays.record(delayNanos);
+        propagationBacklog.set(backlogAccounts);
+    }
+
+    /**
+     * The propagation went idle, until accounts get queued.
+     */
+    public void propagationIdle() {
+        propagationIdle.increment();
+        propagationBacklog.set(0);
+    }
+
+    /**
+     * A propagation round started with the given number of queued accounts.
+     */
+    public void propagationRound(long accounts) {
+        propagationRoundAccounts.add(accounts);
+    }
+
+    public void failed(Failure failure) {
+        failed(failure.error());
+    }
+
+    public void failed(String code) {
+        LongAdder count = failures.get(code);
+        if (count == null)
+            count = failures.computeIfAbsent(code, c -> new LongAdder());
+        count.increment();
+    }
+
+    public String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+
+        header(out, "banktransfer_http_request_duration_seconds", "histogram", "HTTP request latency, until the response is written.");
+        transfers.write(out, "banktransfer_http_request_duration_seconds", "method=\"POST\",route=\"/transfer\"");
+        batchTransfers.write(out, "banktransfer_http_request_duration_seconds", "method=\"POST\",route=\"/transfers\"");
+        accountCreations.write(out, "banktransfer_http_request_duration_seconds", "method=\"POST\",route=\"/account\"");
+        accountLookups.write(out, "banktransfer_http_request_duration_seconds", "method=\"GET\",route=\"/account/:accountId\"");
+        accountSummaries.write(out, "banktransfer_http_request_duration_seconds", "method=\"GET\",route=\"/account/:accountId/summary\"");
+        transferLookups.write(out, "banktransfer_http_request_duration_seconds", "method=\"GET\",route=\"/transfer/:transactionId\"");
+
+        header(out, "banktransfer_propagation_tick_duration_seconds", "histogram", "Duration of the propagation ticks.");
+        propagationTicks.write(out, "banktransfer_propagation_tick_duration_seconds", "");
+        header(out, "banktransfer_propagation_last_tick_duration_seconds", "gauge", "Duration of the last propagation tick.");
+        out.append("banktransfer_propagation_last_tick_duration_seconds ")
+                .append(lastPropagationTickNanos.get() / NANOS_PER_SECOND).append('\n');
+        header(out, "banktransfer_propagation_decisions_total", "counter", "Decisions of the propagation scheduler: round at once, delayed round, or idle.");
+        out.append("banktransfer_propagation_decisions_total{decision=\"immediate\"} ").append(propagationImmediate.sum()).append('\n');
+        out.append("banktransfer_propagation_decisions_total{decision=\"delayed\"} ").append(propagationDelayed.sum()).append('\n');
+        out.append("banktransfer_propagation_decisions_total{decision=\"idle\"} ").append(propagationIdle.sum()).append('\n');
+        header(out, "banktransfer_propagation_delay_seconds", "histogram", "Delay chosen before the propagation rounds.");
+        propagationDelays.write(out, "banktransfer_propagation_delay_seconds", "");
+        header(out, "banktransfer_propagation_round_accounts_total", "counter", "Accounts queued when the propagation rounds started, over the tick count: the mean batch.");
+        out.append("banktransfer_propagation_round_accounts_total ").append(propagationRoundAccounts.sum()).append('\n');
+        header(out, "banktransfer_propagation_backlog_accounts", "gauge", "Queued accounts seen by the last scheduling decision.");
+        out.append("banktransfer_propagation_backlog_accounts ").append(propagationBacklog.get()).append('\n');
+
+        header(out, "banktransfer_failures_total", "counter", "Rejected requests and failed operations, per failure code.");
+        failures.forEach((code, count) ->
+                out.append("banktransfer_failures_total{code=\"").append(code).append("\"} ").append(count.sum()).append('\n'));
+
+        if (accounts != null)
+            writeTransactions(out);
+        return out.toString();
+    }
+
+    private void writeTransactions(StringBuilder out) {
+        TransactionStatistics statistics = accounts.statistics();
+        header(out, "banktransfer_transactions_total", "counter", "Transactions that reached the status.");
+        for (TransactionStatus status : TransactionStatus.values()) {
+            out.append("banktransfer_transactions_total{status=\"").append(status.name()).append("\"} ")
+                    .append(statistics.total(status)).append('\n');
+        }
+        header(out, "banktransfer_transactions", "gauge", "Transactions currently expecting a step, per status.");
+        for (TransactionStatus status : TransactionStatus.values()) {
+            if (status.isTerminal())
+                continue;
+            out.append("banktransfer_transactions{status=\"").append(status.name()).append("\"} ")
+                    .append(statistics.current(status)).append('\n');
+        }
+        header(out, "banktransfer_oldest_pending_transaction_age_seconds", "gauge", "Age of the oldest Pending transaction, 0 if none.");
+        OptionalLong oldest = accounts.oldestPendingCreatedAt();
+        long ageMs = oldest.isPresent() ? Math.max(0, System.currentTimeMillis() - oldest.getAsLong()) : 0;
+        out.append("banktransfer_oldest_pending_transaction_age_seconds ").append(ageMs / 1000d).append('\n');
+
+        IdempotencyStore idempotencyStore = accounts.idempotencyStore();
+        header(out, "banktransfer_idempotency_remembered_ids", "gauge", "Transfer ids remembered whatever their account.");
+        out.append("banktransfer_idempotency_remembered_ids ").append(idempotencyStore.remembered()).append('\n');
+        header(out, "banktransfer_idempotency_aged_probes_total", "counter", "Aged generations asked about an id, per Bloom filter outcome.");
+        long hits = idempotencyStore.agedHits();
+        long falsePositives = idempotencyStore.falsePositives();
+        out.append("banktransfer_idempotency_aged_probes_total{outcome=\"filtered\"} ").append(idempotencyStore.agedProbes() - hits).append('\n');
+        out.append("banktransfer_idempotency_aged_probes_total{outcome=\"found\"} ").append(hits - falsePositives).append('\n');
+        out.append("banktransfer_idempotency_aged_probes_total{outcome=\"false-positive\"} ").append(falsePositives).append('\n');
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+}
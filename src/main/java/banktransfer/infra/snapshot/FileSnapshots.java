@@ -0,0 +1,371 @@
+package banktransfer.infra.snapshot;
+
+import banktransfer.core.Email;
+import banktransfer.core.Money;
+import banktransfer.core.account.AccountId;
+import banktransfer.core.account.MoneyTransfer;
+import banktransfer.core.account.Transaction;
+import banktransfer.core.account.TransactionId;
+import banktransfer.core.account.TransactionStatus;
+import banktransfer.core.account.inmemory.AccountState;
+import banktransfer.core.account.inmemory.InMemoryAccounts;
+import banktransfer.core.account.inmemory.InMemoryTransaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshots of {@link InMemoryAccounts}, each one tagged with the journal position
+ * from which the journal must be replayed on top of it.
+ * <p>
+ * A snapshot is made of a header {@code [magic][version][journal position]}, followed by
+ * chunks {@code [payload length][CRC32 of payload][account count][accounts...]}, so that
+ * chunks can be decoded in parallel, and ends with {@code [0][total account count]}.
+ * Snapshots are written aside then atomically renamed: only complete snapshots are loaded.
+ */
+public class FileSnapshots {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileSnapshots.class);
+
+    private static final int MAGIC = 0x42545350;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int CHUNK_HEADER_SIZE = 8;
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+    private static final String PENDING_SUFFIX = ".pending";
+    private static final TransactionStatus[] STATUSES = TransactionStatus.values();
+    private static final Transaction.CancelReason[] CANCEL_REASONS = Transaction.CancelReason.values();
+
+    private final Path directory;
+
+    public FileSnapshots(Path directory) {
+        this.directory = directory;
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+    // Write
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * Copy every account into a new snapshot, not visible until {@link #publish(Path)}.
+     * Accounts are copied one at a time, they keep being updated meanwhile.
+     *
+     * @param position journal position read before the copy starts
+     * @return the snapshot written and fsync'ed
+     */
+    public Path write(InMemoryAccounts accounts, long position) throws IOException {
+        Files.createDirectories(directory);
+        Path pending = directory.resolve(snapshotName(position) + PENDING_SUFFIX);
+        try (FileChannel channel = FileChannel.open(pending,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(position);
+            header.flip();
+            writeFully(channel, header);
+
+            ChunkWriter writer = new ChunkWriter(channel);
+            accounts.forEachState(writer::write);
+            writer.flush();
+            if (writer.failure != null)
+                throw writer.failure;
+
+            ByteBuffer trailer = ByteBuffer.allocate(CHUNK_HEADER_SIZE + 8);
+            trailer.putInt(0).putInt(0).putLong(writer.total);
+            trailer.flip();
+            writeFully(channel, trailer);
+            channel.force(true);
+        }
+        return pending;
+    }
+
+    /**
+     * Make {@code pending} the latest snapshot, older ones are deleted.
+     */
+    public void publish(Path pending) throws IOException {
+        String name = pending.getFileName().toString();
+        Path published = directory.resolve(name.substring(0, name.length() - PENDING_SUFFIX.length()));
+        Files.move(pending, published, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+        for (Path snapshot : snapshots()) {
+            if (!snapshot.equals(published))
+                Files.delete(snapshot);
+        }
+    }
+
+    private void syncDirectory() {
+        // make the rename durable, not supported on every platform
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            LOGGER.debug("Unable to sync snapshot directory {}", directory, e);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    private static class ChunkWriter {
+        private final FileChannel channel;
+        private final CRC32 crc = new CRC32();
+        private ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE + 4096);
+        private int count;
+        private long total;
+        private IOException failure;
+
+        private ChunkWriter(FileChannel channel) {
+            this.channel = channel;
+            reset();
+        }
+
+        private void reset() {
+            chunk.clear();
+            chunk.position(CHUNK_HEADER_SIZE + 4);
+            count = 0;
+        }
+
+        void write(AccountState state) {
+            if (failure != null)
+                return;
+            encode(state);
+            count++;
+            total++;
+            if (chunk.position() >= CHUNK_SIZE)
+                flush();
+        }
+
+        void flush() {
+            if (count == 0 || failure != null)
+                return;
+            int length = chunk.position() - CHUNK_HEADER_SIZE;
+            chunk.putInt(CHUNK_HEADER_SIZE, count);
+            crc.reset();
+            crc.update(chunk.array(), CHUNK_HEADER_SIZE, length);
+            chunk.putInt(0, length);
+            chunk.putInt(4, (int) crc.getValue());
+            chunk.flip();
+            try {
+                writeFully(channel, chunk);
+            } catch (IOException e) {
+                failure = e;
+            }
+            reset();
+        }
+
+        private void encode(AccountState state) {
+            byte[] accountId = bytes(state.accountId().asString());
+            byte[] email = bytes(state.email().asString());
+            ensure(2 + accountId.length + 2 + email.length + 4 * 8 + 4 + state.fingerprints().length * 8 + 4);
+            putBytes(accountId);
+            putBytes(email);
+            chunk.putLong(state.balance().minorUnits());
+            chunk.putLong(state.lastSequence());
+            chunk.putLong(state.compactedSequence());
+            chunk.putLong(state.compactedCount());
+            chunk.putInt(state.fingerprints().length);
+            for (long fingerprint : state.fingerprints())
+                chunk.putLong(fingerprint);
+            chunk.putInt(state.transactions().size());
+            for (InMemoryTransaction transaction : state.transactions()) {
+                MoneyTransfer moneyTransfer = transaction.moneyTransfer();
+                byte[] transactionId = bytes(moneyTransfer.transactionId().asString());
+                byte[] source = bytes(moneyTransfer.source().asString());
+                byte[] destination = bytes(moneyTransfer.destination().asString());
+                ensure(3 * 8 + 2 + 3 * 2 + transactionId.length + source.length + destination.length);
+                chunk.putLong(transaction.sequence());
+                chunk.putLong(transaction.createdAt());
+                chunk.put((byte) transaction.status().ordinal());
+                chunk.put((byte) transaction.cancelReason().ordinal());
+                putBytes(transactionId);
+                putBytes(source);
+                putBytes(destination);
+                chunk.putLong(moneyTransfer.amount().minorUnits());
+            }
+        }
+
+        private void ensure(int required) {
+            if (chunk.remaining() >= required)
+                return;
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(chunk.capacity() * 2, chunk.position() + required));
+            chunk.flip();
+            grown.put(chunk);
+            chunk = grown;
+        }
+
+        private void putBytes(byte[] bytes) {
+            chunk.putShort((short) bytes.length);
+            chunk.put(bytes);
+        }
+
+        private static byte[] bytes(String value) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+    // Load
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    public Optional<Path> latest() throws IOException {
+        List<Path> snapshots = snapshots();
+        return snapshots.isEmpty() ? Optional.empty() : Optional.of(snapshots.get(snapshots.size() - 1));
+    }
+
+    /**
+     * Restore the accounts of the latest snapshot, its chunks being decoded by
+     * {@code parallelism} threads.
+     *
+     * @return the journal position to replay from, {@code 0} when there is no snapshot
+     */
+    public long load(InMemoryAccounts accounts, int parallelism) throws IOException {
+        Optional<Path> latest = latest();
+        if (!latest.isPresent())
+            return 0;
+        Path path = latest.get();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION)
+                throw new IOException("Unsupported snapshot " + path);
+            long position = header.getLong();
+
+            // chunk headers are read sequentially, chunks are decoded in parallel
+            List<long[]> chunks = new ArrayList<>();
+            long offset = HEADER_SIZE;
+            long size = channel.size();
+            long total;
+            while (true) {
+                ByteBuffer chunkHeader = readFully(channel, offset, CHUNK_HEADER_SIZE);
+                int length = chunkHeader.getInt();
+                int checksum = chunkHeader.getInt();
+                if (length == 0) {
+                    total = readFully(channel, offset + CHUNK_HEADER_SIZE, 8).getLong();
+                    break;
+                }
+                if (length < 0 || offset + CHUNK_HEADER_SIZE + length > size)
+                    throw new IOException("Truncated snapshot " + path + " at offset " + offset);
+                chunks.add(new long[]{offset + CHUNK_HEADER_SIZE, length, checksum});
+                offset += CHUNK_HEADER_SIZE + length;
+            }
+
+            AtomicLong loaded = new AtomicLong();
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism));
+            try {
+                List<Future<?>> futures = chunks.stream()
+                        .map(chunk -> executor.submit(() -> {
+                            loaded.addAndGet(loadChunk(channel, path, chunk, accounts));
+                            return null;
+                        }))
+                        .collect(Collectors.toList());
+                for (Future<?> future : futures)
+                    future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while loading snapshot " + path, e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException)
+                    throw (IOException) e.getCause();
+                throw new IOException("Failed to load snapshot " + path, e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+            if (loaded.get() != total)
+                throw new IOException("Snapshot " + path + " holds " + loaded.get() + " accounts, " + total + " expected");
+            return position;
+        }
+    }
+
+    private static int loadChunk(FileChannel channel, Path path, long[] chunk, InMemoryAccounts accounts) throws IOException {
+        ByteBuffer payload = readFully(channel, chunk[0], (int) chunk[1]);
+        CRC32 crc = new CRC32();
+        crc.update(payload.array(), 0, payload.limit());
+        if ((int) crc.getValue() != (int) chunk[2])
+            throw new IOException("Corrupted snapshot " + path + " at offset " + chunk[0]);
+        int count = payload.getInt();
+        for (int i = 0; i < count; i++)
+            accounts.restore(decode(payload));
+        return count;
+    }
+
+    private static AccountState decode(ByteBuffer payload) {
+        AccountId accountId = accountId(payload);
+        Email email = new Email(getString(payload));
+        Money balance = Money.ofMinor(payload.getLong());
+        long lastSequence = payload.getLong();
+        long compactedSequence = payload.getLong();
+        long compactedCount = payload.getLong();
+        long[] fingerprints = new long[payload.getInt()];
+        for (int i = 0; i < fingerprints.length; i++)
+            fingerprints[i] = payload.getLong();
+        int nbTransactions = payload.getInt();
+        List<InMemoryTransaction> transactions = new ArrayList<>(nbTransactions);
+        for (int i = 0; i < nbTransactions; i++) {
+            long sequence = payload.getLong();
+            long createdAt = payload.getLong();
+            TransactionStatus status = STATUSES[payload.get()];
+            Transaction.CancelReason cancelReason = CANCEL_REASONS[payload.get()];
+            TransactionId transactionId = TransactionId.transactionId(getString(payload)).value();
+            AccountId source = accountId(payload);
+            AccountId destination = accountId(payload);
+            Money amount = Money.ofMinor(payload.getLong());
+            transactions.add(new InMemoryTransaction(sequence, createdAt,
+                    new MoneyTransfer(transactionId, source, destination, amount), status, cancelReason));
+        }
+        return new AccountState(accountId, email, balance, lastSequence,
+                compactedSequence, compactedCount, fingerprints, transactions);
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0)
+                throw new IOException("Unexpected end of snapshot at offset " + (offset + buffer.position()));
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static AccountId accountId(ByteBuffer payload) {
+        return AccountId.accountId(getString(payload)).value();
+    }
+
+    private static String getString(ByteBuffer payload) {
+        int length = payload.getShort() & 0xffff;
+        byte[] bytes = new byte[length];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private List<Path> snapshots() throws IOException {
+        if (!Files.isDirectory(directory))
+            return new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> p.getFileName().toString().endsWith(SNAPSHOT_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static String snapshotName(long position) {
+        return String.format("%020d%s", position, SNAPSHOT_SUFFIX);
+    }
+}
@@ -3,6 +3,12 @@ package banktransfer.infra.web;
 import banktransfer.core.Failure;
 import banktransfer.core.Status;
 import banktransfer.core.account.*;
+import banktransfer.infra.accounts.AccountsClient;
+import banktransfer.infra.metrics.LatencyHistogram;
+import banktransfer.infra.metrics.Metrics;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.Router;
@@ -10,54 +16,131 @@ import io.vertx.ext.web.RoutingContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Optional;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
 
+import static banktransfer.core.Failures.JOURNAL_CLOSED;
+import static banktransfer.core.Failures.JOURNAL_UNAVAILABLE;
+import static banktransfer.infra.web.VertxTools.runOnContext;
 import static banktransfer.infra.web.VertxTools.writeJson;
 import static java.net.HttpURLConnection.HTTP_BAD_REQUEST;
 import static java.net.HttpURLConnection.HTTP_CREATED;
 import static java.net.HttpURLConnection.HTTP_NOT_FOUND;
 import static java.net.HttpURLConnection.HTTP_OK;
+import static java.net.HttpURLConnection.HTTP_UNAVAILABLE;
 
 public class AccountRoutes {
     private static final Logger LOGGER = LoggerFactory.getLogger(AccountRoutes.class);
+    private static final Failure ACCOUNTS_UNAVAILABLE = Failure.shared("accounts-unavailable");
 
     private final Vertx vertx;
     private final Converters converters;
-    private final Accounts accounts;
-    private final MoneyTransferService moneyTransferService;
+    private final AccountsClient accounts;
+    private final Journal journal;
+    private final Metrics metrics;
 
     public AccountRoutes(Vertx vertx,
                          Converters converters,
-                         Accounts accounts,
-                         MoneyTransferService moneyTransferService) {
+                         AccountsClient accounts,
+                         Journal journal,
+                         Metrics metrics) {
         this.vertx = vertx;
         this.converters = converters;
         this.accounts = accounts;
-        this.moneyTransferService = moneyTransferService;
+        this.journal = journal;
+        this.metrics = metrics;
     }
 
     public void init(Router router) {
-        router.get("/account/:accountId").handler(rc -> findAccountById(rc, rc.request().getParam("accountId")));
-        router.post("/account").handler(this::createAccount);
-        router.post("/transfer").handler(this::transfer);
+        router.get("/account/:accountId").handler(timed(metrics.accountLookups(), rc -> findAccountById(rc, rc.request().getParam("accountId"))));
+        router.get("/account/:accountId/summary").handler(timed(metrics.accountSummaries(), rc -> findAccountSummaryById(rc, rc.request().getParam("accountId"))));
+        router.get("/transfer/:transactionId").handler(timed(metrics.transferLookups(), rc -> findTransferById(rc, rc.request().getParam("transactionId"))));
+        router.post("/account").handler(timed(metrics.accountCreations(), this::createAccount));
+        router.post("/transfer").handler(timed(metrics.transfers(), this::transfer));
+        router.post("/transfers").handler(timed(metrics.batchTransfers(), this::transfers));
+    }
+
+    private static Handler<RoutingContext> timed(LatencyHistogram histogram, Handler<RoutingContext> handler) {
+        return rc -> {
+            long start = System.nanoTime();
+            rc.addBodyEndHandler(v -> histogram.record(System.nanoTime() - start));
+            handler.handle(rc);
+        };
     }
 
     private void transfer(RoutingContext rc) {
         LOGGER.info("About to transfer money...");
-        Status<Failure, MoneyTransfer> moneyTransferOr = converters.toMoneyTransfer(rc::getBodyAsJson);
+        Status<Failure, MoneyTransfer> moneyTransferOr = converters.toMoneyTransfer(rc.getBody());
         if (!moneyTransferOr.succeeded()) {
             replyInvalidTransfer(rc, moneyTransferOr.error());
             return;
         }
 
-        MoneyTransfer moneyTransfer = moneyTransferOr.value();
-        Status<Failure, TransactionId> transferOr = moneyTransferService.transfer(moneyTransfer);
+        accounts.transfer(moneyTransferOr.value(), orUnavailable(rc, transferOr -> {
+            if (!transferOr.succeeded()) {
+                replyTransferFailed(rc, transferOr.error());
+                return;
+            }
+            whenDurable(rc, () -> replyTransferCreated(rc, transferOr.value()));
+        }));
+    }
 
-        if (!transferOr.succeeded()) {
-            replyTransferFailed(rc, transferOr.error());
+    private void transfers(RoutingContext rc) {
+        LOGGER.info("About to transfer money in batch...");
+        Status<Failure, List<Status<Failure, MoneyTransfer>>> moneyTransfersOr = converters.toMoneyTransfers(rc::getBodyAsJsonArray);
+        if (!moneyTransfersOr.succeeded()) {
+            replyInvalidTransfer(rc, moneyTransfersOr.error());
             return;
         }
-        replyTransferCreated(rc, transferOr.value());
+
+        List<Status<Failure, MoneyTransfer>> moneyTransferOrs = moneyTransfersOr.value();
+        List<MoneyTransfer> moneyTransfers = new ArrayList<>(moneyTransferOrs.size());
+        for (Status<Failure, MoneyTransfer> moneyTransferOr : moneyTransferOrs) {
+            if (moneyTransferOr.succeeded())
+                moneyTransfers.add(moneyTransferOr.value());
+        }
+        accounts.transferAll(moneyTransfers, orUnavailable(rc, transferOrs ->
+                whenDurable(rc, () -> replyTransfers(rc, moneyTransferOrs, transferOrs))));
+    }
+
+    /**
+     * Replies {@code 503} when the accounts could not be reached, hands the result over otherwise.
+     */
+    private <T> Handler<AsyncResult<T>> orUnavailable(RoutingContext rc, Consumer<T> onResult) {
+        return ar -> {
+            if (ar.succeeded()) {
+                onResult.accept(ar.result());
+            } else {
+                LOGGER.error("Accounts unavailable", ar.cause());
+                metrics.failed(ACCOUNTS_UNAVAILABLE);
+                writeJson(rc, HTTP_UNAVAILABLE, ErrorBodies.error(ACCOUNTS_UNAVAILABLE));
+            }
+        };
+    }
+
+    /**
+     * Created resources are only acknowledged once journaled: the reply waits
+     * for the group commit that includes them.
+     */
+    private void whenDurable(RoutingContext rc, Runnable reply) {
+        Context context = vertx.getOrCreateContext();
+        journal.whenDurable(
+                () -> runOnContext(context, reply),
+                failure -> runOnContext(context, () -> replyNotDurable(rc, failure)));
+    }
+
+    /**
+     * Refused by the accounts before any change, the journal not accepting records.
+     */
+    private static boolean notJournaled(Failure error) {
+        return JOURNAL_UNAVAILABLE.error().equals(error.error()) || JOURNAL_CLOSED.error().equals(error.error());
+    }
+
+    private void replyNotDurable(RoutingContext rc, Failure error) {
+        metrics.failed(error);
+        writeJson(rc, HTTP_UNAVAILABLE, ErrorBodies.error("not-durable", error));
     }
 
     private void replyTransferCreated(RoutingContext rc, TransactionId transactionId) {
@@ -65,33 +148,60 @@ public class AccountRoutes {
                 new JsonObject().put("transaction-id", transactionId.asString()));
     }
 
+    /**
+     * One result per submitted transfer, in the submission order, streamed as they are walked.
+     */
+    private void replyTransfers(RoutingContext rc,
+                                List<Status<Failure, MoneyTransfer>> moneyTransferOrs,
+                                List<Status<Failure, TransactionId>> transferOrs) {
+        writeJson(rc, HTTP_OK, generator -> {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("transfers");
+            Iterator<Status<Failure, TransactionId>> transferOrIt = transferOrs.iterator();
+            for (Status<Failure, MoneyTransfer> moneyTransferOr : moneyTransferOrs) {
+                Status<Failure, TransactionId> transferOr = null;
+                if (!moneyTransferOr.succeeded()) {
+                    metrics.failed(moneyTransferOr.error());
+                } else {
+                    transferOr = transferOrIt.next();
+                    if (!transferOr.succeeded())
+                        metrics.failed(transferOr.error());
+                }
+                converters.writeTransferResult(generator, moneyTransferOr, transferOr);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        });
+    }
+
     private void replyTransferFailed(RoutingContext rc, Failure error) {
-        writeJson(rc, HTTP_BAD_REQUEST,
-                new JsonObject()
-                        .put("error", "transfer-failed")
-                        .put("details", error.error()));
+        if (notJournaled(error)) {
+            replyNotDurable(rc, error);
+            return;
+        }
+        metrics.failed(error);
+        writeJson(rc, HTTP_BAD_REQUEST, ErrorBodies.error("transfer-failed", error));
     }
 
     private void replyInvalidTransfer(RoutingContext rc, Failure error) {
-        writeJson(rc, HTTP_BAD_REQUEST,
-                new JsonObject()
-                        .put("error", "invalid-transfer")
-                        .put("details", error.error()));
+        metrics.failed(error);
+        writeJson(rc, HTTP_BAD_REQUEST, ErrorBodies.error("invalid-transfer", error));
     }
 
     private void createAccount(RoutingContext rc) {
         LOGGER.info("About to create account...");
-        Status<Failure, NewAccount> newAccountOr = converters.toNewAccount(rc::getBodyAsJson);
+        Status<Failure, NewAccount> newAccountOr = converters.toNewAccount(rc.getBody());
         if (!newAccountOr.succeeded()) {
             replyInvalidNewAccount(rc, newAccountOr.error());
             return;
         }
-        Status<Failure, AccountId> createdOr = accounts.add(newAccountOr.value());
-        if (!createdOr.succeeded()) {
-            replyNewAccountFailed(rc, createdOr.error());
-            return;
-        }
-        replyAccountCreated(rc, createdOr.value());
+        accounts.add(newAccountOr.value(), orUnavailable(rc, createdOr -> {
+            if (!createdOr.succeeded()) {
+                replyNewAccountFailed(rc, createdOr.error());
+                return;
+            }
+            whenDurable(rc, () -> replyAccountCreated(rc, createdOr.value()));
+        }));
     }
 
     private void replyAccountCreated(RoutingContext rc, AccountId accountId) {
@@ -100,13 +210,17 @@ public class AccountRoutes {
     }
 
     private void replyNewAccountFailed(RoutingContext rc, Failure error) {
-        writeJson(rc, HTTP_BAD_REQUEST,
-                new JsonObject().put("error", error.error()));
+        if (notJournaled(error)) {
+            replyNotDurable(rc, error);
+            return;
+        }
+        metrics.failed(error);
+        writeJson(rc, HTTP_BAD_REQUEST, ErrorBodies.error(error));
     }
 
     private void replyInvalidNewAccount(RoutingContext rc, Failure error) {
-        writeJson(rc, HTTP_BAD_REQUEST,
-                new JsonObject().put("error", error.error()));
+        metrics.failed(error);
+        writeJson(rc, HTTP_BAD_REQUEST, ErrorBodies.error(error));
     }
 
     private void findAccountById(RoutingContext rc, String rawAccountId) {
@@ -117,26 +231,83 @@ public class AccountRoutes {
             return;
         }
 
-        Optional<Account> accountOpt = accounts.findById(accountIdOr.value());
-        if (accountOpt.isPresent()) {
-            replyAccountFound(rc, accountOpt.get());
-        } else {
-            replyAccountNotFound(rc, rawAccountId);
+        Status<Failure, HistoryPage> pageOr = converters.toHistoryPage(rc.request()::getParam);
+        if (!pageOr.succeeded()) {
+            replyInvalidHistoryPage(rc, pageOr.error());
+            return;
+        }
+
+        accounts.findById(accountIdOr.value(), orUnavailable(rc, accountOpt -> {
+            if (accountOpt.isPresent()) {
+                replyAccountFound(rc, accountOpt.get(), pageOr.value());
+            } else {
+                replyAccountNotFound(rc, rawAccountId);
+            }
+        }));
+    }
+
+    private void findAccountSummaryById(RoutingContext rc, String rawAccountId) {
+        LOGGER.info("About to lookup account summary...");
+        Status<Failure, AccountId> accountIdOr = AccountId.accountId(rawAccountId);
+        if (!accountIdOr.succeeded()) {
+            replyInvalidAccountId(rc, rawAccountId);
+            return;
+        }
+
+        accounts.findById(accountIdOr.value(), orUnavailable(rc, accountOpt -> {
+            if (accountOpt.isPresent()) {
+                writeJson(rc, HTTP_OK, converters.toDto(accountOpt.get().summary()));
+            } else {
+                replyAccountNotFound(rc, rawAccountId);
+            }
+        }));
+    }
+
+    private void findTransferById(RoutingContext rc, String rawTransactionId) {
+        LOGGER.info("About to lookup transfer...");
+        Status<Failure, TransactionId> transactionIdOr = TransactionId.transactionId(rawTransactionId);
+        if (!transactionIdOr.succeeded()) {
+            metrics.failed("invalid-transaction-id");
+            writeJson(rc, HTTP_BAD_REQUEST,
+                    new JsonObject()
+                            .put("error", "invalid-transaction-id")
+                            .put("transaction-id", rawTransactionId));
+            return;
         }
+
+        accounts.findTransfer(transactionIdOr.value(), orUnavailable(rc, transferOpt -> {
+            if (transferOpt.isPresent()) {
+                Transaction transfer = transferOpt.get();
+                writeJson(rc, HTTP_OK, generator -> converters.writeTransfer(generator, transfer));
+            } else {
+                metrics.failed("transfer-not-found");
+                writeJson(rc, HTTP_NOT_FOUND,
+                        new JsonObject()
+                                .put("error", "transfer-not-found")
+                                .put("transaction-id", rawTransactionId));
+            }
+        }));
     }
 
     private void replyAccountNotFound(RoutingContext rc, String rawAccountId) {
+        metrics.failed("account-not-found");
         writeJson(rc, HTTP_NOT_FOUND,
                 new JsonObject()
                         .put("error", "account-not-found")
                         .put("account-id", rawAccountId));
     }
 
-    private void replyAccountFound(RoutingContext rc, Account account) {
-        writeJson(rc, HTTP_OK, converters.toDto(account));
+    private void replyAccountFound(RoutingContext rc, Account account, HistoryPage page) {
+        writeJson(rc, HTTP_OK, generator -> converters.write(generator, account, page));
+    }
+
+    private void replyInvalidHistoryPage(RoutingContext rc, Failure error) {
+        metrics.failed(error);
+        writeJson(rc, HTTP_BAD_REQUEST, ErrorBodies.error(error));
     }
 
     private void replyInvalidAccountId(RoutingContext rc, String rawAccountId) {
+        metrics.failed("invalid-account-id");
         writeJson(rc, HTTP_BAD_REQUEST,
                 new JsonObject()
                         .put("error", "invalid-account-id")
@@ -0,0 +1,78 @@
+package banktransfer.infra.web;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+
+import java.io.OutputStream;
+
+/**
+ * Response body written into pooled buffers, each released once written to the socket.
+ * <p>
+ * A body fitting in {@link #CHUNK_SIZE} is sent at once, with its content length; a larger one
+ * switches the response to the chunked transfer encoding and is sent as it is produced.
+ */
+class ChunkedBufferOutput extends OutputStream {
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    private final HttpServerResponse response;
+    private ByteBuf current = allocate();
+    private boolean chunked;
+
+    ChunkedBufferOutput(HttpServerResponse response) {
+        this.response = response;
+    }
+
+    private static ByteBuf allocate() {
+        return PooledByteBufAllocator.DEFAULT.buffer(4096);
+    }
+
+    @Override
+    public void write(int b) {
+        current.writeByte(b);
+        if (current.readableBytes() >= CHUNK_SIZE)
+            writeChunk();
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+        current.writeBytes(bytes, offset, length);
+        if (current.readableBytes() >= CHUNK_SIZE)
+            writeChunk();
+    }
+
+    private void writeChunk() {
+        if (!chunked) {
+            response.setChunked(true);
+            chunked = true;
+        }
+        ByteBuf chunk = current;
+        current = allocate();
+        // vert.x wraps buffers as unreleasable: the pooled one is released once written
+        response.write(Buffer.buffer(chunk), ar -> chunk.release());
+    }
+
+    /**
+     * Whether part of the body was already sent, the response status can no longer change.
+     */
+    boolean chunked() {
+        return chunked;
+    }
+
+    void end() {
+        ByteBuf last = current;
+        current = null;
+        response.end(Buffer.buffer(last), ar -> last.release());
+    }
+
+    /**
+     * Release what was not sent yet, the response is left as is.
+     */
+    void discard() {
+        if (current != null) {
+            current.release();
+            current = null;
+        }
+    }
+}
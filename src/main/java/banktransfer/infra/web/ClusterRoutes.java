@@ -0,0 +1,188 @@
+package banktransfer.infra.web;
+
+import banktransfer.core.Failure;
+import banktransfer.core.Status;
+import banktransfer.core.account.AccountId;
+import banktransfer.core.account.MoneyTransfer;
+import banktransfer.core.account.NewAccount;
+import banktransfer.core.account.TransactionId;
+import banktransfer.infra.accounts.AccountsClient;
+import banktransfer.infra.cluster.ClusterTopology;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.client.HttpRequest;
+import io.vertx.ext.web.client.HttpResponse;
+import io.vertx.ext.web.client.WebClient;
+import io.vertx.ext.web.client.WebClientOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static banktransfer.infra.web.VertxTools.writeJson;
+import static java.net.HttpURLConnection.HTTP_OK;
+import static java.net.HttpURLConnection.HTTP_UNAVAILABLE;
+
+/**
+ * Forwards the requests about accounts owned by another node of the cluster to their owner, the
+ * others falling through to {@link AccountRoutes}: accounts by their id, new accounts by their email,
+ * transfers by their source. A transfer is looked up locally first, then on the other nodes in turn.
+ * <p>
+ * Forwarded requests are flagged, their receiver serves them whatever the ownership: a request is
+ * forwarded at most once. Batched and streamed transfers are not forwarded, they are only accepted
+ * for the accounts of the node receiving them.
+ */
+public class ClusterRoutes {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClusterRoutes.class);
+    private static final Failure NODE_UNAVAILABLE = Failure.shared("node-unavailable");
+
+    public static final String FORWARDED_HEADER = "x-forwarded-by-node";
+    public static final long FORWARD_TIMEOUT_MS = 5_000;
+    private static final int MAX_CONNECTIONS_PER_NODE = 32;
+
+    private final Converters converters;
+    private final AccountsClient accounts;
+    private final ClusterTopology topology;
+    private final WebClient client;
+
+    public ClusterRoutes(Vertx vertx, Converters converters, AccountsClient accounts, ClusterTopology topology) {
+        this.converters = converters;
+        this.accounts = accounts;
+        this.topology = topology;
+        this.client = WebClient.create(vertx, new WebClientOptions()
+                .setKeepAlive(true)
+                .setMaxPoolSize(MAX_CONNECTIONS_PER_NODE));
+    }
+
+    public void init(Router router) {
+        router.get("/account/:accountId").handler(rc -> routeByAccountId(rc, rc.request().getParam("accountId")));
+        router.get("/account/:accountId/summary").handler(rc -> routeByAccountId(rc, rc.request().getParam("accountId")));
+        router.get("/transfer/:transactionId").handler(rc -> routeTransferLookup(rc, rc.request().getParam("transactionId")));
+        router.post("/account").handler(this::routeNewAccount);
+        router.post("/transfer").handler(this::routeTransfer);
+    }
+
+    private static boolean forwarded(RoutingContext rc) {
+        return rc.request().getHeader(FORWARDED_HEADER) != null;
+    }
+
+    /**
+     * Invalid ids are left to {@link AccountRoutes} which replies the error.
+     */
+    private void routeByAccountId(RoutingContext rc, String rawAccountId) {
+        Status<Failure, AccountId> accountIdOr = AccountId.accountId(rawAccountId);
+        if (forwarded(rc) || !accountIdOr.succeeded() || topology.isLocal(accountIdOr.value()))
+            rc.next();
+        else
+            forward(rc, topology.ownerOf(accountIdOr.value()));
+    }
+
+    private void routeNewAccount(RoutingContext rc) {
+        if (forwarded(rc)) {
+            rc.next();
+            return;
+        }
+        Status<Failure, NewAccount> newAccountOr = converters.toNewAccount(rc.getBody());
+        if (!newAccountOr.succeeded() || topology.isLocal(newAccountOr.value().email()))
+            rc.next();
+        else
+            forward(rc, topology.ownerOf(newAccountOr.value().email()));
+    }
+
+    private void routeTransfer(RoutingContext rc) {
+        if (forwarded(rc)) {
+            rc.next();
+            return;
+        }
+        Status<Failure, MoneyTransfer> moneyTransferOr = converters.toMoneyTransfer(rc.getBody());
+        if (!moneyTransferOr.succeeded() || topology.isLocal(moneyTransferOr.value().source()))
+            rc.next();
+        else
+            forward(rc, topology.ownerOf(moneyTransferOr.value().source()));
+    }
+
+    private void routeTransferLookup(RoutingContext rc, String rawTransactionId) {
+        Status<Failure, TransactionId> transactionIdOr = TransactionId.transactionId(rawTransactionId);
+        if (forwarded(rc) || !transactionIdOr.succeeded()) {
+            rc.next();
+            return;
+        }
+        accounts.findTransfer(transactionIdOr.value(), ar -> {
+            if (ar.failed() || ar.result().isPresent()) {
+                rc.next();
+                return;
+            }
+            List<ClusterTopology.Node> others = new ArrayList<>(topology.nodes());
+            others.remove(topology.self());
+            lookupTransfer(rc, others, 0);
+        });
+    }
+
+    /**
+     * Asks the other nodes in turn, falls through to the local {@code 404} if none knows the transfer.
+     */
+    private void lookupTransfer(RoutingContext rc, List<ClusterTopology.Node> nodes, int index) {
+        if (index == nodes.size()) {
+            rc.next();
+            return;
+        }
+        ClusterTopology.Node node = nodes.get(index);
+        send(rc, node, response -> {
+            if (response.statusCode() == HTTP_OK)
+                relay(rc, response);
+            else
+                lookupTransfer(rc, nodes, index + 1);
+        });
+    }
+
+    private void forward(RoutingContext rc, ClusterTopology.Node node) {
+        send(rc, node, response -> relay(rc, response));
+    }
+
+    /**
+     * The response is handed over once its body is read.
+     */
+    private void send(RoutingContext rc, ClusterTopology.Node node, Handler<HttpResponse<Buffer>> responseHandler) {
+        HttpRequest<Buffer> request = client.request(rc.request().method(), node.httpPort(), node.host(), rc.request().uri())
+                .timeout(FORWARD_TIMEOUT_MS)
+                .putHeader(FORWARDED_HEADER, String.valueOf(topology.self().index()));
+        copyHeader(rc, request, HttpHeaders.CONTENT_TYPE);
+        copyHeader(rc, request, HttpHeaders.ACCEPT);
+        Handler<AsyncResult<HttpResponse<Buffer>>> handler = ar -> {
+            if (ar.succeeded()) {
+                responseHandler.handle(ar.result());
+                return;
+            }
+            LOGGER.error("Cluster node {} unavailable", node, ar.cause());
+            if (!rc.response().ended())
+                writeJson(rc, HTTP_UNAVAILABLE, ErrorBodies.error(NODE_UNAVAILABLE));
+        };
+        if (rc.getBody() != null)
+            request.sendBuffer(rc.getBody(), handler);
+        else
+            request.send(handler);
+    }
+
+    private static void copyHeader(RoutingContext rc, HttpRequest<Buffer> request, CharSequence name) {
+        String value = rc.request().getHeader(name);
+        if (value != null)
+            request.putHeader(name.toString(), value);
+    }
+
+    private static void relay(RoutingContext rc, HttpResponse<Buffer> response) {
+        String contentType = response.getHeader(HttpHeaders.CONTENT_TYPE.toString());
+        if (contentType != null)
+            rc.response().putHeader(HttpHeaders.CONTENT_TYPE, contentType);
+        rc.response().setStatusCode(response.statusCode());
+        if (response.body() != null)
+            rc.response().end(response.body());
+        else
+            rc.response().end();
+    }
+}
@@ -2,113 +2,315 @@ package banktransfer.infra.web;
 
 import banktransfer.core.Email;
 import banktransfer.core.Failure;
+import banktransfer.core.Money;
 import banktransfer.core.Status;
 import banktransfer.core.account.Account;
 import banktransfer.core.account.AccountId;
+import banktransfer.core.account.AccountSummary;
 import banktransfer.core.account.MoneyTransfer;
 import banktransfer.core.account.NewAccount;
 import banktransfer.core.account.Transaction;
 import banktransfer.core.account.TransactionId;
+import banktransfer.core.account.TransactionStatus;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 
-import java.math.BigDecimal;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
-import static java.util.stream.Collectors.toList;
+import static banktransfer.core.Failures.INVALID_AMOUNT_FORMAT;
+import static banktransfer.infra.web.VertxTools.JSON_FACTORY;
+import static java.net.HttpURLConnection.HTTP_BAD_REQUEST;
+import static java.net.HttpURLConnection.HTTP_CREATED;
 
 class Converters {
+    // value of a field holding anything but a string or null
+    private static final Object NOT_A_STRING = new Object();
+    private static final Failure INVALID_JSON_FORMAT = Failure.shared("invalid-json-format");
+    private static final Failure INVALID_EMAIL_FORMAT = Failure.shared("invalid-email-format");
+    private static final Failure INVALID_TRANSACTION_ID_FORMAT = Failure.shared("invalid-transaction-id-format");
+    private static final Failure INVALID_SOURCE_ID_FORMAT = Failure.shared("invalid-source-id-format");
+    private static final Failure INVALID_DESTINATION_ID_FORMAT = Failure.shared("invalid-destination-id-format");
+    private static final Failure NO_AMOUNT_PROVIDED = Failure.shared("no-amount-provided");
+    private static final Failure INVALID_LIMIT = Failure.shared("invalid-limit");
+    private static final Failure INVALID_AFTER_SEQUENCE = Failure.shared("invalid-after-sequence");
+    private static final Failure INVALID_ORDER = Failure.shared("invalid-order");
+    private static final String[] NEW_ACCOUNT_FIELDS = {"email", "initial-balance"};
+    private static final String[] MONEY_TRANSFER_FIELDS = {"transaction-id", "source-id", "destination-id", "amount"};
 
-    Status<Failure, NewAccount> toNewAccount(Supplier<JsonObject> rc) {
-        JsonObject content;
+    /**
+     * The fields are read in a single pass over the body, no json tree is built.
+     */
+    Status<Failure, NewAccount> toNewAccount(Buffer body) {
+        Status<Failure, Object[]> fieldsOr = readStringFields(body, NEW_ACCOUNT_FIELDS);
+        if (!fieldsOr.succeeded())
+            return Status.error(fieldsOr.error());
+        Object[] fields = fieldsOr.value();
+        return toNewAccount(fields[0], fields[1]);
+    }
+
+    private Status<Failure, NewAccount> toNewAccount(Object email, Object initialBalance) {
+        if (email == NOT_A_STRING)
+            return INVALID_EMAIL_FORMAT.status();
+        Status<Failure, Email> emailOr = Email.email((String) email);
+
+        if (initialBalance == NOT_A_STRING)
+            return INVALID_AMOUNT_FORMAT.status();
+        if (initialBalance == null)
+            return NewAccount.newAccount(emailOr);
+        return NewAccount.newAccount(emailOr, parseAmount((String) initialBalance));
+    }
+
+    /**
+     * Convert each element of a json array on its own: an invalid transfer does not prevent
+     * the others from being converted.
+     */
+    Status<Failure, List<Status<Failure, MoneyTransfer>>> toMoneyTransfers(Supplier<JsonArray> rc) {
+        JsonArray content;
         try {
             content = rc.get();
         } catch (Exception e) {
-            return Status.failure("invalid-json-format");
+            return INVALID_JSON_FORMAT.status();
         }
+        if (content == null)
+            return INVALID_JSON_FORMAT.status();
 
-        Status<Failure, Email> emailOr;
-        try {
-            emailOr = Email.email(content.getString("email"));
-        } catch (Exception e) {
-            return Status.failure("invalid-email-format");
+        List<Status<Failure, MoneyTransfer>> moneyTransfers = new ArrayList<>(content.size());
+        for (Object item : content) {
+            if (item instanceof JsonObject)
+                moneyTransfers.add(toMoneyTransfer((JsonObject) item));
+            else
+                moneyTransfers.add(INVALID_JSON_FORMAT.status());
         }
+        return Status.ok(moneyTransfers);
+    }
 
-        String amountStr;
-        try {
-            amountStr = content.getString("initial-balance");
-        } catch (Exception e) {
-            return Status.failure("invalid-amount-format");
-        }
+    private Status<Failure, MoneyTransfer> toMoneyTransfer(JsonObject content) {
+        return toMoneyTransfer(
+                stringField(content, "transaction-id"),
+                stringField(content, "source-id"),
+                stringField(content, "destination-id"),
+                stringField(content, "amount"));
+    }
 
-        if (amountStr == null)
-            return NewAccount.newAccount(emailOr);
-        return NewAccount.newAccount(emailOr, parseAmount(amountStr));
+    /**
+     * Same as {@link #toNewAccount(Buffer)}.
+     */
+    Status<Failure, MoneyTransfer> toMoneyTransfer(Buffer body) {
+        Status<Failure, Object[]> fieldsOr = readStringFields(body, MONEY_TRANSFER_FIELDS);
+        if (!fieldsOr.succeeded())
+            return Status.error(fieldsOr.error());
+        Object[] fields = fieldsOr.value();
+        return toMoneyTransfer(fields[0], fields[1], fields[2], fields[3]);
     }
 
-    Status<Failure, MoneyTransfer> toMoneyTransfer(Supplier<JsonObject> rc) {
-        JsonObject content;
-        try {
-            content = rc.get();
-        } catch (Exception e) {
-            return Status.failure("invalid-json-format");
+    private Status<Failure, MoneyTransfer> toMoneyTransfer(Object transactionId, Object sourceId, Object destinationId, Object amount) {
+        if (transactionId == NOT_A_STRING)
+            return INVALID_TRANSACTION_ID_FORMAT.status();
+        Status<Failure, TransactionId> transactionIdOr = TransactionId.transactionId((String) transactionId);
+
+        if (sourceId == NOT_A_STRING)
+            return INVALID_SOURCE_ID_FORMAT.status();
+        Status<Failure, AccountId> accountSrcId = AccountId.accountId((String) sourceId);
+
+        if (destinationId == NOT_A_STRING)
+            return INVALID_DESTINATION_ID_FORMAT.status();
+        Status<Failure, AccountId> accountDstId = AccountId.accountId((String) destinationId);
+
+        if (amount == NOT_A_STRING)
+            return INVALID_AMOUNT_FORMAT.status();
+        Status<Failure, Money> amountOr = parseAmount((String) amount);
+
+        return MoneyTransfer.moneyTransfert(transactionIdOr, accountSrcId, accountDstId, amountOr);
+    }
+
+    private static Object stringField(JsonObject content, String name) {
+        Object value = content.getValue(name);
+        if (value == null || value instanceof String)
+            return value;
+        return NOT_A_STRING;
+    }
+
+    /**
+     * Values of the given top level fields of a json object, without building the object: a string,
+     * {@code null} when missing or null, {@link #NOT_A_STRING} otherwise. Other fields are skipped,
+     * the last occurrence of a field wins. Nothing but whitespace may follow the object.
+     */
+    private static Status<Failure, Object[]> readStringFields(Buffer body, String[] names) {
+        if (body == null)
+            return INVALID_JSON_FORMAT.status();
+        Object[] values = new Object[names.length];
+        try (JsonParser parser = createParser(body.getByteBuf())) {
+            if (parser.nextToken() != JsonToken.START_OBJECT)
+                return INVALID_JSON_FORMAT.status();
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                int index = indexOf(names, parser.getCurrentName());
+                token = parser.nextToken();
+                if (index < 0) {
+                    parser.skipChildren();
+                } else if (token == JsonToken.VALUE_STRING) {
+                    values[index] = parser.getText();
+                } else if (token == JsonToken.VALUE_NULL) {
+                    values[index] = null;
+                } else {
+                    values[index] = NOT_A_STRING;
+                    parser.skipChildren();
+                }
+            }
+            if (token != JsonToken.END_OBJECT || parser.nextToken() != null)
+                return INVALID_JSON_FORMAT.status();
+        } catch (IOException e) {
+            return INVALID_JSON_FORMAT.status();
         }
+        return Status.ok(values);
+    }
 
-        Status<Failure, TransactionId> transactionIdOr;
-        try {
-            transactionIdOr = TransactionId.transactionId(content.getString("transaction-id"));
-        } catch (Exception e) {
-            return Status.failure("invalid-transaction-id-format");
+    private static JsonParser createParser(ByteBuf buffer) throws IOException {
+        if (buffer.hasArray())
+            return JSON_FACTORY.createParser(buffer.array(), buffer.arrayOffset() + buffer.readerIndex(), buffer.readableBytes());
+        return JSON_FACTORY.createParser((InputStream) new ByteBufInputStream(buffer));
+    }
+
+    private static int indexOf(String[] names, String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name))
+                return i;
         }
+        return -1;
+    }
 
-        Status<Failure, AccountId> accountSrcId;
-        try {
-            accountSrcId = AccountId.accountId(content.getString("source-id"));
-        } catch (Exception e) {
-            return Status.failure("invalid-source-id-format");
+    private Status<Failure, Money> parseAmount(String amount) {
+        if (amount == null || amount.trim().isEmpty())
+            return NO_AMOUNT_PROVIDED.status();
+        return Money.parse(amount);
+    }
+
+    /**
+     * Outcome of a transfer submitted among others, shaped as the reply to a single transfer
+     * along with its http status: an item of the {@code /transfers} reply, or a line of the
+     * {@code /transfers/stream} one.
+     *
+     * @param transferOr {@code null} when the transfer was not submitted, being invalid
+     */
+    void writeTransferResult(JsonGenerator generator,
+                             Status<Failure, MoneyTransfer> moneyTransferOr,
+                             Status<Failure, TransactionId> transferOr) throws IOException {
+        generator.writeStartObject();
+        if (!moneyTransferOr.succeeded()) {
+            generator.writeNumberField("status", HTTP_BAD_REQUEST);
+            generator.writeStringField("error", "invalid-transfer");
+            generator.writeStringField("details", moneyTransferOr.error().error());
+        } else if (transferOr.succeeded()) {
+            generator.writeNumberField("status", HTTP_CREATED);
+            generator.writeStringField("transaction-id", moneyTransferOr.value().transactionId().asString());
+        } else {
+            generator.writeNumberField("status", HTTP_BAD_REQUEST);
+            generator.writeStringField("transaction-id", moneyTransferOr.value().transactionId().asString());
+            generator.writeStringField("error", "transfer-failed");
+            generator.writeStringField("details", transferOr.error().error());
         }
+        generator.writeEndObject();
+    }
 
-        Status<Failure, AccountId> accountDstId;
+    /**
+     * @param params query parameters: {@code limit} (bounded), {@code after-sequence} (the cursor)
+     *               and {@code order}, {@code asc} by default or {@code desc} for the most recent first
+     */
+    Status<Failure, HistoryPage> toHistoryPage(Function<String, String> params) {
+        int limit;
         try {
-            accountDstId = AccountId.accountId(content.getString("destination-id"));
+            String limitStr = params.apply("limit");
+            limit = limitStr == null ? HistoryPage.DEFAULT_LIMIT : Integer.parseInt(limitStr);
         } catch (Exception e) {
-            return Status.failure("invalid-destination-id-format");
+            return INVALID_LIMIT.status();
         }
+        if (limit <= 0 || limit > HistoryPage.MAX_LIMIT)
+            return INVALID_LIMIT.status();
 
-
-        Status<Failure, BigDecimal> amountOr;
+        long afterSequence;
         try {
-            amountOr = parseAmount(content.getString("amount"));
+            String afterSequenceStr = params.apply("after-sequence");
+            afterSequence = afterSequenceStr == null ? 0 : Long.parseLong(afterSequenceStr);
         } catch (Exception e) {
-            return Status.failure("invalid-amount-format");
+            return INVALID_AFTER_SEQUENCE.status();
         }
+        if (afterSequence < 0)
+            return INVALID_AFTER_SEQUENCE.status();
 
-        return MoneyTransfer.moneyTransfert(transactionIdOr, accountSrcId, accountDstId, amountOr);
+        String order = params.apply("order");
+        if (order != null && !order.equals("asc") && !order.equals("desc"))
+            return INVALID_ORDER.status();
+        return Status.ok(new HistoryPage(limit, afterSequence, "desc".equals(order)));
     }
 
-    private Status<Failure, BigDecimal> parseAmount(String amount) {
-        if (amount == null || amount.trim().isEmpty())
-            return Status.failure("no-amount-provided");
+    void write(JsonGenerator generator, Transaction tx) throws IOException {
+        generator.writeStartObject();
+        writeFields(generator, tx);
+        generator.writeEndObject();
+    }
 
-        try {
-            return Status.ok(new BigDecimal(amount));
-        } catch (Exception e) {
-            return Status.failure("invalid-amount-format");
-        }
+    private void writeFields(JsonGenerator generator, Transaction tx) throws IOException {
+        generator.writeNumberField("sequence", tx.sequence());
+        generator.writeStringField("transaction-id", tx.transactionId().asString());
+        generator.writeStringField("status", tx.status().name());
+        generator.writeStringField("source-id", tx.moneyTransfer().source().asString());
+        generator.writeStringField("destination-id", tx.moneyTransfer().destination().asString());
+        generator.writeStringField("amount", tx.moneyTransfer().amount().toPlainString());
     }
 
-    JsonObject toDto(Transaction tx) {
-        return new JsonObject()
-                .put("transaction-id", tx.transactionId().asString())
-                .put("status", tx.status().name())
-                .put("source-id", tx.moneyTransfer().source().asString())
-                .put("destination-id", tx.moneyTransfer().destination().asString())
-                .put("amount", tx.moneyTransfer().amount().toPlainString());
+    /**
+     * Same fields as {@link #write(JsonGenerator, Transaction)}, along with the reason of a cancellation.
+     */
+    void writeTransfer(JsonGenerator generator, Transaction tx) throws IOException {
+        generator.writeStartObject();
+        writeFields(generator, tx);
+        if (tx.status() == TransactionStatus.Cancelled)
+            generator.writeStringField("cancel-reason", tx.cancelReason().name());
+        generator.writeEndObject();
+    }
+
+    /**
+     * Transactions are written as they are walked, none is collected. The next page cursor
+     * is only provided when more transactions may follow.
+     */
+    void write(JsonGenerator generator, Account account, HistoryPage page) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("account-id", account.accountId().asString());
+        generator.writeStringField("balance", account.balance().toPlainString());
+        generator.writeArrayFieldStart("transactions");
+        Iterator<Transaction> transactions = account.transactions(page.afterSequence(), page.newestFirst()).iterator();
+        Transaction last = null;
+        for (int i = 0; i < page.limit() && transactions.hasNext(); i++) {
+            last = transactions.next();
+            write(generator, last);
+        }
+        generator.writeEndArray();
+        if (last != null && transactions.hasNext())
+            generator.writeNumberField("next-after-sequence", last.sequence());
+        generator.writeEndObject();
     }
 
-    JsonObject toDto(Account account) {
+    JsonObject toDto(AccountSummary summary) {
         return new JsonObject()
-                .put("account-id", account.accountId().asString())
-                .put("balance", account.balance().toPlainString())
-                .put("transactions", account.transactions().map(this::toDto).collect(toList()));
+                .put("account-id", summary.accountId().asString())
+                .put("balance", summary.balance().toPlainString())
+                .put("last-sequence", summary.lastSequence())
+                .put("pending-count", summary.pendingCount())
+                .put("pending-debits", summary.pendingDebits().toPlainString())
+                .put("pending-credits", summary.pendingCredits().toPlainString())
+                .put("in-flight-count", summary.inFlightCount())
+                .put("in-flight-debits", summary.inFlightDebits().toPlainString());
     }
 }
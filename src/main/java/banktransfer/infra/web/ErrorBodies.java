@@ -0,0 +1,49 @@
+package banktransfer.infra.web;
+
+import banktransfer.core.Failure;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Error replies of the shared failures, encoded once: the constants are a closed set, so are their bodies.
+ * Buffers are duplicated when written, they can be shared between responses.
+ */
+class ErrorBodies {
+    private static final ConcurrentMap<Failure, Buffer> ERRORS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, ConcurrentMap<Failure, Buffer>> DETAILED_ERRORS = new ConcurrentHashMap<>();
+
+    private ErrorBodies() {
+    }
+
+    /**
+     * {@code {"error": <code>}}
+     */
+    static Buffer error(Failure failure) {
+        if (!failure.shared())
+            return encode(new JsonObject().put("error", failure.error()));
+        return ERRORS.computeIfAbsent(failure, f -> encode(new JsonObject().put("error", f.error())));
+    }
+
+    /**
+     * {@code {"error": <kind>, "details": <code>}}
+     */
+    static Buffer error(String kind, Failure details) {
+        if (!details.shared())
+            return encode(detailed(kind, details));
+        return DETAILED_ERRORS.computeIfAbsent(kind, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(details, f -> encode(detailed(kind, f)));
+    }
+
+    private static JsonObject detailed(String kind, Failure details) {
+        return new JsonObject()
+                .put("error", kind)
+                .put("details", details.error());
+    }
+
+    private static Buffer encode(JsonObject body) {
+        return body.toBuffer();
+    }
+}
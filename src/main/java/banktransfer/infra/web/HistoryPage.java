@@ -0,0 +1,32 @@
+package banktransfer.infra.web;
+
+/**
+ * Requested slice of an account history: at most {@code limit} transactions
+ * following the {@code afterSequence} cursor.
+ */
+class HistoryPage {
+    static final int DEFAULT_LIMIT = 100;
+    static final int MAX_LIMIT = 1000;
+
+    private final int limit;
+    private final long afterSequence;
+    private final boolean newestFirst;
+
+    HistoryPage(int limit, long afterSequence, boolean newestFirst) {
+        this.limit = limit;
+        this.afterSequence = afterSequence;
+        this.newestFirst = newestFirst;
+    }
+
+    int limit() {
+        return limit;
+    }
+
+    long afterSequence() {
+        return afterSequence;
+    }
+
+    boolean newestFirst() {
+        return newestFirst;
+    }
+}
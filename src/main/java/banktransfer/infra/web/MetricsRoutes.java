@@ -0,0 +1,23 @@
+package banktransfer.infra.web;
+
+import banktransfer.infra.metrics.Metrics;
+import io.vertx.ext.web.Router;
+
+import static java.net.HttpURLConnection.HTTP_OK;
+
+public class MetricsRoutes {
+    private static final String PROMETHEUS_TEXT = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final Metrics metrics;
+
+    public MetricsRoutes(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void init(Router router) {
+        router.get("/metrics").handler(rc -> rc.response()
+                .setStatusCode(HTTP_OK)
+                .putHeader("content-type", PROMETHEUS_TEXT)
+                .end(metrics.scrape()));
+    }
+}
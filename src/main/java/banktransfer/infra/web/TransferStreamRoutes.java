@@ -0,0 +1,321 @@
+package banktransfer.infra.web;
+
+import banktransfer.core.Failure;
+import banktransfer.core.Status;
+import banktransfer.core.account.Journal;
+import banktransfer.core.account.MoneyTransfer;
+import banktransfer.core.account.TransactionId;
+import banktransfer.infra.accounts.AccountsClient;
+import banktransfer.infra.metrics.Metrics;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.parsetools.RecordParser;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static banktransfer.infra.web.VertxTools.JSON_FACTORY;
+import static banktransfer.infra.web.VertxTools.runOnContext;
+import static java.net.HttpURLConnection.HTTP_OK;
+
+/**
+ * Transfers streamed as newline delimited json, one transfer per line, their results being streamed
+ * back the same way in the submission order.
+ * <p>
+ * The request body is never buffered as a whole: reading is paused while the response is not written
+ * as fast, while too many results wait for the journal, or while the propagation backlog exceeds
+ * {@code maxPendingTransactions}. A single connection can thus push any number of transfers with a
+ * bounded memory footprint.
+ * <p>
+ * Transfers read while the accounts are busy with the previous ones are sent as a single batch,
+ * one batch at a time per stream: they are applied in the stream order.
+ */
+public class TransferStreamRoutes {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TransferStreamRoutes.class);
+
+    public static final String PATH = "/transfers/stream";
+    public static final long DEFAULT_MAX_PENDING_TRANSACTIONS = 100_000;
+    private static final int MAX_LINE_SIZE_IN_BYTES = 4048;
+    private static final int MAX_UNFLUSHED_RESULTS_IN_BYTES = 64 * 1024;
+    private static final int MAX_BATCH_TRANSFERS = 1024;
+    private static final Failure ACCOUNTS_UNAVAILABLE = Failure.shared("accounts-unavailable");
+    private static final String RECORD_TOO_LONG_MESSAGE = "The current record is too long";
+    private static final String LINE_TOO_LONG = "line-too-long";
+    private static final String STREAM_FAILED = "stream-failed";
+    private static final long THROTTLE_CHECK_PERIOD_MS = 10;
+    private static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    private final Vertx vertx;
+    private final Converters converters;
+    private final AccountsClient accounts;
+    private final Journal journal;
+    private final Metrics metrics;
+    private final long maxPendingTransactions;
+
+    public TransferStreamRoutes(Vertx vertx,
+                                Converters converters,
+                                AccountsClient accounts,
+                                Journal journal,
+                                Metrics metrics,
+                                long maxPendingTransactions) {
+        this.vertx = vertx;
+        this.converters = converters;
+        this.accounts = accounts;
+        this.journal = journal;
+        this.metrics = metrics;
+        this.maxPendingTransactions = maxPendingTransactions;
+    }
+
+    /**
+     * Must not be preceded by a body handler: the body is read as it comes.
+     */
+    public void init(Router router) {
+        router.post(PATH).handler(rc -> new TransferStream(rc).start());
+    }
+
+    /**
+     * State of one streamed request, only accessed from its event loop.
+     */
+    private class TransferStream {
+        private final RoutingContext rc;
+        private final HttpServerResponse response;
+        private final Context context;
+        private final RecordParser parser;
+        // results not yet written, waiting for their transfers to be durable
+        private Buffer unflushed = Buffer.buffer();
+        private final OutputStream unflushedOutput = new OutputStream() {
+            @Override
+            public void write(int b) {
+                unflushed.appendByte((byte) b);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) {
+                unflushed.appendBytes(bytes, offset, length);
+            }
+        };
+        // transfers read while the previous batch is submitted, invalid ones included to keep their place
+        private List<Status<Failure, MoneyTransfer>> batch = new ArrayList<>();
+        private boolean submitting;
+        // propagation backlog, as of the last submitted batch or throttling check
+        private long pendingTransactions;
+        private boolean flushing;
+        private boolean ended;
+        private boolean closed;
+        private boolean paused;
+        private long lines;
+
+        TransferStream(RoutingContext rc) {
+            this.rc = rc;
+            this.response = rc.response();
+            this.context = vertx.getOrCreateContext();
+            this.parser = RecordParser.newDelimited("\n", rc.request()).maxRecordSize(MAX_LINE_SIZE_IN_BYTES);
+        }
+
+        void start() {
+            LOGGER.info("About to transfer money from a stream...");
+            response.setChunked(true)
+                    .setStatusCode(HTTP_OK)
+                    .putHeader("content-type", APPLICATION_NDJSON);
+            response.drainHandler(v -> throttle());
+            response.closeHandler(v -> closed = true);
+            parser.exceptionHandler(this::failed);
+            parser.endHandler(v -> {
+                ended = true;
+                flush();
+            });
+            parser.handler(this::submit);
+            // nothing is read before the propagation backlog is known
+            parser.pause();
+            paused = true;
+            recheck();
+        }
+
+        private void submit(Buffer line) {
+            if (isBlank(line))
+                return;
+            lines++;
+            Status<Failure, MoneyTransfer> moneyTransferOr = converters.toMoneyTransfer(line);
+            if (!moneyTransferOr.succeeded())
+                metrics.failed(moneyTransferOr.error());
+            batch.add(moneyTransferOr);
+            if (!submitting)
+                submitBatch();
+            throttle();
+        }
+
+        private void submitBatch() {
+            List<Status<Failure, MoneyTransfer>> moneyTransferOrs = batch;
+            batch = new ArrayList<>();
+            List<MoneyTransfer> moneyTransfers = new ArrayList<>(moneyTransferOrs.size());
+            for (Status<Failure, MoneyTransfer> moneyTransferOr : moneyTransferOrs) {
+                if (moneyTransferOr.succeeded())
+                    moneyTransfers.add(moneyTransferOr.value());
+            }
+            submitting = true;
+            accounts.transferAll(moneyTransfers, ar -> {
+                submitting = false;
+                if (ar.failed()) {
+                    LOGGER.error("Accounts unavailable, stream of transfers aborted", ar.cause());
+                    metrics.failed(ACCOUNTS_UNAVAILABLE);
+                    stop(new JsonObject().put("error", ACCOUNTS_UNAVAILABLE.error()));
+                    return;
+                }
+                write(moneyTransferOrs, ar.result());
+            });
+            accounts.pendingTransactions(ar -> {
+                if (ar.succeeded())
+                    pendingTransactions = ar.result();
+            });
+        }
+
+        private void write(List<Status<Failure, MoneyTransfer>> moneyTransferOrs, List<Status<Failure, TransactionId>> transferOrs) {
+            if (closed)
+                return;
+            // the same results as /transfers, one per line rather than as an array
+            try (JsonGenerator generator = JSON_FACTORY.createGenerator(unflushedOutput)) {
+                generator.setRootValueSeparator(null);
+                Iterator<Status<Failure, TransactionId>> transferOrIt = transferOrs.iterator();
+                for (Status<Failure, MoneyTransfer> moneyTransferOr : moneyTransferOrs) {
+                    Status<Failure, TransactionId> transferOr = null;
+                    if (moneyTransferOr.succeeded()) {
+                        transferOr = transferOrIt.next();
+                        if (!transferOr.succeeded())
+                            metrics.failed(transferOr.error());
+                    }
+                    converters.writeTransferResult(generator, moneyTransferOr, transferOr);
+                    generator.writeRaw('\n');
+                }
+            } catch (IOException e) {
+                // written in memory, not expected
+                throw new UncheckedIOException(e);
+            }
+            if (!batch.isEmpty())
+                submitBatch();
+            flush();
+            throttle();
+        }
+
+        /**
+         * Results are written once durable, by group: the ones appended while waiting for
+         * the journal are part of the next group.
+         */
+        private void flush() {
+            if (flushing || closed)
+                return;
+            if (unflushed.length() == 0) {
+                if (ended && !submitting && batch.isEmpty())
+                    response.end();
+                return;
+            }
+            Buffer results = unflushed;
+            unflushed = Buffer.buffer();
+            flushing = true;
+            journal.whenDurable(
+                    () -> runOnContext(context, () -> flushed(results)),
+                    failure -> runOnContext(context, () -> notDurable(failure)));
+        }
+
+        private void flushed(Buffer results) {
+            flushing = false;
+            if (closed)
+                return;
+            response.write(results);
+            flush();
+            throttle();
+        }
+
+        private void throttle() {
+            if (closed || ended)
+                return;
+            boolean saturated = response.writeQueueFull()
+                    || unflushed.length() > MAX_UNFLUSHED_RESULTS_IN_BYTES
+                    || batch.size() >= MAX_BATCH_TRANSFERS
+                    || pendingTransactions > maxPendingTransactions;
+            if (saturated && !paused) {
+                paused = true;
+                parser.pause();
+                vertx.setTimer(THROTTLE_CHECK_PERIOD_MS, id -> recheck());
+            } else if (!saturated && paused) {
+                paused = false;
+                parser.resume();
+            }
+        }
+
+        private void recheck() {
+            // the backlog is drained by the propagation, nothing notifies its decrease
+            if (!paused)
+                return;
+            accounts.pendingTransactions(ar -> {
+                if (ar.succeeded())
+                    pendingTransactions = ar.result();
+                throttle();
+                if (paused && !closed)
+                    vertx.setTimer(THROTTLE_CHECK_PERIOD_MS, id -> recheck());
+            });
+        }
+
+        private void notDurable(Failure failure) {
+            flushing = false;
+            metrics.failed(failure);
+            stop(new JsonObject()
+                    .put("error", "not-durable")
+                    .put("details", failure.error()));
+        }
+
+        /**
+         * The parser reports its own errors along with the ones of the request it reads.
+         */
+        private void failed(Throwable cause) {
+            if (isLineTooLong(cause)) {
+                LOGGER.warn("Stream of transfers aborted after {} line(s): {}", lines, cause.getMessage());
+                metrics.failed(LINE_TOO_LONG);
+                stop(new JsonObject()
+                        .put("error", LINE_TOO_LONG)
+                        .put("max-size", MAX_LINE_SIZE_IN_BYTES));
+                return;
+            }
+            LOGGER.error("Stream of transfers aborted after {} line(s)", lines, cause);
+            metrics.failed(STREAM_FAILED);
+            stop(new JsonObject().put("error", STREAM_FAILED));
+        }
+
+        /**
+         * Results not durable yet are dropped, the client only knows the outcome of the transfers
+         * reported so far; the connection is closed as the request may not have been fully read.
+         */
+        private void stop(JsonObject error) {
+            if (closed)
+                return;
+            closed = true;
+            parser.pause();
+            response.end(error.toBuffer().appendByte((byte) '\n'));
+            rc.request().connection().close();
+        }
+    }
+
+    private static boolean isLineTooLong(Throwable cause) {
+        // RecordParser tells a record over its maximum size by this message only
+        return cause instanceof IllegalStateException && RECORD_TOO_LONG_MESSAGE.equals(cause.getMessage());
+    }
+
+    private static boolean isBlank(Buffer line) {
+        for (int i = 0; i < line.length(); i++) {
+            if (!Character.isWhitespace(line.getByte(i)))
+                return false;
+        }
+        return true;
+    }
+}
@@ -1,13 +1,73 @@
 package banktransfer.infra.web;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.RoutingContext;
 
+import java.io.IOException;
+
 public class VertxTools {
+    static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    /**
+     * Writes its content into a generator, the enclosing object included.
+     */
+    public interface JsonWriter {
+        void write(JsonGenerator generator) throws IOException;
+    }
+
     public static void writeJson(RoutingContext rc, int httpStatus, JsonObject data) {
         rc.response()
                 .setStatusCode(httpStatus)
                 .putHeader("content-type", "application/json")
                 .end(data.toString());
     }
+
+    /**
+     * Body already encoded, see {@link ErrorBodies}.
+     */
+    public static void writeJson(RoutingContext rc, int httpStatus, Buffer body) {
+        rc.response()
+                .setStatusCode(httpStatus)
+                .putHeader("content-type", "application/json")
+                .end(body);
+    }
+
+    /**
+     * Serialize straight into the response buffers, without building the json tree nor
+     * its string: meant for the large replies.
+     */
+    public static void writeJson(RoutingContext rc, int httpStatus, JsonWriter writer) {
+        HttpServerResponse response = rc.response()
+                .setStatusCode(httpStatus)
+                .putHeader("content-type", "application/json");
+        ChunkedBufferOutput output = new ChunkedBufferOutput(response);
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(output)) {
+            writer.write(generator);
+        } catch (IOException | RuntimeException e) {
+            output.discard();
+            if (output.chunked())
+                response.close();
+            else
+                rc.fail(e);
+            return;
+        }
+        output.end();
+    }
+
+    /**
+     * Run the action on the given context, at once when already on it.
+     */
+    public static void runOnContext(Context context, Runnable action) {
+        if (Vertx.currentContext() == context)
+            action.run();
+        else
+            context.runOnContext(v -> action.run());
+    }
 }
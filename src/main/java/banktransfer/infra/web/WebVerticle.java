@@ -1,7 +1,10 @@
 package banktransfer.infra.web;
 
-import banktransfer.core.account.Accounts;
-import banktransfer.core.account.MoneyTransferService;
+import banktransfer.core.account.Journal;
+import banktransfer.infra.accounts.AccountsClient;
+import banktransfer.infra.accounts.AccountsVerticle;
+import banktransfer.infra.cluster.ClusterTopology;
+import banktransfer.infra.metrics.Metrics;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.Promise;
 import io.vertx.core.json.JsonObject;
@@ -10,30 +13,40 @@ import io.vertx.ext.web.handler.BodyHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import static banktransfer.infra.Shared.sharedInMemoryAccounts;
-import static banktransfer.infra.Shared.sharedMoneyTransferService;
+import static banktransfer.infra.Shared.sharedJournal;
+import static banktransfer.infra.Shared.sharedMetrics;
 
+/**
+ * HTTP endpoints. Accounts are reached through the event bus ({@link AccountsClient}), an
+ * {@link AccountsVerticle} must thus be deployed on the same vertx instance.
+ * <p>
+ * Within a cluster ({@link ClusterTopology#CLUSTER_NODES}), requests about the accounts of other
+ * nodes are forwarded to them, see {@link ClusterRoutes}.
+ */
 public class WebVerticle extends AbstractVerticle {
     public static final String HTTP_PORT = "http.port";
+    public static final String STREAM_MAX_PENDING_TRANSACTIONS = "http.stream.max-pending-transactions";
     private static final long MAX_BODY_SIZE_IN_BYTES = 4048;
+    private static final long MAX_BATCH_BODY_SIZE_IN_BYTES = 8 * 1024 * 1024;
     private static final String APPLICATION_JSON = "application/json";
     //
     private static final Logger LOGGER = LoggerFactory.getLogger(WebVerticle.class);
 
-    private final Accounts accounts;
-    private final MoneyTransferService moneyTransferService;
+    private final Journal journal;
+    private final Metrics metrics;
 
     // default ctor is used by vertx
     public WebVerticle() {
-        // whereas this is an ugly approach, this overcomes the usage of multiple WebVerticle
-        // by ensuring all of them use the same underlying Repository, even concurrently...
-        // next step would be to use a dedicated Verticle for the Repository
-        this(sharedInMemoryAccounts(), sharedMoneyTransferService());
+        this(sharedJournal(), sharedMetrics());
     }
 
-    public WebVerticle(Accounts accounts, MoneyTransferService moneyTransferService) {
-        this.accounts = accounts;
-        this.moneyTransferService = moneyTransferService;
+    public WebVerticle(Journal journal) {
+        this(journal, new Metrics());
+    }
+
+    public WebVerticle(Journal journal, Metrics metrics) {
+        this.journal = journal;
+        this.metrics = metrics;
     }
 
     @Override
@@ -43,8 +56,16 @@ public class WebVerticle extends AbstractVerticle {
         Integer port = config.getInteger("http.port", 8080);
 
         Router router = initRouter();
+        AccountsClient accounts = new AccountsClient(vertx.eventBus());
         new PingRoutes(vertx).init(router);
-        new AccountRoutes(vertx, new Converters(), accounts, moneyTransferService).init(router);
+        new MetricsRoutes(metrics).init(router);
+        // registered first: requests about accounts of other nodes never reach the local routes
+        ClusterTopology topology = ClusterTopology.fromConfig(config);
+        if (topology != null)
+            new ClusterRoutes(vertx, new Converters(), accounts, topology).init(router);
+        new AccountRoutes(vertx, new Converters(), accounts, journal, metrics).init(router);
+        new TransferStreamRoutes(vertx, new Converters(), accounts, journal, metrics,
+                config.getLong(STREAM_MAX_PENDING_TRANSACTIONS, TransferStreamRoutes.DEFAULT_MAX_PENDING_TRANSACTIONS)).init(router);
         vertx.createHttpServer()
                 .requestHandler(router)
                 .listen(port, result -> {
@@ -61,7 +82,16 @@ public class WebVerticle extends AbstractVerticle {
         Router router = Router.router(vertx);
         router.route().consumes(APPLICATION_JSON);
         router.route().produces(APPLICATION_JSON);
-        router.route().handler(BodyHandler.create().setBodyLimit(MAX_BODY_SIZE_IN_BYTES));
+        // batches get their own limit: registered first, the body is then already read for the generic handler
+        router.post("/transfers").handler(BodyHandler.create().setBodyLimit(MAX_BATCH_BODY_SIZE_IN_BYTES));
+        BodyHandler bodyHandler = BodyHandler.create().setBodyLimit(MAX_BODY_SIZE_IN_BYTES);
+        router.route().handler(rc -> {
+            // streamed transfers are read as they come, by their own handler
+            if (TransferStreamRoutes.PATH.equals(rc.normalisedPath()))
+                rc.next();
+            else
+                bodyHandler.handle(rc);
+        });
         router.errorHandler(500, rc -> {
             LOGGER.error("Oops", rc.failure());
         });
@@ -7,9 +7,28 @@ import static org.assertj.core.api.Assertions.assertThat;
 public class MainTest {
 
     @Test
+    @SuppressWarnings("deprecation")
     public void public_constants_should_remain_unchanged() {
         assertThat(Main.HTTP_PORT).isEqualTo("http.port");
         assertThat(Main.HTTP_INSTANCES).isEqualTo("http.instances");
+        assertThat(Main.ACCOUNTS_INSTANCES).isEqualTo("accounts.instances");
         assertThat(Main.PROPAGATE_PERIOD_MS).isEqualTo("propagate-transactions.period-ms");
+        assertThat(Main.PROPAGATE_MAX_DELAY_MS).isEqualTo("propagate-transactions.max-delay-ms");
+        assertThat(Main.PROPAGATE_BATCH_ACCOUNTS).isEqualTo("propagate-transactions.batch-accounts");
+        assertThat(Main.PROPAGATE_SHARDS).isEqualTo("propagate-transactions.shards");
+        assertThat(Main.RETENTION_KEEP_LAST).isEqualTo("retention.keep-last");
+        assertThat(Main.RETENTION_KEEP_FOR_MS).isEqualTo("retention.keep-for-ms");
+        assertThat(Main.RETENTION_IDEMPOTENCY_WINDOW).isEqualTo("retention.idempotency-window");
+        assertThat(Main.JOURNAL_DIR).isEqualTo("journal.dir");
+        assertThat(Main.JOURNAL_BATCH_SIZE).isEqualTo("journal.batch-size");
+        assertThat(Main.JOURNAL_FSYNC_INTERVAL_MS).isEqualTo("journal.fsync-interval-ms");
+        assertThat(Main.SNAPSHOT_PERIOD_MS).isEqualTo("snapshot.period-ms");
+        assertThat(Main.STREAM_MAX_PENDING_TRANSACTIONS).isEqualTo("http.stream.max-pending-transactions");
+        assertThat(Main.CLUSTER_NODES).isEqualTo("cluster.nodes");
+        assertThat(Main.CLUSTER_NODE).isEqualTo("cluster.node");
+        assertThat(Main.ACCOUNTS_STRIPED).isEqualTo("accounts.striped");
+        assertThat(Main.IDEMPOTENCY_RECENT_IDS).isEqualTo("idempotency.recent-ids");
+        assertThat(Main.IDEMPOTENCY_AGED_GENERATIONS).isEqualTo("idempotency.aged-generations");
+        assertThat(Main.IDEMPOTENCY_BLOOM_BITS_PER_ID).isEqualTo("idempotency.bloom-bits-per-id");
     }
 }
\ No newline at end of file
@@ -0,0 +1,83 @@
+package banktransfer.bench;
+
+import banktransfer.core.Money;
+import banktransfer.core.account.AccountId;
+import banktransfer.core.account.MoneyTransfer;
+import banktransfer.core.account.MoneyTransferSteps;
+import banktransfer.core.account.RetentionPolicy;
+import banktransfer.core.account.TransactionId;
+import banktransfer.core.account.inmemory.AccountListener;
+import banktransfer.core.account.inmemory.InMemoryAccount;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static banktransfer.core.account.AccountId.accountId;
+
+/**
+ * Withdrawal then debit of a single transaction on an account whose history already holds
+ * {@code history} terminal transactions. The history is kept at that length by the retention
+ * policy, the measurement thus includes the compaction of the oldest transaction.
+ * Each thread works on its own account.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ApplyTransactionsBenchmark {
+
+    private static final Money AMOUNT = Money.of(1);
+
+    @Param({"10", "10000", "1000000"})
+    public int history;
+
+    private AccountId source;
+    private AccountId destination;
+    private InMemoryAccount account;
+    private MoneyTransferSteps acknowledgeAtOnce;
+    private long counter;
+
+    @Setup(Level.Trial)
+    public void fillHistory() {
+        source = accountId("src").value();
+        destination = accountId("dst").value();
+        account = new InMemoryAccount(source, Money.of(1_000_000_000), Collections.emptyList(),
+                AccountListener.NONE, RetentionPolicy.keepLast(history));
+        // the destination acknowledges as soon as credited, the transaction is then terminal
+        acknowledgeAtOnce = new MoneyTransferSteps() {
+            @Override
+            public void credit(MoneyTransfer moneyTransfer) {
+                account.acknowledges(moneyTransfer);
+            }
+
+            @Override
+            public void acknowledge(MoneyTransfer moneyTransfer) {
+            }
+        };
+        for (int i = 0; i < history; i++) {
+            applyTransaction();
+        }
+    }
+
+    @Benchmark
+    public Money applyTransaction() {
+        TransactionId transactionId = TransactionId.transactionId("tx" + (counter++)).value();
+        account.withdraws(new MoneyTransfer(transactionId, source, destination, AMOUNT));
+        account.applyTransactions(acknowledgeAtOnce);
+        return account.balance();
+    }
+}
@@ -0,0 +1,41 @@
+package banktransfer.bench;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Precomputed account indices following a Zipf distribution, so that picking an account
+ * costs an array read and does not show up in the measurements.
+ * A skew of {@code 0} is uniform, the higher the skew the hotter the first accounts.
+ */
+final class HotAccounts {
+
+    static final int SAMPLES = 1 << 16;
+
+    private HotAccounts() {
+    }
+
+    static int[] sample(int nbAccounts, double skew, long seed) {
+        double[] cumulative = new double[nbAccounts];
+        double sum = 0;
+        for (int i = 0; i < nbAccounts; i++) {
+            sum += 1.0d / Math.pow(i + 1, skew);
+            cumulative[i] = sum;
+        }
+        Random random = new Random(seed);
+        int[] indices = new int[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            indices[i] = Math.min(nbAccounts - 1, index < 0 ? -index - 1 : index);
+        }
+        return indices;
+    }
+
+    /**
+     * Destination drawn from the same distribution, but never the source itself.
+     */
+    static int other(int[] indices, int cursor, int source, int nbAccounts) {
+        int destination = indices[cursor & (SAMPLES - 1)];
+        return destination != source ? destination : (source + 1) % nbAccounts;
+    }
+}
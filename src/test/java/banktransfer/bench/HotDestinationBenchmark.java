@@ -0,0 +1,131 @@
+package banktransfer.bench;
+
+import banktransfer.core.Money;
+import banktransfer.core.account.AccountId;
+import banktransfer.core.account.DefaultMoneyTransferService;
+import banktransfer.core.account.MoneyTransfer;
+import banktransfer.core.account.RetentionPolicy;
+import banktransfer.core.account.SequenceAccountIdGenerator;
+import banktransfer.core.account.TransactionId;
+import banktransfer.core.account.inmemory.InMemoryAccounts;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static banktransfer.core.Email.email;
+import static banktransfer.core.Status.ok;
+import static banktransfer.core.account.NewAccount.newAccount;
+
+/**
+ * Customers paying merchants: sources are uniform over {@code customers}, destinations follow
+ * a Zipf distribution of {@code skew} over {@code merchants} (see {@link HotAccounts}), the
+ * {@code striped} ones taking their credits in per core cells.
+ * <p>
+ * Each thread acts as a propagation shard: it submits a batch then runs the debit, credit and
+ * acknowledge passes of its own partitions, credits to a merchant thus coming from every shard.
+ * Threads are set from the command line ({@code -t}, or {@code -Djmh.threads} through the
+ * {@code jmh} maven profile).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class HotDestinationBenchmark {
+
+    private static final int BATCH_SIZE = 256;
+    private static final int CUSTOMERS = 100_000;
+    private static final Money AMOUNT = Money.of(1);
+
+    @Param({"100"})
+    public int merchants;
+
+    @Param({"1.1", "2"})
+    public double skew;
+
+    @Param({"false", "true"})
+    public boolean striped;
+
+    private final AtomicInteger threads = new AtomicInteger();
+    private int shards;
+    private int[] indices;
+    private AccountId[] customerIds;
+    private AccountId[] merchantIds;
+    private DefaultMoneyTransferService moneyTransferService;
+
+    @Setup(Level.Trial)
+    public void sample(BenchmarkParams params) {
+        shards = params.getThreads();
+        indices = HotAccounts.sample(merchants, skew, 17L);
+    }
+
+    @Setup(Level.Iteration)
+    public void createAccounts() {
+        InMemoryAccounts inMemoryAccounts = new InMemoryAccounts(
+                new SequenceAccountIdGenerator(),
+                InMemoryAccounts.DEFAULT_PARTITIONS,
+                RetentionPolicy.keepLast(16));
+        customerIds = new AccountId[CUSTOMERS];
+        for (int i = 0; i < CUSTOMERS; i++) {
+            customerIds[i] = inMemoryAccounts.add(newAccount(email("c" + i + "@w.com"), ok(Money.of(1_000_000_000))).value()).value();
+        }
+        merchantIds = new AccountId[merchants];
+        for (int i = 0; i < merchants; i++) {
+            merchantIds[i] = inMemoryAccounts.add(newAccount(email("m" + i + "@w.com"), ok(Money.ZERO)).value()).value();
+            if (striped)
+                inMemoryAccounts.stripeCredits(merchantIds[i]);
+        }
+        moneyTransferService = new DefaultMoneyTransferService(inMemoryAccounts);
+        // gives the cells their limits
+        moneyTransferService.propagateTransactions();
+    }
+
+    @State(Scope.Thread)
+    public static class Shard {
+        private int shard;
+        private String prefix;
+        private int cursor;
+        private long counter;
+
+        @Setup(Level.Trial)
+        public void setup(HotDestinationBenchmark benchmark) {
+            shard = benchmark.threads.getAndIncrement();
+            prefix = "t" + shard + "-";
+            cursor = shard * 7919;
+        }
+
+        MoneyTransfer next(HotDestinationBenchmark benchmark) {
+            int source = (int) ((counter * 0x9E3779B97F4A7C15L >>> 33) % CUSTOMERS);
+            int destination = benchmark.indices[cursor++ & (HotAccounts.SAMPLES - 1)];
+            TransactionId transactionId = TransactionId.transactionId(prefix + (counter++)).value();
+            return new MoneyTransfer(transactionId, benchmark.customerIds[source], benchmark.merchantIds[destination], AMOUNT);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void payAndPropagate(Shard shard) {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            moneyTransferService.transfer(shard.next(this));
+        }
+        // debit, credit then acknowledge: leftovers are picked up by the next invocation
+        moneyTransferService.propagateTransactions(shard.shard, shards);
+        moneyTransferService.propagateTransactions(shard.shard, shards);
+        moneyTransferService.propagateTransactions(shard.shard, shards);
+    }
+}
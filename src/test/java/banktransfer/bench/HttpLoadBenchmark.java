@@ -0,0 +1,319 @@
+package banktransfer.bench;
+
+import banktransfer.infra.MainVerticle;
+import banktransfer.infra.TransactionPropagationVerticle;
+import banktransfer.infra.web.WebVerticle;
+import ch.qos.logback.classic.Level;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.HttpResponse;
+import io.vertx.ext.web.client.WebClient;
+import io.vertx.ext.web.client.WebClientOptions;
+import org.HdrHistogram.Histogram;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * End to end load over HTTP: starts a {@link MainVerticle} per configuration (number of HTTP
+ * verticles, propagation max delay and arrival rate), creates the accounts through
+ * {@code POST /account}, then sends a mix of {@code POST /transfer} and {@code GET /account/:id}.
+ * <p>
+ * Requests are sent at a fixed arrival rate whatever the server pace (open loop), and latencies
+ * are measured from the time a request was meant to be sent: a slow response delays the
+ * following requests, which are accounted for their waiting time (no coordinated omission).
+ * One transfer out of {@code ack-sample} is then tracked, by polling {@code GET /transfer/:id} every
+ * {@code poll-ms}, to measure the time from its {@code 201} to its {@code Acknowledged} status.
+ * <p>
+ * Usage (arguments are optional):
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt) \
+ *      banktransfer.bench.HttpLoadBenchmark &lt;duration-s=10&gt; &lt;rates=1000,4000&gt; \
+ *      &lt;http-instances=1,2,4&gt; &lt;propagation-max-delays-ms=1,10,100&gt; &lt;accounts=1000&gt; \
+ *      &lt;read-ratio=0.2&gt; &lt;ack-sample=100&gt; &lt;poll-ms=5&gt; &lt;connections=64&gt;
+ * </pre>
+ * The server runs in the same JVM as the client, sharing its processors: run it on a host at least
+ * as large as the production one. Accounts are kept in memory only (no journal), and every
+ * configuration adds its own accounts to the shared repository.
+ */
+public class HttpLoadBenchmark {
+
+    private static final String AMOUNT = "1";
+    private static final String INITIAL_BALANCE = "1000000";
+    private static final long DRAIN_TIMEOUT_MS = 60_000;
+
+    private final Vertx vertx;
+    private final WebClient client;
+    private final int nbAccounts;
+    private final double readRatio;
+    private final int ackSample;
+    private final long pollMs;
+    private int nbRuns;
+
+    private HttpLoadBenchmark(int nbAccounts, double readRatio, int ackSample, long pollMs, int connections) {
+        this.vertx = Vertx.vertx();
+        this.client = WebClient.create(vertx, new WebClientOptions()
+                .setMaxPoolSize(connections)
+                .setKeepAlive(true));
+        this.nbAccounts = nbAccounts;
+        this.readRatio = readRatio;
+        this.ackSample = ackSample;
+        this.pollMs = pollMs;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int durationSeconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int[] rates = parseInts(args.length > 1 ? args[1] : "1000,4000");
+        int[] httpInstances = parseInts(args.length > 2 ? args[2] : "1,2,4");
+        int[] propagationMaxDelays = parseInts(args.length > 3 ? args[3] : "1,10,100");
+        int nbAccounts = args.length > 4 ? Integer.parseInt(args[4]) : 1000;
+        double readRatio = args.length > 5 ? Double.parseDouble(args[5]) : 0.2d;
+        int ackSample = args.length > 6 ? Integer.parseInt(args[6]) : 100;
+        long pollMs = args.length > 7 ? Long.parseLong(args[7]) : 5;
+        int connections = args.length > 8 ? Integer.parseInt(args[8]) : 64;
+
+        // one log line per request would be the bottleneck
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger("banktransfer")).setLevel(Level.WARN);
+
+        System.out.printf("%ds per run, %d accounts, %.0f%% reads, 1 transfer out of %d tracked until acknowledged, %d processors%n",
+                durationSeconds, nbAccounts, readRatio * 100, ackSample, Runtime.getRuntime().availableProcessors());
+        System.out.printf("latencies in ms: p50 / p99 / p99.9%n");
+        System.out.printf("%5s %9s %7s %9s %24s %24s %24s %24s %7s%n",
+                "http", "max delay", "rate", "req/s", "POST /account", "POST /transfer", "GET /account", "201 to Acknowledged", "errors");
+
+        HttpLoadBenchmark benchmark = new HttpLoadBenchmark(nbAccounts, readRatio, ackSample, pollMs, connections);
+        try {
+            // warm up both client and server code paths, not reported
+            benchmark.run(httpInstances[0], propagationMaxDelays[0], rates[0], durationSeconds, false);
+            for (int instances : httpInstances) {
+                for (int maxDelay : propagationMaxDelays) {
+                    for (int rate : rates) {
+                        benchmark.run(instances, maxDelay, rate, durationSeconds, true);
+                    }
+                }
+            }
+        } finally {
+            benchmark.close();
+        }
+    }
+
+    private void run(int httpInstances, int propagationMaxDelayMs, int rate, int durationSeconds, boolean report) throws Exception {
+        int port = freePort();
+        Vertx server = Vertx.vertx();
+        try {
+            CompletableFuture<String> deployed = new CompletableFuture<>();
+            server.deployVerticle(
+                    MainVerticle.class,
+                    new DeploymentOptions().setConfig(new JsonObject()
+                            .put(WebVerticle.HTTP_PORT, port)
+                            .put(MainVerticle.HTTP_INSTANCES, httpInstances)
+                            .put(TransactionPropagationVerticle.PROPAGATE_MAX_DELAY_MS, propagationMaxDelayMs)),
+                    ar -> {
+                        if (ar.succeeded())
+                            deployed.complete(ar.result());
+                        else
+                            deployed.completeExceptionally(ar.cause());
+                    });
+            deployed.get(30, TimeUnit.SECONDS);
+
+            Run run = new Run(port, "r" + (nbRuns++));
+            new OpenLoop(rate, nbAccounts, run::createAccount).run();
+            OpenLoop load = new OpenLoop(rate, (long) rate * durationSeconds, run::transferOrLookup);
+            long elapsedNanos = load.run();
+            run.awaitTracked();
+            if (!report)
+                return;
+
+            System.out.printf("%5d %9d %7d %9d %24s %24s %24s %24s %7d%n",
+                    httpInstances, propagationMaxDelayMs, rate,
+                    load.total * TimeUnit.SECONDS.toNanos(1) / elapsedNanos,
+                    percentiles(run.creations), percentiles(run.transfers), percentiles(run.lookups), percentiles(run.acknowledgements),
+                    run.errors);
+        } finally {
+            CompletableFuture<Void> closed = new CompletableFuture<>();
+            server.close(ar -> closed.complete(null));
+            closed.get(30, TimeUnit.SECONDS);
+        }
+    }
+
+    private void close() {
+        client.close();
+        vertx.close();
+    }
+
+    /**
+     * State of a single configuration run; only accessed from the client event loop, but the tracked count.
+     */
+    private class Run {
+        private final int port;
+        private final String prefix;
+        private final String[] accountIds = new String[nbAccounts];
+        private final Random random = new Random(17L);
+        private final Histogram creations = new Histogram(3);
+        private final Histogram transfers = new Histogram(3);
+        private final Histogram lookups = new Histogram(3);
+        private final Histogram acknowledgements = new Histogram(3);
+        private final AtomicInteger tracked = new AtomicInteger();
+        private long nbTransfers;
+        private long errors;
+
+        Run(int port, String prefix) {
+            this.port = port;
+            this.prefix = prefix;
+        }
+
+        void createAccount(long index, long intendedNanos, Runnable onComplete) {
+            client.post(port, "localhost", "/account")
+                    .sendJsonObject(new JsonObject()
+                            .put("email", prefix + "-" + index + "@load.test")
+                            .put("initial-balance", INITIAL_BALANCE), ar -> {
+                        record(creations, intendedNanos);
+                        if (succeeded(ar, 201))
+                            accountIds[(int) index] = ar.result().bodyAsJsonObject().getString("account-id");
+                        onComplete.run();
+                    });
+        }
+
+        void transferOrLookup(long index, long intendedNanos, Runnable onComplete) {
+            int source = random.nextInt(nbAccounts);
+            if (random.nextDouble() < readRatio) {
+                client.get(port, "localhost", "/account/" + accountIds[source])
+                        .send(ar -> {
+                            record(lookups, intendedNanos);
+                            succeeded(ar, 200);
+                            onComplete.run();
+                        });
+                return;
+            }
+            int destination = (source + 1 + random.nextInt(nbAccounts - 1)) % nbAccounts;
+            String transactionId = prefix + "-" + index;
+            boolean track = (nbTransfers++ % ackSample) == 0;
+            client.post(port, "localhost", "/transfer")
+                    .sendJsonObject(new JsonObject()
+                            .put("transaction-id", transactionId)
+                            .put("source-id", accountIds[source])
+                            .put("destination-id", accountIds[destination])
+                            .put("amount", AMOUNT), ar -> {
+                        record(transfers, intendedNanos);
+                        if (succeeded(ar, 201) && track) {
+                            tracked.incrementAndGet();
+                            pollUntilAcknowledged(transactionId, System.nanoTime());
+                        }
+                        onComplete.run();
+                    });
+        }
+
+        private void pollUntilAcknowledged(String transactionId, long createdNanos) {
+            client.get(port, "localhost", "/transfer/" + transactionId)
+                    .send(ar -> {
+                        String status = succeeded(ar, 200) ? ar.result().bodyAsJsonObject().getString("status") : "Unavailable";
+                        if ("Acknowledged".equals(status)) {
+                            record(acknowledgements, createdNanos);
+                            tracked.decrementAndGet();
+                        } else if ("Cancelled".equals(status) || "Unavailable".equals(status)) {
+                            errors++;
+                            tracked.decrementAndGet();
+                        } else {
+                            vertx.setTimer(pollMs, id -> pollUntilAcknowledged(transactionId, createdNanos));
+                        }
+                    });
+        }
+
+        private boolean succeeded(io.vertx.core.AsyncResult<HttpResponse<Buffer>> ar, int expectedStatus) {
+            if (ar.succeeded() && ar.result().statusCode() == expectedStatus)
+                return true;
+            errors++;
+            return false;
+        }
+
+        void awaitTracked() throws InterruptedException {
+            long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+            while (tracked.get() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    private static void record(Histogram histogram, long startNanos) {
+        histogram.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+    }
+
+    private static String percentiles(Histogram histogram) {
+        if (histogram.getTotalCount() == 0)
+            return "-";
+        return String.format("%.1f / %.1f / %.1f",
+                histogram.getValueAtPercentile(50) / 1000d,
+                histogram.getValueAtPercentile(99) / 1000d,
+                histogram.getValueAtPercentile(99.9) / 1000d);
+    }
+
+    private interface Request {
+        void send(long index, long intendedNanos, Runnable onComplete);
+    }
+
+    /**
+     * Sends {@code total} requests at {@code rate} per second, request {@code i} being due
+     * {@code i / rate} seconds after the start, whether the previous ones completed or not.
+     */
+    private class OpenLoop {
+        private final long intervalNanos;
+        private final long total;
+        private final Request request;
+        private final CompletableFuture<Long> done = new CompletableFuture<>();
+        private long startNanos;
+        private long sent;
+        private long completed;
+
+        OpenLoop(int rate, long total, Request request) {
+            this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+            this.total = total;
+            this.request = request;
+        }
+
+        /**
+         * @return nanoseconds elapsed until the last response
+         */
+        long run() throws Exception {
+            vertx.runOnContext(v -> {
+                startNanos = System.nanoTime();
+                vertx.setPeriodic(1, this::tick);
+            });
+            return done.get(DRAIN_TIMEOUT_MS + total * intervalNanos / 1_000_000, TimeUnit.MILLISECONDS);
+        }
+
+        private void tick(long timerId) {
+            // catch up on every request due since the previous tick, timers being late or not
+            long due = Math.min(total, (System.nanoTime() - startNanos) / intervalNanos + 1);
+            while (sent < due) {
+                request.send(sent, startNanos + sent * intervalNanos, this::completed);
+                sent++;
+            }
+            if (sent == total)
+                vertx.cancelTimer(timerId);
+        }
+
+        private void completed() {
+            if (++completed == total)
+                done.complete(System.nanoTime() - startNanos);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static int[] parseInts(String values) {
+        return Stream.of(values.split(",")).mapToInt(Integer::parseInt).toArray();
+    }
+}
@@ -0,0 +1,84 @@
+package banktransfer.bench;
+
+import banktransfer.core.account.TransactionId;
+import banktransfer.core.account.inmemory.IdempotencyStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Global idempotency check of a transfer submission, against a store whose aged generations are
+ * all full: {@code claimNew} is the common case, a new id probed against every Bloom filter,
+ * {@code claimReplay} an id of the oldest generation, found after a few filter hits.
+ * <p>
+ * The false positive rate measured by the store is printed after each iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class IdempotencyStoreBenchmark {
+
+    private static final int REPLAYS = 1 << 16;
+
+    @Param({"262144"})
+    public int recentIds;
+
+    @Param({"4"})
+    public int agedGenerations;
+
+    @Param({"6", "10", "14"})
+    public int bloomBitsPerId;
+
+    private IdempotencyStore store;
+    private TransactionId[] replays;
+    private long next;
+    private int cursor;
+
+    @Setup(Level.Iteration)
+    public void fill() {
+        store = new IdempotencyStore(recentIds, agedGenerations, bloomBitsPerId);
+        long filled = (long) recentIds * (agedGenerations + 1);
+        for (long i = 0; i < filled; i++)
+            store.claim(id(i));
+        // oldest generation, whichever stripe: the first ids claimed
+        replays = new TransactionId[REPLAYS];
+        for (int i = 0; i < REPLAYS; i++)
+            replays[i] = id(i * (recentIds / REPLAYS));
+        next = filled;
+    }
+
+    @TearDown(Level.Iteration)
+    public void report() {
+        System.out.printf("%n%d aged probes, %.3f%% false positives, %d ids remembered%n",
+                store.agedProbes(), 100 * store.falsePositiveRate(), store.remembered());
+    }
+
+    @Benchmark
+    public boolean claimNew() {
+        return store.claim(id(next++));
+    }
+
+    @Benchmark
+    public boolean claimReplay() {
+        return store.claim(replays[cursor++ & (REPLAYS - 1)]);
+    }
+
+    private static TransactionId id(long i) {
+        return TransactionId.transactionId("t" + i).value();
+    }
+}
@@ -0,0 +1,98 @@
+package banktransfer.bench;
+
+import banktransfer.core.Failure;
+import banktransfer.core.Money;
+import banktransfer.core.Status;
+import banktransfer.core.account.Account;
+import banktransfer.core.account.AccountId;
+import banktransfer.core.account.SequenceAccountIdGenerator;
+import banktransfer.core.account.inmemory.InMemoryAccounts;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static banktransfer.core.Email.email;
+import static banktransfer.core.Status.ok;
+import static banktransfer.core.account.NewAccount.newAccount;
+
+/**
+ * Account lookup and creation depending on the number of accounts already known: the cost of
+ * {@code findById} should stay flat, only suffering from cache misses once the index outgrows
+ * the CPU caches. Accounts are rebuilt before an iteration only once {@code add} made them grow.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+public class InMemoryAccountsBenchmark {
+
+    private static final Money INITIAL_BALANCE = Money.of(1_000);
+
+    @Param({"1000", "100000", "1000000"})
+    public int accounts;
+
+    @Param({"0", "1.1"})
+    public double skew;
+
+    private final AtomicInteger threads = new AtomicInteger();
+    private final AtomicInteger added = new AtomicInteger();
+    private int[] indices;
+    private AccountId[] accountIds;
+    private InMemoryAccounts inMemoryAccounts;
+
+    @Setup(Level.Trial)
+    public void sample() {
+        indices = HotAccounts.sample(accounts, skew, 17L);
+    }
+
+    @Setup(Level.Iteration)
+    public void createAccounts() {
+        if (inMemoryAccounts != null && added.getAndSet(0) == 0)
+            return;
+        inMemoryAccounts = new InMemoryAccounts(new SequenceAccountIdGenerator());
+        accountIds = new AccountId[accounts];
+        for (int i = 0; i < accounts; i++) {
+            accountIds[i] = inMemoryAccounts.add(newAccount(email("w" + i + "@w.com"), ok(INITIAL_BALANCE)).value()).value();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        private String domain;
+        private int cursor;
+        private long counter;
+
+        @Setup(Level.Trial)
+        public void setup(InMemoryAccountsBenchmark benchmark) {
+            int thread = benchmark.threads.getAndIncrement();
+            domain = "@t" + thread + ".com";
+            cursor = thread * 7919;
+        }
+    }
+
+    @Benchmark
+    public Optional<Account> findById(Client client) {
+        return inMemoryAccounts.findById(accountIds[indices[client.cursor++ & (HotAccounts.SAMPLES - 1)]]);
+    }
+
+    @Benchmark
+    public Status<Failure, AccountId> add(Client client) {
+        added.lazySet(1);
+        return inMemoryAccounts.add(newAccount(email("n" + (client.counter++) + client.domain), ok(INITIAL_BALANCE)).value());
+    }
+}
@@ -0,0 +1,124 @@
+package banktransfer.bench;
+
+import banktransfer.core.Money;
+import banktransfer.core.account.AccountId;
+import banktransfer.core.account.DefaultMoneyTransferService;
+import banktransfer.core.account.MoneyTransfer;
+import banktransfer.core.account.RetentionPolicy;
+import banktransfer.core.account.SequenceAccountIdGenerator;
+import banktransfer.core.account.TransactionId;
+import banktransfer.core.account.inmemory.InMemoryAccounts;
+import banktransfer.infra.journal.FileJournal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static banktransfer.core.Email.email;
+import static banktransfer.core.Status.ok;
+import static banktransfer.core.account.NewAccount.newAccount;
+
+/**
+ * Durable transfers per second depending on the journal group commit settings: each client
+ * thread submits a transfer then waits for it to be durable before submitting the next one,
+ * as the HTTP layer does before replying.
+ * <p>
+ * Usage (arguments are optional):
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt) \
+ *      banktransfer.bench.JournalBenchmark &lt;duration-s=5&gt; &lt;threads=64&gt; \
+ *      &lt;batch-sizes=1,16,64,256&gt; &lt;fsync-intervals-ms=0,1,5&gt; &lt;dir=target/journal-bench&gt;
+ * </pre>
+ */
+public class JournalBenchmark {
+
+    private static final int NB_ACCOUNTS = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        int durationSeconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int nbThreads = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int[] batchSizes = parseInts(args.length > 2 ? args[2] : "1,16,64,256");
+        int[] fsyncIntervals = parseInts(args.length > 3 ? args[3] : "0,1,5");
+        Path root = Paths.get(args.length > 4 ? args[4] : "target/journal-bench");
+
+        System.out.printf("%d client threads, %ds per run, journal in %s%n", nbThreads, durationSeconds, root.toAbsolutePath());
+        System.out.printf("%10s %12s %14s %14s%n", "batch", "fsync (ms)", "transfers/s", "latency (us)");
+        for (int fsyncInterval : fsyncIntervals) {
+            for (int batchSize : batchSizes) {
+                Path dir = root.resolve("b" + batchSize + "-i" + fsyncInterval);
+                delete(dir);
+                run(dir, batchSize, fsyncInterval, nbThreads, durationSeconds);
+                delete(dir);
+            }
+        }
+    }
+
+    private static void run(Path dir, int batchSize, int fsyncIntervalMs, int nbThreads, int durationSeconds) throws Exception {
+        try (FileJournal journal = new FileJournal(dir, FileJournal.DEFAULT_SEGMENT_SIZE, batchSize, fsyncIntervalMs)) {
+            journal.start();
+            InMemoryAccounts accounts = new InMemoryAccounts(new SequenceAccountIdGenerator(), InMemoryAccounts.DEFAULT_PARTITIONS, RetentionPolicy.keepAll(), journal);
+            DefaultMoneyTransferService moneyTransferService = new DefaultMoneyTransferService(accounts);
+            AccountId[] accountIds = new AccountId[NB_ACCOUNTS];
+            for (int i = 0; i < NB_ACCOUNTS; i++) {
+                accountIds[i] = accounts.add(newAccount(email("w" + i + "@w.com"), ok(Money.of(1_000_000))).value()).value();
+            }
+
+            AtomicLong done = new AtomicLong();
+            AtomicLong latencyNanos = new AtomicLong();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSeconds);
+            Thread[] clients = new Thread[nbThreads];
+            for (int t = 0; t < nbThreads; t++) {
+                int client = t;
+                clients[t] = new Thread(() -> {
+                    Random random = new Random(client);
+                    long n = 0;
+                    while (System.nanoTime() < deadline) {
+                        int src = random.nextInt(NB_ACCOUNTS);
+                        int dst = (src + 1 + random.nextInt(NB_ACCOUNTS - 1)) % NB_ACCOUNTS;
+                        TransactionId transactionId = TransactionId.transactionId(client + "-" + (n++)).value();
+                        long start = System.nanoTime();
+                        moneyTransferService.transfer(new MoneyTransfer(transactionId, accountIds[src], accountIds[dst], Money.of(1)));
+                        CountDownLatch durable = new CountDownLatch(1);
+                        journal.whenDurable(durable::countDown, failure -> durable.countDown());
+                        try {
+                            durable.await();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        latencyNanos.addAndGet(System.nanoTime() - start);
+                        done.incrementAndGet();
+                    }
+                });
+                clients[t].start();
+            }
+            for (Thread clientThread : clients) {
+                clientThread.join();
+            }
+            long transfers = done.get();
+            System.out.printf("%10d %12d %14d %14d%n",
+                    batchSize, fsyncIntervalMs,
+                    transfers / durationSeconds,
+                    transfers == 0 ? 0 : latencyNanos.get() / transfers / 1000);
+        }
+    }
+
+    private static int[] parseInts(String values) {
+        return Stream.of(values.split(",")).mapToInt(Integer::parseInt).toArray();
+    }
+
+    private static void delete(Path dir) throws IOException {
+        if (!Files.exists(dir))
+            return;
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package banktransfer.bench;
+
+import banktransfer.core.Failure;
+import banktransfer.core.Money;
+import banktransfer.core.Status;
+import banktransfer.core.account.AccountId;
+import banktransfer.core.account.DefaultMoneyTransferService;
+import banktransfer.core.account.MoneyTransfer;
+import banktransfer.core.account.RetentionPolicy;
+import banktransfer.core.account.SequenceAccountIdGenerator;
+import banktransfer.core.account.TransactionId;
+import banktransfer.core.account.inmemory.InMemoryAccounts;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static banktransfer.core.Email.email;
+import static banktransfer.core.Status.ok;
+import static banktransfer.core.account.NewAccount.newAccount;
+
+/**
+ * Submission and propagation of transfers, with {@code skew} making a few accounts hot
+ * (see {@link HotAccounts}). Threads are set from the command line ({@code -t}, or
+ * {@code -Djmh.threads} through the {@code jmh} maven profile).
+ * <p>
+ * {@code transfer} only submits, its pending transactions pile up until the next iteration
+ * rebuilds the accounts; {@code transferAndPropagate} submits a batch then runs the debit,
+ * credit and acknowledge passes, the history being kept short by the retention policy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class MoneyTransferServiceBenchmark {
+
+    private static final int BATCH_SIZE = 256;
+    private static final Money AMOUNT = Money.of(1);
+
+    @Param({"1000", "100000"})
+    public int accounts;
+
+    @Param({"0", "1.1"})
+    public double skew;
+
+    private final AtomicInteger threads = new AtomicInteger();
+    private int[] indices;
+    private AccountId[] accountIds;
+    private DefaultMoneyTransferService moneyTransferService;
+
+    @Setup(Level.Trial)
+    public void sample() {
+        indices = HotAccounts.sample(accounts, skew, 17L);
+    }
+
+    @Setup(Level.Iteration)
+    public void createAccounts() {
+        InMemoryAccounts inMemoryAccounts = new InMemoryAccounts(
+                new SequenceAccountIdGenerator(),
+                InMemoryAccounts.DEFAULT_PARTITIONS,
+                RetentionPolicy.keepLast(16));
+        accountIds = new AccountId[accounts];
+        for (int i = 0; i < accounts; i++) {
+            accountIds[i] = inMemoryAccounts.add(newAccount(email("w" + i + "@w.com"), ok(Money.of(1_000_000_000))).value()).value();
+        }
+        moneyTransferService = new DefaultMoneyTransferService(inMemoryAccounts);
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        private String prefix;
+        private int cursor;
+        private long counter;
+
+        @Setup(Level.Trial)
+        public void setup(MoneyTransferServiceBenchmark benchmark) {
+            int thread = benchmark.threads.getAndIncrement();
+            prefix = "t" + thread + "-";
+            cursor = thread * 7919;
+        }
+
+        MoneyTransfer next(MoneyTransferServiceBenchmark benchmark) {
+            int source = benchmark.indices[cursor++ & (HotAccounts.SAMPLES - 1)];
+            int destination = HotAccounts.other(benchmark.indices, cursor++, source, benchmark.accounts);
+            TransactionId transactionId = TransactionId.transactionId(prefix + (counter++)).value();
+            return new MoneyTransfer(transactionId, benchmark.accountIds[source], benchmark.accountIds[destination], AMOUNT);
+        }
+    }
+
+    @Benchmark
+    public Status<Failure, TransactionId> transfer(Client client) {
+        return moneyTransferService.transfer(client.next(this));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void transferAndPropagate(Client client) {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            moneyTransferService.transfer(client.next(this));
+        }
+        // debit, credit then acknowledge: leftovers are picked up by the next invocation
+        moneyTransferService.propagateTransactions();
+        moneyTransferService.propagateTransactions();
+        moneyTransferService.propagateTransactions();
+    }
+}
@@ -0,0 +1,124 @@
+package banktransfer.bench;
+
+import banktransfer.core.Money;
+import banktransfer.core.account.AccountId;
+import banktransfer.core.account.DefaultMoneyTransferService;
+import banktransfer.core.account.MoneyTransfer;
+import banktransfer.core.account.RetentionPolicy;
+import banktransfer.core.account.SequenceAccountIdGenerator;
+import banktransfer.core.account.TransactionId;
+import banktransfer.core.account.inmemory.InMemoryAccounts;
+import banktransfer.core.account.inmemory.JournalRecovery;
+import banktransfer.infra.journal.FileJournal;
+import banktransfer.infra.snapshot.FileSnapshots;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
+
+import static banktransfer.core.Email.email;
+import static banktransfer.core.Status.ok;
+import static banktransfer.core.account.NewAccount.newAccount;
+
+/**
+ * Startup time: load the latest snapshot then replay the journal tail.
+ * <p>
+ * Usage (arguments are optional):
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -Xmx4g -cp target/classes:target/test-classes:$(cat target/cp.txt) \
+ *      banktransfer.bench.RecoveryBenchmark &lt;accounts=1000000&gt; &lt;tail-transfers=100000&gt; \
+ *      &lt;parallelism=nb of processors&gt; &lt;dir=target/recovery-bench&gt;
+ * </pre>
+ * 10M accounts need about 12GB of heap.
+ */
+public class RecoveryBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int nbAccounts = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int nbTailTransfers = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        int parallelism = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        Path dir = Paths.get(args.length > 3 ? args[3] : "target/recovery-bench");
+        Path snapshotDir = dir.resolve("snapshots");
+        delete(dir);
+
+        System.out.printf("%d accounts, %d transfers in the journal tail, load parallelism %d%n", nbAccounts, nbTailTransfers, parallelism);
+        AccountId[] accountIds = new AccountId[nbAccounts];
+        long snapshotMs;
+        try (FileJournal journal = new FileJournal(dir, FileJournal.DEFAULT_SEGMENT_SIZE, 4096, 5)) {
+            journal.start();
+            InMemoryAccounts accounts = new InMemoryAccounts(new SequenceAccountIdGenerator(), InMemoryAccounts.DEFAULT_PARTITIONS, RetentionPolicy.keepAll(), journal);
+            DefaultMoneyTransferService moneyTransferService = new DefaultMoneyTransferService(accounts);
+            for (int i = 0; i < nbAccounts; i++) {
+                accountIds[i] = accounts.add(newAccount(email("w" + i + "@w.com"), ok(Money.of(1_000))).value()).value();
+            }
+            transfers(moneyTransferService, accountIds, "s", nbAccounts / 10);
+            awaitDurable(journal);
+
+            long start = System.currentTimeMillis();
+            long position = journal.appendedPosition();
+            FileSnapshots snapshots = new FileSnapshots(snapshotDir);
+            Path snapshot = snapshots.write(accounts, position);
+            snapshots.publish(snapshot);
+            journal.deleteSegmentsBefore(position);
+            snapshotMs = System.currentTimeMillis() - start;
+            System.out.printf("snapshot written in %dms (%d MB)%n", snapshotMs, Files.size(snapshots.latest().get()) / (1024 * 1024));
+
+            transfers(moneyTransferService, accountIds, "t", nbTailTransfers);
+            awaitDurable(journal);
+        }
+
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+
+        long start = System.currentTimeMillis();
+        InMemoryAccounts recovered = new InMemoryAccounts(new SequenceAccountIdGenerator());
+        JournalRecovery recovery = new JournalRecovery(recovered);
+        long position = new FileSnapshots(snapshotDir).load(recovered, parallelism);
+        long loaded = System.currentTimeMillis();
+        long records;
+        try (FileJournal journal = new FileJournal(dir)) {
+            records = journal.replay(recovery, position);
+            journal.start();
+            recovery.complete(new DefaultMoneyTransferService(recovered));
+        }
+        long end = System.currentTimeMillis();
+        System.out.printf("snapshot loaded in %dms, %d journal records replayed in %dms, recovered in %dms%n",
+                loaded - start, records, end - loaded, end - start);
+        delete(dir);
+    }
+
+    private static void transfers(DefaultMoneyTransferService moneyTransferService, AccountId[] accountIds, String prefix, int nbTransfers) {
+        Random random = new Random(17L);
+        for (int i = 0; i < nbTransfers; i++) {
+            int src = random.nextInt(accountIds.length);
+            int dst = (src + 1 + random.nextInt(accountIds.length - 1)) % accountIds.length;
+            TransactionId transactionId = TransactionId.transactionId(prefix + i).value();
+            moneyTransferService.transfer(new MoneyTransfer(transactionId, accountIds[src], accountIds[dst], Money.of(1)));
+            if (i % 10_000 == 0) {
+                moneyTransferService.propagateTransactions();
+            }
+        }
+        moneyTransferService.propagateTransactions();
+    }
+
+    private static void awaitDurable(FileJournal journal) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        journal.whenDurable(latch::countDown, failure -> latch.countDown());
+        latch.await();
+    }
+
+    private static void delete(Path dir) throws IOException {
+        if (!Files.exists(dir))
+            return;
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package banktransfer.bench;
+
+import banktransfer.core.Money;
+import banktransfer.core.account.AccountId;
+import banktransfer.core.account.DefaultMoneyTransferService;
+import banktransfer.core.account.MoneyTransfer;
+import banktransfer.core.account.RetentionPolicy;
+import banktransfer.core.account.SequenceAccountIdGenerator;
+import banktransfer.core.account.TransactionId;
+import banktransfer.core.account.inmemory.InMemoryAccounts;
+
+import java.util.Random;
+
+import static banktransfer.core.Email.email;
+import static banktransfer.core.Status.ok;
+import static banktransfer.core.account.NewAccount.newAccount;
+
+/**
+ * Heap used after a given number of transfers, with and without history retention.
+ * <p>
+ * Usage (arguments are optional):
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -Xmx4g -cp target/classes:target/test-classes:$(cat target/cp.txt) \
+ *      banktransfer.bench.RetentionHeapBenchmark &lt;transfers=100000000&gt; &lt;accounts=10000&gt; \
+ *      &lt;keep-last=16&gt; &lt;idempotency-window=256&gt;
+ * </pre>
+ * A negative {@code keep-last} keeps the whole history, whose heap grows until exhaustion.
+ */
+public class RetentionHeapBenchmark {
+
+    private static final int BATCH_SIZE = 100_000;
+    private static final int NB_REPORTS = 20;
+
+    public static void main(String[] args) {
+        long nbTransfers = args.length > 0 ? Long.parseLong(args[0]) : 100_000_000L;
+        int nbAccounts = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        long keepLast = args.length > 2 ? Long.parseLong(args[2]) : 16;
+        int idempotencyWindow = args.length > 3 ? Integer.parseInt(args[3]) : 256;
+
+        RetentionPolicy retentionPolicy = keepLast < 0
+                ? RetentionPolicy.keepAll()
+                : RetentionPolicy.keepLast(keepLast).rememberLast(idempotencyWindow);
+        InMemoryAccounts accounts = new InMemoryAccounts(new SequenceAccountIdGenerator(), InMemoryAccounts.DEFAULT_PARTITIONS, retentionPolicy);
+        DefaultMoneyTransferService moneyTransferService = new DefaultMoneyTransferService(accounts);
+
+        AccountId[] accountIds = new AccountId[nbAccounts];
+        Money initialBalance = Money.of(nbTransfers);
+        for (int i = 0; i < nbAccounts; i++) {
+            accountIds[i] = accounts.add(newAccount(email("w" + i + "@w.com"), ok(initialBalance)).value()).value();
+        }
+
+        System.out.printf("%s, %d accounts%n", retentionPolicy, nbAccounts);
+        System.out.printf("%15s %12s %12s%n", "transfers", "heap (MB)", "ns/transfer");
+        report(0, 0);
+
+        Random random = new Random(17L);
+        long reportEvery = Math.max(BATCH_SIZE, nbTransfers / NB_REPORTS);
+        long start = System.nanoTime();
+        for (long done = 0; done < nbTransfers; ) {
+            for (int i = 0; i < BATCH_SIZE && done < nbTransfers; i++, done++) {
+                int src = random.nextInt(nbAccounts);
+                int dst = (src + 1 + random.nextInt(nbAccounts - 1)) % nbAccounts;
+                TransactionId transactionId = TransactionId.transactionId(Long.toString(done, 36)).value();
+                moneyTransferService.transfer(new MoneyTransfer(transactionId, accountIds[src], accountIds[dst], Money.of(1)));
+            }
+            // debit, credit & acknowledge, then compact acknowledged transactions
+            moneyTransferService.propagateTransactions();
+            moneyTransferService.propagateTransactions();
+            if (done % reportEvery == 0 || done == nbTransfers) {
+                report(done, (System.nanoTime() - start) / done);
+            }
+        }
+    }
+
+    private static void report(long nbTransfers, long nanosPerTransfer) {
+        System.out.printf("%15d %12d %12d%n", nbTransfers, usedHeapAfterGC() / (1024 * 1024), nanosPerTransfer);
+    }
+
+    private static long usedHeapAfterGC() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,85 @@
+package banktransfer.core;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MoneyTest {
+
+    @Test
+    public void should_parse_plain_decimal_representation() {
+        assertThat(Money.parse("500").value().minorUnits()).isEqualTo(50000);
+        assertThat(Money.parse("500.56").value().minorUnits()).isEqualTo(50056);
+        assertThat(Money.parse("500.5").value().minorUnits()).isEqualTo(50050);
+        assertThat(Money.parse("-0.05").value().minorUnits()).isEqualTo(-5);
+        assertThat(Money.parse("+.5").value().minorUnits()).isEqualTo(50);
+        assertThat(Money.parse("7.").value().minorUnits()).isEqualTo(700);
+        assertThat(Money.parse("1.2300").value().minorUnits()).isEqualTo(123);
+    }
+
+    @Test
+    public void should_reject_invalid_format() {
+        for (String raw : new String[]{"", "-", ".", "500€", "1.2.3", "1e", "e3", "1e3.5", " 5", "0x10"}) {
+            Status<Failure, Money> status = Money.parse(raw);
+            assertThat(status.succeeded()).describedAs(raw).isFalse();
+            assertThat(status.error().error()).isEqualTo("invalid-amount-format");
+        }
+    }
+
+    @Test
+    public void should_parse_exponent_representation_resolving_to_minor_units() {
+        assertThat(Money.parse("1E+3").value().minorUnits()).isEqualTo(100000);
+        assertThat(Money.parse("1e3").value().minorUnits()).isEqualTo(100000);
+        assertThat(Money.parse("-1.5e-1").value().minorUnits()).isEqualTo(-15);
+        assertThat(Money.parse("125E-2").value().minorUnits()).isEqualTo(125);
+        assertThat(Money.parse("1E-3").error().error()).isEqualTo("invalid-amount-precision");
+        assertThat(Money.parse("1E-999999999").error().error()).isEqualTo("invalid-amount-precision");
+        assertThat(Money.parse("1E+999999999").error().error()).isEqualTo("amount-out-of-range");
+    }
+
+    @Test
+    public void should_reject_amount_finer_than_minor_unit() {
+        assertThat(Money.parse("0.001").error().error()).isEqualTo("invalid-amount-precision");
+        assertThat(Money.money(new BigDecimal("0.001")).error().error()).isEqualTo("invalid-amount-precision");
+    }
+
+    @Test
+    public void should_reject_amount_out_of_range() {
+        assertThat(Money.parse("92233720368547758.08").error().error()).isEqualTo("amount-out-of-range");
+        assertThat(Money.parse("100000000000000000").error().error()).isEqualTo("amount-out-of-range");
+        assertThat(Money.money(new BigDecimal("1e30")).error().error()).isEqualTo("amount-out-of-range");
+        assertThat(Money.parse("92233720368547758.07").value().minorUnits()).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void should_format_without_trailing_zeros() {
+        assertThat(Money.ofMinor(50000).toPlainString()).isEqualTo("500");
+        assertThat(Money.ofMinor(50050).toPlainString()).isEqualTo("500.5");
+        assertThat(Money.ofMinor(50056).toPlainString()).isEqualTo("500.56");
+        assertThat(Money.ofMinor(5).toPlainString()).isEqualTo("0.05");
+        assertThat(Money.ofMinor(-5).toPlainString()).isEqualTo("-0.05");
+        assertThat(Money.ofMinor(-150).toPlainString()).isEqualTo("-1.5");
+        assertThat(Money.ofMinor(Long.MIN_VALUE).toPlainString()).isEqualTo("-92233720368547758.08");
+    }
+
+    @Test
+    public void should_convert_from_and_to_big_decimal() {
+        assertThat(Money.money(new BigDecimal("500.5")).value()).isEqualTo(Money.ofMinor(50050));
+        assertThat(Money.ofMinor(50050).toBigDecimal()).isEqualByComparingTo("500.5");
+    }
+
+    @Test
+    public void should_ensure_consistency_with_equals_and_hashcode() {
+        assertThat(Money.of(5)).isEqualTo(Money.ofMinor(500));
+        assertThat(Money.of(5).hashCode()).isEqualTo(Money.ofMinor(500).hashCode());
+        assertThat(Money.of(5)).isNotEqualTo(Money.ofMinor(5));
+        assertThat(Money.of(5)).isGreaterThan(Money.of(4));
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void should_detect_overflow() {
+        Money.ofMinor(Long.MAX_VALUE).add(Money.ofMinor(1));
+    }
+}
@@ -32,6 +32,31 @@ public class StatusTest {
         ok.value();
     }
 
+    @Test
+    public void should_share_the_status_of_a_shared_failure() {
+        Failure shared = Failure.shared("status-test-shared");
+        Status<Failure, AnyThing> error = Status.error(shared);
+        assertThat(shared.shared()).isTrue();
+        assertThat(error).isSameAs(shared.status());
+        assertThat(error.error()).isSameAs(shared);
+    }
+
+    @Test
+    public void should_not_keep_the_status_of_another_failure() {
+        Failure failure = new Failure("status-test-not-shared");
+        assertThat(failure.shared()).isFalse();
+        assertThat(failure.status()).isNotSameAs(failure.status());
+        assertThat(Status.<AnyThing>failure("status-test-not-shared").error().error()).isEqualTo("status-test-not-shared");
+    }
+
+    @Test
+    public void should_wrap_a_value_when_ok() {
+        Money money = Money.of(12);
+        Status<Failure, Money> ok = Status.ok(money);
+        assertThat(ok.succeeded()).isTrue();
+        assertThat(ok.value()).isSameAs(money);
+    }
+
     public static class AnyThing {
     }
 
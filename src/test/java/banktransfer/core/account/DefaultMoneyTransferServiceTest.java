@@ -1,24 +1,30 @@
 package banktransfer.core.account;
 
 import banktransfer.core.Failure;
+import banktransfer.core.Money;
 import banktransfer.core.Status;
 import banktransfer.core.account.inmemory.InMemoryAccounts;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.Mockito;
 
-import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static banktransfer.core.Email.email;
 import static banktransfer.core.Status.ok;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 public class DefaultMoneyTransferServiceTest {
 
     private static final TransactionId TRANSACTION_ID = TransactionId.transactionId("w001").value();
-    private static final BigDecimal M_750 = BigDecimal.valueOf(750);
-    private static final BigDecimal M_500 = BigDecimal.valueOf(500);
-    private static final BigDecimal M_250 = BigDecimal.valueOf(250);
-    private static final BigDecimal M_050 = BigDecimal.valueOf(50);
+    private static final Money M_750 = Money.of(750);
+    private static final Money M_500 = Money.of(500);
+    private static final Money M_250 = Money.of(250);
+    private static final Money M_050 = Money.of(50);
 
     private MoneyTransferService moneyTransferService;
     //
@@ -37,7 +43,7 @@ public class DefaultMoneyTransferServiceTest {
         accountId3 = newAccount("puck@tyna.nog", M_500);
     }
 
-    private AccountId newAccount(String email, BigDecimal initialAmount) {
+    private AccountId newAccount(String email, Money initialAmount) {
         return accounts.add(NewAccount.newAccount(email(email), ok(initialAmount)).value()).value();
     }
 
@@ -101,5 +107,92 @@ public class DefaultMoneyTransferServiceTest {
         assertThat(transfer3.error().error()).isEqualTo("transaction-already-applied");
     }
 
+    @Test
+    public void should_only_propagate_transactions_of_the_shard_partitions() {
+        MoneyTransfer moneyTransfer = new MoneyTransfer(TRANSACTION_ID, accountId1, accountId2, M_250);
+        moneyTransferService.transfer(moneyTransfer);
+
+        int shards = 2;
+        int sourceShard = accounts.partitionOf(accountId1) % shards;
+        int otherShard = (sourceShard + 1) % shards;
+
+        moneyTransferService.propagateTransactions(otherShard, shards);
+        assertThat(accounts.findById(accountId1).get().balance()).describedAs("Not owned by shard").isEqualTo(M_500);
+
+        moneyTransferService.propagateTransactions(sourceShard, shards);
+        assertThat(accounts.findById(accountId1).get().balance()).describedAs("Debited by owner").isEqualTo(M_250);
+
+        moneyTransferService.propagateTransactions(0, shards);
+        moneyTransferService.propagateTransactions(1, shards);
+        assertThat(accounts.findById(accountId2).get().balance()).describedAs("Credited by owner").isEqualTo(M_750);
+    }
+
+    @Test
+    public void should_submit_a_batch_of_transfers_each_on_its_own() {
+        AccountId unknown = AccountId.accountId("x404").value();
+        List<Status<Failure, TransactionId>> results = moneyTransferService.transferAll(Arrays.asList(
+                new MoneyTransfer(TransactionId.transactionId("b1").value(), accountId1, accountId2, M_250),
+                new MoneyTransfer(TransactionId.transactionId("b2").value(), accountId2, accountId2, M_250),
+                new MoneyTransfer(TransactionId.transactionId("b3").value(), accountId1, unknown, M_250),
+                new MoneyTransfer(TransactionId.transactionId("b4").value(), unknown, accountId1, M_250),
+                new MoneyTransfer(TransactionId.transactionId("b5").value(), accountId3, accountId1, M_050),
+                new MoneyTransfer(TransactionId.transactionId("b1").value(), accountId1, accountId3, M_050)));
+
+        assertThat(results).hasSize(6);
+        assertThat(results.get(0).value()).isEqualTo(TransactionId.transactionId("b1").value());
+        assertThat(results.get(1).error().error()).isEqualTo("identical-src-dst");
+        assertThat(results.get(2).error().error()).isEqualTo("unknown-dst-account");
+        assertThat(results.get(3).error().error()).isEqualTo("unknown-src-account");
+        assertThat(results.get(4).value()).isEqualTo(TransactionId.transactionId("b5").value());
+        assertThat(results.get(5).error().error()).isEqualTo("transaction-already-applied");
 
+        moneyTransferService.propagateTransactions();
+        moneyTransferService.propagateTransactions();
+        assertThat(accounts.findById(accountId1).get().balance()).isEqualTo(M_250.add(M_050));
+        assertThat(accounts.findById(accountId2).get().balance()).isEqualTo(M_750);
+        assertThat(accounts.findById(accountId3).get().balance()).isEqualTo(M_500.subtract(M_050));
+    }
+
+    @Test
+    public void should_lookup_each_account_of_a_batch_once() {
+        Accounts spied = Mockito.spy(accounts);
+        List<MoneyTransfer> moneyTransfers = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            AccountId source = i % 2 == 0 ? accountId1 : accountId2;
+            moneyTransfers.add(new MoneyTransfer(TransactionId.transactionId("b" + i).value(), source, accountId3, Money.of(1)));
+        }
+
+        List<Status<Failure, TransactionId>> results = new DefaultMoneyTransferService(spied).transferAll(moneyTransfers);
+
+        assertThat(results).allMatch(Status::succeeded);
+        verify(spied, times(1)).findById(accountId1);
+        verify(spied, times(1)).findById(accountId2);
+        verify(spied, times(1)).findById(accountId3);
+    }
+
+    @Test
+    public void should_deliver_the_credits_and_acknowledgements_of_a_round_once_per_account() {
+        Accounts spied = Mockito.spy(accounts);
+        DefaultMoneyTransferService service = new DefaultMoneyTransferService(spied);
+        for (int i = 0; i < 10; i++) {
+            AccountId source = i % 2 == 0 ? accountId1 : accountId2;
+            service.transfer(new MoneyTransfer(TransactionId.transactionId("r" + i).value(), source, accountId3, Money.of(1)));
+        }
+
+        // debits: the credits of the whole round reach the destination at once
+        Mockito.clearInvocations(spied);
+        service.propagateTransactions();
+        verify(spied, times(1)).findById(accountId3);
+        assertThat(spied.findById(accountId3).get().summary().pendingCount()).isEqualTo(10);
+
+        // credits: one acknowledgement batch per source
+        Mockito.clearInvocations(spied);
+        service.propagateTransactions();
+        verify(spied, times(1)).findById(accountId1);
+        verify(spied, times(1)).findById(accountId2);
+
+        assertThat(accounts.findById(accountId3).get().balance()).isEqualTo(M_500.add(Money.of(10)));
+        assertThat(accounts.findById(accountId1).get().transactions())
+                .allMatch(t -> t.status() == TransactionStatus.Acknowledged);
+    }
 }
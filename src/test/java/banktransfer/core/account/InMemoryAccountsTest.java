@@ -2,6 +2,7 @@ package banktransfer.core.account;
 
 import banktransfer.core.Email;
 import banktransfer.core.Failure;
+import banktransfer.core.Money;
 import banktransfer.core.Status;
 import banktransfer.core.account.inmemory.InMemoryAccounts;
 import org.junit.Before;
@@ -60,4 +61,36 @@ public class InMemoryAccountsTest {
         assertThat(accountIdStatus2.error().error()).isEqualTo("email-already-inuse");
     }
 
-}
\ No newline at end of file
+    @Test
+    public void should_find_transfer_by_transaction_id_until_compacted() {
+        when(accountIdGenerator.newAccountId()).thenReturn(ACCOUNT_ID1, ACCOUNT_ID2);
+        accounts = new InMemoryAccounts(accountIdGenerator, InMemoryAccounts.DEFAULT_PARTITIONS, RetentionPolicy.keepLast(1));
+        MoneyTransferService moneyTransferService = new DefaultMoneyTransferService(accounts);
+        accounts.add(NewAccount.newAccount(Email.email("titania@tyrna.nog"), Status.ok(Money.of(100))).value());
+        accounts.add(NewAccount.newAccount(Email.email("oberon@tyrna.nog")).value());
+        TransactionId t1 = TransactionId.transactionId("t1").value();
+        TransactionId t2 = TransactionId.transactionId("t2").value();
+
+        moneyTransferService.transfer(new MoneyTransfer(t1, ACCOUNT_ID1, ACCOUNT_ID2, Money.of(10)));
+        moneyTransferService.transfer(new MoneyTransfer(t2, ACCOUNT_ID1, ACCOUNT_ID2, Money.of(1000)));
+        assertThat(accounts.findTransfer(t1).map(Transaction::status)).contains(TransactionStatus.Pending);
+        assertThat(accounts.findTransfer(t1).map(Transaction::moneyTransfer).map(MoneyTransfer::source)).contains(ACCOUNT_ID1);
+
+        for (int i = 0; i < 3; i++) {
+            moneyTransferService.propagateTransactions();
+        }
+        Transaction cancelled = accounts.findTransfer(t2).get();
+        assertThat(cancelled.status()).isEqualTo(TransactionStatus.Cancelled);
+        assertThat(cancelled.cancelReason()).isEqualTo(Transaction.CancelReason.InsufficientFund);
+        assertThat(accounts.findTransfer(t1).map(Transaction::status)).contains(TransactionStatus.Acknowledged);
+
+        // compacted on the next source account pass, beyond the single transaction kept
+        TransactionId t3 = TransactionId.transactionId("t3").value();
+        moneyTransferService.transfer(new MoneyTransfer(t3, ACCOUNT_ID1, ACCOUNT_ID2, Money.of(10)));
+        moneyTransferService.propagateTransactions();
+        assertThat(accounts.findTransfer(t1)).isEmpty();
+        assertThat(accounts.findTransfer(t2)).isEmpty();
+        assertThat(accounts.findTransfer(t3)).isPresent();
+        assertThat(accounts.findTransfer(TransactionId.transactionId("t4").value())).isEmpty();
+    }
+}
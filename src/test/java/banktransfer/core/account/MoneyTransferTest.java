@@ -1,9 +1,8 @@
 package banktransfer.core.account;
 
+import banktransfer.core.Money;
 import org.junit.Test;
 
-import java.math.BigDecimal;
-
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class MoneyTransferTest {
@@ -13,9 +12,9 @@ public class MoneyTransferTest {
     private static final AccountId ACCOUNT_ID1 = AccountId.accountId("a0001").value();
     private static final AccountId ACCOUNT_ID2 = AccountId.accountId("a0002").value();
     private static final AccountId ACCOUNT_ID3 = AccountId.accountId("a0003").value();
-    private static final BigDecimal M_100 = BigDecimal.valueOf(100);
-    private static final BigDecimal M_150 = BigDecimal.valueOf(150);
-    private static final BigDecimal M_350 = BigDecimal.valueOf(350);
+    private static final Money M_100 = Money.of(100);
+    private static final Money M_150 = Money.of(150);
+    private static final Money M_350 = Money.of(350);
 
     @Test
     public void should_ensure_consistency_with_equals_and_hashcode() {
@@ -0,0 +1,68 @@
+package banktransfer.core.account;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RetentionPolicyTest {
+
+    @Test
+    public void should_never_expire_when_keeping_all() {
+        RetentionPolicy policy = RetentionPolicy.keepAll();
+
+        assertThat(policy.compacts()).isFalse();
+        assertThat(policy.isExpired(transaction(1, 0), Long.MAX_VALUE)).isFalse();
+    }
+
+    @Test
+    public void should_expire_transactions_beyond_the_last_ones() {
+        RetentionPolicy policy = RetentionPolicy.keepLast(10);
+
+        assertThat(policy.compacts()).isTrue();
+        assertThat(policy.isExpired(transaction(11, 0), 20)).isFalse();
+        assertThat(policy.isExpired(transaction(10, 0), 20)).isTrue();
+        assertThat(policy.isExpired(transaction(1, 0), 20)).isTrue();
+    }
+
+    @Test
+    public void should_expire_transactions_older_than_duration() {
+        AtomicLong now = new AtomicLong(1000);
+        RetentionPolicy policy = RetentionPolicy.keepFor(100, now::get);
+
+        assertThat(policy.isExpired(transaction(1, 950), 1)).isFalse();
+        now.set(1050);
+        assertThat(policy.isExpired(transaction(1, 950), 1)).isTrue();
+    }
+
+    @Test
+    public void should_expire_transactions_beyond_the_last_ones_or_older_than_duration() {
+        RetentionPolicy policy = RetentionPolicy.keepLast(10).atMostFor(60_000);
+        long now = System.currentTimeMillis();
+
+        assertThat(policy.isExpired(transaction(10, now), 20)).isTrue();
+        assertThat(policy.isExpired(transaction(11, now - 120_000), 20)).isTrue();
+        assertThat(policy.isExpired(transaction(11, now), 20)).isFalse();
+    }
+
+    @Test
+    public void should_remember_all_compacted_ids_by_default() {
+        assertThat(RetentionPolicy.keepLast(10).idempotencyWindow()).isEqualTo(0);
+        assertThat(RetentionPolicy.keepLast(10).rememberLast(500).idempotencyWindow()).isEqualTo(500);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void should_reject_negative_count() {
+        RetentionPolicy.keepLast(-1);
+    }
+
+    private static Transaction transaction(long sequence, long createdAt) {
+        Transaction transaction = mock(Transaction.class);
+        when(transaction.sequence()).thenReturn(sequence);
+        when(transaction.createdAt()).thenReturn(createdAt);
+        return transaction;
+    }
+}
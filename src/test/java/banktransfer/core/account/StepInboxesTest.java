@@ -0,0 +1,46 @@
+package banktransfer.core.account;
+
+import banktransfer.core.Money;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+public class StepInboxesTest {
+
+    private static final AccountId MERCHANT = AccountId.accountId("merchant").value();
+    private static final AccountId TITANIA = AccountId.accountId("titania").value();
+    private static final AccountId OBERON = AccountId.accountId("oberon").value();
+
+    @Test
+    public void should_deliver_one_batch_per_counterparty_in_the_order_of_the_steps() {
+        MoneyTransfer t1 = transfer("t1", TITANIA, MERCHANT);
+        MoneyTransfer t2 = transfer("t2", OBERON, MERCHANT);
+        MoneyTransfer t3 = transfer("t3", TITANIA, MERCHANT);
+        MoneyTransfer t4 = transfer("t4", MERCHANT, OBERON);
+        MoneyTransferSteps steps = Mockito.mock(MoneyTransferSteps.class);
+        StepInboxes inboxes = new StepInboxes();
+
+        inboxes.credit(t1);
+        inboxes.credit(t2);
+        inboxes.credit(t3);
+        inboxes.acknowledge(t4);
+        inboxes.acknowledge(t1);
+        inboxes.deliver(steps);
+
+        verify(steps).creditAll(MERCHANT, Arrays.asList(t1, t2, t3));
+        verify(steps).acknowledgeAll(MERCHANT, Collections.singletonList(t4));
+        verify(steps).acknowledgeAll(TITANIA, Collections.singletonList(t1));
+        verifyNoMoreInteractions(steps);
+        assertThat(inboxes.isEmpty()).isTrue();
+    }
+
+    private static MoneyTransfer transfer(String transactionId, AccountId source, AccountId destination) {
+        return new MoneyTransfer(TransactionId.transactionId(transactionId).value(), source, destination, Money.of(1));
+    }
+}
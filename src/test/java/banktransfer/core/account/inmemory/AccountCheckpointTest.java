@@ -0,0 +1,84 @@
+package banktransfer.core.account.inmemory;
+
+import banktransfer.core.account.MoneyTransfer;
+import banktransfer.core.account.TransactionId;
+import banktransfer.core.account.TransactionStatus;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+public class AccountCheckpointTest {
+
+    @Test
+    public void should_remember_compacted_transactions() {
+        AccountCheckpoint checkpoint = new AccountCheckpoint(0);
+
+        checkpoint.record(transaction(3, "t003"));
+        checkpoint.record(transaction(7, "t007"));
+
+        assertThat(checkpoint.contains(transactionId("t003"))).isTrue();
+        assertThat(checkpoint.contains(transactionId("t007"))).isTrue();
+        assertThat(checkpoint.contains(transactionId("t004"))).isFalse();
+        assertThat(checkpoint.lastSequence()).isEqualTo(7);
+        assertThat(checkpoint.count()).isEqualTo(2);
+    }
+
+    @Test
+    public void should_forget_oldest_generation_when_bounded() {
+        AccountCheckpoint checkpoint = new AccountCheckpoint(10);
+
+        for (int i = 0; i < 30; i++)
+            checkpoint.record(transaction(i, "t" + i));
+
+        assertThat(checkpoint.contains(transactionId("t0"))).describedAs("Oldest generation dropped").isFalse();
+        assertThat(checkpoint.contains(transactionId("t9"))).isFalse();
+        assertThat(checkpoint.contains(transactionId("t10"))).isTrue();
+        assertThat(checkpoint.contains(transactionId("t29"))).isTrue();
+        assertThat(checkpoint.count()).isEqualTo(30);
+    }
+
+    @Test
+    public void should_find_each_recorded_transaction_while_recording_others() throws Exception {
+        AccountCheckpoint checkpoint = new AccountCheckpoint(0);
+        AtomicInteger recorded = new AtomicInteger();
+        AtomicInteger missed = new AtomicInteger();
+        Thread reader = new Thread(() -> {
+            while (recorded.get() < 100_000) {
+                int last = recorded.get() - 1;
+                if (last >= 0 && !checkpoint.contains(transactionId("t" + last)))
+                    missed.incrementAndGet();
+            }
+        });
+        reader.start();
+
+        // the set grows many times over, from 16 slots
+        for (int i = 0; i < 100_000; i++) {
+            checkpoint.record(AccountCheckpoint.fingerprint(transactionId("t" + i)), i);
+            recorded.set(i + 1);
+        }
+        reader.join();
+
+        assertThat(missed).hasValue(0);
+    }
+
+    @Test
+    public void should_provide_distinct_fingerprints_for_distinct_ids() {
+        assertThat(AccountCheckpoint.fingerprint(transactionId("Aa")))
+                .describedAs("Same String#hashCode")
+                .isNotEqualTo(AccountCheckpoint.fingerprint(transactionId("BB")));
+    }
+
+    private static TransactionId transactionId(String raw) {
+        return TransactionId.transactionId(raw).value();
+    }
+
+    private static InMemoryTransaction transaction(long sequence, String transactionId) {
+        MoneyTransfer moneyTransfer = Mockito.mock(MoneyTransfer.class);
+        when(moneyTransfer.transactionId()).thenReturn(transactionId(transactionId));
+        return new InMemoryTransaction(sequence, moneyTransfer, TransactionStatus.Acknowledged);
+    }
+}
@@ -1,17 +1,16 @@
 package banktransfer.core.account.inmemory;
 
+import banktransfer.core.Money;
 import banktransfer.core.account.*;
 import org.junit.Before;
 import org.junit.Test;
 
-import java.math.BigDecimal;
 import java.security.SecureRandom;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
@@ -34,16 +33,38 @@ public class ConcurrencyUsecaseTest {
 
     @Test
     public void concurrency_cases() throws InterruptedException {
+        ScheduledExecutorService scheduledExecutorService = Executors.newScheduledThreadPool(1);
+        scheduledExecutorService.scheduleAtFixedRate(moneyTransferService::propagateTransactions, 10, 10, TimeUnit.MILLISECONDS);
+        runConcurrencyCase(scheduledExecutorService, 0);
+    }
+
+    @Test
+    public void sharded_concurrency_cases() throws InterruptedException {
+        int shards = 3;
+        ScheduledExecutorService scheduledExecutorService = Executors.newScheduledThreadPool(shards);
+        IntStream.range(0, shards).forEach(shard -> scheduledExecutorService.scheduleAtFixedRate(
+                () -> moneyTransferService.propagateTransactions(shard, shards), 10, 10, TimeUnit.MILLISECONDS));
+        runConcurrencyCase(scheduledExecutorService, 0);
+    }
+
+    @Test
+    public void sharded_concurrency_cases_with_striped_credits() throws InterruptedException {
+        int shards = 3;
+        ScheduledExecutorService scheduledExecutorService = Executors.newScheduledThreadPool(shards);
+        IntStream.range(0, shards).forEach(shard -> scheduledExecutorService.scheduleAtFixedRate(
+                () -> moneyTransferService.propagateTransactions(shard, shards), 10, 10, TimeUnit.MILLISECONDS));
+        runConcurrencyCase(scheduledExecutorService, 5);
+    }
+
+    private void runConcurrencyCase(ScheduledExecutorService propagationExecutorService, int nbStriped) throws InterruptedException {
         SecureRandom random = new SecureRandom();
         int nbAccount = 50;
         List<AccountId> accountIds = fillWithRandomAccounts(random, nbAccount);
+        accountIds.subList(0, nbStriped).forEach(accounts::stripeCredits);
 
-        BigDecimal totalBefore = totalBalance(accounts);
+        Money totalBefore = totalBalance(accounts);
 
         ExecutorService executorService = Executors.newFixedThreadPool(4);
-        ScheduledExecutorService scheduledExecutorService = Executors.newScheduledThreadPool(1);
-
-        ScheduledFuture<?> scheduledFuture = scheduledExecutorService.scheduleAtFixedRate(moneyTransferService::propagateTransactions, 10, 10, TimeUnit.MILLISECONDS);
 
         int nbTransfers = 5000;
         for (int i = 0; i < nbTransfers; i++) {
@@ -52,7 +73,7 @@ public class ConcurrencyUsecaseTest {
                 AccountId id1 = accountIds.get(random.nextInt(nbAccount));
                 AccountId id2 = accountIds.get(random.nextInt(nbAccount));
                 TransactionId tid = TransactionId.transactionId("t" + j).value();
-                MoneyTransfer moneyTransfer = new MoneyTransfer(tid, id1, id2, BigDecimal.valueOf(random.nextInt(50)));
+                MoneyTransfer moneyTransfer = new MoneyTransfer(tid, id1, id2, Money.of(random.nextInt(50)));
                 moneyTransferService.transfer(moneyTransfer);
             });
         }
@@ -60,7 +81,8 @@ public class ConcurrencyUsecaseTest {
         // wait for all transfers
         executorService.shutdown();
         executorService.awaitTermination(10, TimeUnit.SECONDS);
-        scheduledFuture.cancel(true);
+        propagationExecutorService.shutdown();
+        propagationExecutorService.awaitTermination(10, TimeUnit.SECONDS);
 
         // make sure all transaction have been processed
         moneyTransferService.propagateTransactions(); // may generate credit
@@ -75,7 +97,7 @@ public class ConcurrencyUsecaseTest {
 //        });
 
         //
-        BigDecimal totalAfter = totalBalance(accounts);
+        Money totalAfter = totalBalance(accounts);
         assertThat(totalAfter).describedAs("No money should have been created...").isEqualTo(totalBefore);
 
         accounts.forEach(a -> assertTransactions(a));
@@ -90,7 +112,7 @@ public class ConcurrencyUsecaseTest {
                 .filter(t -> !ACCEPTED_STATUSES.contains(t.status()))).hasSize(0);
     }
 
-    private AccountId newAccount(String email, BigDecimal initialAmount) {
+    private AccountId newAccount(String email, Money initialAmount) {
         return accounts.add(NewAccount.newAccount(email(email), ok(initialAmount)).value()).value();
     }
 
@@ -98,15 +120,15 @@ public class ConcurrencyUsecaseTest {
         return IntStream.range(0, nbAccount)
                 .mapToObj(i -> {
                     String email = "w" + i + "@w.com";
-                    return newAccount(email, BigDecimal.valueOf(random.nextInt(500)));
+                    return newAccount(email, Money.of(random.nextInt(500)));
                 })
                 .collect(Collectors.toList());
     }
 
-    private static BigDecimal totalBalance(Accounts accounts) {
-        AtomicReference<BigDecimal> total = new AtomicReference<>(BigDecimal.ZERO);
+    private static Money totalBalance(Accounts accounts) {
+        AtomicReference<Money> total = new AtomicReference<>(Money.ZERO);
         accounts.forEach(a -> {
-            BigDecimal current = total.get();
+            Money current = total.get();
             total.set(current.add(a.balance()));
         });
         return total.get();
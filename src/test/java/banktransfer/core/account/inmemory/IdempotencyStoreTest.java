@@ -0,0 +1,79 @@
+package banktransfer.core.account.inmemory;
+
+import banktransfer.core.account.TransactionId;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class IdempotencyStoreTest {
+
+    @Test
+    public void should_reject_an_id_claimed_twice() {
+        IdempotencyStore store = new IdempotencyStore(1024, 2, 10);
+
+        assertThat(store.claim(id(1))).isTrue();
+        assertThat(store.claim(id(2))).isTrue();
+        assertThat(store.claim(id(1))).isFalse();
+        assertThat(store.contains(id(2))).isTrue();
+        assertThat(store.contains(id(3))).isFalse();
+        assertThat(store.remembered()).isEqualTo(2);
+    }
+
+    @Test
+    public void should_remember_aged_ids_then_forget_the_oldest_generations() {
+        // 64 stripes of 16 ids, 2 aged generations: between 2048 and 3072 ids remembered
+        IdempotencyStore store = new IdempotencyStore(1024, 2, 10);
+        for (int i = 0; i < 1_000; i++)
+            assertThat(store.claim(id(i))).isTrue();
+        assertThat(store.agedProbes()).describedAs("Some stripes aged").isPositive();
+
+        for (int i = 0; i < 1_000; i++)
+            assertThat(store.claim(id(i))).describedAs("id %d", i).isFalse();
+
+        for (int i = 2_000; i < 10_000; i++)
+            store.claim(id(i));
+        int forgotten = 0;
+        for (int i = 0; i < 1_000; i++) {
+            if (!store.contains(id(i)))
+                forgotten++;
+        }
+        assertThat(forgotten).isGreaterThan(900);
+        assertThat(store.remembered()).isBetween(2_048L, 3_072L);
+    }
+
+    @Test
+    public void should_not_reject_new_ids_passing_a_filter_and_measure_the_false_positive_rate() {
+        IdempotencyStore store = new IdempotencyStore(1 << 14, 4, 10);
+        for (int i = 0; i < 5 << 14; i++)
+            store.claim(id(i));
+
+        // the aged generations are full: each new id is probed against all of them
+        for (int i = 5 << 14; i < 10 << 14; i++)
+            assertThat(store.claim(id(i))).isTrue();
+
+        // 10 bits per id and 7 probes: about 0.8% in theory, filters being sized up to a power of two
+        assertThat(store.agedProbes()).isGreaterThan(4L * (5 << 14));
+        assertThat(store.falsePositives()).isPositive();
+        assertThat(store.falsePositiveRate()).isLessThan(0.01);
+    }
+
+    @Test
+    public void should_remember_nothing_when_disabled() {
+        assertThat(IdempotencyStore.NONE.claim(id(1))).isTrue();
+        assertThat(IdempotencyStore.NONE.claim(id(1))).isTrue();
+        assertThat(IdempotencyStore.NONE.remembered()).isZero();
+        assertThat(IdempotencyStore.maxBytes(0, 4, 10)).isZero();
+        assertThatThrownBy(() -> new IdempotencyStore(-1, 4, 10)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void should_bound_the_memory() {
+        // per stripe: 4096 ids, a 8192 slots set (64KB), then 4 x (32KB sorted + 8KB filter)
+        assertThat(IdempotencyStore.maxBytes(1 << 18, 4, 10)).isEqualTo(64L * (65_536 + 4 * (32_768 + 8_192)));
+    }
+
+    private static TransactionId id(int i) {
+        return TransactionId.transactionId("t" + i).value();
+    }
+}
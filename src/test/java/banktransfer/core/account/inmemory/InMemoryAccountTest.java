@@ -2,10 +2,13 @@ package banktransfer.core.account.inmemory;
 
 import banktransfer.WAT;
 import banktransfer.core.Failure;
+import banktransfer.core.Money;
 import banktransfer.core.Status;
 import banktransfer.core.account.AccountId;
+import banktransfer.core.account.AccountSummary;
 import banktransfer.core.account.MoneyTransfer;
 import banktransfer.core.account.MoneyTransferSteps;
+import banktransfer.core.account.RetentionPolicy;
 import banktransfer.core.account.Transaction;
 import banktransfer.core.account.TransactionId;
 import banktransfer.core.account.TransactionStatus;
@@ -13,12 +16,17 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
 
-import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
+import static banktransfer.core.Email.email;
 import static java.util.Collections.emptyList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 
@@ -26,9 +34,9 @@ public class InMemoryAccountTest {
     private static final TransactionId TRANSACTION_ID = TransactionId.transactionId("t0001").value();
     private static final AccountId ACCOUNT_ID1 = AccountId.accountId("a0001").value();
     private static final AccountId ACCOUNT_ID2 = AccountId.accountId("a0002").value();
-    private static final BigDecimal M_100 = BigDecimal.valueOf(100);
-    private static final BigDecimal M_150 = BigDecimal.valueOf(150);
-    private static final BigDecimal M_350 = BigDecimal.valueOf(350);
+    private static final Money M_100 = Money.of(100);
+    private static final Money M_150 = Money.of(150);
+    private static final Money M_350 = Money.of(350);
 
     private InMemoryAccount account1;
     private InMemoryAccount account2;
@@ -147,6 +155,272 @@ public class InMemoryAccountTest {
         verifyNoMoreInteractions(moneyTransferSteps);
     }
 
+    @Test
+    public void should_notify_listener_once_until_transactions_are_applied() {
+        AccountListener listener = mock(AccountListener.class);
+        Mockito.when(listener.transferClaimed(any())).thenReturn(true);
+        InMemoryAccount account = new InMemoryAccount(ACCOUNT_ID1, M_350, emptyList(), listener);
+        TransactionId transactionId2 = TransactionId.transactionId("t0002").value();
+        TransactionId transactionId3 = TransactionId.transactionId("t0003").value();
+
+        account.withdraws(new MoneyTransfer(TRANSACTION_ID, ACCOUNT_ID1, ACCOUNT_ID2, M_100));
+        account.credits(new MoneyTransfer(transactionId2, ACCOUNT_ID2, ACCOUNT_ID1, M_100));
+        verify(listener, times(1)).pendingTransactionsAvailable(account);
+
+        account.applyTransactions(mock(MoneyTransferSteps.class));
+        account.withdraws(new MoneyTransfer(transactionId3, ACCOUNT_ID1, ACCOUNT_ID2, M_100));
+        verify(listener, times(2)).pendingTransactionsAvailable(account);
+    }
+
+    @Test
+    public void should_retry_a_deferred_credit_without_further_transactions() {
+        List<InMemoryAccount> scheduled = new ArrayList<>();
+        InMemoryAccount account = new InMemoryAccount(ACCOUNT_ID1, Money.ofMinor(Long.MAX_VALUE - 100), emptyList(), scheduled::add);
+        MoneyTransferSteps steps = mock(MoneyTransferSteps.class);
+        MoneyTransfer credit = new MoneyTransfer(TRANSACTION_ID, ACCOUNT_ID2, ACCOUNT_ID1, Money.ofMinor(500));
+        MoneyTransfer debit = new MoneyTransfer(TransactionId.transactionId("t0002").value(), ACCOUNT_ID1, ACCOUNT_ID2, Money.ofMinor(1_000));
+        account.credits(credit);
+        account.withdraws(debit);
+        //
+        // the credit would overflow until the debit, applied after it, makes room
+        scheduled.clear();
+        account.applyTransactions(steps);
+        assertThat(findTransactionById(account, "t0001").status()).isEqualTo(TransactionStatus.Pending);
+        assertThat(account.oldestPendingCreatedAt()).isPresent();
+        assertThat(scheduled).containsExactly(account);
+        account.applyTransactions(steps);
+        //
+        assertThat(findTransactionById(account, "t0001").status()).isEqualTo(TransactionStatus.Credited);
+        assertThat(account.balance()).isEqualTo(Money.ofMinor(Long.MAX_VALUE - 600));
+        verify(steps).acknowledge(credit);
+    }
+
+    @Test
+    public void should_not_notify_listener_on_rejected_transaction() {
+        AccountListener listener = mock(AccountListener.class);
+        InMemoryAccount account = new InMemoryAccount(ACCOUNT_ID1, M_350, emptyList(), listener);
+
+        account.withdraws(new MoneyTransfer(TRANSACTION_ID, ACCOUNT_ID2, ACCOUNT_ID1, M_100));
+        verifyNoMoreInteractions(listener);
+    }
+
+    @Test
+    public void should_keep_transactions_ordered_by_sequence() {
+        MoneyTransferSteps moneyTransferSteps = mock(MoneyTransferSteps.class);
+        for (int i = 0; i < 20; i++) {
+            TransactionId transactionId = TransactionId.transactionId("t" + i).value();
+            if (i % 2 == 0)
+                account1.withdraws(new MoneyTransfer(transactionId, ACCOUNT_ID1, ACCOUNT_ID2, Money.of(1)));
+            else
+                account1.credits(new MoneyTransfer(transactionId, ACCOUNT_ID2, ACCOUNT_ID1, Money.of(1)));
+            if (i % 5 == 0)
+                account1.applyTransactions(moneyTransferSteps);
+        }
+
+        assertThat(account1.transactions()).extracting(Transaction::sequence).isSorted().hasSize(20);
+        assertThat(account1.transactions()).extracting(t -> t.transactionId().asString()).startsWith("t0", "t1", "t2");
+    }
+
+    @Test
+    public void should_walk_transactions_from_a_sequence_cursor() {
+        for (int i = 0; i < 10; i++) {
+            TransactionId transactionId = TransactionId.transactionId("t" + i).value();
+            account1.withdraws(new MoneyTransfer(transactionId, ACCOUNT_ID1, ACCOUNT_ID2, Money.of(1)));
+        }
+        long[] sequences = account1.transactions().mapToLong(Transaction::sequence).toArray();
+
+        assertThat(account1.transactions(0, false)).extracting(Transaction::sequence).isSorted().hasSize(10);
+        assertThat(account1.transactions(sequences[3], false).limit(2))
+                .extracting(t -> t.transactionId().asString()).containsExactly("t4", "t5");
+        assertThat(account1.transactions(0, true).limit(2))
+                .extracting(t -> t.transactionId().asString()).containsExactly("t9", "t8");
+        assertThat(account1.transactions(sequences[3], true))
+                .extracting(t -> t.transactionId().asString()).containsExactly("t2", "t1", "t0");
+        assertThat(account1.transactions(sequences[9], false)).isEmpty();
+    }
+
+    @Test
+    public void should_keep_summary_up_to_date_along_the_transfer() {
+        MoneyTransferSteps steps = new MoneyTransferSteps() {
+            @Override
+            public void credit(MoneyTransfer moneyTransfer) {
+                account2.credits(moneyTransfer);
+            }
+
+            @Override
+            public void acknowledge(MoneyTransfer moneyTransfer) {
+                account1.acknowledges(moneyTransfer);
+            }
+        };
+        account1.withdraws(new MoneyTransfer(TRANSACTION_ID, ACCOUNT_ID1, ACCOUNT_ID2, M_100));
+
+        AccountSummary submitted = account1.summary();
+        assertThat(submitted.pendingCount()).isEqualTo(1);
+        assertThat(submitted.pendingDebits()).isEqualTo(M_100);
+        assertThat(submitted.inFlightCount()).isEqualTo(0);
+
+        account1.applyTransactions(steps);
+        AccountSummary debited = account1.summary();
+        assertThat(debited.balance()).isEqualTo(Money.of(250));
+        assertThat(debited.pendingCount()).isEqualTo(0);
+        assertThat(debited.pendingDebits()).isEqualTo(Money.ZERO);
+        assertThat(debited.inFlightCount()).isEqualTo(1);
+        assertThat(debited.inFlightDebits()).isEqualTo(M_100);
+        assertThat(account2.summary().pendingCredits()).isEqualTo(M_100);
+
+        account2.applyTransactions(steps);
+        assertThat(account2.summary().pendingCredits()).isEqualTo(Money.ZERO);
+        assertThat(account2.summary().balance()).isEqualTo(Money.of(450));
+        AccountSummary acknowledged = account1.summary();
+        assertThat(acknowledged.inFlightCount()).isEqualTo(0);
+        assertThat(acknowledged.inFlightDebits()).isEqualTo(Money.ZERO);
+        assertThat(acknowledged.lastSequence()).isEqualTo(findTransactionById(account1, TRANSACTION_ID).sequence());
+    }
+
+    @Test
+    public void should_apply_pending_transactions_only_once() {
+        MoneyTransferSteps moneyTransferSteps = mock(MoneyTransferSteps.class);
+        MoneyTransfer moneyTransfer = new MoneyTransfer(TRANSACTION_ID, ACCOUNT_ID1, ACCOUNT_ID2, M_100);
+        account1.withdraws(moneyTransfer);
+
+        account1.applyTransactions(moneyTransferSteps);
+        account1.applyTransactions(moneyTransferSteps);
+
+        assertThat(account1.balance()).isEqualTo(M_350.subtract(M_100));
+        verify(moneyTransferSteps, times(1)).credit(moneyTransfer);
+    }
+
+    @Test
+    public void should_compact_terminal_transactions_beyond_retention() {
+        MoneyTransferSteps moneyTransferSteps = mock(MoneyTransferSteps.class);
+        InMemoryAccount account = new InMemoryAccount(ACCOUNT_ID1, M_350, emptyList(), AccountListener.NONE, RetentionPolicy.keepLast(3));
+        for (int i = 0; i < 10; i++) {
+            MoneyTransfer moneyTransfer = new MoneyTransfer(TransactionId.transactionId("t" + i).value(), ACCOUNT_ID1, ACCOUNT_ID2, Money.of(1));
+            account.withdraws(moneyTransfer);
+            account.applyTransactions(moneyTransferSteps);
+            account.acknowledges(moneyTransfer);
+        }
+        account.applyTransactions(moneyTransferSteps);
+
+        assertThat(account.balance()).isEqualTo(M_350.subtract(Money.of(10)));
+        assertThat(account.transactions()).extracting(t -> t.transactionId().asString()).containsExactly("t7", "t8", "t9");
+        assertThat(account.compactedCount()).isEqualTo(7);
+        assertThat(account.compactedSequence()).isEqualTo(findTransactionById(account, "t7").sequence() - 1);
+    }
+
+    @Test
+    public void should_reject_replay_of_a_compacted_transaction() {
+        MoneyTransferSteps moneyTransferSteps = mock(MoneyTransferSteps.class);
+        InMemoryAccount account = new InMemoryAccount(ACCOUNT_ID1, M_350, emptyList(), AccountListener.NONE, RetentionPolicy.keepLast(0));
+        MoneyTransfer moneyTransfer = new MoneyTransfer(TRANSACTION_ID, ACCOUNT_ID1, ACCOUNT_ID2, M_100);
+        account.withdraws(moneyTransfer);
+        account.applyTransactions(moneyTransferSteps);
+        account.acknowledges(moneyTransfer);
+        account.applyTransactions(moneyTransferSteps);
+        assertThat(account.transactions()).isEmpty();
+
+        Status<Failure, TransactionId> replay = account.withdraws(moneyTransfer);
+        assertThat(replay.succeeded()).isFalse();
+        assertThat(replay.error().error()).isEqualTo("transaction-already-applied");
+        assertThat(account.acknowledges(moneyTransfer).succeeded()).isTrue();
+        assertThat(account.transactions()).isEmpty();
+    }
+
+    @Test
+    public void should_not_compact_transactions_waiting_for_acknowledgement() {
+        MoneyTransferSteps moneyTransferSteps = mock(MoneyTransferSteps.class);
+        InMemoryAccount account = new InMemoryAccount(ACCOUNT_ID1, M_350, emptyList(), AccountListener.NONE, RetentionPolicy.keepLast(0));
+        account.withdraws(new MoneyTransfer(TRANSACTION_ID, ACCOUNT_ID1, ACCOUNT_ID2, M_100));
+        account.applyTransactions(moneyTransferSteps);
+        account.applyTransactions(moneyTransferSteps);
+
+        assertThat(account.transactions()).extracting(Transaction::status).containsExactly(TransactionStatus.Debited);
+        assertThat(account.compactedCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void should_credit_a_batch_in_order_skipping_the_transfers_already_applied() {
+        MoneyTransfer t1 = new MoneyTransfer(TransactionId.transactionId("t1").value(), ACCOUNT_ID2, ACCOUNT_ID1, M_100);
+        MoneyTransfer t2 = new MoneyTransfer(TransactionId.transactionId("t2").value(), ACCOUNT_ID2, ACCOUNT_ID1, M_150);
+        account1.credits(t1);
+        //
+        account1.creditsAll(Arrays.asList(t1, t2, t2), mock(MoneyTransferSteps.class));
+        //
+        AccountSummary summary = account1.summary();
+        assertThat(summary.pendingCount()).isEqualTo(2);
+        assertThat(summary.pendingCredits()).isEqualTo(M_100.add(M_150));
+        assertThat(findTransactionById(account1, "t1").sequence()).isLessThan(findTransactionById(account1, "t2").sequence());
+
+        account1.applyTransactions(mock(MoneyTransferSteps.class));
+        assertThat(account1.balance()).isEqualTo(M_350.add(M_100).add(M_150));
+    }
+
+    @Test
+    public void should_apply_and_acknowledge_striped_credits_as_they_are_delivered() {
+        MoneyTransfer t1 = new MoneyTransfer(TransactionId.transactionId("t1").value(), ACCOUNT_ID2, ACCOUNT_ID1, M_100);
+        MoneyTransfer t2 = new MoneyTransfer(TransactionId.transactionId("t2").value(), ACCOUNT_ID2, ACCOUNT_ID1, M_150);
+        MoneyTransferSteps steps = mock(MoneyTransferSteps.class);
+        account1.stripeCredits(4);
+        // cells get their limits on the first propagation
+        account1.applyTransactions(steps);
+        //
+        account1.creditsAll(Arrays.asList(t1, t2), steps);
+        //
+        assertThat(account1.balance()).isEqualTo(M_350.add(M_100).add(M_150));
+        assertThat(findTransactionById(account1, "t1").status()).isEqualTo(TransactionStatus.Credited);
+        assertThat(account1.summary().pendingCount()).isEqualTo(0);
+        verify(steps).acknowledge(t1);
+        verify(steps).acknowledge(t2);
+        AccountState state = account1.state(email("titania@tyrna.nog").value());
+        assertThat(state.balance()).isEqualTo(M_350.add(M_100).add(M_150));
+        assertThat(state.transactions()).isEmpty();
+
+        account1.applyTransactions(steps);
+        assertThat(account1.balance()).isEqualTo(M_350.add(M_100).add(M_150));
+        verifyNoMoreInteractions(steps);
+    }
+
+    @Test
+    public void should_leave_striped_credits_to_the_propagation_until_cells_get_limits() {
+        MoneyTransfer t1 = new MoneyTransfer(TransactionId.transactionId("t1").value(), ACCOUNT_ID2, ACCOUNT_ID1, M_100);
+        MoneyTransferSteps steps = mock(MoneyTransferSteps.class);
+        account1.stripeCredits(4);
+        //
+        account1.creditsAll(Collections.singletonList(t1), steps);
+        //
+        assertThat(account1.balance()).isEqualTo(M_350);
+        assertThat(account1.summary().pendingCount()).isEqualTo(1);
+        verifyNoMoreInteractions(steps);
+
+        account1.applyTransactions(steps);
+        assertThat(account1.balance()).isEqualTo(M_350.add(M_100));
+        verify(steps).acknowledge(t1);
+    }
+
+    @Test
+    public void should_debit_against_the_balance_and_the_striped_credits() {
+        MoneyTransfer credit = new MoneyTransfer(TransactionId.transactionId("t1").value(), ACCOUNT_ID2, ACCOUNT_ID1, M_100);
+        MoneyTransfer debit = new MoneyTransfer(TransactionId.transactionId("t2").value(), ACCOUNT_ID1, ACCOUNT_ID2, M_350.add(M_100));
+        MoneyTransferSteps steps = mock(MoneyTransferSteps.class);
+        account1.stripeCredits(4);
+        account1.applyTransactions(steps);
+        account1.creditsAll(Collections.singletonList(credit), steps);
+        //
+        account1.withdraws(debit);
+        account1.applyTransactions(steps);
+        //
+        assertThat(findTransactionById(account1, "t2").status()).isEqualTo(TransactionStatus.Debited);
+        assertThat(account1.balance()).isEqualTo(Money.of(0));
+        verify(steps).credit(debit);
+    }
+
+    private Transaction findTransactionById(InMemoryAccount account, String transactionId) {
+        return account.transactions()
+                .filter(t -> t.transactionId().asString().equals(transactionId))
+                .findFirst()
+                .orElseThrow(WAT::new);
+    }
+
     private Transaction findTransactionById(InMemoryAccount account, TransactionId transactionId) {
         Transaction tx = account.transactions().findFirst().orElseThrow(WAT::new);
         assertThat(tx.transactionId()).isEqualTo(transactionId);
@@ -2,23 +2,46 @@ package banktransfer.core.account.inmemory;
 
 import banktransfer.core.Email;
 import banktransfer.core.Failure;
+import banktransfer.core.Failures;
+import banktransfer.core.Money;
 import banktransfer.core.Status;
 import banktransfer.core.account.AccountId;
+import banktransfer.core.account.Account;
 import banktransfer.core.account.AccountIdGenerator;
+import banktransfer.core.account.DefaultMoneyTransferService;
+import banktransfer.core.account.Journal;
+import banktransfer.core.account.MoneyTransfer;
+import banktransfer.core.account.MoneyTransferSteps;
+import banktransfer.core.account.RetentionPolicy;
+import banktransfer.core.account.TransactionId;
+import banktransfer.core.account.SequenceAccountIdGenerator;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
 
-import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
 
 import static banktransfer.core.Status.ok;
+import static java.util.Collections.emptyList;
 import static banktransfer.core.account.NewAccount.newAccount;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class InMemoryAccountsTest {
 
-    private static final BigDecimal M_250 = BigDecimal.valueOf(250);
+    private static final Money M_250 = Money.of(250);
     private static final AccountId ACCOUNT_ID1 = AccountId.accountId("w001").value();
     private static final AccountId ACCOUNT_ID2 = AccountId.accountId("w002").value();
 
@@ -52,4 +75,163 @@ public class InMemoryAccountsTest {
         assertThat(status2.error().error()).isNotNull().isEqualTo("email-already-inuse");
     }
 
-}
\ No newline at end of file
+    @Test
+    public void should_find_added_account_by_id() {
+        when(accountIdGenerator.newAccountId()).thenReturn(ACCOUNT_ID1, ACCOUNT_ID2);
+        accounts.add(newAccount(Email.email("titania@tyrna.nog"), ok(M_250)).value());
+
+        assertThat(accounts.findById(ACCOUNT_ID1)).isPresent();
+        assertThat(accounts.findById(ACCOUNT_ID1).get().accountId()).isEqualTo(ACCOUNT_ID1);
+        assertThat(accounts.findById(ACCOUNT_ID2)).isEmpty();
+    }
+
+    @Test
+    public void should_find_each_of_many_accounts_by_id() {
+        accounts = new InMemoryAccounts(new SequenceAccountIdGenerator());
+        List<AccountId> created = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++)
+            created.add(accounts.add(newAccount(Email.email("w" + i + "@w.com"), ok(M_250)).value()).value());
+
+        created.forEach(id -> assertThat(accounts.findById(id).map(Account::accountId)).contains(id));
+        assertThat(accounts.findById(AccountId.accountId("unknown").value())).isEmpty();
+    }
+
+    @Test
+    public void should_refuse_any_change_the_journal_would_drop() {
+        Journal journal = mock(Journal.class);
+        accounts = new InMemoryAccounts(new SequenceAccountIdGenerator(), 4, RetentionPolicy.keepAll(), journal);
+        DefaultMoneyTransferService moneyTransferService = new DefaultMoneyTransferService(accounts);
+        AccountId source = accounts.add(newAccount(Email.email("titania@tyrna.nog"), ok(M_250)).value()).value();
+        AccountId destination = accounts.add(newAccount(Email.email("oberon@tyrna.nog"), ok(M_250)).value()).value();
+        MoneyTransfer submitted = new MoneyTransfer(TransactionId.transactionId("t001").value(), source, destination, M_250);
+        assertThat(moneyTransferService.transfer(submitted).succeeded()).isTrue();
+        //
+        when(journal.unavailable()).thenReturn(Failures.JOURNAL_CLOSED);
+        Status<Failure, TransactionId> refused = moneyTransferService.transfer(
+                new MoneyTransfer(TransactionId.transactionId("t002").value(), source, destination, M_250));
+        Status<Failure, AccountId> notCreated = accounts.add(newAccount(Email.email("puck@tyrna.nog"), ok(M_250)).value());
+        moneyTransferService.propagateTransactions();
+        moneyTransferService.propagateTransactions();
+        //
+        assertThat(refused.error().error()).isEqualTo("journal-closed");
+        assertThat(notCreated.error().error()).isEqualTo("journal-closed");
+        assertThat(accounts.findById(source).get().balance()).isEqualTo(M_250);
+        assertThat(accounts.findById(source).get().transactions()).hasSize(1);
+        verify(journal, never()).transactionUpdated(any(), anyLong(), any(), any());
+    }
+
+    @Test
+    public void should_not_index_account_rejected_for_its_email() {
+        when(accountIdGenerator.newAccountId()).thenReturn(ACCOUNT_ID1, ACCOUNT_ID2);
+        accounts.add(newAccount(Email.email("titania@tyrna.nog"), ok(M_250)).value());
+        accounts.add(newAccount(Email.email("titania@tyrna.nog"), ok(M_250)).value());
+
+        assertThat(accounts.findById(ACCOUNT_ID2)).isEmpty();
+    }
+
+    @Test
+    public void should_keep_id_index_consistent_with_emails_under_concurrent_add() throws InterruptedException {
+        accounts = new InMemoryAccounts(new SequenceAccountIdGenerator());
+        List<AccountId> created = new CopyOnWriteArrayList<>();
+        AtomicInteger rejected = new AtomicInteger();
+
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        int nbAttempts = 2000;
+        for (int i = 0; i < nbAttempts; i++) {
+            String email = "w" + (i % 500) + "@w.com";
+            executorService.execute(() -> {
+                Status<Failure, AccountId> status = accounts.add(newAccount(Email.email(email), ok(M_250)).value());
+                if (status.succeeded())
+                    created.add(status.value());
+                else
+                    rejected.incrementAndGet();
+            });
+        }
+        executorService.shutdown();
+        executorService.awaitTermination(10, TimeUnit.SECONDS);
+
+        assertThat(created).hasSize(500);
+        assertThat(rejected.get()).isEqualTo(nbAttempts - 500);
+        created.forEach(id -> assertThat(accounts.findById(id)).isPresent());
+        AtomicInteger indexed = new AtomicInteger();
+        accounts.forEach(a -> indexed.incrementAndGet());
+        assertThat(indexed.get()).isEqualTo(500);
+    }
+
+    @Test
+    public void should_only_visit_accounts_with_pending_transactions() {
+        when(accountIdGenerator.newAccountId()).thenReturn(ACCOUNT_ID1, ACCOUNT_ID2);
+        accounts.add(newAccount(Email.email("titania@tyrna.nog"), ok(M_250)).value());
+        accounts.add(newAccount(Email.email("oberon@tyrna.nog"), ok(M_250)).value());
+        TransactionId transactionId = TransactionId.transactionId("t001").value();
+
+        assertThat(pendingAccounts()).isEmpty();
+
+        accounts.findById(ACCOUNT_ID1).get().withdraws(new MoneyTransfer(transactionId, ACCOUNT_ID1, ACCOUNT_ID2, M_250));
+        List<Account> visited = new ArrayList<>();
+        accounts.forEachPending(a -> {
+            visited.add(a);
+            a.applyTransactions(mock(MoneyTransferSteps.class));
+        });
+        assertThat(visited).extracting(Account::accountId).containsExactly(ACCOUNT_ID1);
+
+        assertThat(pendingAccounts()).describedAs("Already drained").isEmpty();
+    }
+
+    @Test
+    public void should_tell_listeners_the_partition_of_queued_accounts() {
+        when(accountIdGenerator.newAccountId()).thenReturn(ACCOUNT_ID1, ACCOUNT_ID2);
+        accounts.add(newAccount(Email.email("titania@tyrna.nog"), ok(M_250)).value());
+        accounts.add(newAccount(Email.email("oberon@tyrna.nog"), ok(M_250)).value());
+        List<Integer> notified = new CopyOnWriteArrayList<>();
+        IntConsumer listener = notified::add;
+        accounts.addPendingListener(listener);
+
+        accounts.findById(ACCOUNT_ID1).get().withdraws(new MoneyTransfer(TransactionId.transactionId("t001").value(), ACCOUNT_ID1, ACCOUNT_ID2, M_250));
+        int partition = accounts.partitionOf(ACCOUNT_ID1);
+        assertThat(notified).containsExactly(partition);
+        assertThat(accounts.pendingAccounts(partition)).isEqualTo(1);
+
+        accounts.forEachPending(partition, a -> {
+        });
+        assertThat(accounts.pendingAccounts(partition)).isZero();
+
+        accounts.removePendingListener(listener);
+        accounts.findById(ACCOUNT_ID1).get().withdraws(new MoneyTransfer(TransactionId.transactionId("t002").value(), ACCOUNT_ID1, ACCOUNT_ID2, M_250));
+        assertThat(notified).describedAs("No longer listening").hasSize(1);
+    }
+
+    @Test
+    public void should_reject_a_transfer_id_replayed_from_another_source() {
+        when(accountIdGenerator.newAccountId()).thenReturn(ACCOUNT_ID1, ACCOUNT_ID2);
+        accounts.add(newAccount(Email.email("titania@tyrna.nog"), ok(M_250)).value());
+        accounts.add(newAccount(Email.email("oberon@tyrna.nog"), ok(M_250)).value());
+        TransactionId transactionId = TransactionId.transactionId("t001").value();
+        DefaultMoneyTransferService moneyTransferService = new DefaultMoneyTransferService(accounts);
+
+        assertThat(moneyTransferService.transfer(new MoneyTransfer(transactionId, ACCOUNT_ID1, ACCOUNT_ID2, M_250)).succeeded()).isTrue();
+        moneyTransferService.propagateTransactions();
+        moneyTransferService.propagateTransactions();
+
+        Status<Failure, TransactionId> replayed = moneyTransferService.transfer(new MoneyTransfer(transactionId, ACCOUNT_ID2, ACCOUNT_ID1, M_250));
+        assertThat(replayed.succeeded()).isFalse();
+        assertThat(replayed.error()).isEqualTo(Failures.TRANSACTION_ALREADY_APPLIED);
+        assertThat(accounts.findById(ACCOUNT_ID2).get().balance()).isEqualTo(M_250.add(M_250));
+    }
+
+    @Test
+    public void should_remember_the_ids_of_a_restored_snapshot() {
+        TransactionId transactionId = TransactionId.transactionId("t001").value();
+        accounts.restore(new AccountState(ACCOUNT_ID1, Email.email("titania@tyrna.nog").value(), M_250, 1, 1, 1,
+                new long[]{AccountCheckpoint.fingerprint(transactionId)}, emptyList()));
+
+        assertThat(accounts.idempotencyStore().contains(transactionId)).isTrue();
+    }
+
+    private List<Account> pendingAccounts() {
+        List<Account> pending = new ArrayList<>();
+        accounts.forEachPending(pending::add);
+        return pending;
+    }
+
+}
@@ -1,12 +1,12 @@
 package banktransfer.core.account.inmemory;
 
+import banktransfer.core.Money;
 import banktransfer.core.account.AccountId;
 import banktransfer.core.account.MoneyTransfer;
 import banktransfer.core.account.TransactionStatus;
 import org.junit.Test;
 import org.mockito.Mockito;
 
-import java.math.BigDecimal;
 import java.util.Arrays;
 
 import static banktransfer.core.account.Transaction.CancelReason.InsufficientFund;
@@ -20,7 +20,7 @@ import static org.mockito.Mockito.when;
 
 public class InMemoryTransactionTest {
 
-    private static final BigDecimal M_250 = BigDecimal.valueOf(250);
+    private static final Money M_250 = Money.of(250);
     private MoneyTransfer moneyTransfer = Mockito.mock(MoneyTransfer.class);
 
     @Test
@@ -0,0 +1,192 @@
+package banktransfer.core.account.inmemory;
+
+import banktransfer.core.Email;
+import banktransfer.core.Failure;
+import banktransfer.core.Money;
+import banktransfer.core.account.Account;
+import banktransfer.core.account.AccountId;
+import banktransfer.core.account.DefaultMoneyTransferService;
+import banktransfer.core.account.Journal;
+import banktransfer.core.account.MoneyTransfer;
+import banktransfer.core.account.RetentionPolicy;
+import banktransfer.core.account.SequenceAccountIdGenerator;
+import banktransfer.core.account.Transaction;
+import banktransfer.core.account.TransactionId;
+import banktransfer.core.account.TransactionStatus;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static banktransfer.core.Status.ok;
+import static banktransfer.core.account.NewAccount.newAccount;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JournalRecoveryTest {
+
+    private static final TransactionId TRANSACTION_ID1 = TransactionId.transactionId("t0001").value();
+    private static final TransactionId TRANSACTION_ID2 = TransactionId.transactionId("t0002").value();
+    private static final TransactionId TRANSACTION_ID3 = TransactionId.transactionId("t0003").value();
+
+    private TapeJournal tape;
+    private AccountId accountId1;
+    private AccountId accountId2;
+
+    @Before
+    public void setUp() {
+        tape = new TapeJournal();
+        InMemoryAccounts accounts = new InMemoryAccounts(new SequenceAccountIdGenerator(), InMemoryAccounts.DEFAULT_PARTITIONS, RetentionPolicy.keepAll(), tape);
+        DefaultMoneyTransferService service = new DefaultMoneyTransferService(accounts);
+        accountId1 = accounts.add(newAccount(Email.email("titania@tyrna.nog"), ok(Money.of(500))).value()).value();
+        accountId2 = accounts.add(newAccount(Email.email("oberon@tyrna.nog"), ok(Money.of(100))).value()).value();
+
+        service.transfer(new MoneyTransfer(TRANSACTION_ID1, accountId1, accountId2, Money.of(150)));
+        service.propagateTransactions();
+        service.propagateTransactions();
+        service.transfer(new MoneyTransfer(TRANSACTION_ID2, accountId2, accountId1, Money.of(1000)));
+        service.propagateTransactions();
+        service.transfer(new MoneyTransfer(TRANSACTION_ID3, accountId1, accountId2, Money.of(50)));
+    }
+
+    @Test
+    public void should_rebuild_accounts_from_journal() {
+        InMemoryAccounts recovered = recover(tape.records.size());
+
+        assertThat(balanceOf(recovered, accountId1)).isEqualTo(Money.of(350));
+        assertThat(balanceOf(recovered, accountId2)).isEqualTo(Money.of(250));
+        assertThat(statusOf(recovered, accountId1, TRANSACTION_ID1)).isEqualTo(TransactionStatus.Acknowledged);
+        assertThat(statusOf(recovered, accountId2, TRANSACTION_ID1)).isEqualTo(TransactionStatus.Credited);
+        assertThat(statusOf(recovered, accountId2, TRANSACTION_ID2)).isEqualTo(TransactionStatus.Cancelled);
+        assertThat(statusOf(recovered, accountId1, TRANSACTION_ID3)).isEqualTo(TransactionStatus.Pending);
+
+        DefaultMoneyTransferService service = new DefaultMoneyTransferService(recovered);
+        service.propagateTransactions();
+        service.propagateTransactions();
+        assertThat(balanceOf(recovered, accountId1)).isEqualTo(Money.of(300));
+        assertThat(balanceOf(recovered, accountId2)).isEqualTo(Money.of(300));
+    }
+
+    @Test
+    public void should_reject_already_journaled_transaction_and_email_once_recovered() {
+        InMemoryAccounts recovered = recover(tape.records.size());
+
+        DefaultMoneyTransferService service = new DefaultMoneyTransferService(recovered);
+        assertThat(service.transfer(new MoneyTransfer(TRANSACTION_ID1, accountId1, accountId2, Money.of(150))).error().error())
+                .isEqualTo("transaction-already-applied");
+        assertThat(recovered.add(newAccount(Email.email("titania@tyrna.nog"), ok(Money.of(1))).value()).error().error())
+                .isEqualTo("email-already-inuse");
+    }
+
+    @Test
+    public void should_be_idempotent_when_records_are_replayed_twice() {
+        InMemoryAccounts recovered = new InMemoryAccounts(new SequenceAccountIdGenerator());
+        JournalRecovery recovery = new JournalRecovery(recovered);
+        tape.replay(tape.records.size(), recovery);
+        tape.replay(tape.records.size(), recovery);
+        recovery.complete(new DefaultMoneyTransferService(recovered));
+
+        assertThat(balanceOf(recovered, accountId1)).isEqualTo(Money.of(350));
+        assertThat(balanceOf(recovered, accountId2)).isEqualTo(Money.of(250));
+    }
+
+    @Test
+    public void should_credit_destination_when_only_the_debit_was_journaled() {
+        InMemoryAccounts recovered = recover(tape.indexOf("updated " + accountId1.asString() + " #2 Debited") + 1);
+
+        assertThat(balanceOf(recovered, accountId1)).isEqualTo(Money.of(350));
+        assertThat(balanceOf(recovered, accountId2)).isEqualTo(Money.of(100));
+        assertThat(statusOf(recovered, accountId2, TRANSACTION_ID1)).isEqualTo(TransactionStatus.Pending);
+
+        new DefaultMoneyTransferService(recovered).propagateTransactions();
+        assertThat(balanceOf(recovered, accountId2)).isEqualTo(Money.of(250));
+        assertThat(statusOf(recovered, accountId1, TRANSACTION_ID1)).isEqualTo(TransactionStatus.Acknowledged);
+    }
+
+    @Test
+    public void should_acknowledge_source_when_the_credit_was_journaled() {
+        InMemoryAccounts recovered = recover(tape.indexOf("updated " + accountId2.asString() + " #2 Credited") + 1);
+
+        assertThat(balanceOf(recovered, accountId2)).isEqualTo(Money.of(250));
+        assertThat(statusOf(recovered, accountId1, TRANSACTION_ID1)).isEqualTo(TransactionStatus.Acknowledged);
+    }
+
+    @Test
+    public void should_acknowledge_source_when_the_credit_was_compacted() {
+        InMemoryAccounts accounts = new InMemoryAccounts(new SequenceAccountIdGenerator(), InMemoryAccounts.DEFAULT_PARTITIONS, RetentionPolicy.keepLast(0));
+        DefaultMoneyTransferService service = new DefaultMoneyTransferService(accounts);
+        AccountId source = accounts.add(newAccount(Email.email("titania@tyrna.nog"), ok(Money.of(500))).value()).value();
+        AccountId destination = accounts.add(newAccount(Email.email("oberon@tyrna.nog"), ok(Money.of(100))).value()).value();
+        service.transfer(new MoneyTransfer(TRANSACTION_ID1, source, destination, Money.of(150)));
+        service.propagateTransactions();
+        AccountState debited = accounts.find(source).state(Email.email("titania@tyrna.nog").value());
+        // credited, compacted, then the crash loses the acknowledgement
+        service.propagateTransactions();
+        AccountState compacted = accounts.find(destination).state(Email.email("oberon@tyrna.nog").value());
+        assertThat(compacted.transactions()).isEmpty();
+        //
+        InMemoryAccounts recovered = new InMemoryAccounts(new SequenceAccountIdGenerator());
+        recovered.restore(debited);
+        recovered.restore(compacted);
+        new JournalRecovery(recovered).complete(new DefaultMoneyTransferService(recovered));
+        //
+        assertThat(statusOf(recovered, source, TRANSACTION_ID1)).isEqualTo(TransactionStatus.Acknowledged);
+        assertThat(balanceOf(recovered, source)).isEqualTo(Money.of(350));
+        assertThat(balanceOf(recovered, destination)).isEqualTo(Money.of(250));
+    }
+
+    private InMemoryAccounts recover(int nbRecords) {
+        InMemoryAccounts recovered = new InMemoryAccounts(new SequenceAccountIdGenerator());
+        JournalRecovery recovery = new JournalRecovery(recovered);
+        tape.replay(nbRecords, recovery);
+        recovery.complete(new DefaultMoneyTransferService(recovered));
+        return recovered;
+    }
+
+    private static Money balanceOf(InMemoryAccounts accounts, AccountId accountId) {
+        return accounts.findById(accountId).map(Account::balance).get();
+    }
+
+    private static TransactionStatus statusOf(InMemoryAccounts accounts, AccountId accountId, TransactionId transactionId) {
+        return accounts.find(accountId).transaction(transactionId).status();
+    }
+
+    private static class TapeJournal implements Journal {
+        private final List<String> records = new ArrayList<>();
+        private final List<Consumer<Journal>> replays = new ArrayList<>();
+
+        @Override
+        public void accountCreated(AccountId accountId, Email email, Money initialBalance) {
+            records.add("created " + accountId.asString());
+            replays.add(j -> j.accountCreated(accountId, email, initialBalance));
+        }
+
+        @Override
+        public void transactionSubmitted(AccountId accountId, long sequence, long createdAt, MoneyTransfer moneyTransfer) {
+            records.add("submitted " + accountId.asString() + " #" + sequence);
+            replays.add(j -> j.transactionSubmitted(accountId, sequence, createdAt, moneyTransfer));
+        }
+
+        @Override
+        public void transactionUpdated(AccountId accountId, long sequence, TransactionStatus status, Transaction.CancelReason cancelReason) {
+            records.add("updated " + accountId.asString() + " #" + sequence + " " + status);
+            replays.add(j -> j.transactionUpdated(accountId, sequence, status, cancelReason));
+        }
+
+        @Override
+        public void whenDurable(Runnable onDurable, Consumer<Failure> onFailure) {
+            onDurable.run();
+        }
+
+        int indexOf(String record) {
+            int index = records.indexOf(record);
+            assertThat(index).describedAs(record + " in " + records).isNotNegative();
+            return index;
+        }
+
+        void replay(int nbRecords, Journal target) {
+            replays.subList(0, nbRecords).forEach(replay -> replay.accept(target));
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package banktransfer.core.account.inmemory;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LongHashSetTest {
+
+    @Test
+    public void should_add_and_find_values_while_growing() {
+        LongHashSet set = new LongHashSet(4);
+        Random random = new Random(17L);
+        long[] values = random.longs(10_000).map(v -> v == 0 ? 1 : v).toArray();
+
+        for (long value : values)
+            set.add(value);
+
+        assertThat(set.size()).isEqualTo(10_000);
+        for (long value : values)
+            assertThat(set.contains(value)).isTrue();
+        assertThat(set.contains(42L)).isFalse();
+    }
+
+    @Test
+    public void should_not_add_twice_the_same_value() {
+        LongHashSet set = new LongHashSet(4);
+
+        assertThat(set.add(17L)).isTrue();
+        assertThat(set.add(17L)).isFalse();
+        assertThat(set.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void should_be_empty_once_cleared() {
+        LongHashSet set = new LongHashSet(4);
+        set.add(17L);
+
+        set.clear();
+
+        assertThat(set.size()).isEqualTo(0);
+        assertThat(set.contains(17L)).isFalse();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void should_reject_reserved_value() {
+        new LongHashSet(4).add(0L);
+    }
+}
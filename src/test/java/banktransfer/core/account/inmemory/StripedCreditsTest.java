@@ -0,0 +1,80 @@
+package banktransfer.core.account.inmemory;
+
+import banktransfer.core.Money;
+import banktransfer.core.account.AccountId;
+import banktransfer.core.account.MoneyTransfer;
+import banktransfer.core.account.TransactionId;
+import banktransfer.core.account.TransactionStatus;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StripedCreditsTest {
+
+    private static final AccountId MERCHANT = AccountId.accountId("merchant").value();
+    private static final AccountId TITANIA = AccountId.accountId("titania").value();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Test
+    public void should_only_take_credits_once_folded() {
+        StripedCredits stripedCredits = new StripedCredits(3);
+        InMemoryTransaction transaction = transaction(100);
+
+        assertThat(stripedCredits.stripes()).isEqualTo(4);
+        assertThat(stripedCredits.credit(transaction)).isFalse();
+        assertThat(transaction.status()).isEqualTo(TransactionStatus.Pending);
+
+        assertThat(stripedCredits.fold(1_000)).isEqualTo(1_000);
+        assertThat(stripedCredits.credit(transaction)).isTrue();
+        assertThat(transaction.status()).isEqualTo(TransactionStatus.Credited);
+        assertThat(stripedCredits.sum()).isEqualTo(100);
+        assertThat(stripedCredits.fold(1_000)).isEqualTo(1_100);
+        assertThat(stripedCredits.sum()).isEqualTo(0);
+    }
+
+    @Test
+    public void should_keep_the_balance_and_the_cells_from_overflowing() {
+        StripedCredits stripedCredits = new StripedCredits(2);
+        long balance = stripedCredits.fold(Long.MAX_VALUE - 1_000);
+        // 1000 of headroom: 250 per cell, 500 for the propagation
+        InMemoryTransaction tooLarge = transaction(251);
+
+        assertThat(stripedCredits.credit(tooLarge)).isFalse();
+        assertThat(stripedCredits.credit(transaction(250))).isTrue();
+        assertThat(stripedCredits.ceiling()).isEqualTo(balance + 500);
+    }
+
+    @Test
+    public void should_not_lose_any_concurrent_credit() throws Exception {
+        StripedCredits stripedCredits = new StripedCredits(4);
+        stripedCredits.fold(0);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        Future<?>[] futures = new Future[8];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = executor.submit(() -> {
+                for (int j = 0; j < 10_000; j++)
+                    assertThat(stripedCredits.credit(transaction(3))).isTrue();
+            });
+        }
+        long balance = 0;
+        for (Future<?> future : futures) {
+            // folding while credits land
+            balance = stripedCredits.fold(balance);
+            future.get();
+        }
+        executor.shutdown();
+
+        assertThat(stripedCredits.fold(balance)).isEqualTo(8 * 10_000 * 3);
+    }
+
+    private InMemoryTransaction transaction(long amount) {
+        TransactionId transactionId = TransactionId.transactionId("t" + sequence.incrementAndGet()).value();
+        return new InMemoryTransaction(sequence.get(), new MoneyTransfer(transactionId, TITANIA, MERCHANT, Money.ofMinor(amount)), TransactionStatus.Pending);
+    }
+}
@@ -0,0 +1,45 @@
+package banktransfer.infra;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PropagationSchedulerTest {
+
+    private final PropagationScheduler scheduler = new PropagationScheduler(10_000_000L, 100);
+
+    @Test
+    public void should_stay_idle_without_backlog() {
+        assertThat(scheduler.delayNanos(0, 0)).isEqualTo(PropagationScheduler.IDLE);
+        assertThat(scheduler.delayNanos(0, 50_000_000L)).isEqualTo(PropagationScheduler.IDLE);
+    }
+
+    @Test
+    public void should_run_at_once_when_a_batch_is_queued() {
+        assertThat(scheduler.delayNanos(100, 0)).isZero();
+        assertThat(scheduler.delayNanos(1_000, 0)).isZero();
+    }
+
+    @Test
+    public void should_wait_less_as_the_backlog_grows() {
+        long one = scheduler.delayNanos(1, 0);
+        long half = scheduler.delayNanos(50, 0);
+        long most = scheduler.delayNanos(99, 0);
+
+        assertThat(one).isEqualTo(9_900_000L);
+        assertThat(half).isEqualTo(5_000_000L);
+        assertThat(most).isEqualTo(100_000L);
+    }
+
+    @Test
+    public void should_never_wait_beyond_the_max_delay() {
+        assertThat(scheduler.delayNanos(1, 4_000_000L)).isEqualTo(5_940_000L);
+        assertThat(scheduler.delayNanos(1, 10_000_000L)).isZero();
+        assertThat(scheduler.delayNanos(1, 60_000_000L)).isZero();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void should_reject_an_empty_batch() {
+        new PropagationScheduler(10_000_000L, 0);
+    }
+}
@@ -0,0 +1,127 @@
+package banktransfer.infra;
+
+import banktransfer.core.Money;
+import banktransfer.core.account.AccountId;
+import banktransfer.core.account.DefaultMoneyTransferService;
+import banktransfer.core.account.MoneyTransfer;
+import banktransfer.core.account.SequenceAccountIdGenerator;
+import banktransfer.core.account.TransactionId;
+import banktransfer.core.account.TransactionStatus;
+import banktransfer.core.account.inmemory.InMemoryAccounts;
+import banktransfer.infra.metrics.Metrics;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.TimeUnit;
+
+import static banktransfer.core.Email.email;
+import static banktransfer.core.Status.ok;
+import static banktransfer.core.account.NewAccount.newAccount;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+@RunWith(VertxUnitRunner.class)
+public class TransactionPropagationVerticleTest {
+
+    private Vertx vertx;
+    private InMemoryAccounts accounts;
+    private DefaultMoneyTransferService moneyTransferService;
+    private Metrics metrics;
+    private AccountId accountId1;
+    private AccountId accountId2;
+
+    @Before
+    public void setUp() {
+        vertx = Vertx.vertx();
+        accounts = new InMemoryAccounts(new SequenceAccountIdGenerator());
+        moneyTransferService = new DefaultMoneyTransferService(accounts);
+        metrics = new Metrics();
+        accountId1 = accounts.add(newAccount(email("titania@tyrna.nog"), ok(Money.of(500))).value()).value();
+        accountId2 = accounts.add(newAccount(email("oberon@tyrna.nog"), ok(Money.of(500))).value()).value();
+    }
+
+    @After
+    public void tearDown(TestContext context) {
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    @Test
+    public void should_propagate_once_work_is_queued_then_go_idle(TestContext context) {
+        deploy(context, 50, 256);
+
+        TransactionId transactionId = transfer("t001");
+
+        await().atMost(2, TimeUnit.SECONDS).until(() -> statusOf(transactionId) == TransactionStatus.Acknowledged);
+        await().atMost(2, TimeUnit.SECONDS).until(() -> metrics.scrape().contains("banktransfer_propagation_decisions_total{decision=\"idle\"} 1\n"));
+        String scrape = metrics.scrape();
+        assertThat(scrape).contains("banktransfer_propagation_backlog_accounts 0\n");
+        assertThat(scrape).doesNotContain("banktransfer_propagation_decisions_total{decision=\"delayed\"} 0\n");
+    }
+
+    @Test
+    public void should_not_wait_for_the_max_delay_once_a_batch_is_queued(TestContext context) {
+        // a max delay the test would not survive
+        deploy(context, 60_000, 1);
+
+        TransactionId transactionId = transfer("t001");
+
+        await().atMost(2, TimeUnit.SECONDS).until(() -> statusOf(transactionId) == TransactionStatus.Acknowledged);
+        assertThat(metrics.scrape()).contains("banktransfer_propagation_decisions_total{decision=\"delayed\"} 0\n");
+    }
+
+    @Test
+    public void should_propagate_work_queued_before_being_deployed(TestContext context) {
+        TransactionId transactionId = transfer("t001");
+
+        deploy(context, 10, 256);
+
+        await().atMost(2, TimeUnit.SECONDS).until(() -> statusOf(transactionId) == TransactionStatus.Acknowledged);
+    }
+
+    @Test
+    public void should_keep_propagating_after_a_failed_round(TestContext context) {
+        DefaultMoneyTransferService failingOnce = spy(moneyTransferService);
+        doThrow(new IllegalStateException("round failure")).doCallRealMethod()
+                .when(failingOnce).propagateTransactions(anyInt(), anyInt());
+        moneyTransferService = failingOnce;
+        deploy(context, 10, 256);
+
+        TransactionId transactionId = transfer("t001");
+
+        await().atMost(2, TimeUnit.SECONDS).until(() -> statusOf(transactionId) == TransactionStatus.Acknowledged);
+        verify(failingOnce, atLeast(2)).propagateTransactions(anyInt(), anyInt());
+    }
+
+    private void deploy(TestContext context, int maxDelayMs, int batchAccounts) {
+        vertx.deployVerticle(
+                new TransactionPropagationVerticle(accounts, moneyTransferService, metrics),
+                new DeploymentOptions()
+                        .setWorker(true)
+                        .setConfig(new JsonObject()
+                                .put(TransactionPropagationVerticle.PROPAGATE_MAX_DELAY_MS, maxDelayMs)
+                                .put(TransactionPropagationVerticle.PROPAGATE_BATCH_ACCOUNTS, batchAccounts)),
+                context.asyncAssertSuccess());
+    }
+
+    private TransactionId transfer(String rawTransactionId) {
+        TransactionId transactionId = TransactionId.transactionId(rawTransactionId).value();
+        assertThat(moneyTransferService.transfer(new MoneyTransfer(transactionId, accountId1, accountId2, Money.of(10))).succeeded()).isTrue();
+        return transactionId;
+    }
+
+    private TransactionStatus statusOf(TransactionId transactionId) {
+        return accounts.findTransfer(transactionId).get().status();
+    }
+}
@@ -2,18 +2,26 @@ package banktransfer.infra;
 
 
 import banktransfer.core.Email;
+import banktransfer.core.Failure;
+import banktransfer.core.Money;
 import banktransfer.core.Status;
 import banktransfer.core.account.Account;
 import banktransfer.core.account.AccountId;
 import banktransfer.core.account.Accounts;
+import banktransfer.core.account.Journal;
+import banktransfer.core.account.MoneyTransfer;
 import banktransfer.core.account.MoneyTransferService;
+import banktransfer.core.account.MoneyTransferSteps;
 import banktransfer.core.account.NewAccount;
+import banktransfer.core.account.Transaction;
 import banktransfer.core.account.TransactionId;
 import banktransfer.core.account.inmemory.InMemoryAccount;
+import banktransfer.infra.accounts.AccountsVerticle;
 import banktransfer.infra.web.WebVerticle;
 import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.unit.Async;
 import io.vertx.ext.unit.TestContext;
@@ -27,10 +35,12 @@ import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
-import java.math.BigDecimal;
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 import static banktransfer.core.account.AccountId.accountId;
 import static java.util.Collections.emptyList;
@@ -58,8 +68,9 @@ public class WebVerticleIntegrationTest {
         //
         port = 50000 + new SecureRandom().nextInt(5000);
         vertx = Vertx.vertx();
+        vertx.deployVerticle(new AccountsVerticle(accounts, moneyTransferService), context.asyncAssertSuccess());
         vertx.deployVerticle(
-                new WebVerticle(accounts, moneyTransferService),
+                new WebVerticle(Journal.NONE),
                 new DeploymentOptions()
                         .setInstances(1)
                         .setConfig(new JsonObject().put(WebVerticle.HTTP_PORT, port)),
@@ -85,11 +96,31 @@ public class WebVerticleIntegrationTest {
                 });
     }
 
+    @Test
+    public void metrics(TestContext context) {
+        final Async async = context.async();
+
+        when(accounts.findById(Mockito.any())).thenReturn(Optional.empty());
+
+        WebClient client = WebClient.create(vertx);
+        client.get(port, "localhost", "/account/w17").send(lookup ->
+                client.get(port, "localhost", "/metrics").send(ar -> {
+                    context.assertTrue(ar.succeeded());
+                    HttpResponse<Buffer> response = ar.result();
+                    context.assertEquals(200, response.statusCode());
+                    context.assertTrue(response.getHeader("Content-Type").startsWith("text/plain"));
+                    String body = response.bodyAsString();
+                    context.assertTrue(body.contains("banktransfer_http_request_duration_seconds_count{method=\"GET\",route=\"/account/:accountId\"} 1\n"));
+                    context.assertTrue(body.contains("banktransfer_failures_total{code=\"account-not-found\"} 1\n"));
+                    async.complete();
+                }));
+    }
+
     @Test
     public void consult_an_existing_account(TestContext context) {
         final Async async = context.async();
 
-        Account account = new InMemoryAccount(accountId("w17").value(), BigDecimal.ZERO, emptyList());
+        Account account = new InMemoryAccount(accountId("w17").value(), Money.ZERO, emptyList());
         when(accounts.findById(Mockito.any())).thenReturn(Optional.of(account));
 
         WebClient client = WebClient.create(vertx);
@@ -106,6 +137,143 @@ public class WebVerticleIntegrationTest {
                 });
     }
 
+    @Test
+    public void consult_an_account_history_page_by_page(TestContext context) {
+        final Async async = context.async();
+
+        InMemoryAccount account = new InMemoryAccount(accountId("w17").value(), Money.of(1000), emptyList());
+        for (int i = 0; i < 5; i++) {
+            account.withdraws(new MoneyTransfer(TransactionId.transactionId("t" + i).value(),
+                    account.accountId(), accountId("w18").value(), Money.of(1)));
+        }
+        when(accounts.findById(Mockito.any())).thenReturn(Optional.of(account));
+
+        WebClient client = WebClient.create(vertx);
+        client.get(port, "localhost", "/account/w17?order=desc&limit=3")
+                .send(ar -> {
+                    context.assertTrue(ar.succeeded());
+                    JsonObject body = ar.result().bodyAsJsonObject();
+                    JsonArray transactions = body.getJsonArray("transactions");
+                    context.assertEquals(3, transactions.size());
+                    context.assertEquals("t4", transactions.getJsonObject(0).getString("transaction-id"));
+                    long next = body.getLong("next-after-sequence");
+                    context.assertEquals(transactions.getJsonObject(2).getLong("sequence"), next);
+
+                    client.get(port, "localhost", "/account/w17?order=desc&limit=3&after-sequence=" + next)
+                            .send(ar2 -> {
+                                context.assertTrue(ar2.succeeded());
+                                JsonObject lastPage = ar2.result().bodyAsJsonObject();
+                                JsonArray remaining = lastPage.getJsonArray("transactions");
+                                context.assertEquals(2, remaining.size());
+                                context.assertEquals("t0", remaining.getJsonObject(1).getString("transaction-id"));
+                                context.assertFalse(lastPage.containsKey("next-after-sequence"));
+                                async.complete();
+                            });
+                });
+    }
+
+    @Test
+    public void consult_a_large_account_history_in_chunks(TestContext context) {
+        final Async async = context.async();
+
+        InMemoryAccount account = new InMemoryAccount(accountId("w17").value(), Money.of(1000), emptyList());
+        for (int i = 0; i < 1000; i++) {
+            account.withdraws(new MoneyTransfer(TransactionId.transactionId(UUID.randomUUID().toString()).value(),
+                    account.accountId(), accountId("w18").value(), Money.of(1)));
+        }
+        when(accounts.findById(Mockito.any())).thenReturn(Optional.of(account));
+
+        WebClient client = WebClient.create(vertx);
+        client.get(port, "localhost", "/account/w17?limit=1000")
+                .send(ar -> {
+                    context.assertTrue(ar.succeeded());
+                    HttpResponse<Buffer> response = ar.result();
+                    context.assertEquals(200, response.statusCode());
+                    context.assertEquals("chunked", response.getHeader("transfer-encoding"));
+                    context.assertEquals(1000, response.bodyAsJsonObject().getJsonArray("transactions").size());
+                    async.complete();
+                });
+    }
+
+    @Test
+    public void consult_an_account_summary(TestContext context) {
+        final Async async = context.async();
+
+        InMemoryAccount account = new InMemoryAccount(accountId("w17").value(), Money.of(1000), emptyList());
+        account.withdraws(new MoneyTransfer(TRANSACTION_ID, account.accountId(), accountId("w18").value(), Money.of(150)));
+        when(accounts.findById(Mockito.any())).thenReturn(Optional.of(account));
+
+        WebClient client = WebClient.create(vertx);
+        client.get(port, "localhost", "/account/w17/summary")
+                .send(ar -> {
+                    context.assertTrue(ar.succeeded());
+                    context.assertEquals(200, ar.result().statusCode());
+                    JsonObject body = ar.result().bodyAsJsonObject();
+                    context.assertEquals("w17", body.getString("account-id"));
+                    context.assertEquals("1000", body.getString("balance"));
+                    context.assertEquals(1L, body.getLong("pending-count"));
+                    context.assertEquals("150", body.getString("pending-debits"));
+                    context.assertEquals("0", body.getString("in-flight-debits"));
+                    context.assertFalse(body.containsKey("transactions"));
+                    async.complete();
+                });
+    }
+
+    @Test
+    public void consult_a_transfer(TestContext context) {
+        final Async async = context.async();
+
+        InMemoryAccount account = new InMemoryAccount(accountId("w17").value(), Money.ZERO, emptyList());
+        account.withdraws(new MoneyTransfer(TRANSACTION_ID, account.accountId(), accountId("w18").value(), Money.of(150)));
+        account.applyTransactions(Mockito.mock(MoneyTransferSteps.class));
+        Transaction transaction = account.transactions().findFirst().get();
+        when(accounts.findTransfer(TRANSACTION_ID)).thenReturn(Optional.of(transaction));
+
+        WebClient client = WebClient.create(vertx);
+        client.get(port, "localhost", "/transfer/t800")
+                .send(ar -> {
+                    context.assertTrue(ar.succeeded());
+                    context.assertEquals(200, ar.result().statusCode());
+                    JsonObject body = ar.result().bodyAsJsonObject();
+                    context.assertEquals("t800", body.getString("transaction-id"));
+                    context.assertEquals("Cancelled", body.getString("status"));
+                    context.assertEquals("InsufficientFund", body.getString("cancel-reason"));
+                    context.assertEquals("w17", body.getString("source-id"));
+                    async.complete();
+                });
+    }
+
+    @Test
+    public void consult_an_unexisting_transfer(TestContext context) {
+        final Async async = context.async();
+
+        when(accounts.findTransfer(Mockito.any())).thenReturn(Optional.empty());
+
+        WebClient client = WebClient.create(vertx);
+        client.get(port, "localhost", "/transfer/t800")
+                .send(ar -> {
+                    context.assertTrue(ar.succeeded());
+                    context.assertEquals(404, ar.result().statusCode());
+                    context.assertEquals("transfer-not-found", ar.result().bodyAsJsonObject().getString("error"));
+                    async.complete();
+                });
+    }
+
+    @Test
+    public void consult_an_account_with_an_invalid_page(TestContext context) {
+        final Async async = context.async();
+
+        WebClient client = WebClient.create(vertx);
+        client.get(port, "localhost", "/account/w17?limit=-1")
+                .send(ar -> {
+                    context.assertTrue(ar.succeeded());
+                    context.assertEquals(400, ar.result().statusCode());
+                    context.assertEquals("invalid-limit", ar.result().bodyAsJsonObject().getString("error"));
+                    verifyZeroInteractions(accounts);
+                    async.complete();
+                });
+    }
+
     @Test
     public void consult_with_an_invalid_account_id(TestContext context) {
         final Async async = context.async();
@@ -167,7 +335,7 @@ public class WebVerticleIntegrationTest {
                     ArgumentCaptor<NewAccount> newAccountCaptor = ArgumentCaptor.forClass(NewAccount.class);
                     verify(accounts).add(newAccountCaptor.capture());
                     assertThat(newAccountCaptor.getValue().email()).isEqualTo(Email.email("hog@tyrna.nog").value());
-                    assertThat(newAccountCaptor.getValue().initialAmount()).isEqualTo(BigDecimal.ZERO);
+                    assertThat(newAccountCaptor.getValue().initialAmount()).isEqualTo(Money.ZERO);
                     async.complete();
                 });
     }
@@ -193,7 +361,7 @@ public class WebVerticleIntegrationTest {
                     ArgumentCaptor<NewAccount> newAccountCaptor = ArgumentCaptor.forClass(NewAccount.class);
                     verify(accounts).add(newAccountCaptor.capture());
                     assertThat(newAccountCaptor.getValue().email()).isEqualTo(Email.email("hog@tyrna.nog").value());
-                    assertThat(newAccountCaptor.getValue().initialAmount()).isEqualTo(new BigDecimal("500.5"));
+                    assertThat(newAccountCaptor.getValue().initialAmount()).isEqualTo(Money.parse("500.5").value());
                     async.complete();
                 });
     }
@@ -278,4 +446,181 @@ public class WebVerticleIntegrationTest {
                 });
     }
 
-}
\ No newline at end of file
+    @Test
+    public void transfer_money_in_batch(TestContext context) {
+        final Async async = context.async();
+
+        when(moneyTransferService.transferAll(any())).thenAnswer(invocation -> {
+            List<MoneyTransfer> moneyTransfers = invocation.getArgument(0);
+            List<Status<Failure, TransactionId>> results = new ArrayList<>();
+            for (MoneyTransfer moneyTransfer : moneyTransfers) {
+                results.add(moneyTransfer.source().equals(moneyTransfer.destination())
+                        ? Status.failure("identical-src-dst")
+                        : Status.ok(moneyTransfer.transactionId()));
+            }
+            return results;
+        });
+
+        // well over the single request body limit
+        JsonArray transfers = new JsonArray();
+        for (int i = 0; i < 100; i++) {
+            transfers.add(new JsonObject()
+                    .put("transaction-id", "t" + i)
+                    .put("source-id", "a001")
+                    .put("destination-id", i == 1 ? "a001" : "a002")
+                    .put("amount", i == 2 ? "abc" : "200"));
+        }
+
+        WebClient client = WebClient.create(vertx);
+        client.post(port, "localhost", "/transfers")
+                .sendBuffer(transfers.toBuffer(), ar -> {
+                    context.assertTrue(ar.succeeded());
+                    HttpResponse<Buffer> response = ar.result();
+                    context.assertEquals(200, response.statusCode());
+
+                    JsonArray results = response.bodyAsJsonObject().getJsonArray("transfers");
+                    context.assertEquals(100, results.size());
+                    context.assertEquals(201, results.getJsonObject(0).getInteger("status"));
+                    context.assertEquals("t0", results.getJsonObject(0).getString("transaction-id"));
+                    context.assertEquals(400, results.getJsonObject(1).getInteger("status"));
+                    context.assertEquals("transfer-failed", results.getJsonObject(1).getString("error"));
+                    context.assertEquals("identical-src-dst", results.getJsonObject(1).getString("details"));
+                    context.assertEquals("invalid-transfer", results.getJsonObject(2).getString("error"));
+                    context.assertEquals("invalid-amount-format", results.getJsonObject(2).getString("details"));
+                    context.assertEquals("t99", results.getJsonObject(99).getString("transaction-id"));
+                    async.complete();
+                });
+    }
+
+    @Test
+    public void transfer_money_in_batch_with_an_invalid_json(TestContext context) {
+        final Async async = context.async();
+
+        WebClient client = WebClient.create(vertx);
+        client.post(port, "localhost", "/transfers")
+                .sendJsonObject(new JsonObject().put("transaction-id", "t1"), ar -> {
+                    context.assertTrue(ar.succeeded());
+                    HttpResponse<Buffer> response = ar.result();
+                    context.assertEquals(400, response.statusCode());
+                    context.assertEquals("invalid-json-format", response.bodyAsJsonObject().getString("details"));
+                    verifyZeroInteractions(moneyTransferService);
+                    async.complete();
+                });
+    }
+
+    @Test
+    public void transfer_money_from_a_stream(TestContext context) {
+        final Async async = context.async();
+
+        when(moneyTransferService.transferAll(any())).thenAnswer(invocation ->
+                invocation.<List<MoneyTransfer>>getArgument(0).stream()
+                        .map(moneyTransfer -> moneyTransfer.source().equals(moneyTransfer.destination())
+                                ? Status.<TransactionId>failure("identical-src-dst")
+                                : Status.ok(moneyTransfer.transactionId()))
+                        .collect(Collectors.toList()));
+
+        Buffer lines = Buffer.buffer()
+                .appendString(transferLine("t1", "a001", "a002") + "\n")
+                .appendString("\n")
+                .appendString("{not json\n")
+                .appendString(transferLine("t2", "a001", "a001") + "\n")
+                // last line without its delimiter
+                .appendString(transferLine("t3", "a002", "a001"));
+
+        WebClient client = WebClient.create(vertx);
+        client.post(port, "localhost", "/transfers/stream")
+                .sendBuffer(lines, ar -> {
+                    context.assertTrue(ar.succeeded());
+                    HttpResponse<Buffer> response = ar.result();
+                    context.assertEquals(200, response.statusCode());
+                    context.assertEquals("application/x-ndjson", response.getHeader("content-type"));
+
+                    String[] results = response.bodyAsString().split("\n");
+                    context.assertEquals(4, results.length);
+                    JsonObject first = new JsonObject(results[0]);
+                    context.assertEquals(201, first.getInteger("status"));
+                    context.assertEquals("t1", first.getString("transaction-id"));
+                    JsonObject second = new JsonObject(results[1]);
+                    context.assertEquals(400, second.getInteger("status"));
+                    context.assertEquals("invalid-json-format", second.getString("details"));
+                    JsonObject third = new JsonObject(results[2]);
+                    context.assertEquals("transfer-failed", third.getString("error"));
+                    context.assertEquals("identical-src-dst", third.getString("details"));
+                    context.assertEquals("t3", new JsonObject(results[3]).getString("transaction-id"));
+                    async.complete();
+                });
+    }
+
+    @Test
+    public void transfer_money_from_a_stream_stops_reading_while_the_propagation_lags(TestContext context) {
+        final Async async = context.async();
+
+        when(accounts.pendingTransactions()).thenReturn(Long.MAX_VALUE);
+        when(moneyTransferService.transferAll(any())).thenAnswer(invocation ->
+                invocation.<List<MoneyTransfer>>getArgument(0).stream()
+                        .map(moneyTransfer -> Status.ok(moneyTransfer.transactionId()))
+                        .collect(Collectors.toList()));
+
+        Buffer lines = Buffer.buffer();
+        for (int i = 0; i < 10; i++) {
+            lines.appendString(transferLine("t" + i, "a001", "a002") + "\n");
+        }
+
+        WebClient client = WebClient.create(vertx);
+        client.post(port, "localhost", "/transfers/stream")
+                .sendBuffer(lines, ar -> {
+                    context.assertTrue(ar.succeeded());
+                    context.assertEquals(10, ar.result().bodyAsString().split("\n").length);
+                    async.complete();
+                });
+
+        vertx.setTimer(200, id -> {
+            // paused right after the first line
+            context.verify(v -> {
+                @SuppressWarnings("unchecked")
+                ArgumentCaptor<List<MoneyTransfer>> submitted = ArgumentCaptor.forClass(List.class);
+                verify(moneyTransferService, Mockito.times(1)).transferAll(submitted.capture());
+                assertThat(submitted.getValue()).hasSize(1);
+            });
+            when(accounts.pendingTransactions()).thenReturn(0L);
+        });
+    }
+
+    @Test
+    public void transfer_money_from_a_stream_stops_at_a_line_too_long(TestContext context) {
+        final Async async = context.async();
+
+        when(moneyTransferService.transferAll(any())).thenAnswer(invocation ->
+                invocation.<List<MoneyTransfer>>getArgument(0).stream()
+                        .map(moneyTransfer -> Status.ok(moneyTransfer.transactionId()))
+                        .collect(Collectors.toList()));
+
+        StringBuilder tooLong = new StringBuilder();
+        while (tooLong.length() <= 5000)
+            tooLong.append("{}");
+        Buffer lines = Buffer.buffer()
+                .appendString(transferLine("t1", "a001", "a002") + "\n")
+                // the parser only measures the line it is still waiting the end of
+                .appendString(tooLong.toString());
+
+        WebClient client = WebClient.create(vertx);
+        client.post(port, "localhost", "/transfers/stream")
+                .sendBuffer(lines, ar -> {
+                    context.assertTrue(ar.succeeded());
+                    String[] results = ar.result().bodyAsString().split("\n");
+                    JsonObject last = new JsonObject(results[results.length - 1]);
+                    context.assertEquals("line-too-long", last.getString("error"));
+                    context.assertEquals(4048, last.getInteger("max-size"));
+                    async.complete();
+                });
+    }
+
+    private static String transferLine(String transactionId, String sourceId, String destinationId) {
+        return new JsonObject()
+                .put("transaction-id", transactionId)
+                .put("source-id", sourceId)
+                .put("destination-id", destinationId)
+                .put("amount", "10")
+                .encode();
+    }
+}
@@ -0,0 +1,95 @@
+package banktransfer.infra.accounts;
+
+import banktransfer.core.Money;
+import banktransfer.core.account.Account;
+import banktransfer.core.account.AccountId;
+import banktransfer.core.account.DefaultMoneyTransferService;
+import banktransfer.core.account.MoneyTransfer;
+import banktransfer.core.account.SequenceAccountIdGenerator;
+import banktransfer.core.account.TransactionId;
+import banktransfer.core.account.inmemory.InMemoryAccounts;
+import io.vertx.core.Vertx;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static banktransfer.core.Email.email;
+import static banktransfer.core.Status.ok;
+import static banktransfer.core.account.NewAccount.newAccount;
+
+@RunWith(VertxUnitRunner.class)
+public class AccountsVerticleTest {
+
+    private Vertx vertx;
+    private InMemoryAccounts accounts;
+    private AccountsClient client;
+
+    @Before
+    public void setUp(TestContext context) {
+        vertx = Vertx.vertx();
+        accounts = new InMemoryAccounts(new SequenceAccountIdGenerator());
+        vertx.deployVerticle(new AccountsVerticle(accounts, new DefaultMoneyTransferService(accounts)), context.asyncAssertSuccess());
+        client = new AccountsClient(vertx.eventBus());
+    }
+
+    @After
+    public void tearDown(TestContext context) {
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    @Test
+    public void should_hand_the_account_over_without_copy(TestContext context) {
+        Async async = context.async();
+
+        client.add(newAccount(email("titania@tyrna.nog"), ok(Money.of(100))).value(), context.asyncAssertSuccess(addedOr -> {
+            context.assertTrue(addedOr.succeeded());
+            AccountId accountId = addedOr.value();
+            client.findById(accountId, context.asyncAssertSuccess(accountOpt -> {
+                context.assertTrue(accountOpt.isPresent());
+                Account account = accountOpt.get();
+                context.assertTrue(account == accounts.findById(accountId).get());
+                async.complete();
+            }));
+        }));
+    }
+
+    @Test
+    public void should_transfer_and_report_the_backlog(TestContext context) {
+        Async async = context.async();
+        AccountId src = accounts.add(newAccount(email("titania@tyrna.nog"), ok(Money.of(100))).value()).value();
+        AccountId dst = accounts.add(newAccount(email("oberon@tyrna.nog"), ok(Money.of(100))).value()).value();
+        TransactionId t1 = TransactionId.transactionId("t1").value();
+        TransactionId t2 = TransactionId.transactionId("t2").value();
+        TransactionId t3 = TransactionId.transactionId("t3").value();
+
+        client.transfer(new MoneyTransfer(t1, src, dst, Money.of(10)), context.asyncAssertSuccess(transferOr -> {
+            context.assertEquals(t1, transferOr.value());
+            client.transferAll(Arrays.asList(
+                    new MoneyTransfer(t2, src, dst, Money.of(10)),
+                    new MoneyTransfer(t3, src, src, Money.of(10))), context.asyncAssertSuccess(transferOrs -> {
+                context.assertTrue(transferOrs.get(0).succeeded());
+                context.assertEquals("identical-src-dst", transferOrs.get(1).error().error());
+                client.findTransfer(t2, context.asyncAssertSuccess(transferOpt -> {
+                    context.assertTrue(transferOpt.isPresent());
+                    client.pendingTransactions(context.asyncAssertSuccess(pending -> {
+                        context.assertEquals(2L, pending);
+                        async.complete();
+                    }));
+                }));
+            }));
+        }));
+    }
+
+    @Test
+    public void should_fail_when_no_accounts_are_served(TestContext context) {
+        Vertx other = Vertx.vertx();
+        new AccountsClient(other.eventBus()).findById(AccountId.accountId("w17").value(), context.asyncAssertFailure(cause ->
+                other.close(context.asyncAssertSuccess())));
+    }
+}
@@ -0,0 +1,235 @@
+package banktransfer.infra.cluster;
+
+import banktransfer.core.Money;
+import banktransfer.core.account.AccountId;
+import banktransfer.core.account.Journal;
+import banktransfer.core.account.UUIDAccountIdGenerator;
+import banktransfer.core.account.inmemory.InMemoryAccounts;
+import banktransfer.infra.TransactionPropagationVerticle;
+import banktransfer.infra.accounts.AccountsVerticle;
+import banktransfer.infra.web.WebVerticle;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.ext.web.client.HttpResponse;
+import io.vertx.ext.web.client.WebClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.security.SecureRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static banktransfer.core.Email.email;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Several nodes in the same JVM, each one with its own vertx instance, accounts and ports.
+ */
+@RunWith(VertxUnitRunner.class)
+public class ClusterIntegrationTest {
+
+    private static final int NB_NODES = 3;
+
+    private Node[] nodes;
+    private Vertx clientVertx;
+    private WebClient client;
+
+    @Before
+    public void setUp(TestContext context) {
+        int port = 40000 + new SecureRandom().nextInt(5000) * 4;
+        StringBuilder definition = new StringBuilder();
+        for (int i = 0; i < NB_NODES; i++) {
+            if (i > 0)
+                definition.append(',');
+            definition.append("localhost:").append(port + i).append(':').append(port + NB_NODES + i);
+        }
+        nodes = new Node[NB_NODES];
+        for (int i = 0; i < NB_NODES; i++) {
+            nodes[i] = new Node(ClusterTopology.parse(definition.toString(), i));
+            nodes[i].deploy(context);
+        }
+        clientVertx = Vertx.vertx();
+        client = WebClient.create(clientVertx);
+        await().atMost(10, TimeUnit.SECONDS).until(() -> {
+            for (Node node : nodes) {
+                if (!node.link.connected())
+                    return false;
+            }
+            return true;
+        });
+    }
+
+    @After
+    public void tearDown(TestContext context) {
+        for (Node node : nodes) {
+            node.vertx.close(context.asyncAssertSuccess());
+        }
+        clientVertx.close(context.asyncAssertSuccess());
+    }
+
+    @Test
+    public void should_create_accounts_on_the_owner_of_their_email() throws Exception {
+        for (int i = 0; i < 12; i++) {
+            String email = "puck" + i + "@tyrna.nog";
+            HttpResponse<Buffer> created = post(i % NB_NODES, "/account", newAccount(email, "100.00"));
+            assertThat(created.statusCode()).isEqualTo(201);
+
+            AccountId accountId = AccountId.accountId(created.bodyAsJsonObject().getString("account-id")).value();
+            int owner = nodes[0].topology.ownerOf(email(email).value()).index();
+            assertThat(nodes[owner].accounts.findById(accountId)).isPresent();
+            assertThat(nodes[0].topology.ownerOf(accountId).index()).isEqualTo(owner);
+            // whatever the node asked
+            assertThat(get((i + 1) % NB_NODES, "/account/" + accountId.asString()).statusCode()).isEqualTo(200);
+        }
+
+        HttpResponse<Buffer> duplicate = post(1, "/account", newAccount("puck0@tyrna.nog", "100.00"));
+        assertThat(duplicate.statusCode()).isEqualTo(400);
+        assertThat(duplicate.bodyAsJsonObject().getString("error")).isEqualTo("email-already-inuse");
+    }
+
+    @Test
+    public void should_transfer_between_accounts_of_distinct_nodes() throws Exception {
+        AccountId src = createAccountOn(0, "100.00");
+        AccountId dst = createAccountOn(1, "10.00");
+
+        // submitted to the node owning neither account
+        HttpResponse<Buffer> created = post(2, "/transfer", transfer("t800", src, dst, "25.00"));
+        assertThat(created.statusCode()).isEqualTo(201);
+
+        await().atMost(10, TimeUnit.SECONDS).untilAsserted(() -> {
+            HttpResponse<Buffer> transfer = get(2, "/transfer/t800");
+            assertThat(transfer.statusCode()).isEqualTo(200);
+            assertThat(transfer.bodyAsJsonObject().getString("status")).isEqualTo("Acknowledged");
+        });
+        assertThat(nodes[0].accounts.findById(src).get().balance()).isEqualTo(Money.of(75));
+        assertThat(nodes[1].accounts.findById(dst).get().balance()).isEqualTo(Money.of(35));
+        assertThat(get(2, "/account/" + dst.asString() + "/summary").bodyAsJsonObject().getString("balance")).isEqualTo("35");
+    }
+
+    @Test
+    public void should_reject_an_unknown_remote_destination() throws Exception {
+        AccountId src = createAccountOn(0, "100.00");
+        AccountId unknown;
+        do {
+            unknown = new UUIDAccountIdGenerator().newAccountId();
+        } while (nodes[0].topology.ownerOf(unknown).index() != 1);
+
+        HttpResponse<Buffer> rejected = post(0, "/transfer", transfer("t801", src, unknown, "25.00"));
+
+        assertThat(rejected.statusCode()).isEqualTo(400);
+        assertThat(rejected.bodyAsJsonObject().getString("details")).isEqualTo("unknown-dst-account");
+        assertThat(get(1, "/transfer/t801").statusCode()).isEqualTo(404);
+    }
+
+    @Test
+    public void should_send_credits_again_once_reconnected(TestContext context) throws Exception {
+        AccountId src = createAccountOn(0, "100.00");
+        AccountId dst = createAccountOn(1, "10.00");
+        // known before the link goes down: the transfer is accepted without asking node 1
+        assertThat(post(0, "/transfer", transfer("t802", src, dst, "5.00")).statusCode()).isEqualTo(201);
+        await().atMost(10, TimeUnit.SECONDS).until(() -> nodes[1].accounts.findById(dst).get().balance().equals(Money.of(15)));
+
+        CompletableFuture<Void> undeployed = new CompletableFuture<>();
+        nodes[1].vertx.undeploy(nodes[1].linkDeploymentId, ar -> undeployed.complete(null));
+        undeployed.get(10, TimeUnit.SECONDS);
+        await().atMost(10, TimeUnit.SECONDS).until(() -> !nodes[0].link.connected());
+
+        assertThat(post(0, "/transfer", transfer("t803", src, dst, "5.00")).statusCode()).isEqualTo(201);
+        await().atMost(10, TimeUnit.SECONDS).until(() -> nodes[0].accounts.findById(src).get().balance().equals(Money.of(90)));
+        assertThat(nodes[1].accounts.findById(dst).get().balance()).isEqualTo(Money.of(15));
+
+        nodes[1].deployLink(context);
+        await().atMost(10, TimeUnit.SECONDS).until(() -> nodes[1].accounts.findById(dst).get().balance().equals(Money.of(20)));
+        await().atMost(10, TimeUnit.SECONDS).until(() ->
+                "Acknowledged".equals(get(0, "/transfer/t803").bodyAsJsonObject().getString("status")));
+    }
+
+    private AccountId createAccountOn(int node, String initialBalance) throws Exception {
+        for (int i = 0; ; i++) {
+            String email = "node" + node + "-" + i + "@tyrna.nog";
+            if (nodes[0].topology.ownerOf(email(email).value()).index() != node)
+                continue;
+            HttpResponse<Buffer> created = post(0, "/account", newAccount(email, initialBalance));
+            assertThat(created.statusCode()).isEqualTo(201);
+            return AccountId.accountId(created.bodyAsJsonObject().getString("account-id")).value();
+        }
+    }
+
+    private static JsonObject newAccount(String email, String initialBalance) {
+        return new JsonObject()
+                .put("email", email)
+                .put("initial-balance", initialBalance);
+    }
+
+    private static JsonObject transfer(String transactionId, AccountId src, AccountId dst, String amount) {
+        return new JsonObject()
+                .put("transaction-id", transactionId)
+                .put("source-id", src.asString())
+                .put("destination-id", dst.asString())
+                .put("amount", amount);
+    }
+
+    private HttpResponse<Buffer> post(int node, String path, JsonObject body) throws Exception {
+        CompletableFuture<HttpResponse<Buffer>> response = new CompletableFuture<>();
+        client.post(nodes[node].topology.self().httpPort(), "localhost", path)
+                .sendJsonObject(body, ar -> {
+                    if (ar.succeeded())
+                        response.complete(ar.result());
+                    else
+                        response.completeExceptionally(ar.cause());
+                });
+        return response.get(10, TimeUnit.SECONDS);
+    }
+
+    private HttpResponse<Buffer> get(int node, String path) throws Exception {
+        CompletableFuture<HttpResponse<Buffer>> response = new CompletableFuture<>();
+        client.get(nodes[node].topology.self().httpPort(), "localhost", path)
+                .send(ar -> {
+                    if (ar.succeeded())
+                        response.complete(ar.result());
+                    else
+                        response.completeExceptionally(ar.cause());
+                });
+        return response.get(10, TimeUnit.SECONDS);
+    }
+
+    private static class Node {
+        private final ClusterTopology topology;
+        private final Vertx vertx = Vertx.vertx();
+        private final InMemoryAccounts accounts;
+        private final ClusterLink link;
+        private final ClusterMoneyTransferService moneyTransferService;
+        private volatile String linkDeploymentId;
+
+        private Node(ClusterTopology topology) {
+            this.topology = topology;
+            this.accounts = new InMemoryAccounts(new OwnedAccountIdGenerator(new UUIDAccountIdGenerator(), topology));
+            this.link = new ClusterLink(topology, accounts);
+            this.moneyTransferService = new ClusterMoneyTransferService(accounts, link);
+        }
+
+        private void deploy(TestContext context) {
+            deployLink(context);
+            vertx.deployVerticle(new AccountsVerticle(accounts, moneyTransferService, link), context.asyncAssertSuccess());
+            vertx.deployVerticle(new TransactionPropagationVerticle(accounts, moneyTransferService),
+                    new DeploymentOptions().setWorker(true).setConfig(new JsonObject()
+                            .put(TransactionPropagationVerticle.PROPAGATE_MAX_DELAY_MS, 1)),
+                    context.asyncAssertSuccess());
+            vertx.deployVerticle(new WebVerticle(Journal.NONE),
+                    new DeploymentOptions().setConfig(topology.putInto(new JsonObject()
+                            .put(WebVerticle.HTTP_PORT, topology.self().httpPort()))),
+                    context.asyncAssertSuccess());
+        }
+
+        private void deployLink(TestContext context) {
+            vertx.deployVerticle(link, context.asyncAssertSuccess(id -> linkDeploymentId = id));
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package banktransfer.infra.cluster;
+
+import banktransfer.core.Money;
+import banktransfer.core.account.Account;
+import banktransfer.core.account.AccountId;
+import banktransfer.core.account.MoneyTransfer;
+import banktransfer.core.account.SequenceAccountIdGenerator;
+import banktransfer.core.account.TransactionId;
+import banktransfer.core.account.inmemory.InMemoryAccounts;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.NetClientOptions;
+import io.vertx.core.net.NetSocket;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.security.SecureRandom;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static banktransfer.core.Email.email;
+import static banktransfer.core.Failures.TRANSACTION_ALREADY_APPLIED;
+import static banktransfer.core.Status.ok;
+import static banktransfer.core.account.NewAccount.newAccount;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.when;
+
+/**
+ * The local node listens on 127.0.0.1, the other one is declared on 127.0.0.2: both are loopback
+ * addresses, a client can connect from either.
+ */
+public class ClusterLinkTest {
+
+    private Vertx vertx;
+    private InMemoryAccounts accounts;
+    private ClusterTopology topology;
+    private Account destination;
+    private ClusterLink link;
+
+    @Before
+    public void setUp() throws Exception {
+        int port = 45000 + new SecureRandom().nextInt(5000) * 2;
+        topology = ClusterTopology.parse("127.0.0.1:" + port + ":" + (port + 1) + ",127.0.0.2:" + port + ":" + (port + 1), 0);
+        // spied to stand for an account in any state
+        accounts = Mockito.spy(new InMemoryAccounts(new SequenceAccountIdGenerator()));
+        AccountId accountId = accounts.add(newAccount(email("titania@tyrna.nog"), ok(Money.of(10))).value()).value();
+        destination = accounts.findById(accountId).get();
+        vertx = Vertx.vertx();
+        CompletableFuture<String> deployed = new CompletableFuture<>();
+        link = new ClusterLink(topology, accounts);
+        vertx.deployVerticle(link, ar -> {
+            if (ar.succeeded())
+                deployed.complete(ar.result());
+            else
+                deployed.completeExceptionally(ar.cause());
+        });
+        deployed.get(10, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        CompletableFuture<Void> closed = new CompletableFuture<>();
+        vertx.close(ar -> closed.complete(null));
+        closed.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void should_accept_credits_from_another_node() throws Exception {
+        TransactionId transactionId = TransactionId.transactionId("t900").value();
+
+        sendCredit("127.0.0.2", transactionId);
+
+        await().atMost(10, TimeUnit.SECONDS).until(() -> destination.findTransaction(transactionId).isPresent());
+    }
+
+    @Test
+    public void should_refuse_connections_from_any_other_address() throws Exception {
+        TransactionId transactionId = TransactionId.transactionId("t901").value();
+
+        AtomicBoolean closed = sendCredit("127.0.0.1", transactionId);
+
+        await().atMost(10, TimeUnit.SECONDS).untilTrue(closed);
+        assertThat(destination.findTransaction(transactionId)).isEmpty();
+    }
+
+    @Test
+    public void should_acknowledge_a_credit_sent_again_only_once_applied() throws Exception {
+        Queue<TransactionId> acknowledged = new ConcurrentLinkedQueue<>();
+        listenAsOtherNode(frame -> {
+            if (frame.type() == StepFrames.ACKNOWLEDGE)
+                acknowledged.add(frame.moneyTransfer().transactionId());
+        });
+        Account rejecting = Mockito.mock(Account.class);
+        when(rejecting.credits(any())).thenReturn(TRANSACTION_ALREADY_APPLIED.status());
+        when(rejecting.findTransaction(any())).thenReturn(Optional.empty());
+        TransactionId compacted = TransactionId.transactionId("t902").value();
+        TransactionId notApplied = TransactionId.transactionId("t903").value();
+        when(rejecting.compacted(compacted)).thenReturn(true);
+        doReturn(Optional.of(rejecting)).when(accounts).findById(destination.accountId());
+        // acknowledgements are dropped until then
+        await().atMost(10, TimeUnit.SECONDS).until(link::connected);
+
+        // in order over the same connection: the second one is acknowledged after the first would be
+        sendCredit("127.0.0.2", notApplied);
+        sendCredit("127.0.0.2", compacted);
+
+        await().atMost(10, TimeUnit.SECONDS).until(() -> acknowledged.contains(compacted));
+        assertThat(acknowledged).containsExactly(compacted);
+    }
+
+    private void listenAsOtherNode(Handler<StepFrames.Frame> handler) throws Exception {
+        ClusterTopology.Node other = topology.nodes().get(1);
+        CompletableFuture<Void> listening = new CompletableFuture<>();
+        vertx.createNetServer()
+                .connectHandler(socket -> socket.handler(StepFrames.parser(handler)))
+                .listen(other.stepsPort(), other.host(), ar -> {
+                    if (ar.succeeded())
+                        listening.complete(null);
+                    else
+                        listening.completeExceptionally(ar.cause());
+                });
+        listening.get(10, TimeUnit.SECONDS);
+    }
+
+    private AccountId sourceOfOtherNode() {
+        for (int i = 900; ; i++) {
+            AccountId accountId = AccountId.accountId("w" + i).value();
+            if (!topology.isLocal(accountId))
+                return accountId;
+        }
+    }
+
+    private AtomicBoolean sendCredit(String localAddress, TransactionId transactionId) throws Exception {
+        CompletableFuture<NetSocket> connected = new CompletableFuture<>();
+        AtomicBoolean closed = new AtomicBoolean();
+        vertx.createNetClient(new NetClientOptions().setLocalAddress(localAddress))
+                .connect(topology.self().stepsPort(), topology.self().host(), ar -> {
+                    if (ar.failed()) {
+                        connected.completeExceptionally(ar.cause());
+                        return;
+                    }
+                    // may be closed at once, before this test thread gets the socket
+                    ar.result().closeHandler(v -> closed.set(true));
+                    connected.complete(ar.result());
+                });
+        NetSocket socket = connected.get(10, TimeUnit.SECONDS);
+        Buffer frame = Buffer.buffer();
+        StepFrames.appendStep(frame, StepFrames.CREDIT,
+                new MoneyTransfer(transactionId, sourceOfOtherNode(), destination.accountId(), Money.of(5)));
+        socket.write(frame);
+        return closed;
+    }
+}
@@ -0,0 +1,79 @@
+package banktransfer.infra.cluster;
+
+import banktransfer.core.account.AccountId;
+import banktransfer.core.account.SequenceAccountIdGenerator;
+import banktransfer.core.account.UUIDAccountIdGenerator;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import static banktransfer.core.Email.email;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ClusterTopologyTest {
+
+    @Test
+    public void should_parse_the_nodes() {
+        ClusterTopology topology = ClusterTopology.parse("localhost:8080:9080, otherhost:8081:9081", 1);
+
+        assertThat(topology.size()).isEqualTo(2);
+        assertThat(topology.self().index()).isEqualTo(1);
+        assertThat(topology.self().host()).isEqualTo("otherhost");
+        assertThat(topology.self().httpPort()).isEqualTo(8081);
+        assertThat(topology.self().stepsPort()).isEqualTo(9081);
+    }
+
+    @Test
+    public void should_reject_an_invalid_definition() {
+        assertThatThrownBy(() -> ClusterTopology.parse("localhost:8080", 0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ClusterTopology.parse("localhost:8080:9080", 1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void should_round_trip_through_a_configuration() {
+        JsonObject config = ClusterTopology.parse("localhost:8080:9080,localhost:8081:9081", 1).putInto(new JsonObject());
+
+        ClusterTopology topology = ClusterTopology.fromConfig(config);
+
+        assertThat(topology.size()).isEqualTo(2);
+        assertThat(topology.self().httpPort()).isEqualTo(8081);
+        assertThat(ClusterTopology.fromConfig(new JsonObject())).isNull();
+    }
+
+    @Test
+    public void should_agree_on_the_owner_whatever_the_node() {
+        String nodes = "localhost:8080:9080,localhost:8081:9081,localhost:8082:9082";
+        ClusterTopology node0 = ClusterTopology.parse(nodes, 0);
+        ClusterTopology node2 = ClusterTopology.parse(nodes, 2);
+        AccountId accountId = AccountId.accountId("w17").value();
+
+        assertThat(node0.ownerOf(accountId).index()).isEqualTo(node2.ownerOf(accountId).index());
+        assertThat(node0.isLocal(accountId)).isEqualTo(node0.ownerOf(accountId).index() == 0);
+        assertThat(node0.ownerOf(email("puck@tyrna.nog").value()).index())
+                .isEqualTo(node2.ownerOf(email("puck@tyrna.nog").value()).index());
+    }
+
+    @Test
+    public void should_spread_sequential_ids_over_the_nodes() {
+        ClusterTopology topology = ClusterTopology.parse("localhost:8080:9080,localhost:8081:9081,localhost:8082:9082", 0);
+        SequenceAccountIdGenerator generator = new SequenceAccountIdGenerator();
+        int[] owned = new int[topology.size()];
+        for (int i = 0; i < 30_000; i++) {
+            owned[topology.ownerOf(generator.newAccountId()).index()]++;
+        }
+
+        for (int count : owned) {
+            assertThat(count).isBetween(9_000, 11_000);
+        }
+    }
+
+    @Test
+    public void should_only_generate_local_ids() {
+        ClusterTopology topology = ClusterTopology.parse("localhost:8080:9080,localhost:8081:9081,localhost:8082:9082", 1);
+        OwnedAccountIdGenerator generator = new OwnedAccountIdGenerator(new UUIDAccountIdGenerator(), topology);
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(topology.isLocal(generator.newAccountId())).isTrue();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package banktransfer.infra.cluster;
+
+import banktransfer.core.Money;
+import banktransfer.core.account.AccountId;
+import banktransfer.core.account.MoneyTransfer;
+import banktransfer.core.account.TransactionId;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.parsetools.RecordParser;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StepFramesTest {
+
+    private static final MoneyTransfer MONEY_TRANSFER = new MoneyTransfer(
+            TransactionId.transactionId("t800").value(),
+            AccountId.accountId("w17").value(),
+            AccountId.accountId("é42").value(),
+            Money.ofMinor(1_234));
+
+    @Test
+    public void should_read_back_frames_split_anywhere() {
+        Buffer stream = Buffer.buffer();
+        StepFrames.appendStep(stream, StepFrames.CREDIT, MONEY_TRANSFER);
+        StepFrames.appendExists(stream, 7L, MONEY_TRANSFER.destination());
+        StepFrames.appendExistsReply(stream, 7L, true);
+        StepFrames.appendStep(stream, StepFrames.ACKNOWLEDGE, MONEY_TRANSFER);
+        List<StepFrames.Frame> frames = new ArrayList<>();
+        RecordParser parser = StepFrames.parser(frames::add);
+
+        // one byte at a time: frames do not depend on how the stream is chunked
+        for (int i = 0; i < stream.length(); i++) {
+            parser.handle(stream.getBuffer(i, i + 1));
+        }
+
+        assertThat(frames).hasSize(4);
+        assertThat(frames.get(0).type()).isEqualTo(StepFrames.CREDIT);
+        assertThat(frames.get(0).moneyTransfer()).isEqualTo(MONEY_TRANSFER);
+        assertThat(frames.get(1).type()).isEqualTo(StepFrames.EXISTS);
+        assertThat(frames.get(1).requestId()).isEqualTo(7L);
+        assertThat(frames.get(1).accountId()).isEqualTo(MONEY_TRANSFER.destination());
+        assertThat(frames.get(2).type()).isEqualTo(StepFrames.EXISTS_REPLY);
+        assertThat(frames.get(2).requestId()).isEqualTo(7L);
+        assertThat(frames.get(2).found()).isTrue();
+        assertThat(frames.get(3).type()).isEqualTo(StepFrames.ACKNOWLEDGE);
+        assertThat(frames.get(3).moneyTransfer()).isEqualTo(MONEY_TRANSFER);
+    }
+}
@@ -0,0 +1,298 @@
+package banktransfer.infra.journal;
+
+import banktransfer.core.Email;
+import banktransfer.core.Failure;
+import banktransfer.core.Money;
+import banktransfer.core.account.AccountId;
+import banktransfer.core.account.DefaultMoneyTransferService;
+import banktransfer.core.account.Journal;
+import banktransfer.core.account.MoneyTransfer;
+import banktransfer.core.account.RetentionPolicy;
+import banktransfer.core.account.SequenceAccountIdGenerator;
+import banktransfer.core.account.Transaction;
+import banktransfer.core.account.TransactionId;
+import banktransfer.core.account.TransactionStatus;
+import banktransfer.core.account.inmemory.InMemoryAccounts;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static banktransfer.core.Status.ok;
+import static banktransfer.core.account.NewAccount.newAccount;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileJournalTest {
+
+    private static final AccountId ACCOUNT_ID1 = AccountId.accountId("a0001").value();
+    private static final AccountId ACCOUNT_ID2 = AccountId.accountId("a0002").value();
+    private static final Email EMAIL = Email.email("puck@tyrna.nog").value();
+    private static final MoneyTransfer TRANSFER = new MoneyTransfer(
+            TransactionId.transactionId("t0001").value(), ACCOUNT_ID1, ACCOUNT_ID2, Money.ofMinor(15050));
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void should_replay_appended_records_in_order() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        try (FileJournal journal = new FileJournal(dir)) {
+            journal.start();
+            appendRecords(journal);
+        }
+
+        RecordingJournal recording = new RecordingJournal();
+        FileJournal journal = new FileJournal(dir);
+        assertThat(journal.replay(recording)).isEqualTo(4);
+        assertThat(recording.records).containsExactly(
+                "created a0001 puck@tyrna.nog 500",
+                "submitted a0001 #2 @1234 t0001 a0001>a0002 150.5",
+                "updated a0001 #2 Debited None",
+                "updated a0002 #7 Cancelled InsufficientFund");
+    }
+
+    @Test
+    public void should_resume_appending_after_the_last_record() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        try (FileJournal journal = new FileJournal(dir)) {
+            journal.start();
+            appendRecords(journal);
+        }
+        try (FileJournal journal = new FileJournal(dir)) {
+            journal.replay(new RecordingJournal());
+            journal.start();
+            journal.transactionUpdated(ACCOUNT_ID1, 2, TransactionStatus.Acknowledged, Transaction.CancelReason.None);
+        }
+
+        RecordingJournal recording = new RecordingJournal();
+        assertThat(new FileJournal(dir).replay(recording)).isEqualTo(5);
+        assertThat(recording.records).last().isEqualTo("updated a0001 #2 Acknowledged None");
+    }
+
+    @Test
+    public void should_truncate_torn_record_at_the_end_of_the_journal() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        try (FileJournal journal = new FileJournal(dir)) {
+            journal.start();
+            appendRecords(journal);
+        }
+        Path segment = segments(dir).get(0);
+        long size = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            // partially written last record
+            channel.truncate(size - 3);
+        }
+
+        try (FileJournal journal = new FileJournal(dir)) {
+            assertThat(journal.replay(new RecordingJournal())).isEqualTo(3);
+            journal.start();
+            journal.transactionUpdated(ACCOUNT_ID1, 2, TransactionStatus.Acknowledged, Transaction.CancelReason.None);
+        }
+
+        RecordingJournal recording = new RecordingJournal();
+        assertThat(new FileJournal(dir).replay(recording)).isEqualTo(4);
+        assertThat(recording.records).last().isEqualTo("updated a0001 #2 Acknowledged None");
+    }
+
+    @Test
+    public void should_ignore_corrupted_record_at_the_end_of_the_journal() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        try (FileJournal journal = new FileJournal(dir)) {
+            journal.start();
+            appendRecords(journal);
+        }
+        Path segment = segments(dir).get(0);
+        byte[] bytes = Files.readAllBytes(segment);
+        bytes[bytes.length - 1] ^= 0x7f;
+        Files.write(segment, bytes);
+
+        assertThat(new FileJournal(dir).replay(new RecordingJournal())).isEqualTo(3);
+    }
+
+    @Test
+    public void should_roll_segments() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        try (FileJournal journal = new FileJournal(dir, 64 * 1024, 1, 0)) {
+            journal.start();
+            for (int i = 0; i < 4000; i++) {
+                journal.transactionUpdated(ACCOUNT_ID1, i, TransactionStatus.Debited, Transaction.CancelReason.None);
+                awaitDurable(journal);
+            }
+        }
+        assertThat(segments(dir).size()).isGreaterThan(1);
+
+        RecordingJournal recording = new RecordingJournal();
+        assertThat(new FileJournal(dir).replay(recording)).isEqualTo(4000);
+        assertThat(recording.records.get(3999)).isEqualTo("updated a0001 #3999 Debited None");
+    }
+
+    @Test
+    public void should_replay_from_position_once_older_segments_are_deleted() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        long position = 0;
+        try (FileJournal journal = new FileJournal(dir, 64 * 1024, 1, 0)) {
+            journal.start();
+            for (int i = 0; i < 4000; i++) {
+                if (i == 3000)
+                    position = journal.appendedPosition();
+                journal.transactionUpdated(ACCOUNT_ID1, i, TransactionStatus.Debited, Transaction.CancelReason.None);
+                awaitDurable(journal);
+            }
+        }
+        FileJournal journal = new FileJournal(dir, 64 * 1024, 1, 0);
+        assertThat(journal.deleteSegmentsBefore(position)).isPositive();
+
+        RecordingJournal recording = new RecordingJournal();
+        assertThat(journal.replay(recording, position)).isEqualTo(1000);
+        assertThat(recording.records.get(0)).isEqualTo("updated a0001 #3000 Debited None");
+    }
+
+    @Test
+    public void should_notify_once_records_are_durable() throws Exception {
+        try (FileJournal journal = new FileJournal(folder.getRoot().toPath(), FileJournal.DEFAULT_SEGMENT_SIZE, 16, 10)) {
+            journal.start();
+            int nbThreads = 8;
+            int nbRecords = 200;
+            AtomicInteger durable = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(nbThreads * nbRecords);
+            ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+            for (int t = 0; t < nbThreads; t++) {
+                executor.execute(() -> {
+                    for (int i = 0; i < nbRecords; i++) {
+                        journal.transactionUpdated(ACCOUNT_ID1, i, TransactionStatus.Debited, Transaction.CancelReason.None);
+                        journal.whenDurable(() -> {
+                            durable.incrementAndGet();
+                            done.countDown();
+                        }, failure -> done.countDown());
+                    }
+                });
+            }
+            assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+            executor.shutdown();
+            assertThat(durable.get()).isEqualTo(nbThreads * nbRecords);
+            assertThat(journal.durablePosition()).isEqualTo(Files.size(segments(folder.getRoot().toPath()).get(0)));
+        }
+    }
+
+    @Test
+    public void should_notify_failure_once_closed() throws Exception {
+        FileJournal journal = new FileJournal(folder.getRoot().toPath());
+        journal.start();
+        journal.close();
+
+        journal.accountCreated(ACCOUNT_ID1, EMAIL, Money.of(500));
+        AtomicReference<Failure> failure = new AtomicReference<>();
+        journal.whenDurable(() -> {
+        }, failure::set);
+        assertThat(failure.get().error()).isEqualTo("journal-closed");
+        assertThat(new FileJournal(folder.getRoot().toPath()).replay(new RecordingJournal())).isZero();
+    }
+
+    @Test
+    public void should_only_accept_records_once_started_and_until_closed() throws Exception {
+        FileJournal journal = new FileJournal(folder.getRoot().toPath());
+        assertThat(journal.unavailable().error()).isEqualTo("journal-unavailable");
+
+        journal.start();
+        assertThat(journal.unavailable()).isNull();
+
+        journal.close();
+        assertThat(journal.unavailable().error()).isEqualTo("journal-closed");
+    }
+
+    @Test
+    public void should_journal_the_credits_of_a_striped_account() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        InMemoryAccounts accounts;
+        AccountId source;
+        AccountId merchant;
+        try (FileJournal journal = new FileJournal(dir)) {
+            journal.start();
+            accounts = new InMemoryAccounts(new SequenceAccountIdGenerator(), InMemoryAccounts.DEFAULT_PARTITIONS, RetentionPolicy.keepAll(), journal);
+            DefaultMoneyTransferService service = new DefaultMoneyTransferService(accounts);
+            source = accounts.add(newAccount(Email.email("titania@tyrna.nog"), ok(Money.of(100))).value()).value();
+            merchant = accounts.add(newAccount(ok(EMAIL), ok(Money.of(0))).value()).value();
+            accounts.stripeCredits(merchant);
+            // cells get their limits on the first propagation
+            accounts.findById(merchant).get().applyTransactions(service);
+            for (int i = 0; i < 3; i++)
+                service.transfer(new MoneyTransfer(TransactionId.transactionId("s" + i).value(), source, merchant, Money.of(10)));
+            service.propagateTransactions();
+            service.propagateTransactions();
+            awaitDurable(journal);
+        }
+
+        assertThat(accounts.findById(merchant).get().balance()).isEqualTo(Money.of(30));
+        assertThat(accounts.findById(source).get().transactions().map(Transaction::status))
+                .containsOnly(TransactionStatus.Acknowledged);
+        RecordingJournal recording = new RecordingJournal();
+        new FileJournal(dir).replay(recording);
+        assertThat(recording.records.stream().filter(record -> record.startsWith("updated " + merchant.asString())))
+                .hasSize(3)
+                .allMatch(record -> record.endsWith(" Credited None"));
+    }
+
+    private static void appendRecords(FileJournal journal) throws InterruptedException {
+        journal.accountCreated(ACCOUNT_ID1, EMAIL, Money.of(500));
+        journal.transactionSubmitted(ACCOUNT_ID1, 2, 1234, TRANSFER);
+        journal.transactionUpdated(ACCOUNT_ID1, 2, TransactionStatus.Debited, Transaction.CancelReason.None);
+        journal.transactionUpdated(ACCOUNT_ID2, 7, TransactionStatus.Cancelled, Transaction.CancelReason.InsufficientFund);
+        awaitDurable(journal);
+    }
+
+    private static void awaitDurable(Journal journal) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        journal.whenDurable(latch::countDown, failure -> {
+        });
+        assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private static List<Path> segments(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static class RecordingJournal implements Journal {
+        private final List<String> records = new ArrayList<>();
+
+        @Override
+        public void accountCreated(AccountId accountId, Email email, Money initialBalance) {
+            records.add("created " + accountId.asString() + " " + email.asString() + " " + initialBalance.toPlainString());
+        }
+
+        @Override
+        public void transactionSubmitted(AccountId accountId, long sequence, long createdAt, MoneyTransfer moneyTransfer) {
+            records.add("submitted " + accountId.asString() + " #" + sequence + " @" + createdAt
+                    + " " + moneyTransfer.transactionId().asString()
+                    + " " + moneyTransfer.source().asString() + ">" + moneyTransfer.destination().asString()
+                    + " " + moneyTransfer.amount().toPlainString());
+        }
+
+        @Override
+        public void transactionUpdated(AccountId accountId, long sequence, TransactionStatus status, Transaction.CancelReason cancelReason) {
+            records.add("updated " + accountId.asString() + " #" + sequence + " " + status + " " + cancelReason);
+        }
+
+        @Override
+        public void whenDurable(Runnable onDurable, Consumer<Failure> onFailure) {
+            onDurable.run();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package banktransfer.infra.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void should_count_durations_into_cumulative_buckets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(50));
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(100));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(3));
+        histogram.record(TimeUnit.SECONDS.toNanos(30));
+
+        StringBuilder out = new StringBuilder();
+        histogram.write(out, "latency_seconds", "route=\"/transfer\"");
+
+        assertThat(histogram.count()).isEqualTo(4);
+        assertThat(out.toString())
+                .contains("latency_seconds_bucket{route=\"/transfer\",le=\"0.0001\"} 2\n")
+                .contains("latency_seconds_bucket{route=\"/transfer\",le=\"0.0025\"} 2\n")
+                .contains("latency_seconds_bucket{route=\"/transfer\",le=\"0.005\"} 3\n")
+                .contains("latency_seconds_bucket{route=\"/transfer\",le=\"10\"} 3\n")
+                .contains("latency_seconds_bucket{route=\"/transfer\",le=\"+Inf\"} 4\n")
+                .contains("latency_seconds_count{route=\"/transfer\"} 4\n")
+                .contains("latency_seconds_sum{route=\"/transfer\"} 30.00315\n");
+    }
+
+    @Test
+    public void should_write_series_without_labels() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(1));
+
+        StringBuilder out = new StringBuilder();
+        histogram.write(out, "tick_seconds", "");
+
+        assertThat(out.toString())
+                .contains("tick_seconds_bucket{le=\"0.001\"} 1\n")
+                .contains("tick_seconds_count 1\n");
+    }
+}
@@ -0,0 +1,97 @@
+package banktransfer.infra.metrics;
+
+import banktransfer.core.Failure;
+import banktransfer.core.Money;
+import banktransfer.core.account.AccountId;
+import banktransfer.core.account.DefaultMoneyTransferService;
+import banktransfer.core.account.MoneyTransfer;
+import banktransfer.core.account.SequenceAccountIdGenerator;
+import banktransfer.core.account.TransactionId;
+import banktransfer.core.account.inmemory.InMemoryAccounts;
+import org.junit.Test;
+
+import static banktransfer.core.Email.email;
+import static banktransfer.core.Status.ok;
+import static banktransfer.core.account.NewAccount.newAccount;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MetricsTest {
+
+    @Test
+    public void should_count_failures_per_code() {
+        Metrics metrics = new Metrics();
+        metrics.failed(new Failure("unknown-src-account"));
+        metrics.failed(new Failure("unknown-src-account"));
+        metrics.failed("account-not-found");
+
+        assertThat(metrics.scrape())
+                .contains("# TYPE banktransfer_failures_total counter\n")
+                .contains("banktransfer_failures_total{code=\"unknown-src-account\"} 2\n")
+                .contains("banktransfer_failures_total{code=\"account-not-found\"} 1\n")
+                .doesNotContain("banktransfer_transactions");
+    }
+
+    @Test
+    public void should_report_transactions_per_status() throws InterruptedException {
+        InMemoryAccounts accounts = new InMemoryAccounts(new SequenceAccountIdGenerator());
+        DefaultMoneyTransferService moneyTransferService = new DefaultMoneyTransferService(accounts);
+        AccountId src = accounts.add(newAccount(email("titania@tyrna.nog"), ok(Money.of(100))).value()).value();
+        AccountId dst = accounts.add(newAccount(email("oberon@tyrna.nog"), ok(Money.of(100))).value()).value();
+        Metrics metrics = new Metrics(accounts);
+
+        moneyTransferService.transfer(new MoneyTransfer(TransactionId.transactionId("t1").value(), src, dst, Money.of(10)));
+        moneyTransferService.transfer(new MoneyTransfer(TransactionId.transactionId("t2").value(), src, dst, Money.of(10)));
+
+        // ages are in milliseconds, a warm scrape may run within the same one
+        Thread.sleep(5);
+
+        assertThat(metrics.scrape())
+                .contains("banktransfer_transactions_total{status=\"Pending\"} 2\n")
+                .contains("banktransfer_transactions{status=\"Pending\"} 2\n")
+                .contains("banktransfer_transactions{status=\"Debited\"} 0\n")
+                .doesNotContain("banktransfer_oldest_pending_transaction_age_seconds 0.0\n")
+                .contains("banktransfer_idempotency_remembered_ids 2\n");
+
+        // debit, then credit on the destination, then acknowledge on the source
+        moneyTransferService.propagateTransactions();
+        assertThat(metrics.scrape())
+                .contains("banktransfer_transactions_total{status=\"Debited\"} 2\n");
+
+        moneyTransferService.propagateTransactions();
+        moneyTransferService.propagateTransactions();
+        assertThat(metrics.scrape())
+                .contains("banktransfer_transactions_total{status=\"Pending\"} 4\n")
+                .contains("banktransfer_transactions{status=\"Pending\"} 0\n")
+                .contains("banktransfer_transactions{status=\"Debited\"} 0\n")
+                .contains("banktransfer_transactions_total{status=\"Credited\"} 2\n")
+                .contains("banktransfer_transactions_total{status=\"Acknowledged\"} 2\n")
+                .contains("banktransfer_oldest_pending_transaction_age_seconds 0.0\n");
+    }
+
+    @Test
+    public void should_record_propagation_ticks() {
+        Metrics metrics = new Metrics();
+        metrics.propagationTick(2_000_000L);
+
+        assertThat(metrics.scrape())
+                .contains("banktransfer_propagation_tick_duration_seconds_bucket{le=\"0.0025\"} 1\n")
+                .contains("banktransfer_propagation_last_tick_duration_seconds 0.002\n");
+    }
+
+    @Test
+    public void should_record_propagation_decisions() {
+        Metrics metrics = new Metrics();
+        metrics.propagationScheduled(0, 300);
+        metrics.propagationScheduled(4_000_000L, 12);
+        metrics.propagationRound(12);
+        metrics.propagationIdle();
+
+        assertThat(metrics.scrape())
+                .contains("banktransfer_propagation_decisions_total{decision=\"immediate\"} 1\n")
+                .contains("banktransfer_propagation_decisions_total{decision=\"delayed\"} 1\n")
+                .contains("banktransfer_propagation_decisions_total{decision=\"idle\"} 1\n")
+                .contains("banktransfer_propagation_delay_seconds_bucket{le=\"0.005\"} 2\n")
+                .contains("banktransfer_propagation_round_accounts_total 12\n")
+                .contains("banktransfer_propagation_backlog_accounts 0\n");
+    }
+}
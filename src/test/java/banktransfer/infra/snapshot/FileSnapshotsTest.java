@@ -0,0 +1,197 @@
+package banktransfer.infra.snapshot;
+
+import banktransfer.core.Email;
+import banktransfer.core.Money;
+import banktransfer.core.account.Account;
+import banktransfer.core.account.AccountId;
+import banktransfer.core.account.DefaultMoneyTransferService;
+import banktransfer.core.account.MoneyTransfer;
+import banktransfer.core.account.RetentionPolicy;
+import banktransfer.core.account.SequenceAccountIdGenerator;
+import banktransfer.core.account.Transaction;
+import banktransfer.core.account.TransactionId;
+import banktransfer.core.account.TransactionStatus;
+import banktransfer.core.account.inmemory.InMemoryAccounts;
+import banktransfer.core.account.inmemory.JournalRecovery;
+import banktransfer.infra.journal.FileJournal;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static banktransfer.core.Status.ok;
+import static banktransfer.core.account.NewAccount.newAccount;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FileSnapshotsTest {
+
+    private static final TransactionId TRANSACTION_ID1 = TransactionId.transactionId("t0001").value();
+    private static final TransactionId TRANSACTION_ID2 = TransactionId.transactionId("t0002").value();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void should_restore_balances_and_ongoing_transactions() throws IOException {
+        InMemoryAccounts accounts = new InMemoryAccounts(new SequenceAccountIdGenerator());
+        DefaultMoneyTransferService service = new DefaultMoneyTransferService(accounts);
+        AccountId accountId1 = add(accounts, "titania@tyrna.nog", 500);
+        AccountId accountId2 = add(accounts, "oberon@tyrna.nog", 100);
+        service.transfer(new MoneyTransfer(TRANSACTION_ID1, accountId1, accountId2, Money.of(150)));
+        service.propagateTransactions();
+        service.propagateTransactions();
+        service.transfer(new MoneyTransfer(TRANSACTION_ID2, accountId1, accountId2, Money.of(50)));
+        // debited but not credited yet
+        accounts.findById(accountId1).get().applyTransactions(service);
+
+        FileSnapshots snapshots = new FileSnapshots(folder.getRoot().toPath());
+        snapshots.publish(snapshots.write(accounts, 1234));
+
+        InMemoryAccounts restored = new InMemoryAccounts(new SequenceAccountIdGenerator());
+        assertThat(snapshots.load(restored, 2)).isEqualTo(1234);
+        assertThat(balanceOf(restored, accountId1)).isEqualTo(Money.of(300));
+        assertThat(balanceOf(restored, accountId2)).isEqualTo(Money.of(250));
+        // terminal transactions are folded into the idempotency record
+        assertThat(statusesOf(restored, accountId1)).containsExactly(TransactionStatus.Debited);
+        assertThat(statusesOf(restored, accountId2)).containsExactly(TransactionStatus.Pending);
+
+        DefaultMoneyTransferService restoredService = new DefaultMoneyTransferService(restored);
+        assertThat(restoredService.transfer(new MoneyTransfer(TRANSACTION_ID1, accountId1, accountId2, Money.of(150))).error().error())
+                .isEqualTo("transaction-already-applied");
+        assertThat(restored.add(newAccount(Email.email("titania@tyrna.nog"), ok(Money.of(1))).value()).error().error())
+                .isEqualTo("email-already-inuse");
+
+        restoredService.propagateTransactions();
+        restoredService.propagateTransactions();
+        assertThat(balanceOf(restored, accountId2)).isEqualTo(Money.of(300));
+        assertThat(statusesOf(restored, accountId1)).containsExactly(TransactionStatus.Acknowledged);
+    }
+
+    @Test
+    public void should_load_snapshot_made_of_several_chunks() throws IOException {
+        InMemoryAccounts accounts = new InMemoryAccounts(new SequenceAccountIdGenerator());
+        int nbAccounts = 50_000;
+        for (int i = 0; i < nbAccounts; i++)
+            add(accounts, "w" + i + "@w.com", i);
+
+        FileSnapshots snapshots = new FileSnapshots(folder.getRoot().toPath());
+        Path snapshot = snapshots.write(accounts, 0);
+        assertThat(Files.size(snapshot)).isGreaterThan(2 * 1024 * 1024);
+        snapshots.publish(snapshot);
+
+        InMemoryAccounts restored = new InMemoryAccounts(new SequenceAccountIdGenerator());
+        snapshots.load(restored, 4);
+        long[] count = new long[1];
+        restored.forEach(account -> count[0]++);
+        assertThat(count[0]).isEqualTo(nbAccounts);
+        accounts.forEach(account -> assertThat(balanceOf(restored, account.accountId())).isEqualTo(account.balance()));
+    }
+
+    @Test
+    public void should_only_keep_latest_published_snapshot() throws IOException {
+        InMemoryAccounts accounts = new InMemoryAccounts(new SequenceAccountIdGenerator());
+        add(accounts, "titania@tyrna.nog", 500);
+        FileSnapshots snapshots = new FileSnapshots(folder.getRoot().toPath());
+        snapshots.publish(snapshots.write(accounts, 10));
+        Path pending = snapshots.write(accounts, 20);
+        assertThat(snapshots.latest().get().getFileName().toString()).startsWith("00000000000000000010");
+
+        snapshots.publish(pending);
+        assertThat(snapshots.latest().get().getFileName().toString()).startsWith("00000000000000000020");
+        assertThat(folder.getRoot().list()).hasSize(1);
+    }
+
+    @Test
+    public void should_reject_corrupted_snapshot() throws IOException {
+        InMemoryAccounts accounts = new InMemoryAccounts(new SequenceAccountIdGenerator());
+        add(accounts, "titania@tyrna.nog", 500);
+        FileSnapshots snapshots = new FileSnapshots(folder.getRoot().toPath());
+        snapshots.publish(snapshots.write(accounts, 10));
+        Path snapshot = snapshots.latest().get();
+        byte[] bytes = Files.readAllBytes(snapshot);
+        bytes[30] ^= 0x7f;
+        Files.write(snapshot, bytes);
+
+        assertThatThrownBy(() -> snapshots.load(new InMemoryAccounts(new SequenceAccountIdGenerator()), 1))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("Corrupted snapshot");
+    }
+
+    @Test
+    public void should_recover_from_snapshot_and_journal_tail() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        FileSnapshots snapshots = new FileSnapshots(dir.resolve("snapshots"));
+        AccountId accountId1;
+        AccountId accountId2;
+        try (FileJournal journal = new FileJournal(dir, 64 * 1024, 16, 0)) {
+            journal.start();
+            InMemoryAccounts accounts = new InMemoryAccounts(new SequenceAccountIdGenerator(), InMemoryAccounts.DEFAULT_PARTITIONS, RetentionPolicy.keepAll(), journal);
+            DefaultMoneyTransferService service = new DefaultMoneyTransferService(accounts);
+            accountId1 = add(accounts, "titania@tyrna.nog", 1_000_000);
+            accountId2 = add(accounts, "oberon@tyrna.nog", 0);
+            for (int i = 0; i < 3000; i++) {
+                transfer(service, "a" + i, accountId1, accountId2);
+                service.propagateTransactions();
+            }
+            awaitDurable(journal);
+
+            long position = journal.appendedPosition();
+            snapshots.publish(snapshots.write(accounts, position));
+            assertThat(journal.deleteSegmentsBefore(position)).isPositive();
+
+            // tail: some transfers are fully applied, the last one is only debited
+            for (int i = 0; i < 100; i++) {
+                transfer(service, "b" + i, accountId1, accountId2);
+                service.propagateTransactions();
+            }
+            accounts.findById(accountId1).get().applyTransactions(service);
+            awaitDurable(journal);
+        }
+
+        InMemoryAccounts recovered = new InMemoryAccounts(new SequenceAccountIdGenerator());
+        JournalRecovery recovery = new JournalRecovery(recovered);
+        FileJournal journal = new FileJournal(dir, 64 * 1024, 16, 0);
+        long position = snapshots.load(recovered, 2);
+        assertThat(journal.replay(recovery, position)).isLessThan(3000);
+        journal.start();
+        recovery.complete(new DefaultMoneyTransferService(recovered));
+        new DefaultMoneyTransferService(recovered).propagateTransactions();
+        new DefaultMoneyTransferService(recovered).propagateTransactions();
+        journal.close();
+
+        assertThat(balanceOf(recovered, accountId1)).isEqualTo(Money.of(1_000_000 - 3100));
+        assertThat(balanceOf(recovered, accountId2)).isEqualTo(Money.of(3100));
+        assertThat(recovered.findById(accountId1).get().transactions()
+                .filter(t -> t.status() != TransactionStatus.Acknowledged)
+                .count()).isZero();
+    }
+
+    private static void transfer(DefaultMoneyTransferService service, String transactionId, AccountId src, AccountId dst) {
+        service.transfer(new MoneyTransfer(TransactionId.transactionId(transactionId).value(), src, dst, Money.of(1)));
+    }
+
+    private static void awaitDurable(FileJournal journal) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        journal.whenDurable(latch::countDown, failure -> {
+        });
+        assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private static AccountId add(InMemoryAccounts accounts, String email, long balance) {
+        return accounts.add(newAccount(Email.email(email), ok(Money.of(balance))).value()).value();
+    }
+
+    private static Money balanceOf(InMemoryAccounts accounts, AccountId accountId) {
+        return accounts.findById(accountId).map(Account::balance).get();
+    }
+
+    private static Iterable<TransactionStatus> statusesOf(InMemoryAccounts accounts, AccountId accountId) {
+        return () -> accounts.findById(accountId).get().transactions().map(Transaction::status).iterator();
+    }
+}
@@ -2,18 +2,32 @@ package banktransfer.infra.web;
 
 import banktransfer.core.Email;
 import banktransfer.core.Failure;
+import banktransfer.core.Money;
 import banktransfer.core.Status;
 import banktransfer.core.account.MoneyTransfer;
+import banktransfer.core.account.MoneyTransferSteps;
 import banktransfer.core.account.NewAccount;
+import banktransfer.core.account.Transaction;
+import banktransfer.core.account.inmemory.InMemoryAccount;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.Mockito;
 
-import java.math.BigDecimal;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
 import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 import static banktransfer.core.account.AccountId.accountId;
 import static banktransfer.core.account.TransactionId.transactionId;
+import static java.util.Collections.emptyList;
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class ConvertersTest {
@@ -29,10 +43,10 @@ public class ConvertersTest {
     public void should_convert_valid_NewAccount__no_initial_amount_provided() {
         JsonObject json = new JsonObject().put("email", "titania@@tyrna.nog");
 
-        Status<Failure, NewAccount> newAccountOr = converters.toNewAccount(() -> json);
+        Status<Failure, NewAccount> newAccountOr = converters.toNewAccount(json.toBuffer());
 
         assertThat(newAccountOr.succeeded()).isTrue();
-        assertThat(newAccountOr.value().initialAmount()).isEqualTo(BigDecimal.ZERO);
+        assertThat(newAccountOr.value().initialAmount()).isEqualTo(Money.ZERO);
         assertThat(newAccountOr.value().email()).isEqualTo(Email.email("titania@@tyrna.nog").value());
     }
 
@@ -41,18 +55,16 @@ public class ConvertersTest {
     public void should_convert_valid_NewAccount__with_initial_amount_provided() {
         JsonObject json = new JsonObject().put("email", "titania@@tyrna.nog").put("initial-balance", "500.5");
 
-        Status<Failure, NewAccount> newAccountOr = converters.toNewAccount(() -> json);
+        Status<Failure, NewAccount> newAccountOr = converters.toNewAccount(json.toBuffer());
 
         assertThat(newAccountOr.succeeded()).isTrue();
-        assertThat(newAccountOr.value().initialAmount()).isEqualTo(new BigDecimal("500.5"));
+        assertThat(newAccountOr.value().initialAmount()).isEqualTo(Money.parse("500.5").value());
         assertThat(newAccountOr.value().email()).isEqualTo(Email.email("titania@@tyrna.nog").value());
     }
 
     @Test
     public void should_not_convert_invalid_NewAccount__invalid_json_provided() {
-        Status<Failure, NewAccount> newAccountOr = converters.toNewAccount(() -> {
-            throw new RuntimeException("BOOM");
-        });
+        Status<Failure, NewAccount> newAccountOr = converters.toNewAccount(Buffer.buffer("{\"email\":"));
 
         assertThat(newAccountOr.succeeded()).isFalse();
         assertThat(newAccountOr.error().error()).isEqualTo("invalid-json-format");
@@ -62,7 +74,7 @@ public class ConvertersTest {
     public void should_not_convert_invalid_NewAccount__invalid_email_provided() {
         JsonObject json = new JsonObject().put("email", "titania");
 
-        Status<Failure, NewAccount> newAccountOr = converters.toNewAccount(() -> json);
+        Status<Failure, NewAccount> newAccountOr = converters.toNewAccount(json.toBuffer());
 
         assertThat(newAccountOr.succeeded()).isFalse();
         assertThat(newAccountOr.error().error()).isEqualTo("invalid-email");
@@ -72,7 +84,7 @@ public class ConvertersTest {
     public void should_not_convert_invalid_NewAccount__invalid_email_provided__wrong_type() {
         JsonObject json = new JsonObject().put("email", true);
 
-        Status<Failure, NewAccount> newAccountOr = converters.toNewAccount(() -> json);
+        Status<Failure, NewAccount> newAccountOr = converters.toNewAccount(json.toBuffer());
 
         assertThat(newAccountOr.succeeded()).isFalse();
         assertThat(newAccountOr.error().error()).isEqualTo("invalid-email-format");
@@ -82,7 +94,7 @@ public class ConvertersTest {
     public void should_not_convert_invalid_NewAccount__invalid_amount_format_provided() {
         JsonObject json = new JsonObject().put("email", "titania@tyrna.nog").put("initial-balance", "500€");
 
-        Status<Failure, NewAccount> newAccountOr = converters.toNewAccount(() -> json);
+        Status<Failure, NewAccount> newAccountOr = converters.toNewAccount(json.toBuffer());
 
         assertThat(newAccountOr.succeeded()).isFalse();
         assertThat(newAccountOr.error().error()).isEqualTo("invalid-amount-format");
@@ -92,7 +104,7 @@ public class ConvertersTest {
     public void should_not_convert_invalid_NewAccount__invalid_amount_format_provided__wrong_type() {
         JsonObject json = new JsonObject().put("email", "titania@tyrna.nog").put("initial-balance", true);
 
-        Status<Failure, NewAccount> newAccountOr = converters.toNewAccount(() -> json);
+        Status<Failure, NewAccount> newAccountOr = converters.toNewAccount(json.toBuffer());
 
         assertThat(newAccountOr.succeeded()).isFalse();
         assertThat(newAccountOr.error().error()).isEqualTo("invalid-amount-format");
@@ -106,19 +118,17 @@ public class ConvertersTest {
                 .put("destination-id", "a002")
                 .put("amount", "500.7");
 
-        Status<Failure, MoneyTransfer> moneyTransferOr = converters.toMoneyTransfer(() -> json);
+        Status<Failure, MoneyTransfer> moneyTransferOr = converters.toMoneyTransfer(json.toBuffer());
         assertThat(moneyTransferOr.succeeded()).isTrue();
         assertThat(moneyTransferOr.value().transactionId()).isEqualTo(transactionId("t0001").value());
         assertThat(moneyTransferOr.value().source()).isEqualTo(accountId("a001").value());
         assertThat(moneyTransferOr.value().destination()).isEqualTo(accountId("a002").value());
-        assertThat(moneyTransferOr.value().amount()).isEqualTo(new BigDecimal("500.7"));
+        assertThat(moneyTransferOr.value().amount()).isEqualTo(Money.parse("500.7").value());
     }
 
     @Test
     public void should_not_convert_invalid_MoneyTransfer__invalid_json_provided() {
-        Status<Failure, MoneyTransfer> moneyTransferOr = converters.toMoneyTransfer(() -> {
-            throw new RuntimeException("BOOM");
-        });
+        Status<Failure, MoneyTransfer> moneyTransferOr = converters.toMoneyTransfer(Buffer.buffer("{\"transaction-id\":"));
 
         assertThat(moneyTransferOr.succeeded()).isFalse();
         assertThat(moneyTransferOr.error().error()).isEqualTo("invalid-json-format");
@@ -134,10 +144,9 @@ public class ConvertersTest {
                 .put("amount", "500.7");
 
         BiConsumer<JsonObject, String> assertInvalidJson = (json, error) -> {
-            Status<Failure, MoneyTransfer> status = converters.toMoneyTransfer(() -> json);
+            Status<Failure, MoneyTransfer> status = converters.toMoneyTransfer(json.toBuffer());
             assertThat(status.succeeded()).isFalse();
             assertThat(status.error().error()).isEqualTo(error);
-
         };
 
         assertInvalidJson.accept(base.copy().put("transaction-id", true), "invalid-transaction-id-format");
@@ -156,10 +165,9 @@ public class ConvertersTest {
                 .put("amount", "500.7");
 
         BiConsumer<JsonObject, String> assertInvalidJson = (json, error) -> {
-            Status<Failure, MoneyTransfer> status = converters.toMoneyTransfer(() -> json);
+            Status<Failure, MoneyTransfer> status = converters.toMoneyTransfer(json.toBuffer());
             assertThat(status.succeeded()).isFalse();
             assertThat(status.error().error()).isEqualTo(error);
-
         };
 
         assertInvalidJson.accept(base.copy().put("transaction-id", ""), "no-transaction-id-provided");
@@ -168,5 +176,154 @@ public class ConvertersTest {
         assertInvalidJson.accept(base.copy().put("amount", ""), "no-amount-provided");
     }
 
+    @Test
+    public void should_convert_each_MoneyTransfer_of_a_batch() {
+        JsonArray json = new JsonArray()
+                .add(new JsonObject()
+                        .put("transaction-id", "t0001")
+                        .put("source-id", "a001")
+                        .put("destination-id", "a002")
+                        .put("amount", "500.7"))
+                .add(new JsonObject()
+                        .put("transaction-id", "t0002")
+                        .put("source-id", "a001")
+                        .put("destination-id", "a002")
+                        .put("amount", "500.777"))
+                .add("t0003");
+
+        Status<Failure, List<Status<Failure, MoneyTransfer>>> moneyTransfersOr = converters.toMoneyTransfers(() -> json);
+        assertThat(moneyTransfersOr.succeeded()).isTrue();
+        List<Status<Failure, MoneyTransfer>> moneyTransfers = moneyTransfersOr.value();
+        assertThat(moneyTransfers).hasSize(3);
+        assertThat(moneyTransfers.get(0).value().transactionId()).isEqualTo(transactionId("t0001").value());
+        assertThat(moneyTransfers.get(1).error().error()).isEqualTo("invalid-amount-precision");
+        assertThat(moneyTransfers.get(2).error().error()).isEqualTo("invalid-json-format");
+    }
+
+    @Test
+    public void should_not_convert_a_batch_that_is_not_an_array() {
+        Status<Failure, List<Status<Failure, MoneyTransfer>>> moneyTransfersOr = converters.toMoneyTransfers(() -> {
+            throw new RuntimeException("BOOM");
+        });
+
+        assertThat(moneyTransfersOr.succeeded()).isFalse();
+        assertThat(moneyTransfersOr.error().error()).isEqualTo("invalid-json-format");
+        assertThat(converters.toMoneyTransfers(() -> null).error().error()).isEqualTo("invalid-json-format");
+    }
+
+    @Test
+    public void should_convert_HistoryPage__defaults() {
+        Status<Failure, HistoryPage> pageOr = converters.toHistoryPage(name -> null);
+
+        assertThat(pageOr.succeeded()).isTrue();
+        assertThat(pageOr.value().limit()).isEqualTo(HistoryPage.DEFAULT_LIMIT);
+        assertThat(pageOr.value().afterSequence()).isEqualTo(0);
+        assertThat(pageOr.value().newestFirst()).isFalse();
+    }
+
+    @Test
+    public void should_convert_HistoryPage__with_cursor() {
+        JsonObject params = new JsonObject().put("limit", "20").put("after-sequence", "117").put("order", "desc");
+
+        Status<Failure, HistoryPage> pageOr = converters.toHistoryPage(params::getString);
+
+        assertThat(pageOr.succeeded()).isTrue();
+        assertThat(pageOr.value().limit()).isEqualTo(20);
+        assertThat(pageOr.value().afterSequence()).isEqualTo(117);
+        assertThat(pageOr.value().newestFirst()).isTrue();
+    }
+
+    @Test
+    public void should_not_convert_invalid_HistoryPage() {
+        assertThat(converters.toHistoryPage(params("limit", "0")).error().error()).isEqualTo("invalid-limit");
+        assertThat(converters.toHistoryPage(params("limit", "100000")).error().error()).isEqualTo("invalid-limit");
+        assertThat(converters.toHistoryPage(params("limit", "ten")).error().error()).isEqualTo("invalid-limit");
+        assertThat(converters.toHistoryPage(params("after-sequence", "-1")).error().error()).isEqualTo("invalid-after-sequence");
+        assertThat(converters.toHistoryPage(params("order", "random")).error().error()).isEqualTo("invalid-order");
+    }
+
+    private static Function<String, String> params(String name, String value) {
+        return new JsonObject().put(name, value)::getString;
+    }
+
+    @Test
+    public void should_stream_Account_as_its_dto() throws IOException {
+        InMemoryAccount account = new InMemoryAccount(accountId("w17").value(), Money.of(10), emptyList());
+        for (int i = 0; i < 5; i++) {
+            account.withdraws(new MoneyTransfer(transactionId("t" + i).value(), account.accountId(), accountId("w18").value(), Money.of(20)));
+        }
+        account.applyTransactions(Mockito.mock(MoneyTransferSteps.class));
+
+        for (HistoryPage page : Arrays.asList(new HistoryPage(3, 0, false), new HistoryPage(3, 0, true), new HistoryPage(10, 0, false))) {
+            JsonObject streamed = stream(generator -> converters.write(generator, account, page));
+            assertThat(streamed).isEqualTo(TreeDtos.toDto(account, page));
+        }
+        Transaction cancelled = account.transactions().findFirst().get();
+        assertThat(stream(generator -> converters.writeTransfer(generator, cancelled))).isEqualTo(TreeDtos.toTransferDto(cancelled));
+    }
+
+    @Test
+    public void should_stream_each_kind_of_transfer_result() throws IOException {
+        MoneyTransfer moneyTransfer = new MoneyTransfer(transactionId("t1").value(), accountId("w17").value(), accountId("w18").value(), Money.of(20));
+
+        assertThat(stream(generator -> converters.writeTransferResult(generator, new Failure("invalid-amount").status(), null)))
+                .isEqualTo(new JsonObject().put("status", 400).put("error", "invalid-transfer").put("details", "invalid-amount"));
+        assertThat(stream(generator -> converters.writeTransferResult(generator, Status.ok(moneyTransfer), Status.ok(moneyTransfer.transactionId()))))
+                .isEqualTo(new JsonObject().put("status", 201).put("transaction-id", "t1"));
+        assertThat(stream(generator -> converters.writeTransferResult(generator, Status.ok(moneyTransfer), new Failure("not-enough-funds").status())))
+                .isEqualTo(new JsonObject().put("status", 400).put("transaction-id", "t1").put("error", "transfer-failed").put("details", "not-enough-funds"));
+    }
+
+    private static JsonObject stream(VertxTools.JsonWriter writer) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = VertxTools.JSON_FACTORY.createGenerator(out)) {
+            writer.write(generator);
+        }
+        return new JsonObject(new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void should_convert_valid_MoneyTransfer_from_its_body() {
+        Buffer body = Buffer.buffer("{\"extra\":{\"amount\":[1,2]},\"transaction-id\":\"t0001\",\"source-id\":\"a001\"," +
+                "\"destination-id\":\"a002\",\"amount\":\"1\",\"amount\":\"500.7\"}");
+
+        Status<Failure, MoneyTransfer> moneyTransferOr = converters.toMoneyTransfer(body);
+        assertThat(moneyTransferOr.succeeded()).isTrue();
+        assertThat(moneyTransferOr.value().transactionId()).isEqualTo(transactionId("t0001").value());
+        assertThat(moneyTransferOr.value().source()).isEqualTo(accountId("a001").value());
+        assertThat(moneyTransferOr.value().destination()).isEqualTo(accountId("a002").value());
+        assertThat(moneyTransferOr.value().amount()).isEqualTo(Money.parse("500.7").value());
+    }
+
+    @Test
+    public void should_not_convert_invalid_body() {
+        for (String body : Arrays.asList("", "null", "[]", "{\"transaction-id\":}", "{\"transaction-id\":\"t1\"", "{\"email\" \"x\"}")) {
+            assertThat(converters.toMoneyTransfer(Buffer.buffer(body)).error().error()).isEqualTo("invalid-json-format");
+            assertThat(converters.toNewAccount(Buffer.buffer(body)).error().error()).isEqualTo("invalid-json-format");
+        }
+        assertThat(converters.toMoneyTransfer((Buffer) null).error().error()).isEqualTo("invalid-json-format");
+    }
+
+    @Test
+    public void should_not_convert_body_with_content_after_its_object() {
+        String transfer = "{\"transaction-id\":\"t1\",\"source-id\":\"a001\",\"destination-id\":\"a002\",\"amount\":\"1\"}";
+        String account = "{\"email\":\"titania@tyrna.nog\"}";
+        for (String trailing : Arrays.asList("}", "]", "x", " {}", "\n" + transfer, ",")) {
+            assertThat(converters.toMoneyTransfer(Buffer.buffer(transfer + trailing)).error().error()).isEqualTo("invalid-json-format");
+            assertThat(converters.toNewAccount(Buffer.buffer(account + trailing)).error().error()).isEqualTo("invalid-json-format");
+        }
+        assertThat(converters.toMoneyTransfer(Buffer.buffer(transfer + " \r\n")).succeeded()).isTrue();
+        assertThat(converters.toNewAccount(Buffer.buffer(account + "\n")).succeeded()).isTrue();
+    }
 
-}
\ No newline at end of file
+    @Test
+    public void should_convert_NewAccount_from_its_body() {
+        Status<Failure, NewAccount> newAccountOr = converters.toNewAccount(Buffer.buffer("{\"email\":\"titania@tyrna.nog\",\"initial-balance\":\"500.5\"}"));
+        assertThat(newAccountOr.value().initialAmount()).isEqualTo(Money.parse("500.5").value());
+
+        assertThat(converters.toNewAccount(new JsonObject().put("email", true).toBuffer()).error().error()).isEqualTo("invalid-email-format");
+        assertThat(converters.toNewAccount(new JsonObject().put("email", "titania").toBuffer()).error().error()).isEqualTo("invalid-email");
+        assertThat(converters.toNewAccount(new JsonObject().put("email", "titania@tyrna.nog").put("initial-balance", 12).toBuffer()).error().error())
+                .isEqualTo("invalid-amount-format");
+    }
+}
@@ -0,0 +1,43 @@
+package banktransfer.infra.web;
+
+import banktransfer.core.Failure;
+import banktransfer.core.Failures;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ErrorBodiesTest {
+
+    @Test
+    public void should_encode_a_shared_failure_once() {
+        Buffer body = ErrorBodies.error(Failures.INVALID_EMAIL);
+
+        assertThat(ErrorBodies.error(Failures.INVALID_EMAIL)).isSameAs(body);
+        assertThat(body.toJsonObject()).isEqualTo(new JsonObject().put("error", "invalid-email"));
+    }
+
+    @Test
+    public void should_encode_a_detailed_failure_once_per_kind() {
+        Buffer body = ErrorBodies.error("transfer-failed", Failures.UNKNOWN_SRC_ACCOUNT);
+
+        assertThat(ErrorBodies.error("transfer-failed", Failures.UNKNOWN_SRC_ACCOUNT)).isSameAs(body);
+        assertThat(body.toJsonObject()).isEqualTo(new JsonObject()
+                .put("error", "transfer-failed")
+                .put("details", "unknown-src-account"));
+        assertThat(ErrorBodies.error("invalid-transfer", Failures.UNKNOWN_SRC_ACCOUNT).toJsonObject())
+                .isEqualTo(new JsonObject()
+                        .put("error", "invalid-transfer")
+                        .put("details", "unknown-src-account"));
+    }
+
+    @Test
+    public void should_encode_another_failure_on_each_call() {
+        Failure failure = new Failure("error-bodies-not-shared");
+
+        assertThat(ErrorBodies.error(failure)).isNotSameAs(ErrorBodies.error(failure));
+        assertThat(ErrorBodies.error(failure).toJsonObject())
+                .isEqualTo(new JsonObject().put("error", "error-bodies-not-shared"));
+    }
+}
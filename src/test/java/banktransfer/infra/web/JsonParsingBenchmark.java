@@ -0,0 +1,69 @@
+package banktransfer.infra.web;
+
+import banktransfer.core.Failure;
+import banktransfer.core.Status;
+import banktransfer.core.account.MoneyTransfer;
+import banktransfer.core.account.NewAccount;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request body conversion: the single pass over the body tokens against the decoding alone of the
+ * json tree {@code getBodyAsJson} would build, before any field is even read. Run with the {@code jmh} profile for the allocation per request
+ * ({@code gc.alloc.rate.norm}):
+ * <pre>
+ * mvn -Pjmh test -Djmh.include=JsonParsingBenchmark
+ * </pre>
+ * Lives next to {@link Converters} for package access.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonParsingBenchmark {
+
+    private final Converters converters = new Converters();
+    private final Buffer transfer = new JsonObject()
+            .put("transaction-id", "99a72d4d-b862-4fee-b251-3f60d9ce7846")
+            .put("source-id", "6b827186-6cec-49b1-ab87-a16719074715")
+            .put("destination-id", "ee438cf0-eb3c-4aad-9f33-052179e095dd")
+            .put("amount", "150.25")
+            .toBuffer();
+    private final Buffer account = new JsonObject()
+            .put("email", "titania@tyrna.nog")
+            .put("initial-balance", "500")
+            .toBuffer();
+
+    @Benchmark
+    public JsonObject transferTree() {
+        return transfer.toJsonObject();
+    }
+
+    @Benchmark
+    public Status<Failure, MoneyTransfer> transferStreaming() {
+        return converters.toMoneyTransfer(transfer);
+    }
+
+    @Benchmark
+    public JsonObject accountTree() {
+        return account.toJsonObject();
+    }
+
+    @Benchmark
+    public Status<Failure, NewAccount> accountStreaming() {
+        return converters.toNewAccount(account);
+    }
+}
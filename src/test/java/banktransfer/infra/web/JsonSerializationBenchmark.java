@@ -0,0 +1,93 @@
+package banktransfer.infra.web;
+
+import banktransfer.core.Money;
+import banktransfer.core.account.AccountId;
+import banktransfer.core.account.MoneyTransfer;
+import banktransfer.core.account.MoneyTransferSteps;
+import banktransfer.core.account.TransactionId;
+import banktransfer.core.account.inmemory.InMemoryAccount;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.vertx.core.buffer.Buffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Collections.emptyList;
+
+/**
+ * Account lookup reply: json tree then string, see {@link TreeDtos}, against the generator streaming
+ * into a pooled buffer. Run with the {@code jmh} profile for the
+ * allocation per reply ({@code gc.alloc.rate.norm}):
+ * <pre>
+ * mvn -Pjmh test -Djmh.include=JsonSerializationBenchmark
+ * </pre>
+ * Lives next to {@link Converters} for package access.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonSerializationBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int transactions;
+
+    private final Converters converters = new Converters();
+    private InMemoryAccount account;
+    private HistoryPage page;
+
+    @Setup
+    public void setUp() {
+        AccountId source = AccountId.accountId("6b827186-6cec-49b1-ab87-a16719074715").value();
+        AccountId destination = AccountId.accountId("ee438cf0-eb3c-4aad-9f33-052179e095dd").value();
+        account = new InMemoryAccount(source, Money.of(1_000_000), emptyList());
+        for (int i = 0; i < transactions; i++) {
+            TransactionId transactionId = TransactionId.transactionId("99a72d4d-b862-4fee-b251-" + (100_000_000_000L + i)).value();
+            account.withdraws(new MoneyTransfer(transactionId, source, destination, Money.of(15)));
+        }
+        account.applyTransactions(new MoneyTransferSteps() {
+            @Override
+            public void credit(MoneyTransfer moneyTransfer) {
+            }
+
+            @Override
+            public void acknowledge(MoneyTransfer moneyTransfer) {
+            }
+        });
+        page = new HistoryPage(transactions, 0, false);
+    }
+
+    @Benchmark
+    public Buffer tree() {
+        // what end(String) encodes
+        return Buffer.buffer(TreeDtos.toDto(account, page).toString());
+    }
+
+    @Benchmark
+    public int streaming() throws IOException {
+        ByteBuf buffer = PooledByteBufAllocator.DEFAULT.buffer(4096);
+        try (JsonGenerator generator = VertxTools.JSON_FACTORY.createGenerator((OutputStream) new ByteBufOutputStream(buffer))) {
+            converters.write(generator, account, page);
+        }
+        int size = buffer.readableBytes();
+        buffer.release();
+        return size;
+    }
+}
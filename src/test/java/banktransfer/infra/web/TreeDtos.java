@@ -0,0 +1,60 @@
+package banktransfer.infra.web;
+
+import banktransfer.core.account.Account;
+import banktransfer.core.account.Transaction;
+import banktransfer.core.account.TransactionStatus;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Json trees of the replies streamed by {@link Converters}, as they were built before being streamed:
+ * what {@link ConvertersTest} compares the streamed replies to, and the baseline of
+ * {@link JsonSerializationBenchmark}.
+ */
+final class TreeDtos {
+
+    private TreeDtos() {
+    }
+
+    static JsonObject toDto(Transaction tx) {
+        return new JsonObject()
+                .put("sequence", tx.sequence())
+                .put("transaction-id", tx.transactionId().asString())
+                .put("status", tx.status().name())
+                .put("source-id", tx.moneyTransfer().source().asString())
+                .put("destination-id", tx.moneyTransfer().destination().asString())
+                .put("amount", tx.moneyTransfer().amount().toPlainString());
+    }
+
+    static JsonObject toTransferDto(Transaction tx) {
+        JsonObject dto = toDto(tx);
+        if (tx.status() == TransactionStatus.Cancelled)
+            dto.put("cancel-reason", tx.cancelReason().name());
+        return dto;
+    }
+
+    /**
+     * The next page cursor is only provided when more transactions may follow.
+     */
+    static JsonObject toDto(Account account, HistoryPage page) {
+        // one extra transaction tells whether the page is the last one
+        List<Transaction> transactions = account.transactions(page.afterSequence(), page.newestFirst())
+                .limit(page.limit() + 1L)
+                .collect(toList());
+        JsonArray dtos = new JsonArray();
+        for (int i = 0; i < transactions.size() && i < page.limit(); i++) {
+            dtos.add(toDto(transactions.get(i)));
+        }
+        JsonObject dto = new JsonObject()
+                .put("account-id", account.accountId().asString())
+                .put("balance", account.balance().toPlainString())
+                .put("transactions", dtos);
+        if (transactions.size() > page.limit())
+            dto.put("next-after-sequence", transactions.get(page.limit() - 1).sequence());
+        return dto;
+    }
+}